@@ -0,0 +1,67 @@
+package com.poping.config;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.support.TaskExecutorAdapter;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * [文件概览]
+ * - 目的: 流式聊天执行器配置
+ * - 数据流: ChatController(SSE) → chatStreamExecutor → ChatService.streamMessage → AIGents
+ * - 核心数据: 流式转发线程池
+ * - 关系: Tomcat请求线程在返回SseEmitter后即释放，模型token流的转发在此线程池中完成；
+ *         虚拟线程模式下改为每个流一个虚拟线程
+ */
+@Configuration
+public class ChatStreamConfig {
+
+    @Value("${app.chat.stream.max-pool-size:256}")
+    private int maxPoolSize;
+
+    @Value("${app.chat.stream.queue-capacity:0}")
+    private int queueCapacity;
+
+    @Value("${app.chat.stream.keep-alive-seconds:60}")
+    private int keepAliveSeconds;
+
+    /**
+     * [函数: chatStreamExecutor]
+     * - 输入: ObjectProvider<ExecutorService> virtualThreadExecutor - 虚拟线程执行器（仅虚拟线程模式下存在）
+     * - 输出: TaskExecutor - 流式聊天转发执行器
+     * - 角色: 承载SSE流式转发任务，与Tomcat请求线程隔离
+     * - 逻辑: 1. 虚拟线程模式下直接使用虚拟线程执行器，并发由DownstreamLimiter限制
+     *         2. 否则核心线程数等于最大线程数并允许核心线程空闲回收：
+     *            ThreadPoolExecutor只在队列满后才创建核心数以外的线程，核心数小于最大数时
+     *            多出的流会在队列里等待前面的流结束而收不到任何事件
+     *         3. 默认不排队（SynchronousQueue），线程用满时直接拒绝，由调用方返回错误事件
+     */
+    @Bean(name = "chatStreamExecutor")
+    public TaskExecutor chatStreamExecutor(
+            @Qualifier("virtualThreadExecutor") ObjectProvider<ExecutorService> virtualThreadExecutor) {
+        ExecutorService virtualThreads = virtualThreadExecutor.getIfAvailable();
+        if (virtualThreads != null) {
+            return new TaskExecutorAdapter(virtualThreads);
+        }
+
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(maxPoolSize);
+        executor.setMaxPoolSize(maxPoolSize);
+        executor.setAllowCoreThreadTimeOut(true);
+        executor.setKeepAliveSeconds(keepAliveSeconds);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("chat-stream-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(30);
+        executor.initialize();
+        return executor;
+    }
+}
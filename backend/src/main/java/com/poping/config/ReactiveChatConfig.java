@@ -0,0 +1,99 @@
+package com.poping.config;
+
+import io.netty.channel.ChannelOption;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
+
+/**
+ * [文件概览]
+ * - 目的: 响应式聊天链路的基础设施配置
+ * - 数据流: ReactiveChatController → ReactiveChatService → aigentsWebClient(Reactor Netty) → AIGents
+ *         阻塞的数据库读写 → chatJdbcScheduler
+ * - 核心数据: Netty连接池、WebClient、与数据库连接池等宽的有界调度器
+ * - 关系: 仅在app.chat.reactive.enabled=true时生效，与基于RestTemplate的Servlet链路并存以便A/B对比
+ */
+@Configuration
+@ConditionalOnProperty(name = "app.chat.reactive.enabled", havingValue = "true")
+public class ReactiveChatConfig {
+
+    @Value("${app.external.aigents.base-url}")
+    private String baseUrl;
+
+    @Value("${app.external.aigents.timeout:30000}")
+    private long responseTimeout;
+
+    @Value("${app.external.http.connect-timeout:3000}")
+    private int connectTimeout;
+
+    @Value("${app.chat.reactive.max-connections:500}")
+    private int maxConnections;
+
+    @Value("${app.chat.reactive.pending-acquire-max:2000}")
+    private int pendingAcquireMax;
+
+    @Value("${app.external.http.keep-alive:30000}")
+    private long maxIdleTime;
+
+    @Value("${app.chat.reactive.jdbc-threads:${spring.datasource.hikari.maximum-pool-size:10}}")
+    private int jdbcThreads;
+
+    @Value("${app.chat.reactive.jdbc-queue:10000}")
+    private int jdbcQueue;
+
+    /**
+     * [函数: aigentsConnectionProvider]
+     * - 输入: 无
+     * - 输出: ConnectionProvider - AIGents的Netty连接池
+     * - 角色: 由少量事件循环线程承载大量并发的慢速模型调用
+     * - 逻辑: 1. 限制最大连接数与等待获取连接的请求数 2. 空闲连接按keep-alive回收 3. 开启连接池指标
+     */
+    @Bean(destroyMethod = "dispose")
+    public ConnectionProvider aigentsConnectionProvider() {
+        return ConnectionProvider.builder("aigents")
+                .maxConnections(maxConnections)
+                .pendingAcquireMaxCount(pendingAcquireMax)
+                .maxIdleTime(Duration.ofMillis(maxIdleTime))
+                .metrics(true)
+                .build();
+    }
+
+    /**
+     * [函数: aigentsWebClient]
+     * - 输入: ConnectionProvider connectionProvider - Netty连接池
+     * - 输出: WebClient - 指向AIGents的非阻塞客户端
+     * - 角色: ReactiveAIGentsClient的底层HTTP客户端
+     * - 逻辑: 1. 配置连接超时与响应超时 2. 设置基础地址
+     */
+    @Bean
+    public WebClient aigentsWebClient(ConnectionProvider aigentsConnectionProvider) {
+        HttpClient httpClient = HttpClient.create(aigentsConnectionProvider)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, connectTimeout)
+                .responseTimeout(Duration.ofMillis(responseTimeout));
+        return WebClient.builder()
+                .baseUrl(baseUrl)
+                .clientConnector(new ReactorClientHttpConnector(httpClient))
+                .build();
+    }
+
+    /**
+     * [函数: chatJdbcScheduler]
+     * - 输入: 无
+     * - 输出: Scheduler - 执行阻塞数据库操作的调度器
+     * - 角色: 把JDBC调用隔离在与连接池等宽的线程上，避免占用事件循环或请求线程
+     * - 逻辑: 1. 线程数默认等于Hikari最大连接数 2. 任务队列有界，超出时直接拒绝
+     */
+    @Bean(destroyMethod = "dispose")
+    public Scheduler chatJdbcScheduler() {
+        return Schedulers.newBoundedElastic(jdbcThreads, jdbcQueue, "chat-jdbc");
+    }
+}
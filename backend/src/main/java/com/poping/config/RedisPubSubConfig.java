@@ -0,0 +1,34 @@
+package com.poping.config;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+/**
+ * [文件概览]
+ * - 目的: 多节点之间的Redis发布/订阅基础设施
+ * - 数据流: Redis频道 → RedisMessageListenerContainer(单连接) → 各MessageListener
+ * - 核心数据: 共享的监听容器
+ * - 关系: app.auth.sync.mode=redis 时启用，供角色变更等跨节点缓存失效通知复用
+ */
+@Configuration
+@ConditionalOnProperty(name = "app.auth.sync.mode", havingValue = "redis")
+public class RedisPubSubConfig {
+
+    /**
+     * [函数: redisMessageListenerContainer]
+     * - 输入: RedisConnectionFactory connectionFactory - Redis连接工厂
+     * - 输出: RedisMessageListenerContainer - 监听容器
+     * - 角色: 所有订阅共用一个订阅连接
+     * - 逻辑: 1. 绑定连接工厂 2. 断线后按recoveryInterval自动重新订阅
+     */
+    @Bean
+    public RedisMessageListenerContainer redisMessageListenerContainer(RedisConnectionFactory connectionFactory) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        container.setRecoveryInterval(5000L);
+        return container;
+    }
+}
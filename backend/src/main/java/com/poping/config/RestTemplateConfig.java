@@ -1,28 +1,111 @@
 package com.poping.config;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.httpcomponents.PoolingHttpClientConnectionManagerMetricsBinder;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
 import org.springframework.web.client.RestTemplate;
 
+import java.util.concurrent.TimeUnit;
+
 /**
  * [文件概览]
  * - 目的: RestTemplate HTTP客户端配置
- * - 数据流: HTTP请求 → RestTemplate → 外部API服务
- * - 核心数据: HTTP客户端实例
- * - 关系: AIGentsService依赖此配置进行外部API调用
+ * - 数据流: HTTP请求 → RestTemplate → 连接池(Apache HttpClient) → 外部API服务
+ * - 核心数据: 共享连接池、超时配置、keep-alive策略
+ * - 关系: AIGentsService与ProviderServiceImpl共用此客户端进行外部API调用
  */
 @Configuration
 public class RestTemplateConfig {
-    
+
+    @Value("${app.external.http.max-total:200}")
+    private int maxTotal;
+
+    @Value("${app.external.http.max-per-route:50}")
+    private int maxPerRoute;
+
+    @Value("${app.external.http.connect-timeout:3000}")
+    private int connectTimeout;
+
+    @Value("${app.external.http.connection-request-timeout:2000}")
+    private int connectionRequestTimeout;
+
+    @Value("${app.external.aigents.timeout:30000}")
+    private int readTimeout;
+
+    @Value("${app.external.http.keep-alive:30000}")
+    private long keepAliveMillis;
+
+    @Value("${app.external.http.idle-evict:30000}")
+    private long idleEvictMillis;
+
+    @Value("${app.external.http.validate-after-inactivity:2000}")
+    private int validateAfterInactivity;
+
+    /**
+     * [函数: httpConnectionManager]
+     * - 输入: MeterRegistry meterRegistry - 指标注册表
+     * - 输出: PoolingHttpClientConnectionManager - 外部调用连接池
+     * - 角色: 复用TCP/TLS连接，限制总连接数与单主机连接数
+     * - 逻辑: 1. 设置总连接数和单路由连接数 2. 空闲一段时间后复用前校验 3. 注册连接池指标
+     */
+    @Bean(destroyMethod = "close")
+    public PoolingHttpClientConnectionManager httpConnectionManager(MeterRegistry meterRegistry) {
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(maxTotal);
+        connectionManager.setDefaultMaxPerRoute(maxPerRoute);
+        connectionManager.setValidateAfterInactivity(validateAfterInactivity);
+        new PoolingHttpClientConnectionManagerMetricsBinder(connectionManager, "external-http").bindTo(meterRegistry);
+        return connectionManager;
+    }
+
+    /**
+     * [函数: httpClient]
+     * - 输入: PoolingHttpClientConnectionManager connectionManager - 连接池
+     * - 输出: CloseableHttpClient - 带超时与keep-alive的HTTP客户端
+     * - 角色: 外部调用的底层HTTP客户端
+     * - 逻辑: 1. 配置连接/获取连接/读取超时 2. 配置keep-alive上限 3. 后台回收过期与空闲连接
+     */
+    @Bean(destroyMethod = "close")
+    public CloseableHttpClient httpClient(PoolingHttpClientConnectionManager connectionManager) {
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout(connectTimeout)
+                .setConnectionRequestTimeout(connectionRequestTimeout)
+                .setSocketTimeout(readTimeout)
+                .build();
+
+        // 服务端未声明Keep-Alive时长时使用默认值，且不超过配置上限
+        ConnectionKeepAliveStrategy keepAliveStrategy = (response, context) -> {
+            long serverKeepAlive = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+            return serverKeepAlive > 0 ? Math.min(serverKeepAlive, keepAliveMillis) : keepAliveMillis;
+        };
+
+        return HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                .setKeepAliveStrategy(keepAliveStrategy)
+                .evictExpiredConnections()
+                .evictIdleConnections(idleEvictMillis, TimeUnit.MILLISECONDS)
+                .build();
+    }
+
     /**
      * [函数: restTemplate]
-     * - 输入: 无
+     * - 输入: CloseableHttpClient httpClient - 池化HTTP客户端
      * - 输出: RestTemplate实例
      * - 角色: 提供HTTP客户端Bean
-     * - 逻辑: 1. 创建RestTemplate实例 2. 注册为Spring Bean
+     * - 逻辑: 1. 基于连接池客户端创建RestTemplate 2. 注册为Spring Bean
      */
     @Bean
-    public RestTemplate restTemplate() {
-        return new RestTemplate();
+    public RestTemplate restTemplate(CloseableHttpClient httpClient) {
+        return new RestTemplate(new HttpComponentsClientHttpRequestFactory(httpClient));
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,16 @@
+package com.poping.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+/**
+ * [文件概览]
+ * - 目的: 启用Spring定时任务
+ * - 数据流: 调度线程 → @Scheduled方法
+ * - 核心数据: 无
+ * - 关系: 为缓存清理、批量刷新等后台任务提供调度能力
+ */
+@Configuration
+@EnableScheduling
+public class SchedulingConfig {
+}
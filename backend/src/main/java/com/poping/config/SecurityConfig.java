@@ -3,6 +3,7 @@ package com.poping.config;
 import com.poping.security.JwtAuthenticationEntryPoint;
 import com.poping.security.JwtAuthenticationFilter;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.http.HttpMethod;
@@ -46,10 +47,11 @@ public class SecurityConfig {
      * - 输出: PasswordEncoder - 密码编码器
      * - 角色: 提供密码加密和验证功能
      * - 逻辑: 1. 创建BCrypt编码器 2. 配置强度 3. 返回实例
+     *         调整强度后，旧哈希在用户下次登录时由UserService透明升级
      */
     @Bean
-    public PasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder(12);
+    public PasswordEncoder passwordEncoder(@Value("${app.auth.password.bcrypt-strength:12}") int strength) {
+        return new BCryptPasswordEncoder(strength);
     }
     
     /**
@@ -0,0 +1,47 @@
+package com.poping.config;
+
+import com.poping.util.VirtualThreads;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Conditional;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.ExecutorService;
+
+/**
+ * [文件概览]
+ * - 目的: 虚拟线程执行模式（JDK 21+，按配置开启）
+ * - 数据流: Tomcat请求 → 虚拟线程 → Controller/Service → RestTemplate阻塞I/O时仅挂起虚拟线程
+ * - 核心数据: 每任务一个虚拟线程的执行器
+ * - 关系: 替换Tomcat连接器的工作线程池，并由ChatStreamConfig用于流式转发；
+ *         并发上限不再由线程数决定，改由DownstreamLimiter按下游限流
+ */
+@Configuration
+@Conditional(VirtualThreadsCondition.class)
+public class VirtualThreadConfig {
+
+    /**
+     * [函数: virtualThreadExecutor]
+     * - 输入: 无
+     * - 输出: ExecutorService - 虚拟线程执行器
+     * - 角色: 请求处理与流式转发共用的执行器
+     * - 逻辑: 1. 通过反射创建带名称前缀的虚拟线程执行器
+     */
+    @Bean(name = "virtualThreadExecutor", destroyMethod = "shutdown")
+    public ExecutorService virtualThreadExecutor() {
+        return VirtualThreads.newExecutor("vt-");
+    }
+
+    /**
+     * [函数: virtualThreadProtocolHandlerCustomizer]
+     * - 输入: ExecutorService virtualThreadExecutor - 虚拟线程执行器
+     * - 输出: TomcatProtocolHandlerCustomizer - Tomcat协议处理器定制
+     * - 角色: 让Tomcat在虚拟线程上处理请求
+     * - 逻辑: 1. 替换协议处理器的工作线程池
+     */
+    @Bean
+    public TomcatProtocolHandlerCustomizer<?> virtualThreadProtocolHandlerCustomizer(
+            ExecutorService virtualThreadExecutor) {
+        return protocolHandler -> protocolHandler.setExecutor(virtualThreadExecutor);
+    }
+}
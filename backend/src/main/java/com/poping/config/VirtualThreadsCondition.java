@@ -0,0 +1,34 @@
+package com.poping.config;
+
+import com.poping.util.VirtualThreads;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.annotation.Condition;
+import org.springframework.context.annotation.ConditionContext;
+import org.springframework.core.type.AnnotatedTypeMetadata;
+
+/**
+ * [文件概览]
+ * - 目的: 虚拟线程模式的启用条件
+ * - 数据流: app.virtual-threads.enabled + 运行时JDK探测 → 是否注册VirtualThreadConfig
+ * - 核心数据: 配置开关、VirtualThreads.isSupported()
+ * - 关系: 开关打开但JDK不支持时记录告警并回退到平台线程，不阻止应用启动
+ */
+public class VirtualThreadsCondition implements Condition {
+
+    private static final Logger logger = LoggerFactory.getLogger(VirtualThreadsCondition.class);
+
+    @Override
+    public boolean matches(ConditionContext context, AnnotatedTypeMetadata metadata) {
+        boolean enabled = context.getEnvironment().getProperty("app.virtual-threads.enabled", Boolean.class, false);
+        if (!enabled) {
+            return false;
+        }
+        if (!VirtualThreads.isSupported()) {
+            logger.warn("app.virtual-threads.enabled=true but JDK {} has no virtual threads, using platform threads",
+                    System.getProperty("java.version"));
+            return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,79 @@
+package com.poping.controller;
+
+import com.poping.service.UserService;
+import com.poping.util.ApiResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+
+/**
+ * [文件概览]
+ * - 目的: 管理员的用户角色管理API
+ * - 数据流: 管理员请求 → Controller → UserService.assignRole/revokeRole → user_user_roles
+ *         → 事务提交后AuthorityCache覆盖 + RedisRoleChangeRelay广播
+ * - 核心数据: 用户业务ID、角色名称
+ * - 关系: 角色变更必须经由这里（或UserService的同名方法）才会立即作用于已签发的令牌；
+ *         直接修改数据库的变更要等旧令牌过期、重新登录或刷新后才生效
+ */
+@RestController
+@RequestMapping("/api/v1/admin/users")
+@CrossOrigin(origins = "*")
+@PreAuthorize("hasRole('ADMIN')")
+public class AdminUserController {
+
+    @Autowired
+    private UserService userService;
+
+    /**
+     * [函数: getRoles]
+     * - 输入: String userId - 用户业务ID
+     * - 输出: ResponseEntity<ApiResponse<List<String>>> - 用户的全部角色名
+     * - 角色: 查看用户当前角色
+     * - 逻辑: 1. 调用服务层查询角色名
+     */
+    @GetMapping("/{userId}/roles")
+    public ResponseEntity<ApiResponse<List<String>>> getRoles(@PathVariable String userId) {
+        try {
+            return ResponseEntity.ok(ApiResponse.success(userService.getRoleNames(userId)));
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body(ApiResponse.error("获取用户角色失败: " + e.getMessage()));
+        }
+    }
+
+    /**
+     * [函数: assignRole]
+     * - 输入: String userId - 用户业务ID; String roleName - 角色名称
+     * - 输出: ResponseEntity<ApiResponse<List<String>>> - 分配后的全部角色名
+     * - 角色: 为用户分配角色，已签发的令牌立即按新角色鉴权
+     * - 逻辑: 1. 调用服务层分配角色（幂等）
+     */
+    @PutMapping("/{userId}/roles/{roleName}")
+    public ResponseEntity<ApiResponse<List<String>>> assignRole(@PathVariable String userId,
+                                                                @PathVariable String roleName) {
+        try {
+            return ResponseEntity.ok(ApiResponse.success("角色已分配", userService.assignRole(userId, roleName)));
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body(ApiResponse.error("分配角色失败: " + e.getMessage()));
+        }
+    }
+
+    /**
+     * [函数: revokeRole]
+     * - 输入: String userId - 用户业务ID; String roleName - 角色名称
+     * - 输出: ResponseEntity<ApiResponse<List<String>>> - 撤销后的全部角色名
+     * - 角色: 撤销用户角色，已签发的令牌立即失去该角色
+     * - 逻辑: 1. 调用服务层撤销角色（幂等）
+     */
+    @DeleteMapping("/{userId}/roles/{roleName}")
+    public ResponseEntity<ApiResponse<List<String>>> revokeRole(@PathVariable String userId,
+                                                                @PathVariable String roleName) {
+        try {
+            return ResponseEntity.ok(ApiResponse.success("角色已撤销", userService.revokeRole(userId, roleName)));
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body(ApiResponse.error("撤销角色失败: " + e.getMessage()));
+        }
+    }
+}
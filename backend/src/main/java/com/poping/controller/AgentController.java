@@ -4,8 +4,13 @@ import com.baomidou.mybatisplus.core.metadata.IPage;
 import com.poping.util.ApiResponse;
 import com.poping.dto.AgentCreateRequest;
 import com.poping.dto.AgentListResponse;
+import com.poping.dto.CursorPage;
 import com.poping.entity.Agent;
+import com.poping.service.AgentCatalogCache;
 import com.poping.service.AgentService;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
@@ -60,15 +65,20 @@ public class AgentController {
     @GetMapping
     public ResponseEntity<ApiResponse<AgentListResponse>> getAgents(
             @RequestParam(defaultValue = "1") int page,
-            @RequestParam(defaultValue = "10") int size) {
+            @RequestParam(defaultValue = "10") int size,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
         try {
-            IPage<Agent> agentsPage = agentService.getPublicAgents(page, size);
+            if (notModified(ifNoneMatch)) {
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(ifNoneMatch).build();
+            }
+            AgentCatalogCache.CatalogPage catalog = agentService.getPublicCatalog(page, size);
+            IPage<Agent> agentsPage = catalog.getPage();
             AgentListResponse response = new AgentListResponse();
             response.setAgents(agentsPage.getRecords());
             response.setTotal((int) agentsPage.getTotal());
             response.setPage((int) agentsPage.getCurrent());
             response.setSize((int) agentsPage.getSize());
-            return ResponseEntity.ok(ApiResponse.success(response));
+            return withETag(catalog.getEtag()).body(ApiResponse.success(response));
         } catch (Exception e) {
             return ResponseEntity.badRequest().body(ApiResponse.error(e.getMessage()));
         }
@@ -80,9 +90,28 @@ public class AgentController {
     @GetMapping("/public")
     public ResponseEntity<ApiResponse<IPage<Agent>>> getPublicAgents(
             @RequestParam(defaultValue = "1") int page,
+            @RequestParam(defaultValue = "10") int size,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        try {
+            if (notModified(ifNoneMatch)) {
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(ifNoneMatch).build();
+            }
+            AgentCatalogCache.CatalogPage catalog = agentService.getPublicCatalog(page, size);
+            return withETag(catalog.getEtag()).body(ApiResponse.success(catalog.getPage()));
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body(ApiResponse.error(e.getMessage()));
+        }
+    }
+    
+    /**
+     * 游标分页获取公开智能体（首次请求不传cursor，之后传上一页的nextCursor）
+     */
+    @GetMapping("/public/cursor")
+    public ResponseEntity<ApiResponse<CursorPage<Agent>>> getPublicAgentsByCursor(
+            @RequestParam(required = false) String cursor,
             @RequestParam(defaultValue = "10") int size) {
         try {
-            IPage<Agent> agents = agentService.getPublicAgents(page, size);
+            CursorPage<Agent> agents = agentService.getPublicAgentsByCursor(cursor, size);
             return ResponseEntity.ok(ApiResponse.success(agents));
         } catch (Exception e) {
             return ResponseEntity.badRequest().body(ApiResponse.error(e.getMessage()));
@@ -130,10 +159,12 @@ public class AgentController {
      * 搜索智能体
      */
     @GetMapping("/search")
-    public ResponseEntity<ApiResponse<List<Agent>>> searchAgents(
-            @RequestParam String keyword) {
+    public ResponseEntity<ApiResponse<IPage<Agent>>> searchAgents(
+            @RequestParam String keyword,
+            @RequestParam(defaultValue = "1") int page,
+            @RequestParam(defaultValue = "20") int size) {
         try {
-            List<Agent> agents = agentService.searchAgents(keyword);
+            IPage<Agent> agents = agentService.searchAgents(keyword, page, size);
             return ResponseEntity.ok(ApiResponse.success(agents));
         } catch (Exception e) {
             return ResponseEntity.badRequest().body(ApiResponse.error(e.getMessage()));
@@ -145,10 +176,16 @@ public class AgentController {
      */
     @GetMapping("/popular")
     public ResponseEntity<ApiResponse<List<Agent>>> getPopularAgents(
-            @RequestParam(defaultValue = "10") int limit) {
+            @RequestParam(defaultValue = "10") int limit,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
         try {
+            if (notModified(ifNoneMatch)) {
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(ifNoneMatch).build();
+            }
+            // 先取ETag再取内容：期间快照若更新，客户端拿到较新的内容和较旧的ETag，下次重新验证时多一次200
+            String etag = agentService.getPublicCatalogETag();
             List<Agent> agents = agentService.getPopularAgents(limit);
-            return ResponseEntity.ok(ApiResponse.success(agents));
+            return withETag(etag).body(ApiResponse.success(agents));
         } catch (Exception e) {
             return ResponseEntity.badRequest().body(ApiResponse.error(e.getMessage()));
         }
@@ -184,4 +221,20 @@ public class AgentController {
             return ResponseEntity.badRequest().body(ApiResponse.error(e.getMessage()));
         }
     }
-}
\ No newline at end of file
+    
+    /**
+     * 公开目录快照未变化时（If-None-Match与当前ETag一致）返回304，不再组装响应体
+     */
+    private boolean notModified(String ifNoneMatch) {
+        String etag = agentService.getPublicCatalogETag();
+        return etag != null && ifNoneMatch != null && ifNoneMatch.equals(etag);
+    }
+    
+    /**
+     * 带上快照ETag并要求客户端每次重新验证；退回数据库查询时ETag为null，不写入
+     */
+    private ResponseEntity.BodyBuilder withETag(String etag) {
+        ResponseEntity.BodyBuilder builder = ResponseEntity.ok().cacheControl(CacheControl.noCache());
+        return etag == null ? builder : builder.eTag(etag);
+    }
+}
@@ -2,15 +2,19 @@ package com.poping.controller;
 
 import com.poping.dto.*;
 import com.poping.entity.User;
+import com.poping.exception.RequestThrottledException;
 import com.poping.service.UserService;
 import com.poping.util.ApiResponse;
 import com.poping.util.JwtUtil;
 // Swagger imports removed
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import javax.servlet.http.HttpServletRequest;
 import javax.validation.Valid;
 
 /**
@@ -26,6 +30,8 @@ import javax.validation.Valid;
 @CrossOrigin(origins = "*")
 public class AuthController {
     
+    private static final Logger logger = LoggerFactory.getLogger(AuthController.class);
+    
     @Autowired
     private UserService userService;
     
@@ -37,33 +43,37 @@ public class AuthController {
     
     /**
      * [函数: register]
-     * - 输入: UserRegisterRequest request - 用户注册请求
+     * - 输入: UserRegisterRequest request - 用户注册请求; HttpServletRequest httpRequest - 用于按IP限流
      * - 输出: ResponseEntity<ApiResponse<AuthResponse>> - 注册响应
      * - 角色: 处理用户注册请求
      * - 逻辑: 1. 验证请求参数 2. 调用服务注册用户 3. 生成JWT令牌 4. 返回认证信息
      */
     @PostMapping("/register")
     // @ApiOperation("用户注册") - Swagger annotation removed
-    public ResponseEntity<ApiResponse<AuthResponse>> register(@Valid @RequestBody UserRegisterRequest request) {
+    public ResponseEntity<ApiResponse<AuthResponse>> register(@Valid @RequestBody UserRegisterRequest request,
+                                                              HttpServletRequest httpRequest) {
         try {
             // 注册用户
-            User user = userService.registerUser(request.getEmail(), request.getPassword(), request.getUsername());
+            User user = userService.registerUser(request.getEmail(), request.getPassword(), request.getUsername(),
+                    httpRequest.getRemoteAddr());
             
-            // 生成JWT令牌
-            String accessToken = jwtUtil.generateToken(user.getUserId(), user.getEmail());
-            String refreshToken = jwtUtil.generateRefreshToken(user.getUserId());
+            // 签发令牌（开启新的令牌族）
+            TokenPair tokens = userService.issueTokens(user);
             
             // 构建响应
             UserResponse userResponse = UserResponse.fromUser(user);
             AuthResponse authResponse = AuthResponse.create(
-                accessToken, 
-                refreshToken, 
+                tokens.getAccessToken(), 
+                tokens.getRefreshToken(), 
                 jwtExpiration / 1000, 
                 userResponse
             );
             
             return ResponseEntity.ok(ApiResponse.success("注册成功", authResponse));
             
+        } catch (RequestThrottledException e) {
+            // 限流交给全局异常处理器返回429/503与Retry-After
+            throw e;
         } catch (Exception e) {
             return ResponseEntity.badRequest().body(ApiResponse.error(e.getMessage()));
         }
@@ -71,33 +81,37 @@ public class AuthController {
     
     /**
      * [函数: login]
-     * - 输入: UserLoginRequest request - 用户登录请求
+     * - 输入: UserLoginRequest request - 用户登录请求; HttpServletRequest httpRequest - 用于按IP限流
      * - 输出: ResponseEntity<ApiResponse<AuthResponse>> - 登录响应
      * - 角色: 处理用户登录请求
      * - 逻辑: 1. 验证登录凭据 2. 生成JWT令牌 3. 返回认证信息
      */
     @PostMapping("/login")
     // @ApiOperation("用户登录") - Swagger annotation removed
-    public ResponseEntity<ApiResponse<AuthResponse>> login(@Valid @RequestBody UserLoginRequest request) {
+    public ResponseEntity<ApiResponse<AuthResponse>> login(@Valid @RequestBody UserLoginRequest request,
+                                                           HttpServletRequest httpRequest) {
         try {
-            // 认证用户并生成访问令牌
-            String accessToken = userService.authenticateUser(request.getEmail(), request.getPassword());
+            // 认证用户并签发令牌
+            TokenPair tokens = userService.authenticateUser(request.getEmail(), request.getPassword(),
+                    httpRequest.getRemoteAddr());
             
             // 获取用户信息
             User user = userService.getUserByEmail(request.getEmail());
-            String refreshToken = jwtUtil.generateRefreshToken(user.getUserId());
             
             // 构建响应
             UserResponse userResponse = UserResponse.fromUser(user);
             AuthResponse authResponse = AuthResponse.create(
-                accessToken, 
-                refreshToken, 
+                tokens.getAccessToken(), 
+                tokens.getRefreshToken(), 
                 jwtExpiration / 1000, 
                 userResponse
             );
             
             return ResponseEntity.ok(ApiResponse.success("登录成功", authResponse));
             
+        } catch (RequestThrottledException e) {
+            // 限流交给全局异常处理器返回429/503与Retry-After
+            throw e;
         } catch (Exception e) {
             return ResponseEntity.badRequest().body(ApiResponse.error(e.getMessage()));
         }
@@ -108,14 +122,14 @@ public class AuthController {
      * - 输入: RefreshTokenRequest request - 刷新令牌请求
      * - 输出: ResponseEntity<ApiResponse<AuthResponse>> - 刷新响应
      * - 角色: 处理令牌刷新请求
-     * - 逻辑: 1. 验证刷新令牌 2. 生成新的访问令牌 3. 返回新令牌
+     * - 逻辑: 1. 验证并轮换刷新令牌 2. 生成新的访问令牌 3. 返回新令牌对
      */
     @PostMapping("/refresh")
     // @ApiOperation("刷新访问令牌") - Swagger annotation removed
     public ResponseEntity<ApiResponse<AuthResponse>> refreshToken(@RequestBody RefreshTokenRequest request) {
         try {
-            // 刷新访问令牌
-            String newAccessToken = userService.refreshToken(request.getRefreshToken());
+            // 轮换令牌：旧刷新令牌随即失效，客户端需保存新的刷新令牌
+            TokenPair tokens = userService.refreshToken(request.getRefreshToken());
             
             // 获取用户信息
             String userId = jwtUtil.getUserIdFromToken(request.getRefreshToken());
@@ -124,8 +138,8 @@ public class AuthController {
             // 构建响应
             UserResponse userResponse = UserResponse.fromUser(user);
             AuthResponse authResponse = AuthResponse.create(
-                newAccessToken, 
-                request.getRefreshToken(), 
+                tokens.getAccessToken(), 
+                tokens.getRefreshToken(), 
                 jwtExpiration / 1000, 
                 userResponse
             );
@@ -139,16 +153,24 @@ public class AuthController {
     
     /**
      * [函数: logout]
-     * - 输入: 无
+     * - 输入: String authHeader - Authorization头（可选）; RefreshTokenRequest request - 刷新令牌（可选）
      * - 输出: ResponseEntity<ApiResponse<Void>> - 登出响应
      * - 角色: 处理用户登出请求
-     * - 逻辑: 1. 清除客户端令牌 2. 返回成功响应
+     * - 逻辑: 1. 吊销当前访问令牌及其令牌族 2. 客户端清除本地令牌 3. 返回成功响应
      */
     @PostMapping("/logout")
     // @ApiOperation("用户登出") - Swagger annotation removed
-    public ResponseEntity<ApiResponse<Void>> logout() {
-        // 由于JWT是无状态的，服务端不需要特殊处理
-        // 客户端需要清除本地存储的令牌
+    public ResponseEntity<ApiResponse<Void>> logout(
+            @RequestHeader(value = "Authorization", required = false) String authHeader,
+            @RequestBody(required = false) RefreshTokenRequest request) {
+        try {
+            String accessToken = authHeader != null && authHeader.startsWith("Bearer ")
+                    ? authHeader.substring(7) : null;
+            userService.logout(accessToken, request != null ? request.getRefreshToken() : null);
+        } catch (Exception e) {
+            // 登出对客户端总是成功，吊销失败只记录日志
+            logger.warn("服务端吊销令牌失败: {}", e.getMessage());
+        }
         return ResponseEntity.ok(ApiResponse.success("登出成功", null));
     }
     
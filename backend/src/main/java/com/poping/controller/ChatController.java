@@ -2,12 +2,16 @@ package com.poping.controller;
 
 import com.baomidou.mybatisplus.core.metadata.IPage;
 import com.poping.dto.ChatRequest;
+import com.poping.dto.CursorPage;
 import com.poping.entity.Message;
 import com.poping.entity.Session;
 import com.poping.service.ChatService;
 import com.poping.util.ApiResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import javax.validation.Valid;
 import java.util.List;
@@ -23,6 +27,9 @@ public class ChatController {
     
     private final ChatService chatService;
     
+    @Value("${app.chat.stream.timeout:120000}")
+    private long streamTimeout;
+    
     public ChatController(ChatService chatService) {
         this.chatService = chatService;
     }
@@ -42,6 +49,25 @@ public class ChatController {
         }
     }
     
+    /**
+     * 流式发送聊天消息（SSE）
+     * 事件序列: session → delta* → done，失败时发送error事件
+     * 流式接口只转发AIGents，指定provider时直接返回400
+     */
+    @PostMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<?> streamMessage(
+            @Valid @RequestBody ChatRequest request,
+            @RequestHeader("User-Id") Long userId) {
+        if (request.getProvider() != null) {
+            return ResponseEntity.badRequest()
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .body(ApiResponse.error(400, "流式接口暂不支持指定provider，请使用/api/chat/send"));
+        }
+        SseEmitter emitter = new SseEmitter(streamTimeout);
+        chatService.streamMessage(request, userId, emitter);
+        return ResponseEntity.ok(emitter);
+    }
+    
     /**
      * 创建新会话
      */
@@ -74,6 +100,22 @@ public class ChatController {
         }
     }
     
+    /**
+     * 游标分页获取用户会话列表（首次请求不传cursor，之后传上一页的nextCursor）
+     */
+    @GetMapping("/sessions/cursor")
+    public ResponseEntity<ApiResponse<CursorPage<Session>>> getUserSessionsByCursor(
+            @RequestHeader("User-Id") Long userId,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "10") int size) {
+        try {
+            CursorPage<Session> sessions = chatService.getUserSessionsByCursor(userId, cursor, size);
+            return ResponseEntity.ok(ApiResponse.success(sessions));
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body(ApiResponse.error(e.getMessage()));
+        }
+    }
+    
     /**
      * 获取会话详情
      */
@@ -106,6 +148,24 @@ public class ChatController {
         }
     }
     
+    /**
+     * 游标分页获取会话消息：不传游标返回最新一页；before传nextCursor加载更早的消息，after加载之后的新消息
+     */
+    @GetMapping("/sessions/{sessionId}/messages/cursor")
+    public ResponseEntity<ApiResponse<CursorPage<Message>>> getSessionMessagesByCursor(
+            @PathVariable Long sessionId,
+            @RequestHeader("User-Id") Long userId,
+            @RequestParam(required = false) String before,
+            @RequestParam(required = false) String after,
+            @RequestParam(defaultValue = "20") int size) {
+        try {
+            CursorPage<Message> messages = chatService.getSessionMessagesByCursor(sessionId, userId, before, after, size);
+            return ResponseEntity.ok(ApiResponse.success(messages));
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body(ApiResponse.error(e.getMessage()));
+        }
+    }
+    
     /**
      * 删除会话
      */
@@ -2,11 +2,14 @@ package com.poping.controller;
 
 import com.poping.dto.ProviderConfigDTO;
 import com.poping.dto.ProviderConfigResponseDTO;
+import com.poping.dto.ProviderHealthDTO;
+import com.poping.dto.ProviderModelDTO;
 import com.poping.entity.Provider;
 import com.poping.service.ProviderService;
 import com.poping.util.ApiResponse;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
 
@@ -128,20 +131,73 @@ public class ProviderController {
         }
     }
     
+    /**
+     * [函数: testAllConnections]
+     * - 输入: Authentication auth - 用户认证信息
+     * - 输出: ResponseEntity<ApiResponse<List<ProviderHealthDTO>>> - 每个配置的探测结果
+     * - 角色: 批量测试当前用户的全部供应商配置
+     * - 逻辑: 1. 获取用户ID 2. 调用服务层并发探测 3. 返回延迟、状态与模型数量
+     */
+    @PostMapping("/configs/test")
+    public ResponseEntity<ApiResponse<List<ProviderHealthDTO>>> testAllConnections(Authentication auth) {
+        try {
+            String userId = auth.getName();
+            List<ProviderHealthDTO> results = providerService.testAllProviderConnections(userId);
+            return ResponseEntity.ok(ApiResponse.success(results));
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body(ApiResponse.error("批量测试连接失败: " + e.getMessage()));
+        }
+    }
+    
+    /**
+     * [函数: testAllTenantsConnections]
+     * - 输入: 无
+     * - 输出: ResponseEntity<ApiResponse<List<ProviderHealthDTO>>> - 全部租户配置的探测结果
+     * - 角色: 管理员批量测试所有租户的供应商配置
+     * - 逻辑: 1. 校验管理员权限 2. 调用服务层并发探测 3. 返回结果
+     */
+    @PostMapping("/admin/test")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<ApiResponse<List<ProviderHealthDTO>>> testAllTenantsConnections() {
+        try {
+            List<ProviderHealthDTO> results = providerService.testAllTenantsProviderConnections();
+            return ResponseEntity.ok(ApiResponse.success(results));
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body(ApiResponse.error("批量测试连接失败: " + e.getMessage()));
+        }
+    }
+    
+    /**
+     * [函数: getHealth]
+     * - 输入: 无
+     * - 输出: ResponseEntity<ApiResponse<List<ProviderHealthDTO>>> - 健康表
+     * - 角色: 管理员查看最近的探测结果（不触发探测）
+     * - 逻辑: 1. 校验管理员权限 2. 读取健康表
+     */
+    @GetMapping("/admin/health")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<ApiResponse<List<ProviderHealthDTO>>> getHealth() {
+        try {
+            return ResponseEntity.ok(ApiResponse.success(providerService.getProviderHealth()));
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body(ApiResponse.error("获取健康状态失败: " + e.getMessage()));
+        }
+    }
+    
     /**
      * [函数: getModels]
      * - 输入: Authentication auth, String providerId - 用户认证和供应商ID
-     * - 输出: ResponseEntity<ApiResponse<List<Map<String, Object>>>> - 模型列表
+     * - 输出: ResponseEntity<ApiResponse<List<ProviderModelDTO>>> - 模型列表
      * - 角色: 获取供应商的可用模型列表
      * - 逻辑: 1. 获取用户ID 2. 调用服务层获取模型 3. 返回模型列表
      */
     @GetMapping("/configs/{providerId}/models")
-    public ResponseEntity<ApiResponse<List<Map<String, Object>>>> getModels(
+    public ResponseEntity<ApiResponse<List<ProviderModelDTO>>> getModels(
             Authentication auth, 
             @PathVariable String providerId) {
         try {
             String userId = auth.getName();
-            List<Map<String, Object>> models = providerService.getProviderModels(userId, providerId);
+            List<ProviderModelDTO> models = providerService.getProviderModels(userId, providerId);
             return ResponseEntity.ok(ApiResponse.success(models));
         } catch (Exception e) {
             return ResponseEntity.badRequest().body(ApiResponse.error("获取模型列表失败: " + e.getMessage()));
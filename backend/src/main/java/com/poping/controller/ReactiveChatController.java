@@ -0,0 +1,68 @@
+package com.poping.controller;
+
+import com.poping.dto.ChatRequest;
+import com.poping.service.ReactiveChatService;
+import com.poping.util.ApiResponse;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import javax.validation.Valid;
+import java.util.Map;
+
+/**
+ * 响应式聊天控制器
+ * 接口与ChatController的/send、/stream一致，返回Mono/Flux，请求线程在模型调用期间即被释放；
+ * 只转发AIGents，指定provider的请求返回400；仅在app.chat.reactive.enabled=true时注册
+ */
+@RestController
+@RequestMapping("/api/chat/reactive")
+@CrossOrigin(origins = "*")
+@ConditionalOnProperty(name = "app.chat.reactive.enabled", havingValue = "true")
+public class ReactiveChatController {
+
+    private static final String UNSUPPORTED_PROVIDER = "响应式接口暂不支持指定provider，请使用/api/chat/send";
+
+    private final ReactiveChatService reactiveChatService;
+
+    public ReactiveChatController(ReactiveChatService reactiveChatService) {
+        this.reactiveChatService = reactiveChatService;
+    }
+
+    /**
+     * 发送聊天消息
+     */
+    @PostMapping("/send")
+    public Mono<ResponseEntity<ApiResponse<Map<String, Object>>>> sendMessage(
+            @Valid @RequestBody ChatRequest request,
+            @RequestHeader("User-Id") Long userId) {
+        if (request.getProvider() != null) {
+            return Mono.just(ResponseEntity.badRequest().body(ApiResponse.error(400, UNSUPPORTED_PROVIDER)));
+        }
+        return reactiveChatService.sendMessage(request, userId)
+                .map(response -> ResponseEntity.ok(ApiResponse.success(response)))
+                .onErrorResume(e -> Mono.just(
+                        ResponseEntity.badRequest().body(ApiResponse.<Map<String, Object>>error(e.getMessage()))));
+    }
+
+    /**
+     * 流式发送聊天消息（SSE）
+     * 事件序列: session → delta* → done，失败时发送error事件
+     */
+    @PostMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<?> streamMessage(
+            @Valid @RequestBody ChatRequest request,
+            @RequestHeader("User-Id") Long userId) {
+        if (request.getProvider() != null) {
+            return ResponseEntity.badRequest()
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .body(ApiResponse.error(400, UNSUPPORTED_PROVIDER));
+        }
+        Flux<ServerSentEvent<Map<String, Object>>> events = reactiveChatService.streamMessage(request, userId);
+        return ResponseEntity.ok(events);
+    }
+}
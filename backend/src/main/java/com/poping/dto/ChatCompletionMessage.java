@@ -0,0 +1,42 @@
+package com.poping.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
+/**
+ * [文件概览]
+ * - 目的: OpenAI兼容对话消息（system/user/assistant）
+ * - 数据流: 本地Message → ChatCompletionMessage → 供应商；供应商响应choices[].message → 回答内容
+ * - 核心数据: 角色、内容
+ * - 关系: 请求与响应共用
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class ChatCompletionMessage {
+    
+    private String role;
+    
+    private String content;
+    
+    public ChatCompletionMessage() {
+    }
+    
+    public ChatCompletionMessage(String role, String content) {
+        this.role = role;
+        this.content = content;
+    }
+    
+    public String getRole() {
+        return role;
+    }
+    
+    public void setRole(String role) {
+        this.role = role;
+    }
+    
+    public String getContent() {
+        return content;
+    }
+    
+    public void setContent(String content) {
+        this.content = content;
+    }
+}
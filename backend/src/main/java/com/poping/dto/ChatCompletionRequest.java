@@ -0,0 +1,55 @@
+package com.poping.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.List;
+
+/**
+ * [文件概览]
+ * - 目的: OpenAI兼容 /chat/completions 请求体
+ * - 数据流: ChatService组装上下文 → ProviderRouter → 供应商
+ * - 核心数据: 模型、消息列表（role + content）
+ * - 关系: 只包含路由引擎用到的字段，非流式调用
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class ChatCompletionRequest {
+    
+    private String model;
+    
+    private List<ChatCompletionMessage> messages;
+    
+    private Boolean stream;
+    
+    public ChatCompletionRequest() {
+    }
+    
+    public ChatCompletionRequest(String model, List<ChatCompletionMessage> messages) {
+        this.model = model;
+        this.messages = messages;
+        this.stream = false;
+    }
+    
+    public String getModel() {
+        return model;
+    }
+    
+    public void setModel(String model) {
+        this.model = model;
+    }
+    
+    public List<ChatCompletionMessage> getMessages() {
+        return messages;
+    }
+    
+    public void setMessages(List<ChatCompletionMessage> messages) {
+        this.messages = messages;
+    }
+    
+    public Boolean getStream() {
+        return stream;
+    }
+    
+    public void setStream(Boolean stream) {
+        this.stream = stream;
+    }
+}
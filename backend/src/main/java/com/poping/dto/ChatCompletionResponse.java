@@ -0,0 +1,67 @@
+package com.poping.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
+import java.util.List;
+
+/**
+ * [文件概览]
+ * - 目的: OpenAI兼容 /chat/completions 响应体
+ * - 数据流: 供应商 → RestTemplate反序列化 → ProviderRouter取第一个choice的内容
+ * - 核心数据: choices[].message、实际使用的模型
+ * - 关系: 未声明的字段（usage等）忽略
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class ChatCompletionResponse {
+    
+    private String model;
+    
+    private List<Choice> choices;
+    
+    public String getModel() {
+        return model;
+    }
+    
+    public void setModel(String model) {
+        this.model = model;
+    }
+    
+    public List<Choice> getChoices() {
+        return choices;
+    }
+    
+    public void setChoices(List<Choice> choices) {
+        this.choices = choices;
+    }
+    
+    /**
+     * [函数: firstContent]
+     * - 输入: 无
+     * - 输出: String - 第一个choice的消息内容，没有时返回null
+     * - 角色: 非流式调用只取一个候选
+     * - 逻辑: 1. 逐层判空后返回
+     */
+    public String firstContent() {
+        if (choices == null || choices.isEmpty() || choices.get(0).getMessage() == null) {
+            return null;
+        }
+        return choices.get(0).getMessage().getContent();
+    }
+    
+    /**
+     * 单个候选回答
+     */
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class Choice {
+        
+        private ChatCompletionMessage message;
+        
+        public ChatCompletionMessage getMessage() {
+            return message;
+        }
+        
+        public void setMessage(ChatCompletionMessage message) {
+            this.message = message;
+        }
+    }
+}
@@ -19,6 +19,17 @@ public class ChatRequest {
     
     private Map<String, Object> context;
     
+    /**
+     * 直连的模型供应商ID；为空时走AIGents，"auto"表示在用户的所有供应商配置之间路由
+     * 仅/api/chat/send支持，流式接口与响应式接口收到该字段时返回400
+     */
+    private String provider;
+    
+    /**
+     * 直连供应商时使用的模型，为空时取供应商配置的默认模型
+     */
+    private String model;
+    
     // Getters and Setters
     public Long getAgentId() {
         return agentId;
@@ -51,6 +62,22 @@ public class ChatRequest {
     public void setContext(Map<String, Object> context) {
         this.context = context;
     }
+    
+    public String getProvider() {
+        return provider;
+    }
+    
+    public void setProvider(String provider) {
+        this.provider = provider;
+    }
+    
+    public String getModel() {
+        return model;
+    }
+    
+    public void setModel(String model) {
+        this.model = model;
+    }
 }
 
 /**
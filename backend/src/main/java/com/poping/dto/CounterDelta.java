@@ -0,0 +1,62 @@
+package com.poping.dto;
+
+import java.time.LocalDateTime;
+
+/**
+ * [文件概览]
+ * - 目的: 计数器增量DTO，描述一行记录在一个刷新周期内累计的变化
+ * - 数据流: ChatCounterWriteBehind → CounterDelta列表 → Repository批量UPDATE
+ * - 核心数据: 记录ID、计数增量、最后活动时间
+ * - 关系: 被SessionRepository/AgentRepository的批量更新语句使用
+ */
+public class CounterDelta {
+
+    /**
+     * 记录ID（会话ID或智能体ID）
+     */
+    private Long id;
+
+    /**
+     * 计数增量
+     */
+    private Long delta;
+
+    /**
+     * 最后活动时间，可为空
+     */
+    private LocalDateTime lastActivity;
+
+    // 构造函数
+    public CounterDelta() {}
+
+    public CounterDelta(Long id, Long delta, LocalDateTime lastActivity) {
+        this.id = id;
+        this.delta = delta;
+        this.lastActivity = lastActivity;
+    }
+
+    // Getter和Setter方法
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public Long getDelta() {
+        return delta;
+    }
+
+    public void setDelta(Long delta) {
+        this.delta = delta;
+    }
+
+    public LocalDateTime getLastActivity() {
+        return lastActivity;
+    }
+
+    public void setLastActivity(LocalDateTime lastActivity) {
+        this.lastActivity = lastActivity;
+    }
+}
@@ -0,0 +1,53 @@
+package com.poping.dto;
+
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * [文件概览]
+ * - 目的: 游标（keyset）分页结果，不含总数
+ * - 数据流: Repository多取一条（limit = size + 1）→ CursorPage.of 截断并由最后一条生成下一页游标 → 前端原样回传游标
+ * - 核心数据: 当前页记录、下一页游标、是否还有更多
+ * - 关系: 替代会话、消息、公开智能体列表的OFFSET分页；游标由PageCursor编码，前端应视为不透明字符串
+ */
+public class CursorPage<T> {
+
+    private final List<T> records;
+
+    private final String nextCursor;
+
+    private final boolean hasMore;
+
+    public CursorPage(List<T> records, String nextCursor, boolean hasMore) {
+        this.records = records;
+        this.nextCursor = nextCursor;
+        this.hasMore = hasMore;
+    }
+
+    /**
+     * [函数: of]
+     * - 输入: List<T> rows - 按分页顺序查询的最多size + 1条记录; int size - 页大小; Function<T, String> cursorOf - 由记录生成游标
+     * - 输出: CursorPage<T> - 当前页
+     * - 角色: 根据多取的一条判断是否还有下一页，无需COUNT
+     * - 逻辑: 1. 超过size条时截断并以本页最后一条生成游标 2. 否则没有下一页
+     */
+    public static <T> CursorPage<T> of(List<T> rows, int size, Function<T, String> cursorOf) {
+        if (rows.size() <= size) {
+            return new CursorPage<>(rows, null, false);
+        }
+        List<T> page = rows.subList(0, size);
+        return new CursorPage<>(page, cursorOf.apply(page.get(size - 1)), true);
+    }
+
+    public List<T> getRecords() {
+        return records;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public boolean isHasMore() {
+        return hasMore;
+    }
+}
@@ -0,0 +1,147 @@
+package com.poping.dto;
+
+import java.time.LocalDateTime;
+
+/**
+ * [文件概览]
+ * - 目的: 单个供应商配置的连接探测结果
+ * - 数据流: ProviderHealthProber → DTO → 批量测试接口/健康表
+ * - 核心数据: 配置标识、探测状态、耗时、模型数量
+ * - 关系: status为UP/DOWN/TIMEOUT；TIMEOUT表示在批量测试的整体时限内没有完成
+ */
+public class ProviderHealthDTO {
+    
+    public static final String UP = "UP";
+    public static final String DOWN = "DOWN";
+    public static final String TIMEOUT = "TIMEOUT";
+    
+    /**
+     * 配置ID
+     */
+    private String configId;
+    
+    /**
+     * 所属用户ID
+     */
+    private String userId;
+    
+    /**
+     * 供应商ID
+     */
+    private String providerId;
+    
+    /**
+     * 供应商名称
+     */
+    private String providerName;
+    
+    /**
+     * 探测状态
+     */
+    private String status;
+    
+    /**
+     * 探测耗时（毫秒），超时时为整体时限内已等待的时间
+     */
+    private Long latencyMs;
+    
+    /**
+     * HTTP状态码
+     */
+    private Integer statusCode;
+    
+    /**
+     * 可用模型数量
+     */
+    private Integer modelCount;
+    
+    /**
+     * 失败原因
+     */
+    private String message;
+    
+    /**
+     * 探测时间
+     */
+    private LocalDateTime checkedAt;
+    
+    public String getConfigId() {
+        return configId;
+    }
+    
+    public void setConfigId(String configId) {
+        this.configId = configId;
+    }
+    
+    public String getUserId() {
+        return userId;
+    }
+    
+    public void setUserId(String userId) {
+        this.userId = userId;
+    }
+    
+    public String getProviderId() {
+        return providerId;
+    }
+    
+    public void setProviderId(String providerId) {
+        this.providerId = providerId;
+    }
+    
+    public String getProviderName() {
+        return providerName;
+    }
+    
+    public void setProviderName(String providerName) {
+        this.providerName = providerName;
+    }
+    
+    public String getStatus() {
+        return status;
+    }
+    
+    public void setStatus(String status) {
+        this.status = status;
+    }
+    
+    public Long getLatencyMs() {
+        return latencyMs;
+    }
+    
+    public void setLatencyMs(Long latencyMs) {
+        this.latencyMs = latencyMs;
+    }
+    
+    public Integer getStatusCode() {
+        return statusCode;
+    }
+    
+    public void setStatusCode(Integer statusCode) {
+        this.statusCode = statusCode;
+    }
+    
+    public Integer getModelCount() {
+        return modelCount;
+    }
+    
+    public void setModelCount(Integer modelCount) {
+        this.modelCount = modelCount;
+    }
+    
+    public String getMessage() {
+        return message;
+    }
+    
+    public void setMessage(String message) {
+        this.message = message;
+    }
+    
+    public LocalDateTime getCheckedAt() {
+        return checkedAt;
+    }
+    
+    public void setCheckedAt(LocalDateTime checkedAt) {
+        this.checkedAt = checkedAt;
+    }
+}
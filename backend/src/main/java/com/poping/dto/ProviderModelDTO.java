@@ -0,0 +1,66 @@
+package com.poping.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
+/**
+ * [文件概览]
+ * - 目的: 供应商模型信息数据传输对象
+ * - 数据流: 供应商 /models 响应 → ModelCatalogCache → DTO → 前端模型选择器
+ * - 核心数据: 模型ID、显示名称、描述、创建时间
+ * - 关系: 兼容OpenAI /models 响应中data数组的元素，未知字段忽略；name取模型ID
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class ProviderModelDTO {
+    
+    /**
+     * 模型ID
+     */
+    private String id;
+    
+    /**
+     * 显示名称（与模型ID相同）
+     */
+    private String name;
+    
+    /**
+     * 模型描述
+     */
+    private String description;
+    
+    /**
+     * 创建时间（Unix秒）
+     */
+    private Long created;
+    
+    public String getId() {
+        return id;
+    }
+    
+    public void setId(String id) {
+        this.id = id;
+    }
+    
+    public String getName() {
+        return name != null ? name : id;
+    }
+    
+    public void setName(String name) {
+        this.name = name;
+    }
+    
+    public String getDescription() {
+        return description;
+    }
+    
+    public void setDescription(String description) {
+        this.description = description;
+    }
+    
+    public Long getCreated() {
+        return created;
+    }
+    
+    public void setCreated(Long created) {
+        this.created = created;
+    }
+}
@@ -0,0 +1,26 @@
+package com.poping.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
+import java.util.List;
+
+/**
+ * [文件概览]
+ * - 目的: 供应商 /models 接口响应（OpenAI兼容格式 {"data": [...]}）
+ * - 数据流: RestTemplate反序列化 → ModelCatalogCache
+ * - 核心数据: 模型列表
+ * - 关系: 只声明用到的字段，避免反序列化为原始Map
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class ProviderModelListResponse {
+    
+    private List<ProviderModelDTO> data;
+    
+    public List<ProviderModelDTO> getData() {
+        return data;
+    }
+    
+    public void setData(List<ProviderModelDTO> data) {
+        this.data = data;
+    }
+}
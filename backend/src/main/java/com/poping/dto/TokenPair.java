@@ -0,0 +1,28 @@
+package com.poping.dto;
+
+/**
+ * [文件概览]
+ * - 目的: 同一令牌族中一次签发的访问令牌与刷新令牌
+ * - 数据流: UserService签发/轮换 → TokenPair → AuthController组装AuthResponse
+ * - 核心数据: 访问令牌、刷新令牌
+ * - 关系: 登录、注册和刷新都返回新的刷新令牌，客户端需替换本地保存的旧令牌
+ */
+public class TokenPair {
+
+    private final String accessToken;
+
+    private final String refreshToken;
+
+    public TokenPair(String accessToken, String refreshToken) {
+        this.accessToken = accessToken;
+        this.refreshToken = refreshToken;
+    }
+
+    public String getAccessToken() {
+        return accessToken;
+    }
+
+    public String getRefreshToken() {
+        return refreshToken;
+    }
+}
@@ -44,11 +44,17 @@ public class ProviderConfig {
     private String apiUrl;
     
     /**
-     * API密钥
+     * API密钥（enc:v1:格式的密文，见ApiKeyVault）
      */
     @TableField("api_key")
     private String apiKey;
     
+    /**
+     * API密钥掩码，保存时计算
+     */
+    @TableField("api_key_mask")
+    private String apiKeyMask;
+    
     /**
      * 配置状态：active, inactive
      */
@@ -134,6 +140,14 @@ public class ProviderConfig {
         this.apiKey = apiKey;
     }
     
+    public String getApiKeyMask() {
+        return apiKeyMask;
+    }
+    
+    public void setApiKeyMask(String apiKeyMask) {
+        this.apiKeyMask = apiKeyMask;
+    }
+    
     public String getStatus() {
         return status;
     }
@@ -0,0 +1,60 @@
+package com.poping.exception;
+
+/**
+ * [文件概览]
+ * - 目的: 外部服务快速失败异常，区分"主动拒绝/超时"与普通业务错误
+ * - 数据流: AIGentsGuard/DownstreamLimiter → 抛出 → ChatService错误结构 或 GlobalExceptionHandler → 503/504
+ * - 核心数据: 下游名称、错误码（熔断、过载、超时）
+ * - 关系: 错误码写入ApiResponse.code，前端据此决定是否稍后重试
+ */
+public class ExternalServiceException extends RuntimeException {
+
+    /**
+     * 熔断器打开，调用未发出
+     */
+    public static final int CIRCUIT_OPEN = 50301;
+
+    /**
+     * 并发上限、隔离线程池或下游信号量已满，调用未发出
+     */
+    public static final int OVERLOADED = 50302;
+
+    /**
+     * 调用已发出但超过时限
+     */
+    public static final int TIMEOUT = 50401;
+
+    private final String service;
+    private final int code;
+
+    public ExternalServiceException(String service, int code, String message) {
+        super(message);
+        this.service = service;
+        this.code = code;
+    }
+
+    public ExternalServiceException(String service, int code, String message, Throwable cause) {
+        super(message, cause);
+        this.service = service;
+        this.code = code;
+    }
+
+    public String getService() {
+        return service;
+    }
+
+    public int getCode() {
+        return code;
+    }
+
+    /**
+     * [函数: getHttpStatus]
+     * - 输入: 无
+     * - 输出: int - 对应的HTTP状态码
+     * - 角色: 供异常处理器映射响应状态
+     * - 逻辑: 1. 超时返回504 2. 其余返回503
+     */
+    public int getHttpStatus() {
+        return code == TIMEOUT ? 504 : 503;
+    }
+}
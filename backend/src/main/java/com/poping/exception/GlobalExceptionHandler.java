@@ -3,6 +3,7 @@ package com.poping.exception;
 import com.poping.util.ApiResponse;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.AccessDeniedException;
@@ -132,6 +133,39 @@ public class GlobalExceptionHandler {
                 .body(ApiResponse.error(403, "权限不足，访问被拒绝"));
     }
     
+    /**
+     * [函数: handleExternalServiceException]
+     * - 输入: ExternalServiceException ex - 外部服务快速失败异常
+     * - 输出: ResponseEntity<ApiResponse<Void>> - 服务不可用响应
+     * - 角色: 处理熔断、过载与超时，返回可重试的状态码
+     * - 逻辑: 1. 记录告警日志 2. 返回503/504及区分原因的错误码
+     */
+    @ExceptionHandler(ExternalServiceException.class)
+    public ResponseEntity<ApiResponse<Void>> handleExternalServiceException(
+            ExternalServiceException ex, WebRequest request) {
+        
+        logger.warn("外部服务不可用: {} [{}] - {}", ex.getService(), ex.getCode(), request.getDescription(false));
+        return ResponseEntity.status(ex.getHttpStatus())
+                .body(ApiResponse.error(ex.getCode(), ex.getMessage()));
+    }
+    
+    /**
+     * [函数: handleRequestThrottledException]
+     * - 输入: RequestThrottledException ex - 本地限流异常
+     * - 输出: ResponseEntity<ApiResponse<Void>> - 限流响应
+     * - 角色: 处理登录尝试过多与密码哈希繁忙
+     * - 逻辑: 1. 记录告警日志 2. 返回429/503及Retry-After头
+     */
+    @ExceptionHandler(RequestThrottledException.class)
+    public ResponseEntity<ApiResponse<Void>> handleRequestThrottledException(
+            RequestThrottledException ex, WebRequest request) {
+        
+        logger.warn("请求被限流: [{}] {} - {}", ex.getCode(), ex.getMessage(), request.getDescription(false));
+        return ResponseEntity.status(ex.getHttpStatus())
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(ex.getRetryAfterSeconds()))
+                .body(ApiResponse.error(ex.getCode(), ex.getMessage()));
+    }
+    
     /**
      * [函数: handleRuntimeException]
      * - 输入: RuntimeException ex - 运行时异常
@@ -0,0 +1,49 @@
+package com.poping.exception;
+
+/**
+ * [文件概览]
+ * - 目的: 本地限流快速失败异常，区分"尝试过于频繁"与"本节点计算资源繁忙"
+ * - 数据流: LoginAttemptThrottle/PasswordHashingService → 抛出 → GlobalExceptionHandler → 429/503 + Retry-After
+ * - 核心数据: 错误码、建议的重试等待秒数
+ * - 关系: 与ExternalServiceException并列，前者针对外部依赖，本异常针对本节点自身的保护
+ */
+public class RequestThrottledException extends RuntimeException {
+
+    /**
+     * 同一IP或账户的尝试次数超过上限
+     */
+    public static final int TOO_MANY_ATTEMPTS = 42901;
+
+    /**
+     * 密码哈希线程池与队列已满
+     */
+    public static final int HASHING_BUSY = 50303;
+
+    private final int code;
+    private final long retryAfterSeconds;
+
+    public RequestThrottledException(int code, String message, long retryAfterSeconds) {
+        super(message);
+        this.code = code;
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public int getCode() {
+        return code;
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+
+    /**
+     * [函数: getHttpStatus]
+     * - 输入: 无
+     * - 输出: int - 对应的HTTP状态码
+     * - 角色: 供异常处理器映射响应状态
+     * - 逻辑: 1. 尝试过于频繁返回429 2. 资源繁忙返回503
+     */
+    public int getHttpStatus() {
+        return code == TOO_MANY_ATTEMPTS ? 429 : 503;
+    }
+}
@@ -3,6 +3,7 @@ package com.poping.repository;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.baomidou.mybatisplus.core.metadata.IPage;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
+import com.poping.dto.CounterDelta;
 import com.poping.entity.Agent;
 import org.apache.ibatis.annotations.Mapper;
 import org.apache.ibatis.annotations.Param;
@@ -35,12 +36,55 @@ public interface AgentRepository extends BaseMapper<Agent> {
     @Select("SELECT * FROM agent_configs WHERE name LIKE CONCAT('%', #{keyword}, '%') AND status = 'active' ORDER BY usage_count DESC")
     List<Agent> searchByName(@Param("keyword") String keyword);
     
+    /**
+     * 按主键顺序分批读取启用中的智能体（搜索索引重建使用，只取建索引需要的列）
+     */
+    @Select("SELECT id, name, description, usage_count, is_public, status FROM agent_configs " +
+            "WHERE status = 'active' AND id > #{afterId} ORDER BY id LIMIT #{limit}")
+    List<Agent> selectActiveAfterId(@Param("afterId") Long afterId, @Param("limit") int limit);
+    
     /**
      * 增加使用次数
      */
     @Update("UPDATE agent_configs SET usage_count = usage_count + 1 WHERE id = #{id}")
     int incrementUsageCount(@Param("id") Long id);
     
+    /**
+     * 批量累加使用次数（写回聚合器使用）
+     */
+    @Update("<script>" +
+            "UPDATE agent_configs SET usage_count = usage_count + CASE id " +
+            "<foreach collection='deltas' item='d'>WHEN #{d.id} THEN #{d.delta} </foreach>" +
+            "ELSE 0 END " +
+            "WHERE id IN <foreach collection='deltas' item='d' open='(' separator=',' close=')'>#{d.id}</foreach>" +
+            "</script>")
+    int batchIncrementUsageCount(@Param("deltas") List<CounterDelta> deltas);
+    
+    /**
+     * 游标分页：按(usage_count, id)倒序取位于游标之后的公开智能体（游标为空时从第一条开始）
+     */
+    @Select("<script>" +
+            "SELECT * FROM agent_configs WHERE is_public = 1 AND status = 'active' " +
+            "<if test='usageCount != null'>" +
+            "AND (usage_count &lt; #{usageCount} OR (usage_count = #{usageCount} AND id &lt; #{id})) " +
+            "</if>" +
+            "ORDER BY usage_count DESC, id DESC LIMIT #{limit}" +
+            "</script>")
+    List<Agent> selectPublicAgentsAfter(@Param("usageCount") Integer usageCount, @Param("id") Long id,
+                                        @Param("limit") int limit);
+    
+    /**
+     * 按热度读取前limit个公开智能体（公开目录快照使用）
+     */
+    @Select("SELECT * FROM agent_configs WHERE is_public = 1 AND status = 'active' ORDER BY usage_count DESC, create_time DESC LIMIT #{limit}")
+    List<Agent> selectPublicCatalog(@Param("limit") int limit);
+    
+    /**
+     * 统计公开智能体数量
+     */
+    @Select("SELECT COUNT(*) FROM agent_configs WHERE is_public = 1 AND status = 'active'")
+    long countPublicAgents();
+    
     /**
      * 获取热门智能体
      */
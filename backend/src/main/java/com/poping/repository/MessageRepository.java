@@ -22,6 +22,25 @@ public interface MessageRepository extends BaseMapper<Message> {
     @Select("SELECT * FROM messages WHERE session_id = #{sessionId} ORDER BY sequence_number ASC")
     IPage<Message> selectBySessionId(Page<Message> page, @Param("sessionId") Long sessionId);
     
+    /**
+     * 游标分页：序号小于before的更早消息，按序号倒序（before为空时从最新一条开始）
+     */
+    @Select("<script>" +
+            "SELECT * FROM messages WHERE session_id = #{sessionId} " +
+            "<if test='before != null'>AND sequence_number &lt; #{before} </if>" +
+            "ORDER BY sequence_number DESC LIMIT #{limit}" +
+            "</script>")
+    List<Message> selectOlderMessages(@Param("sessionId") Long sessionId, @Param("before") Integer before,
+                                      @Param("limit") int limit);
+    
+    /**
+     * 游标分页：序号大于after的更新消息，按序号正序
+     */
+    @Select("SELECT * FROM messages WHERE session_id = #{sessionId} AND sequence_number > #{after} " +
+            "ORDER BY sequence_number ASC LIMIT #{limit}")
+    List<Message> selectNewerMessages(@Param("sessionId") Long sessionId, @Param("after") Integer after,
+                                      @Param("limit") int limit);
+    
     /**
      * 根据会话ID查询最近的消息
      */
@@ -3,6 +3,7 @@ package com.poping.repository;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.poping.entity.ProviderConfig;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
 import org.apache.ibatis.annotations.Select;
 import org.apache.ibatis.annotations.Update;
 import java.util.List;
@@ -56,4 +57,37 @@ public interface ProviderConfigRepository extends BaseMapper<ProviderConfig> {
      */
     @Update("UPDATE provider_configs SET status = 'inactive', updated_at = NOW() WHERE user_id = #{userId} AND provider_id = #{providerId} AND status = 'active'")
     int deactivateByUserIdAndProviderId(String userId, String providerId);
-}
\ No newline at end of file
+    
+    /**
+     * [函数: findActiveAfterId]
+     * - 输入: Integer afterId - 上一批最后一条的主键; int limit - 每批条数
+     * - 输出: List<ProviderConfig> - 主键大于afterId的活跃配置，按主键升序
+     * - 角色: 全租户批量探测时按主键分批扫描
+     * - 逻辑: 1. 主键范围查询 2. 限制条数
+     */
+    @Select("SELECT * FROM provider_configs WHERE status = 'active' AND id > #{afterId} ORDER BY id LIMIT #{limit}")
+    List<ProviderConfig> findActiveAfterId(@Param("afterId") Integer afterId, @Param("limit") int limit);
+    
+    /**
+     * [函数: findPlaintextKeysAfterId]
+     * - 输入: Integer afterId - 上一批最后一条的主键; int limit - 每批条数
+     * - 输出: List<ProviderConfig> - 密钥尚未加密的配置（含已停用的），按主键升序
+     * - 角色: 启动时把明文密钥迁移为密文
+     * - 逻辑: 1. 按前缀筛选未加密的行 2. 主键范围分批
+     */
+    @Select("SELECT * FROM provider_configs WHERE id > #{afterId} AND api_key IS NOT NULL "
+            + "AND api_key NOT LIKE 'enc:v1:%' ORDER BY id LIMIT #{limit}")
+    List<ProviderConfig> findPlaintextKeysAfterId(@Param("afterId") Integer afterId, @Param("limit") int limit);
+    
+    /**
+     * [函数: updateEncryptedKey]
+     * - 输入: Integer id - 主键; String plaintextKey - 迁移前读到的明文; String apiKey - 密文; String apiKeyMask - 掩码
+     * - 输出: int - 影响行数
+     * - 角色: 明文密钥迁移
+     * - 逻辑: 1. 仅当密钥仍是读取时的明文才更新，迁移期间用户重新保存的配置不被覆盖
+     */
+    @Update("UPDATE provider_configs SET api_key = #{apiKey}, api_key_mask = #{apiKeyMask} "
+            + "WHERE id = #{id} AND api_key = #{plaintextKey}")
+    int updateEncryptedKey(@Param("id") Integer id, @Param("plaintextKey") String plaintextKey,
+                           @Param("apiKey") String apiKey, @Param("apiKeyMask") String apiKeyMask);
+}
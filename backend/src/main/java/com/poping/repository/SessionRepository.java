@@ -3,6 +3,7 @@ package com.poping.repository;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.baomidou.mybatisplus.core.metadata.IPage;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
+import com.poping.dto.CounterDelta;
 import com.poping.entity.Session;
 import org.apache.ibatis.annotations.Mapper;
 import org.apache.ibatis.annotations.Param;
@@ -24,6 +25,19 @@ public interface SessionRepository extends BaseMapper<Session> {
     @Select("SELECT * FROM sessions WHERE user_id = #{userId} ORDER BY last_activity DESC")
     IPage<Session> selectByUserId(Page<Session> page, @Param("userId") Long userId);
     
+    /**
+     * 游标分页：按(last_activity, id)倒序取位于游标之后的会话（游标为空时从第一条开始）
+     */
+    @Select("<script>" +
+            "SELECT * FROM sessions WHERE user_id = #{userId} " +
+            "<if test='lastActivity != null'>" +
+            "AND (last_activity &lt; #{lastActivity} OR (last_activity = #{lastActivity} AND id &lt; #{id})) " +
+            "</if>" +
+            "ORDER BY last_activity DESC, id DESC LIMIT #{limit}" +
+            "</script>")
+    List<Session> selectByUserIdAfter(@Param("userId") Long userId, @Param("lastActivity") LocalDateTime lastActivity,
+                                      @Param("id") Long id, @Param("limit") int limit);
+    
     /**
      * 根据用户ID和智能体ID查询活跃会话
      */
@@ -53,4 +67,21 @@ public interface SessionRepository extends BaseMapper<Session> {
      */
     @Select("SELECT * FROM sessions WHERE user_id = #{userId} AND status = 'active' ORDER BY last_activity DESC LIMIT #{limit}")
     List<Session> selectActiveSessions(@Param("userId") Long userId, @Param("limit") int limit);
+    
+    /**
+     * 批量累加消息数量并推进最后活动时间（写回聚合器使用）
+     */
+    @Update("<script>" +
+            "UPDATE sessions SET " +
+            "message_count = message_count + CASE id " +
+            "<foreach collection='deltas' item='d'>WHEN #{d.id} THEN #{d.delta} </foreach>" +
+            "ELSE 0 END, " +
+            "last_activity = CASE id " +
+            "<foreach collection='deltas' item='d'>" +
+            "WHEN #{d.id} THEN COALESCE(GREATEST(last_activity, #{d.lastActivity}), #{d.lastActivity}, last_activity) " +
+            "</foreach>" +
+            "ELSE last_activity END " +
+            "WHERE id IN <foreach collection='deltas' item='d' open='(' separator=',' close=')'>#{d.id}</foreach>" +
+            "</script>")
+    int batchApplyCounters(@Param("deltas") List<CounterDelta> deltas);
 }
\ No newline at end of file
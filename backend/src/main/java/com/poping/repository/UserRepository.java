@@ -5,6 +5,7 @@ import com.poping.entity.User;
 import org.apache.ibatis.annotations.Mapper;
 import org.apache.ibatis.annotations.Param;
 import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.annotations.Update;
 
 import java.util.List;
 
@@ -67,4 +68,16 @@ public interface UserRepository extends BaseMapper<User> {
      */
     @Select("SELECT COUNT(*) > 0 FROM users WHERE email = #{email}")
     boolean existsByEmail(@Param("email") String email);
-}
\ No newline at end of file
+    
+    /**
+     * [函数: updatePasswordHashIfUnchanged]
+     * - 输入: String userId - 用户业务ID; String oldHash - 读取时的哈希; String newHash - 新哈希
+     * - 输出: int - 更新行数（期间密码已被修改时为0）
+     * - 角色: 登录时透明重新哈希，不覆盖并发的密码修改
+     * - 逻辑: 1. 仅当哈希仍为oldHash时更新
+     */
+    @Update("UPDATE users SET password_hash = #{newHash} WHERE user_id = #{userId} AND password_hash = #{oldHash}")
+    int updatePasswordHashIfUnchanged(@Param("userId") String userId,
+                                      @Param("oldHash") String oldHash,
+                                      @Param("newHash") String newHash);
+}
@@ -2,6 +2,8 @@ package com.poping.repository;
 
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.poping.entity.UserRole;
+import org.apache.ibatis.annotations.Delete;
+import org.apache.ibatis.annotations.Insert;
 import org.apache.ibatis.annotations.Mapper;
 import org.apache.ibatis.annotations.Param;
 import org.apache.ibatis.annotations.Select;
@@ -59,4 +61,24 @@ public interface UserRoleRepository extends BaseMapper<UserRole> {
      */
     @Select("SELECT * FROM user_roles ORDER BY role_name")
     List<UserRole> findAllActiveRoles();
-}
\ No newline at end of file
+    
+    /**
+     * [函数: assignRoleToUser]
+     * - 输入: String userId - 用户业务ID; String roleId - 角色业务ID
+     * - 输出: int - 新增的关联行数（已拥有该角色时为0）
+     * - 角色: 为用户分配角色
+     * - 逻辑: 1. 写入user_user_roles关联表 2. 依赖唯一索引保证幂等
+     */
+    @Insert("INSERT IGNORE INTO user_user_roles (user_id, role_id) VALUES (#{userId}, #{roleId})")
+    int assignRoleToUser(@Param("userId") String userId, @Param("roleId") String roleId);
+    
+    /**
+     * [函数: revokeRoleFromUser]
+     * - 输入: String userId - 用户业务ID; String roleId - 角色业务ID
+     * - 输出: int - 删除的关联行数
+     * - 角色: 撤销用户的角色
+     * - 逻辑: 1. 删除user_user_roles中的对应关联
+     */
+    @Delete("DELETE FROM user_user_roles WHERE user_id = #{userId} AND role_id = #{roleId}")
+    int revokeRoleFromUser(@Param("userId") String userId, @Param("roleId") String roleId);
+}
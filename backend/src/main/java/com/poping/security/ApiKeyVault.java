@@ -0,0 +1,286 @@
+package com.poping.security;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * [文件概览]
+ * - 目的: 供应商API密钥的信封加密（AES-GCM），数据库中只保存密文
+ * - 数据流: 保存配置 → encrypt(明文) → 随机数据密钥加密明文，主密钥（KEK）加密数据密钥 → "enc:v1:包装后的数据密钥:密文"
+ *         调用供应商 → reveal(密文) → 解密缓存命中直接返回，未命中时解开数据密钥再解密并缓存
+ * - 核心数据: 本地KEK文件（代替KMS，缺失时启动失败，仅本地开发可开启自动生成）、密文 → 明文char[]的解密缓存
+ * - 关系: 没有enc:v1:前缀的值视为尚未迁移的明文原样返回（由ProviderKeyMigration启动时补加密）；
+ *         缓存条目被淘汰或过期时清零char[]；Cipher实例按线程复用，不在热路径上重复创建
+ */
+@Component
+public class ApiKeyVault {
+
+    private static final Logger logger = LoggerFactory.getLogger(ApiKeyVault.class);
+
+    static final String PREFIX = "enc:v1:";
+
+    private static final String TRANSFORMATION = "AES/GCM/NoPadding";
+    private static final int KEY_BYTES = 32;
+    private static final int IV_BYTES = 12;
+    private static final int TAG_BITS = 128;
+
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    private static final ThreadLocal<Cipher> CIPHERS = ThreadLocal.withInitial(() -> {
+        try {
+            return Cipher.getInstance(TRANSFORMATION);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+
+    private final SecureRandom random = new SecureRandom();
+    private final SecretKeySpec kek;
+    private final boolean kekGenerated;
+    private final Cache<String, Secret> revealed;
+
+    public ApiKeyVault(@Value("${app.provider.key-encryption.kek-file:./secrets/provider-kek.key}") String kekFile,
+                       @Value("${app.provider.key-encryption.generate-if-missing:false}") boolean generateIfMissing,
+                       @Value("${app.provider.key-encryption.cache.max-size:10000}") long maxSize,
+                       @Value("${app.provider.key-encryption.cache.idle-timeout:1800000}") long idleTimeoutMillis,
+                       MeterRegistry meterRegistry) {
+        Path kekPath = Paths.get(kekFile);
+        this.kekGenerated = !Files.exists(kekPath);
+        this.kek = new SecretKeySpec(loadOrCreateKek(kekPath, generateIfMissing), "AES");
+        this.revealed = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterAccess(idleTimeoutMillis, TimeUnit.MILLISECONDS)
+                .removalListener((String stored, Secret secret, RemovalCause cause) -> {
+                    if (secret != null) {
+                        secret.wipe();
+                    }
+                })
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, revealed, "provider.api-keys");
+    }
+
+    /**
+     * [函数: encrypt]
+     * - 输入: String apiKey - 明文密钥
+     * - 输出: String - enc:v1:格式的密文，输入为null时返回null
+     * - 角色: 保存供应商配置前加密
+     * - 逻辑: 1. 生成随机数据密钥加密明文 2. 用KEK加密数据密钥 3. 拼接为存储格式，清零数据密钥
+     */
+    public String encrypt(String apiKey) {
+        if (apiKey == null) {
+            return null;
+        }
+        byte[] dek = new byte[KEY_BYTES];
+        random.nextBytes(dek);
+        byte[] plaintext = apiKey.getBytes(StandardCharsets.UTF_8);
+        try {
+            byte[] wrappedDek = seal(kek, dek);
+            byte[] ciphertext = seal(new SecretKeySpec(dek, "AES"), plaintext);
+            return PREFIX + ENCODER.encodeToString(wrappedDek) + ":" + ENCODER.encodeToString(ciphertext);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("API密钥加密失败", e);
+        } finally {
+            Arrays.fill(dek, (byte) 0);
+            Arrays.fill(plaintext, (byte) 0);
+        }
+    }
+
+    /**
+     * [函数: reveal]
+     * - 输入: String stored - 数据库中的密钥值
+     * - 输出: String - 明文密钥；未加密的旧值原样返回
+     * - 角色: 调用供应商API前取得密钥
+     * - 逻辑: 1. 解密缓存命中直接返回 2. 未命中时解密并缓存 3. 取到的缓存条目恰好被淘汰清零时重新解密
+     */
+    public String reveal(String stored) {
+        if (!isEncrypted(stored)) {
+            return stored;
+        }
+        while (true) {
+            Secret secret = revealed.get(stored, this::decrypt);
+            String apiKey = secret.reveal();
+            if (apiKey != null) {
+                return apiKey;
+            }
+            revealed.asMap().remove(stored, secret);
+        }
+    }
+
+    /**
+     * [函数: isEncrypted]
+     * - 输入: String stored - 数据库中的密钥值
+     * - 输出: boolean - 是否为enc:v1:格式的密文
+     * - 角色: 区分已加密与待迁移的明文
+     * - 逻辑: 1. 检查前缀
+     */
+    public boolean isEncrypted(String stored) {
+        return stored != null && stored.startsWith(PREFIX);
+    }
+
+    /**
+     * [函数: isKekGenerated]
+     * - 输入: 无
+     * - 输出: boolean - 主密钥是否为本次启动新生成
+     * - 角色: 新生成主密钥的启动不做明文迁移，避免用一个可能未备份或与其他节点不一致的密钥加密存量数据
+     * - 逻辑: 1. 返回构造时的判断结果
+     */
+    public boolean isKekGenerated() {
+        return kekGenerated;
+    }
+
+    /**
+     * [函数: mask]
+     * - 输入: String apiKey - 明文密钥
+     * - 输出: String - 掩码后的密钥
+     * - 角色: 保存时预先计算列表展示用的掩码
+     * - 逻辑: 1. 保留前4位和后4位 2. 中间用*替代（最多20个）
+     */
+    public static String mask(String apiKey) {
+        if (apiKey == null || apiKey.length() <= 8) {
+            return "****";
+        }
+
+        String prefix = apiKey.substring(0, 4);
+        String suffix = apiKey.substring(apiKey.length() - 4);
+        int maskLength = apiKey.length() - 8;
+        // Java 8兼容：使用StringBuilder替代String.repeat
+        StringBuilder maskBuilder = new StringBuilder();
+        int repeatCount = Math.min(maskLength, 20);
+        for (int i = 0; i < repeatCount; i++) {
+            maskBuilder.append("*");
+        }
+        String mask = maskBuilder.toString();
+
+        return prefix + mask + suffix;
+    }
+
+    private Secret decrypt(String stored) {
+        String[] parts = stored.substring(PREFIX.length()).split(":", 2);
+        if (parts.length != 2) {
+            throw new IllegalStateException("API密钥密文格式错误");
+        }
+        byte[] dek = null;
+        byte[] plaintext = null;
+        try {
+            dek = open(kek, DECODER.decode(parts[0]));
+            plaintext = open(new SecretKeySpec(dek, "AES"), DECODER.decode(parts[1]));
+            CharBuffer chars = StandardCharsets.UTF_8.decode(ByteBuffer.wrap(plaintext));
+            char[] apiKey = Arrays.copyOf(chars.array(), chars.limit());
+            Arrays.fill(chars.array(), '\0');
+            return new Secret(apiKey);
+        } catch (GeneralSecurityException | IllegalArgumentException e) {
+            throw new IllegalStateException("API密钥解密失败，请检查主密钥文件是否与加密时一致", e);
+        } finally {
+            if (dek != null) {
+                Arrays.fill(dek, (byte) 0);
+            }
+            if (plaintext != null) {
+                Arrays.fill(plaintext, (byte) 0);
+            }
+        }
+    }
+
+    private byte[] seal(SecretKeySpec key, byte[] plaintext) throws GeneralSecurityException {
+        byte[] iv = new byte[IV_BYTES];
+        random.nextBytes(iv);
+        Cipher cipher = CIPHERS.get();
+        cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(TAG_BITS, iv));
+        byte[] sealed = new byte[IV_BYTES + cipher.getOutputSize(plaintext.length)];
+        System.arraycopy(iv, 0, sealed, 0, IV_BYTES);
+        cipher.doFinal(plaintext, 0, plaintext.length, sealed, IV_BYTES);
+        return sealed;
+    }
+
+    private static byte[] open(SecretKeySpec key, byte[] sealed) throws GeneralSecurityException {
+        if (sealed.length < IV_BYTES) {
+            throw new GeneralSecurityException("密文长度不足");
+        }
+        Cipher cipher = CIPHERS.get();
+        cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(TAG_BITS, sealed, 0, IV_BYTES));
+        return cipher.doFinal(sealed, IV_BYTES, sealed.length - IV_BYTES);
+    }
+
+    /**
+     * 读取KEK文件（Base64编码的32字节）；文件不存在时启动失败，
+     * 仅generate-if-missing开启时（本地开发）生成新文件并以仅属主可读写的权限保存
+     */
+    private byte[] loadOrCreateKek(Path path, boolean generateIfMissing) {
+        try {
+            if (Files.exists(path)) {
+                byte[] key = Base64.getDecoder().decode(new String(Files.readAllBytes(path), StandardCharsets.US_ASCII).trim());
+                if (key.length != KEY_BYTES) {
+                    throw new IllegalStateException("主密钥文件长度错误，应为32字节: " + path);
+                }
+                return key;
+            }
+            if (!generateIfMissing) {
+                throw new IllegalStateException("API密钥主密钥文件不存在: " + path.toAbsolutePath()
+                        + "（请部署与其他节点相同的主密钥文件；仅本地开发可开启app.provider.key-encryption.generate-if-missing）");
+            }
+            byte[] key = new byte[KEY_BYTES];
+            random.nextBytes(key);
+            if (path.toAbsolutePath().getParent() != null) {
+                Files.createDirectories(path.toAbsolutePath().getParent());
+            }
+            Files.write(path, Base64.getEncoder().encode(key));
+            try {
+                Files.setPosixFilePermissions(path, PosixFilePermissions.fromString("rw-------"));
+            } catch (UnsupportedOperationException e) {
+                logger.debug("文件系统不支持POSIX权限: {}", path);
+            }
+            logger.warn("未找到API密钥主密钥文件，已按generate-if-missing生成新文件: {}（仅用于本地开发，本次启动不迁移明文密钥）",
+                    path.toAbsolutePath());
+            return key;
+        } catch (IOException e) {
+            throw new IllegalStateException("读取API密钥主密钥文件失败: " + path, e);
+        }
+    }
+
+    /**
+     * 解密缓存中的明文，清零后不可再读取
+     */
+    private static final class Secret {
+        private char[] chars;
+
+        Secret(char[] chars) {
+            this.chars = chars;
+        }
+
+        synchronized String reveal() {
+            return chars == null ? null : new String(chars);
+        }
+
+        synchronized void wipe() {
+            if (chars != null) {
+                Arrays.fill(chars, '\0');
+                chars = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package com.poping.security;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.StringUtils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * [文件概览]
+ * - 目的: 请求热路径上的用户权限解析，不查询数据库
+ * - 数据流: JwtAuthenticationFilter → resolve(userId, roles声明, iat)
+ *         → 令牌签发后角色有变更时使用变更覆盖，否则使用令牌内的roles声明
+ *         UserService角色变更 → onRoleChange → 本地覆盖 + RedisRoleChangeRelay广播到其他节点
+ * - 核心数据: 角色声明字符串 → 权限列表的解析缓存、userId → 角色变更覆盖（保留一个访问令牌有效期）
+ * - 关系: 角色在令牌签发时写入roles声明；覆盖只用于令牌签发之后角色发生变化的用户，
+ *         有效期过后旧令牌均已过期，覆盖自动淘汰
+ */
+@Component
+public class AuthorityCache {
+
+    /**
+     * 所有已认证用户都具有的基础权限
+     */
+    static final SimpleGrantedAuthority ROLE_USER = new SimpleGrantedAuthority("ROLE_USER");
+
+    private static final List<SimpleGrantedAuthority> DEFAULT_AUTHORITIES = Collections.singletonList(ROLE_USER);
+
+    private final Cache<String, List<SimpleGrantedAuthority>> parsedClaims;
+    private final Cache<String, RoleOverride> overrides;
+    private final ObjectProvider<RedisRoleChangeRelay> relay;
+
+    private final Counter fromClaim;
+    private final Counter fromOverride;
+    private final Counter fromDefault;
+
+    public AuthorityCache(@Value("${jwt.expiration}") long accessTokenTtlMillis,
+                          @Value("${app.auth.authority-cache.max-overrides:100000}") long maxOverrides,
+                          ObjectProvider<RedisRoleChangeRelay> relay,
+                          MeterRegistry meterRegistry) {
+        this.relay = relay;
+        // 角色组合只有少数几种，解析结果可长期复用
+        this.parsedClaims = Caffeine.newBuilder().maximumSize(256).build();
+        this.overrides = Caffeine.newBuilder()
+                .maximumSize(maxOverrides)
+                .expireAfterWrite(accessTokenTtlMillis, TimeUnit.MILLISECONDS)
+                .build();
+
+        this.fromClaim = resolvedCounter(meterRegistry, "claim");
+        this.fromOverride = resolvedCounter(meterRegistry, "override");
+        this.fromDefault = resolvedCounter(meterRegistry, "default");
+        Gauge.builder("auth.authority.overrides", overrides, Cache::estimatedSize)
+                .description("令牌签发后角色发生变更、仍需覆盖令牌声明的用户数")
+                .register(meterRegistry);
+    }
+
+    private static Counter resolvedCounter(MeterRegistry meterRegistry, String source) {
+        return Counter.builder("auth.authority.resolved")
+                .tag("source", source)
+                .description("按来源统计的权限解析次数")
+                .register(meterRegistry);
+    }
+
+    /**
+     * [函数: resolve]
+     * - 输入: String userId - 用户ID; String rolesClaim - 令牌的roles声明; Date issuedAt - 令牌签发时间
+     * - 输出: List<SimpleGrantedAuthority> - 不可变的权限列表
+     * - 角色: 每个请求的权限解析，仅访问本地内存
+     * - 逻辑: 1. 令牌签发后角色有变更时使用变更后的权限 2. 否则解析roles声明（结果缓存）
+     *         3. 无roles声明的旧令牌只授予ROLE_USER
+     */
+    public List<SimpleGrantedAuthority> resolve(String userId, String rolesClaim, Date issuedAt) {
+        RoleOverride override = overrides.getIfPresent(userId);
+        if (override != null && (issuedAt == null || issuedAt.getTime() <= override.changedAt)) {
+            fromOverride.increment();
+            return override.authorities;
+        }
+        if (!StringUtils.hasText(rolesClaim)) {
+            fromDefault.increment();
+            return DEFAULT_AUTHORITIES;
+        }
+        fromClaim.increment();
+        return parsedClaims.get(rolesClaim, claim -> toAuthorities(StringUtils.commaDelimitedListToSet(claim)));
+    }
+
+    /**
+     * [函数: onRoleChange]
+     * - 输入: String userId - 用户ID; Collection<String> roleNames - 变更后的全部角色名
+     * - 输出: void
+     * - 角色: 角色变更后让本节点和其他节点立即按新角色鉴权
+     * - 逻辑: 1. 处于事务中时等提交后再生效，避免回滚后仍覆盖 2. 写入本地覆盖 3. 通过Redis广播（启用时）
+     */
+    public void onRoleChange(String userId, Collection<String> roleNames) {
+        List<String> roles = new ArrayList<>(roleNames);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    publish(userId, roles);
+                }
+            });
+        } else {
+            publish(userId, roles);
+        }
+    }
+
+    private void publish(String userId, List<String> roles) {
+        long changedAt = System.currentTimeMillis();
+        applyRoleChange(userId, roles, changedAt);
+        relay.ifAvailable(r -> r.publish(userId, roles, changedAt));
+    }
+
+    /**
+     * [函数: applyRoleChange]
+     * - 输入: String userId - 用户ID; Collection<String> roleNames - 变更后的角色名; long changedAt - 变更时间（毫秒）
+     * - 输出: void
+     * - 角色: 写入角色变更覆盖（本地变更或其他节点的广播）
+     * - 逻辑: 1. 已有更晚的覆盖时忽略乱序到达的旧变更 2. 否则替换覆盖
+     */
+    void applyRoleChange(String userId, Collection<String> roleNames, long changedAt) {
+        RoleOverride next = new RoleOverride(toAuthorities(roleNames), changedAt);
+        overrides.asMap().merge(userId, next,
+                (current, incoming) -> incoming.changedAt >= current.changedAt ? incoming : current);
+    }
+
+    private static List<SimpleGrantedAuthority> toAuthorities(Collection<String> roleNames) {
+        List<SimpleGrantedAuthority> authorities = new ArrayList<>(roleNames.size() + 1);
+        authorities.add(ROLE_USER);
+        for (String roleName : roleNames) {
+            String name = roleName.trim();
+            if (!name.isEmpty()) {
+                SimpleGrantedAuthority authority =
+                        new SimpleGrantedAuthority("ROLE_" + name.toUpperCase(Locale.ROOT));
+                if (!authorities.contains(authority)) {
+                    authorities.add(authority);
+                }
+            }
+        }
+        return Collections.unmodifiableList(authorities);
+    }
+
+    /**
+     * 令牌签发后的角色变更
+     */
+    private static class RoleOverride {
+        private final List<SimpleGrantedAuthority> authorities;
+        private final long changedAt;
+
+        RoleOverride(List<SimpleGrantedAuthority> authorities, long changedAt) {
+            this.authorities = authorities;
+            this.changedAt = changedAt;
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package com.poping.security;
 
 import com.poping.util.JwtUtil;
+import io.jsonwebtoken.Claims;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
@@ -15,7 +16,6 @@ import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -31,6 +31,12 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
     @Autowired
     private JwtUtil jwtUtil;
     
+    @Autowired
+    private AuthorityCache authorityCache;
+    
+    @Autowired
+    private RevokedTokenRegistry revokedTokenRegistry;
+    
     /**
      * [函数: doFilterInternal]
      * - 输入: HttpServletRequest request, HttpServletResponse response, FilterChain filterChain
@@ -47,14 +53,19 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
             // 从请求头中提取JWT令牌
             String jwt = getJwtFromRequest(request);
             
-            // 如果令牌存在且有效，设置认证上下文
-            if (StringUtils.hasText(jwt) && jwtUtil.validateToken(jwt)) {
-                String userId = jwtUtil.getUserIdFromToken(jwt);
-                String email = jwtUtil.getEmailFromToken(jwt);
+            // 每个请求只解析一次令牌（有效期内的重复令牌直接命中已验证声明缓存）
+            Claims claims = StringUtils.hasText(jwt) ? jwtUtil.parseVerifiedClaims(jwt) : null;
+            
+            // 如果令牌存在、有效、是访问令牌且未被吊销，设置认证上下文（吊销检查为内存布隆过滤器查询）
+            if (claims != null && !jwtUtil.isExpired(claims)
+                    && !"refresh".equals(claims.get("type", String.class))
+                    && !revokedTokenRegistry.isRevoked(claims.getId())) {
+                String userId = claims.get("userId", String.class);
+                String email = claims.get("email", String.class);
                 
                 if (userId != null && SecurityContextHolder.getContext().getAuthentication() == null) {
                     // 创建认证对象
-                    List<SimpleGrantedAuthority> authorities = getAuthoritiesFromToken(jwt);
+                    List<SimpleGrantedAuthority> authorities = getAuthoritiesFromClaims(userId, claims);
                     
                     UsernamePasswordAuthenticationToken authentication = 
                         new UsernamePasswordAuthenticationToken(userId, null, authorities);
@@ -94,27 +105,14 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
     }
     
     /**
-     * [函数: getAuthoritiesFromToken]
-     * - 输入: String jwt - JWT令牌
+     * [函数: getAuthoritiesFromClaims]
+     * - 输入: String userId - 用户ID; Claims claims - 已验证的令牌声明
      * - 输出: List<SimpleGrantedAuthority> - 权限列表
-     * - 角色: 从JWT令牌中提取用户权限
-     * - 逻辑: 1. 解析令牌 2. 提取权限信息 3. 构建权限列表
+     * - 角色: 从JWT声明中提取用户权限
+     * - 逻辑: 1. 读取签发时写入的roles声明 2. 由AuthorityCache在内存中解析，令牌签发后角色有变更时以变更为准
      */
-    private List<SimpleGrantedAuthority> getAuthoritiesFromToken(String jwt) {
-        List<SimpleGrantedAuthority> authorities = new ArrayList<>();
-        
-        // 这里可以从JWT中提取角色信息，或者从数据库查询
-        // 暂时给所有认证用户分配基础权限
-        authorities.add(new SimpleGrantedAuthority("ROLE_USER"));
-        
-        // TODO: 根据实际需求从数据库或JWT中获取用户角色
-        // String userId = jwtUtil.getUserIdFromToken(jwt);
-        // List<UserRole> userRoles = userRoleService.getUserRoles(userId);
-        // for (UserRole role : userRoles) {
-        //     authorities.add(new SimpleGrantedAuthority("ROLE_" + role.getRoleName().toUpperCase()));
-        // }
-        
-        return authorities;
+    private List<SimpleGrantedAuthority> getAuthoritiesFromClaims(String userId, Claims claims) {
+        return authorityCache.resolve(userId, claims.get(JwtUtil.ROLES_CLAIM, String.class), claims.getIssuedAt());
     }
     
     /**
@@ -0,0 +1,172 @@
+package com.poping.security;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.poping.exception.RequestThrottledException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * [文件概览]
+ * - 目的: 在密码哈希之前按IP与账户限制尝试次数
+ * - 数据流: UserService → checkIp(ip) / checkAccount(account) → 超限时抛出429，不进入哈希线程池
+ *         校验失败 → onFailure(account)；登录成功 → onSuccess(account)
+ * - 核心数据: IP → 固定窗口内的尝试次数、账户 → 固定窗口内的失败次数
+ * - 关系: 单节点内存计数，作为哈希线程池前的第一道闸门；
+ *         客户端IP取自request.getRemoteAddr()，反向代理部署时需配置server.forward-headers-strategy
+ */
+@Component
+public class LoginAttemptThrottle {
+
+    private final Cache<String, Window> ipAttempts;
+    private final Cache<String, Window> accountFailures;
+    private final int ipMaxAttempts;
+    private final long ipWindowMillis;
+    private final int accountMaxFailures;
+    private final long accountLockMillis;
+
+    private final Counter ipThrottled;
+    private final Counter accountThrottled;
+
+    public LoginAttemptThrottle(@Value("${app.auth.throttle.ip.max-attempts:20}") int ipMaxAttempts,
+                                @Value("${app.auth.throttle.ip.window:60000}") long ipWindowMillis,
+                                @Value("${app.auth.throttle.account.max-failures:5}") int accountMaxFailures,
+                                @Value("${app.auth.throttle.account.lock-duration:900000}") long accountLockMillis,
+                                @Value("${app.auth.throttle.max-keys:100000}") long maxKeys,
+                                MeterRegistry meterRegistry) {
+        this.ipMaxAttempts = ipMaxAttempts;
+        this.ipWindowMillis = ipWindowMillis;
+        this.accountMaxFailures = accountMaxFailures;
+        this.accountLockMillis = accountLockMillis;
+        this.ipAttempts = Caffeine.newBuilder()
+                .maximumSize(maxKeys)
+                .expireAfterAccess(ipWindowMillis, TimeUnit.MILLISECONDS)
+                .build();
+        this.accountFailures = Caffeine.newBuilder()
+                .maximumSize(maxKeys)
+                .expireAfterAccess(accountLockMillis, TimeUnit.MILLISECONDS)
+                .build();
+        this.ipThrottled = throttledCounter(meterRegistry, "ip");
+        this.accountThrottled = throttledCounter(meterRegistry, "account");
+    }
+
+    private static Counter throttledCounter(MeterRegistry meterRegistry, String scope) {
+        return Counter.builder("auth.throttled")
+                .tag("scope", scope)
+                .description("因尝试过于频繁被拒绝的认证请求数")
+                .register(meterRegistry);
+    }
+
+    /**
+     * [函数: checkIp]
+     * - 输入: String ip - 客户端IP
+     * - 输出: void
+     * - 角色: 记录一次来自该IP的尝试（登录、注册、修改密码），超限时拒绝
+     * - 逻辑: 1. 窗口内计数加一 2. 超过上限抛出429并给出窗口剩余时间
+     */
+    public void checkIp(String ip) {
+        if (ip == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        Window window = ipAttempts.get(ip, key -> new Window(now));
+        long retryAfter = window.increment(now, ipWindowMillis, ipMaxAttempts);
+        if (retryAfter > 0) {
+            ipThrottled.increment();
+            throw new RequestThrottledException(RequestThrottledException.TOO_MANY_ATTEMPTS,
+                    "尝试过于频繁，请稍后再试", toSeconds(retryAfter));
+        }
+    }
+
+    /**
+     * [函数: checkAccount]
+     * - 输入: String account - 账户标识（邮箱或用户ID）
+     * - 输出: void
+     * - 角色: 账户在锁定期内连续失败过多时拒绝，不再校验密码
+     * - 逻辑: 1. 失败次数未达上限时放行 2. 否则抛出429并给出锁定剩余时间
+     */
+    public void checkAccount(String account) {
+        Window window = accountFailures.getIfPresent(normalize(account));
+        if (window == null) {
+            return;
+        }
+        long retryAfter = window.remaining(System.currentTimeMillis(), accountLockMillis, accountMaxFailures);
+        if (retryAfter > 0) {
+            accountThrottled.increment();
+            throw new RequestThrottledException(RequestThrottledException.TOO_MANY_ATTEMPTS,
+                    "密码错误次数过多，请稍后再试", toSeconds(retryAfter));
+        }
+    }
+
+    /**
+     * [函数: onFailure]
+     * - 输入: String account - 账户标识
+     * - 输出: void
+     * - 角色: 记录一次密码校验失败
+     * - 逻辑: 1. 锁定窗口内失败次数加一
+     */
+    public void onFailure(String account) {
+        long now = System.currentTimeMillis();
+        accountFailures.get(normalize(account), key -> new Window(now))
+                .increment(now, accountLockMillis, Integer.MAX_VALUE);
+    }
+
+    /**
+     * [函数: onSuccess]
+     * - 输入: String account - 账户标识
+     * - 输出: void
+     * - 角色: 登录成功后清除失败记录
+     * - 逻辑: 1. 删除账户计数
+     */
+    public void onSuccess(String account) {
+        accountFailures.invalidate(normalize(account));
+    }
+
+    private static String normalize(String account) {
+        return account == null ? "" : account.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static long toSeconds(long millis) {
+        return Math.max(1, (millis + 999) / 1000);
+    }
+
+    /**
+     * 固定窗口计数
+     */
+    private static class Window {
+        private long startedAt;
+        private int count;
+
+        Window(long startedAt) {
+            this.startedAt = startedAt;
+        }
+
+        /**
+         * 计数加一，超过上限时返回窗口剩余毫秒数，否则返回0
+         */
+        synchronized long increment(long now, long windowMillis, int max) {
+            if (now - startedAt >= windowMillis) {
+                startedAt = now;
+                count = 0;
+            }
+            count++;
+            return count > max ? windowMillis - (now - startedAt) : 0;
+        }
+
+        /**
+         * 已达上限时返回窗口剩余毫秒数，否则返回0
+         */
+        synchronized long remaining(long now, long windowMillis, int max) {
+            long elapsed = now - startedAt;
+            if (elapsed >= windowMillis || count < max) {
+                return 0;
+            }
+            return windowMillis - elapsed;
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.poping.security;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * [文件概览]
+ * - 目的: 通过Redis发布/订阅在节点间同步角色变更
+ * - 数据流: publish → HSET auth:role-changes + PUBLISH auth:role-changes
+ *         → 各节点onMessage → AuthorityCache.applyRoleChange
+ *         节点启动 → 读取auth:role-changes哈希 → 恢复仍在令牌有效期内的变更
+ * - 核心数据: 频道消息 {"userId","roles","changedAt"}，哈希中保存每个用户最近一次变更
+ * - 关系: app.auth.sync.mode=redis 时启用；发布/订阅不保证送达，哈希用于新节点启动和断线期间的补偿
+ */
+@Component
+@ConditionalOnProperty(name = "app.auth.sync.mode", havingValue = "redis")
+public class RedisRoleChangeRelay implements MessageListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(RedisRoleChangeRelay.class);
+
+    static final String CHANNEL = "auth:role-changes";
+    private static final String SNAPSHOT_KEY = "auth:role-changes";
+
+    private final StringRedisTemplate redisTemplate;
+    private final RedisMessageListenerContainer listenerContainer;
+    private final AuthorityCache authorityCache;
+    private final ObjectMapper objectMapper;
+
+    @Value("${jwt.expiration}")
+    private long accessTokenTtlMillis;
+
+    public RedisRoleChangeRelay(StringRedisTemplate redisTemplate,
+                                RedisMessageListenerContainer listenerContainer,
+                                AuthorityCache authorityCache,
+                                ObjectMapper objectMapper) {
+        this.redisTemplate = redisTemplate;
+        this.listenerContainer = listenerContainer;
+        this.authorityCache = authorityCache;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * [函数: subscribe]
+     * - 输入: 无
+     * - 输出: void
+     * - 角色: 订阅角色变更频道并恢复近期变更
+     * - 逻辑: 1. 先订阅，避免恢复期间漏掉新消息 2. 读取哈希，应用未过期的变更并删除已过期的条目
+     */
+    @PostConstruct
+    public void subscribe() {
+        listenerContainer.addMessageListener(this, new ChannelTopic(CHANNEL));
+        try {
+            long cutoff = System.currentTimeMillis() - accessTokenTtlMillis;
+            List<Object> expired = new ArrayList<>();
+            for (Map.Entry<Object, Object> entry : redisTemplate.opsForHash().entries(SNAPSHOT_KEY).entrySet()) {
+                JsonNode change = objectMapper.readTree(String.valueOf(entry.getValue()));
+                if (change.path("changedAt").asLong() < cutoff) {
+                    expired.add(entry.getKey());
+                } else {
+                    apply(change);
+                }
+            }
+            if (!expired.isEmpty()) {
+                redisTemplate.opsForHash().delete(SNAPSHOT_KEY, expired.toArray());
+            }
+        } catch (Exception e) {
+            logger.warn("恢复角色变更记录失败，仅依赖后续广播: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * [函数: publish]
+     * - 输入: String userId - 用户ID; List<String> roles - 变更后的角色名; long changedAt - 变更时间
+     * - 输出: void
+     * - 角色: 把本节点的角色变更通知所有节点
+     * - 逻辑: 1. 写入哈希供新节点恢复 2. 发布到频道 3. 失败只记录日志，本节点已生效
+     */
+    public void publish(String userId, List<String> roles, long changedAt) {
+        ObjectNode change = objectMapper.createObjectNode();
+        change.put("userId", userId);
+        change.putPOJO("roles", roles);
+        change.put("changedAt", changedAt);
+        try {
+            String payload = objectMapper.writeValueAsString(change);
+            redisTemplate.opsForHash().put(SNAPSHOT_KEY, userId, payload);
+            redisTemplate.convertAndSend(CHANNEL, payload);
+        } catch (Exception e) {
+            logger.error("广播角色变更失败: userId={}", userId, e);
+        }
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        try {
+            apply(objectMapper.readTree(new String(message.getBody(), StandardCharsets.UTF_8)));
+        } catch (Exception e) {
+            logger.warn("无法解析角色变更消息: {}", e.getMessage());
+        }
+    }
+
+    private void apply(JsonNode change) {
+        List<String> roles = new ArrayList<>();
+        change.path("roles").forEach(role -> roles.add(role.asText()));
+        authorityCache.applyRoleChange(change.path("userId").asText(), roles, change.path("changedAt").asLong());
+    }
+}
@@ -0,0 +1,194 @@
+package com.poping.security;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * [文件概览]
+ * - 目的: 基于Redis的刷新令牌族存储，支持轮换、重放检测与吊销
+ * - 数据流: 登录 → start(族) → 每次刷新 rotate(族, 旧jti → 新jti) → 登出/改密 revokeFamily/revokeAllForUser
+ * - 核心数据: auth:rt:family:{fid} 哈希 {uid, cur当前刷新令牌jti, rev是否吊销}
+ *            auth:rt:access:{fid} 有序集合，族内签发过且未过期的访问令牌jti（score为过期时间），轮换时清理已过期的
+ *            auth:rt:user:{userId} 集合，记录用户的所有令牌族
+ * - 关系: 每个族只有最新的刷新令牌可用；已被轮换掉的令牌再次出现说明被窃取重放，整个族立即吊销，
+ *         族内所有未过期的访问令牌交给RevokedTokenRegistry一并吊销；
+ *         刷新令牌滑动续期，每次轮换同时续期族哈希、访问令牌集合与用户的族集合，保证改密时能找到仍在使用的族
+ */
+@Component
+public class RefreshTokenStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(RefreshTokenStore.class);
+
+    private static final String FAMILY_KEY_PREFIX = "auth:rt:family:";
+    private static final String ACCESS_KEY_PREFIX = "auth:rt:access:";
+    private static final String USER_KEY_PREFIX = "auth:rt:user:";
+
+    /**
+     * 轮换结果
+     */
+    public enum Rotation {
+        ROTATED, UNKNOWN, REVOKED, REUSED
+    }
+
+    /**
+     * KEYS: 族哈希、族访问令牌集合、用户族集合
+     * ARGV: 提交的刷新jti、新刷新jti、新访问jti、新访问令牌过期时间、续期时长、当前时间、族ID
+     * 返回 1轮换成功 0族不存在或已过期 -1族已吊销 -2重放（同时标记吊销）
+     */
+    private static final RedisScript<Long> ROTATE = new DefaultRedisScript<>(
+            "local cur = redis.call('HGET', KEYS[1], 'cur') " +
+            "if not cur then return 0 end " +
+            "if redis.call('HGET', KEYS[1], 'rev') == '1' then return -1 end " +
+            "if cur ~= ARGV[1] then redis.call('HSET', KEYS[1], 'rev', '1') return -2 end " +
+            "redis.call('HSET', KEYS[1], 'cur', ARGV[2]) " +
+            "redis.call('ZADD', KEYS[2], ARGV[4], ARGV[3]) " +
+            "redis.call('ZREMRANGEBYSCORE', KEYS[2], '-inf', ARGV[6]) " +
+            "redis.call('SADD', KEYS[3], ARGV[7]) " +
+            "redis.call('PEXPIRE', KEYS[1], ARGV[5]) " +
+            "redis.call('PEXPIRE', KEYS[2], ARGV[5]) " +
+            "redis.call('PEXPIRE', KEYS[3], ARGV[5]) " +
+            "return 1",
+            Long.class);
+
+    /**
+     * KEYS: 族哈希、族访问令牌集合、用户族集合
+     * ARGV: 用户ID、刷新jti、访问jti、访问令牌过期时间、有效期、族ID
+     */
+    private static final RedisScript<Long> START = new DefaultRedisScript<>(
+            "redis.call('HSET', KEYS[1], 'uid', ARGV[1], 'cur', ARGV[2], 'rev', '0') " +
+            "redis.call('ZADD', KEYS[2], ARGV[4], ARGV[3]) " +
+            "redis.call('SADD', KEYS[3], ARGV[6]) " +
+            "redis.call('PEXPIRE', KEYS[1], ARGV[5]) " +
+            "redis.call('PEXPIRE', KEYS[2], ARGV[5]) " +
+            "redis.call('PEXPIRE', KEYS[3], ARGV[5]) " +
+            "return 1",
+            Long.class);
+
+    /**
+     * KEYS: 族哈希、族访问令牌集合
+     * ARGV: 当前时间
+     * 标记族已吊销，返回族内未过期的访问令牌 [jti, exp, jti, exp, ...]；族不存在时返回空列表。
+     * 旧版本写在族哈希里的ajti/aexp一并返回，升级前创建的族也能吊销其最近的访问令牌
+     */
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> REVOKE = new DefaultRedisScript<>(
+            "if redis.call('EXISTS', KEYS[1]) == 0 then return {} end " +
+            "redis.call('HSET', KEYS[1], 'rev', '1') " +
+            "local tokens = redis.call('ZRANGEBYSCORE', KEYS[2], '(' .. ARGV[1], '+inf', 'WITHSCORES') " +
+            "local legacy = redis.call('HMGET', KEYS[1], 'ajti', 'aexp') " +
+            "if legacy[1] and legacy[2] then table.insert(tokens, legacy[1]) table.insert(tokens, legacy[2]) end " +
+            "return tokens",
+            List.class);
+
+    private final StringRedisTemplate redisTemplate;
+    private final RevokedTokenRegistry revokedTokenRegistry;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${jwt.refresh-expiration}")
+    private long refreshTtlMillis;
+
+    public RefreshTokenStore(StringRedisTemplate redisTemplate, RevokedTokenRegistry revokedTokenRegistry,
+                             MeterRegistry meterRegistry) {
+        this.redisTemplate = redisTemplate;
+        this.revokedTokenRegistry = revokedTokenRegistry;
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * [函数: start]
+     * - 输入: String userId - 用户ID; String familyId - 族ID; String refreshJti - 首个刷新令牌ID;
+     *         String accessJti - 首个访问令牌ID; long accessExpiresAt - 访问令牌过期时间（毫秒）
+     * - 输出: void
+     * - 角色: 登录或注册时创建新的令牌族
+     * - 逻辑: 1. 原子写入族哈希与首个访问令牌并设置过期 2. 加入用户的族集合并续期
+     */
+    public void start(String userId, String familyId, String refreshJti, String accessJti, long accessExpiresAt) {
+        redisTemplate.execute(START, keys(familyId, userId),
+                userId, refreshJti, accessJti, String.valueOf(accessExpiresAt), String.valueOf(refreshTtlMillis),
+                familyId);
+    }
+
+    /**
+     * [函数: rotate]
+     * - 输入: String userId - 用户ID; String familyId - 族ID; String presentedJti - 客户端提交的刷新令牌ID;
+     *         String nextRefreshJti - 新刷新令牌ID; String nextAccessJti - 新访问令牌ID;
+     *         long accessExpiresAt - 新访问令牌过期时间（毫秒）
+     * - 输出: Rotation - 轮换结果
+     * - 角色: 刷新时原子地把族的当前令牌替换为新令牌
+     * - 逻辑: 1. 提交的令牌是族内当前令牌时轮换，记录新访问令牌并清理已过期的，续期族与用户的族集合
+     *         2. 提交的是已轮换掉的旧令牌时判定为重放，吊销整个族
+     */
+    public Rotation rotate(String userId, String familyId, String presentedJti, String nextRefreshJti,
+                           String nextAccessJti, long accessExpiresAt) {
+        Long result = redisTemplate.execute(ROTATE, keys(familyId, userId),
+                presentedJti, nextRefreshJti, nextAccessJti, String.valueOf(accessExpiresAt),
+                String.valueOf(refreshTtlMillis), String.valueOf(System.currentTimeMillis()), familyId);
+        Rotation rotation;
+        if (result == null || result == 0) {
+            rotation = Rotation.UNKNOWN;
+        } else if (result == -1) {
+            rotation = Rotation.REVOKED;
+        } else if (result == -2) {
+            rotation = Rotation.REUSED;
+            logger.warn("检测到刷新令牌重放，吊销令牌族: familyId={}", familyId);
+            revokeFamily(familyId);
+        } else {
+            rotation = Rotation.ROTATED;
+        }
+        meterRegistry.counter("auth.refresh.rotations", "result", rotation.name().toLowerCase()).increment();
+        return rotation;
+    }
+
+    /**
+     * [函数: revokeFamily]
+     * - 输入: String familyId - 族ID
+     * - 输出: void
+     * - 角色: 吊销一个令牌族（登出、重放检测）
+     * - 逻辑: 1. 原子地标记族已吊销并取出族内未过期的访问令牌，之后的刷新全部失败
+     *         2. 逐个吊销这些访问令牌（包括最近一次轮换之前签发、尚未过期的）
+     */
+    public void revokeFamily(String familyId) {
+        List<?> accessTokens = redisTemplate.execute(REVOKE,
+                Arrays.asList(FAMILY_KEY_PREFIX + familyId, ACCESS_KEY_PREFIX + familyId),
+                String.valueOf(System.currentTimeMillis()));
+        if (accessTokens == null) {
+            return;
+        }
+        for (int i = 0; i + 1 < accessTokens.size(); i += 2) {
+            revokedTokenRegistry.revoke(accessTokens.get(i).toString(),
+                    (long) Double.parseDouble(accessTokens.get(i + 1).toString()));
+        }
+    }
+
+    /**
+     * [函数: revokeAllForUser]
+     * - 输入: String userId - 用户ID
+     * - 输出: void
+     * - 角色: 修改密码等场景下让用户在所有设备上重新登录
+     * - 逻辑: 1. 吊销用户的全部令牌族 2. 删除族集合
+     */
+    public void revokeAllForUser(String userId) {
+        String userKey = USER_KEY_PREFIX + userId;
+        Set<String> families = redisTemplate.opsForSet().members(userKey);
+        if (families != null) {
+            for (String familyId : families) {
+                revokeFamily(familyId);
+            }
+        }
+        redisTemplate.delete(userKey);
+    }
+
+    private static List<String> keys(String familyId, String userId) {
+        return Arrays.asList(FAMILY_KEY_PREFIX + familyId, ACCESS_KEY_PREFIX + familyId, USER_KEY_PREFIX + userId);
+    }
+}
@@ -0,0 +1,219 @@
+package com.poping.security;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.poping.util.BloomFilter;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * [文件概览]
+ * - 目的: 已吊销访问令牌（jti）的请求时判断，绝大多数请求只做一次内存布隆过滤器查询
+ * - 数据流: 登出/令牌族吊销 → revoke(jti, exp) → 本地布隆过滤器 + Redis有序集合 auth:revoked-access + 频道广播
+ *         JwtAuthenticationFilter → isRevoked(jti) → 布隆过滤器不含即放行；可能包含时查本地确认缓存，再查Redis确认
+ *         节点启动 → 从有序集合加载未过期的jti
+ * - 核心数据: 两代布隆过滤器（每个访问令牌有效期轮换一次，保证条目至少保留一个有效期）、已确认吊销的jti缓存
+ * - 关系: Redis有序集合（score为令牌exp）是权威数据；无法确认时按已吊销处理
+ */
+@Component
+public class RevokedTokenRegistry {
+
+    private static final Logger logger = LoggerFactory.getLogger(RevokedTokenRegistry.class);
+
+    private static final String REVOKED_KEY = "auth:revoked-access";
+    static final String REVOCATION_CHANNEL = "auth:revocations";
+
+    private final StringRedisTemplate redisTemplate;
+    private final ObjectProvider<RedisMessageListenerContainer> listenerContainer;
+    private final long expectedRevocations;
+    private final double falsePositiveRate;
+    private final long accessTokenTtlMillis;
+    private final Cache<String, Long> confirmed;
+
+    private volatile BloomFilter current;
+    private volatile BloomFilter previous;
+    private volatile long generationStartedAt;
+
+    private final Counter negative;
+    private final Counter falsePositive;
+    private final Counter revokedHit;
+
+    public RevokedTokenRegistry(StringRedisTemplate redisTemplate,
+                                ObjectProvider<RedisMessageListenerContainer> listenerContainer,
+                                MeterRegistry meterRegistry,
+                                @Value("${jwt.expiration}") long accessTokenTtlMillis,
+                                @Value("${app.auth.revocation.expected-revocations:100000}") long expectedRevocations,
+                                @Value("${app.auth.revocation.false-positive-rate:0.01}") double falsePositiveRate) {
+        this.redisTemplate = redisTemplate;
+        this.listenerContainer = listenerContainer;
+        this.accessTokenTtlMillis = accessTokenTtlMillis;
+        this.expectedRevocations = expectedRevocations;
+        this.falsePositiveRate = falsePositiveRate;
+        this.current = new BloomFilter(expectedRevocations, falsePositiveRate);
+        this.previous = new BloomFilter(expectedRevocations, falsePositiveRate);
+        this.generationStartedAt = System.currentTimeMillis();
+        this.confirmed = Caffeine.newBuilder()
+                .maximumSize(expectedRevocations)
+                .expireAfter(new Expiry<String, Long>() {
+                    @Override
+                    public long expireAfterCreate(String jti, Long expiresAt, long currentTime) {
+                        return TimeUnit.MILLISECONDS.toNanos(Math.max(0L, expiresAt - System.currentTimeMillis()));
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String jti, Long expiresAt, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+
+                    @Override
+                    public long expireAfterRead(String jti, Long expiresAt, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .build();
+
+        this.negative = checkCounter(meterRegistry, "negative");
+        this.falsePositive = checkCounter(meterRegistry, "false_positive");
+        this.revokedHit = checkCounter(meterRegistry, "revoked");
+    }
+
+    private static Counter checkCounter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("auth.revocation.checks")
+                .tag("result", result)
+                .description("访问令牌吊销检查结果")
+                .register(meterRegistry);
+    }
+
+    /**
+     * [函数: load]
+     * - 输入: 无
+     * - 输出: void
+     * - 角色: 订阅吊销广播并加载仍在有效期内的吊销记录
+     * - 逻辑: 1. 先订阅，避免加载期间漏掉新吊销 2. 清理已过期记录 3. 其余jti加入布隆过滤器
+     */
+    @PostConstruct
+    public void load() {
+        listenerContainer.ifAvailable(container -> container.addMessageListener(
+                (message, pattern) -> onRevocation(new String(message.getBody(), StandardCharsets.UTF_8)),
+                new ChannelTopic(REVOCATION_CHANNEL)));
+        try {
+            long now = System.currentTimeMillis();
+            redisTemplate.opsForZSet().removeRangeByScore(REVOKED_KEY, Double.NEGATIVE_INFINITY, now);
+            Set<String> revoked = redisTemplate.opsForZSet().rangeByScore(REVOKED_KEY, now, Double.POSITIVE_INFINITY);
+            if (revoked != null) {
+                revoked.forEach(current::put);
+                logger.info("Loaded {} revoked access tokens", revoked.size());
+            }
+        } catch (Exception e) {
+            logger.warn("加载已吊销令牌失败，仅依赖后续广播: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * [函数: isRevoked]
+     * - 输入: String jti - 访问令牌ID
+     * - 输出: boolean - 是否已吊销
+     * - 角色: 每个请求的吊销检查
+     * - 逻辑: 1. 无jti的旧令牌视为未吊销 2. 两代布隆过滤器都不含时放行
+     *         3. 可能包含时先查本地确认缓存，再查Redis；Redis不可用时按已吊销处理
+     */
+    public boolean isRevoked(String jti) {
+        if (jti == null) {
+            return false;
+        }
+        if (!current.mightContain(jti) && !previous.mightContain(jti)) {
+            negative.increment();
+            return false;
+        }
+        if (confirmed.getIfPresent(jti) != null) {
+            revokedHit.increment();
+            return true;
+        }
+        try {
+            Double expiresAt = redisTemplate.opsForZSet().score(REVOKED_KEY, jti);
+            if (expiresAt != null && expiresAt > System.currentTimeMillis()) {
+                confirmed.put(jti, expiresAt.longValue());
+                revokedHit.increment();
+                return true;
+            }
+            falsePositive.increment();
+            return false;
+        } catch (Exception e) {
+            logger.warn("无法确认令牌吊销状态，按已吊销处理: {}", e.getMessage());
+            return true;
+        }
+    }
+
+    /**
+     * [函数: revoke]
+     * - 输入: String jti - 访问令牌ID; long expiresAt - 令牌过期时间（毫秒）
+     * - 输出: void
+     * - 角色: 吊销一个访问令牌，所有节点立即生效
+     * - 逻辑: 1. 已过期的令牌无需处理 2. 写入本地 3. 写入Redis有序集合并广播
+     */
+    public void revoke(String jti, long expiresAt) {
+        if (jti == null || expiresAt <= System.currentTimeMillis()) {
+            return;
+        }
+        remember(jti, expiresAt);
+        try {
+            redisTemplate.opsForZSet().add(REVOKED_KEY, jti, expiresAt);
+            redisTemplate.convertAndSend(REVOCATION_CHANNEL, jti + " " + expiresAt);
+        } catch (Exception e) {
+            logger.error("写入令牌吊销记录失败: jti={}", jti, e);
+        }
+    }
+
+    private void onRevocation(String payload) {
+        String[] parts = payload.split(" ");
+        if (parts.length == 2) {
+            try {
+                remember(parts[0], Long.parseLong(parts[1]));
+            } catch (NumberFormatException e) {
+                logger.warn("无法解析令牌吊销消息: {}", payload);
+            }
+        }
+    }
+
+    private void remember(String jti, long expiresAt) {
+        current.put(jti);
+        confirmed.put(jti, expiresAt);
+    }
+
+    /**
+     * [函数: maintain]
+     * - 输入: 无
+     * - 输出: void
+     * - 角色: 定期轮换布隆过滤器并清理Redis中已过期的记录
+     * - 逻辑: 1. 当前代使用满一个访问令牌有效期后降为上一代，丢弃更早的一代 2. 删除score早于当前时间的记录
+     */
+    @Scheduled(fixedDelayString = "${app.auth.revocation.maintain-interval:60000}")
+    public void maintain() {
+        long now = System.currentTimeMillis();
+        if (now - generationStartedAt >= accessTokenTtlMillis) {
+            previous = current;
+            current = new BloomFilter(expectedRevocations, falsePositiveRate);
+            generationStartedAt = now;
+        }
+        try {
+            redisTemplate.opsForZSet().removeRangeByScore(REVOKED_KEY, Double.NEGATIVE_INFINITY, now);
+        } catch (Exception e) {
+            logger.debug("清理过期吊销记录失败: {}", e.getMessage());
+        }
+    }
+}
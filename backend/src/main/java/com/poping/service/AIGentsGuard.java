@@ -0,0 +1,391 @@
+package com.poping.service;
+
+import com.poping.exception.ExternalServiceException;
+import com.poping.util.AdaptiveConcurrencyLimiter;
+import com.poping.util.CircuitBreaker;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpClientErrorException;
+
+import javax.annotation.PreDestroy;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * [文件概览]
+ * - 目的: AIGents调用的保护层：按操作熔断、独立线程池隔离、自适应并发上限
+ * - 数据流: 普通调用 AIGentsService → execute(operation, action)
+ *         → 熔断判断 → 自适应并发准入 → 隔离线程池(有界) → DownstreamLimiter → RestTemplate
+ *         → 按结果与耗时更新熔断窗口与并发上限
+ *         流式调用 AIGentsService.streamQuery → executeStream → 流式熔断器 → 流式名额 → 在调用线程上读取响应流
+ * - 核心数据: 每个操作一个CircuitBreaker、短调用共享的AdaptiveConcurrencyLimiter、aigents-bulkhead线程池、
+ *         流式调用独立的名额池
+ * - 关系: 任一层拒绝时立即抛出ExternalServiceException（50301熔断/50302过载/50401超时），
+ *         AIGents变慢时调用方线程最多等待call-timeout，不会拖垮认证、智能体列表等其他接口；
+ *         流式调用的持续时间取决于回答长度，不进入AIMD与隔离线程池，也不占用DownstreamLimiter的aigents名额，
+ *         并发只受stream.max-concurrent限制；响应式链路通过enter()取得同样的准入凭证
+ */
+@Component
+public class AIGentsGuard {
+
+    private static final Logger logger = LoggerFactory.getLogger(AIGentsGuard.class);
+
+    public static final String CREATE_SESSION = "createSession";
+    public static final String SEND_QUERY = "sendQuery";
+    public static final String SEND_QUERY_STREAM = "sendQueryStream";
+    public static final String GET_SESSION_INFO = "getSessionInfo";
+    public static final String GET_MEMORIES = "getMemories";
+    public static final String DELETE_SESSION = "deleteSession";
+
+    private final DownstreamLimiter downstreamLimiter;
+    private final MeterRegistry meterRegistry;
+    private final Map<String, CircuitBreaker> breakers = new ConcurrentHashMap<>();
+    private final AdaptiveConcurrencyLimiter limiter;
+    private final Semaphore streamPermits;
+    private final ThreadPoolExecutor bulkhead;
+
+    @Value("${app.resilience.aigents.call-timeout:35000}")
+    private long callTimeoutMillis;
+
+    @Value("${app.resilience.aigents.circuit.window-size:20}")
+    private int windowSize;
+
+    @Value("${app.resilience.aigents.circuit.minimum-calls:10}")
+    private int minimumCalls;
+
+    @Value("${app.resilience.aigents.circuit.failure-rate-threshold:50}")
+    private float failureRateThreshold;
+
+    @Value("${app.resilience.aigents.circuit.slow-call-threshold:20000}")
+    private long slowCallThresholdMillis;
+
+    @Value("${app.resilience.aigents.circuit.slow-call-rate-threshold:80}")
+    private float slowCallRateThreshold;
+
+    @Value("${app.resilience.aigents.circuit.open-duration:15000}")
+    private long openDurationMillis;
+
+    @Value("${app.resilience.aigents.circuit.half-open-calls:3}")
+    private int halfOpenCalls;
+
+    public AIGentsGuard(DownstreamLimiter downstreamLimiter, MeterRegistry meterRegistry,
+                        @Value("${app.resilience.aigents.bulkhead.max-concurrent:50}") int bulkheadSize,
+                        @Value("${app.resilience.aigents.bulkhead.queue-capacity:0}") int bulkheadQueue,
+                        @Value("${app.resilience.aigents.limiter.initial-limit:20}") int initialLimit,
+                        @Value("${app.resilience.aigents.limiter.min-limit:4}") int minLimit,
+                        @Value("${app.resilience.aigents.limiter.max-limit:50}") int maxLimit,
+                        @Value("${app.resilience.aigents.limiter.backoff-ratio:0.9}") double backoffRatio,
+                        @Value("${app.resilience.aigents.limiter.latency-threshold:20000}") long latencyThreshold,
+                        @Value("${app.resilience.aigents.stream.max-concurrent:256}") int streamMaxConcurrent) {
+        this.downstreamLimiter = downstreamLimiter;
+        this.meterRegistry = meterRegistry;
+        this.limiter = new AdaptiveConcurrencyLimiter(initialLimit, minLimit, maxLimit, backoffRatio, latencyThreshold);
+        this.streamPermits = new Semaphore(streamMaxConcurrent);
+
+        BlockingQueue<Runnable> queue = bulkheadQueue > 0
+                ? new ArrayBlockingQueue<>(bulkheadQueue)
+                : new SynchronousQueue<>();
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.bulkhead = new ThreadPoolExecutor(bulkheadSize, bulkheadSize, 60L, TimeUnit.SECONDS, queue,
+                runnable -> {
+                    Thread thread = new Thread(runnable, "aigents-bulkhead-" + threadIndex.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        this.bulkhead.allowCoreThreadTimeOut(true);
+
+        new ExecutorServiceMetrics(bulkhead, "aigents-bulkhead", Tags.empty()).bindTo(meterRegistry);
+        Gauge.builder("aigents.concurrency.limit", limiter, AdaptiveConcurrencyLimiter::getLimit)
+                .description("AIGents自适应并发上限")
+                .register(meterRegistry);
+        Gauge.builder("aigents.concurrency.in.flight", limiter, AdaptiveConcurrencyLimiter::getInFlight)
+                .description("AIGents进行中的调用数")
+                .register(meterRegistry);
+        Gauge.builder("aigents.stream.in.flight", streamPermits,
+                        permits -> streamMaxConcurrent - permits.availablePermits())
+                .description("AIGents进行中的流式调用数")
+                .register(meterRegistry);
+    }
+
+    /**
+     * [函数: execute]
+     * - 输入: String operation - 操作名; Supplier action - 实际HTTP调用
+     * - 输出: T - 调用结果
+     * - 角色: 在全部保护层内执行一次普通AIGents调用
+     * - 逻辑: 1. 熔断与自适应并发准入 2. 在隔离线程池中执行，调用方最多等待call-timeout
+     *         3. 并发名额在任务真正结束时释放：超时后任务仍在读socket时名额继续占用，结束后按失败收缩上限
+     */
+    public <T> T execute(String operation, Supplier<T> action) {
+        CircuitBreaker breaker = breaker(operation);
+        if (!breaker.tryAcquirePermission()) {
+            throw reject(operation, "circuit_open", ExternalServiceException.CIRCUIT_OPEN, "AI服务暂时不可用，请稍后再试");
+        }
+        if (!limiter.tryAcquire()) {
+            breaker.releasePermission();
+            throw reject(operation, "overloaded", ExternalServiceException.OVERLOADED, "AI服务繁忙，请稍后再试");
+        }
+
+        BulkheadCall<T> call = new BulkheadCall<>(action);
+        Future<T> future;
+        try {
+            future = bulkhead.submit(call);
+        } catch (RejectedExecutionException e) {
+            limiter.onIgnored();
+            breaker.releasePermission();
+            throw reject(operation, "bulkhead_full", ExternalServiceException.OVERLOADED, "AI服务繁忙，请稍后再试");
+        }
+
+        long startNanos = System.nanoTime();
+        try {
+            T result = future.get(callTimeoutMillis, TimeUnit.MILLISECONDS);
+            breaker.onSuccess(System.nanoTime() - startNanos);
+            return result;
+        } catch (TimeoutException e) {
+            call.abandon(true);
+            future.cancel(true);
+            breaker.onError(System.nanoTime() - startNanos);
+            meterRegistry.counter("aigents.timeouts", "operation", operation).increment();
+            throw new ExternalServiceException(DownstreamLimiter.AIGENTS, ExternalServiceException.TIMEOUT,
+                    "AI服务响应超时，请稍后再试", e);
+        } catch (InterruptedException e) {
+            call.abandon(false);
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            breaker.releasePermission();
+            throw new RuntimeException("等待AI服务响应被中断", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            long duration = System.nanoTime() - startNanos;
+            if (cause instanceof ExternalServiceException) {
+                // 下游信号量拒绝，请求未发出
+                breaker.releasePermission();
+            } else if (cause instanceof HttpClientErrorException) {
+                // 4xx说明服务可用，只是请求本身有误
+                breaker.onSuccess(duration);
+            } else {
+                breaker.onError(duration);
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new RuntimeException(cause);
+        }
+    }
+
+    /**
+     * [函数: executeStream]
+     * - 输入: String operation - 操作名; Supplier action - 流式HTTP调用（在调用线程上读取整个响应流）
+     * - 输出: T - 调用结果
+     * - 角色: 在流式熔断器与流式名额内执行一次流式AIGents调用
+     * - 逻辑: 1. 熔断判断 2. 占用流式名额，满时立即拒绝 3. 在当前线程执行，不经过隔离线程池与AIMD
+     *         4. 流式总耗时取决于回答长度，不计入慢调用；失败计入流式熔断器
+     */
+    public <T> T executeStream(String operation, Supplier<T> action) {
+        Ticket ticket = enter(operation, true);
+        long startNanos = System.nanoTime();
+        try {
+            T result = action.get();
+            ticket.onSuccess(0L);
+            return result;
+        } catch (HttpClientErrorException e) {
+            ticket.onSuccess(0L);
+            throw e;
+        } catch (RuntimeException | Error e) {
+            ticket.onError(System.nanoTime() - startNanos);
+            throw e;
+        }
+    }
+
+    /**
+     * [函数: enter]
+     * - 输入: String operation - 操作名; boolean stream - 是否为流式调用
+     * - 输出: Ticket - 准入凭证，调用结束时必须且只能结算一次
+     * - 角色: 无法在调用线程上阻塞等待的调用方（响应式链路）取得与同步链路相同的熔断与并发准入
+     * - 逻辑: 1. 熔断判断 2. 普通调用占用自适应并发名额，流式调用占用流式名额 3. 任一层拒绝时抛出50301/50302
+     */
+    public Ticket enter(String operation, boolean stream) {
+        CircuitBreaker breaker = breaker(operation);
+        if (!breaker.tryAcquirePermission()) {
+            throw reject(operation, "circuit_open", ExternalServiceException.CIRCUIT_OPEN, "AI服务暂时不可用，请稍后再试");
+        }
+        boolean admitted = stream ? streamPermits.tryAcquire() : limiter.tryAcquire();
+        if (!admitted) {
+            breaker.releasePermission();
+            throw reject(operation, stream ? "stream_overloaded" : "overloaded",
+                    ExternalServiceException.OVERLOADED, "AI服务繁忙，请稍后再试");
+        }
+        return new Ticket(breaker, stream);
+    }
+
+    /**
+     * 一次准入的结算：成功/失败/取消三者只生效一次，并发名额随之归还
+     */
+    public final class Ticket {
+        private final CircuitBreaker breaker;
+        private final boolean stream;
+        private final AtomicBoolean settled = new AtomicBoolean();
+
+        private Ticket(CircuitBreaker breaker, boolean stream) {
+            this.breaker = breaker;
+            this.stream = stream;
+        }
+
+        /**
+         * 调用成功（含4xx）；流式调用传0，不参与慢调用与延迟判断
+         */
+        public void onSuccess(long durationNanos) {
+            if (settled.compareAndSet(false, true)) {
+                breaker.onSuccess(durationNanos);
+                if (stream) {
+                    streamPermits.release();
+                } else {
+                    limiter.onSuccess(durationNanos);
+                }
+            }
+        }
+
+        public void onError(long durationNanos) {
+            if (settled.compareAndSet(false, true)) {
+                breaker.onError(durationNanos);
+                if (stream) {
+                    streamPermits.release();
+                } else {
+                    limiter.onDropped();
+                }
+            }
+        }
+
+        /**
+         * 调用未完成即被放弃（如下游取消订阅），不计入熔断统计
+         */
+        public void onCancel() {
+            if (settled.compareAndSet(false, true)) {
+                breaker.releasePermission();
+                if (stream) {
+                    streamPermits.release();
+                } else {
+                    limiter.onIgnored();
+                }
+            }
+        }
+    }
+
+    /**
+     * 隔离线程池中的一次调用，负责在真正结束时归还自适应并发名额
+     * 调用方超时或被中断后标记放弃；任务尚未开始时由调用方直接归还，已开始时由任务结束后归还
+     */
+    private final class BulkheadCall<T> implements Callable<T> {
+        private static final int PENDING = 0;
+        private static final int RUNNING = 1;
+        private static final int ABANDONED = 2;
+
+        private final Supplier<T> action;
+        private final AtomicInteger state = new AtomicInteger(PENDING);
+        private volatile boolean timedOut;
+
+        BulkheadCall(Supplier<T> action) {
+            this.action = action;
+        }
+
+        @Override
+        public T call() {
+            if (!state.compareAndSet(PENDING, RUNNING)) {
+                return null;
+            }
+            long startNanos = System.nanoTime();
+            try {
+                T result = downstreamLimiter.call(DownstreamLimiter.AIGENTS, action);
+                if (timedOut) {
+                    limiter.onDropped();
+                } else {
+                    limiter.onSuccess(System.nanoTime() - startNanos);
+                }
+                return result;
+            } catch (ExternalServiceException | HttpClientErrorException e) {
+                // 下游信号量拒绝（请求未发出）或4xx，不代表AIGents过载
+                if (timedOut) {
+                    limiter.onDropped();
+                } else {
+                    limiter.onIgnored();
+                }
+                throw e;
+            } catch (RuntimeException | Error e) {
+                limiter.onDropped();
+                throw e;
+            }
+        }
+
+        /**
+         * @param timeout true表示调用方等待超时（任务结束时按失败收缩上限），false表示调用方被中断
+         */
+        void abandon(boolean timeout) {
+            timedOut = timeout;
+            if (state.compareAndSet(PENDING, ABANDONED)) {
+                // 任务还在队列中，不会再执行
+                if (timeout) {
+                    limiter.onDropped();
+                } else {
+                    limiter.onIgnored();
+                }
+            }
+        }
+    }
+
+    private CircuitBreaker breaker(String operation) {
+        return breakers.computeIfAbsent(operation, name -> {
+            CircuitBreaker breaker = new CircuitBreaker(name, windowSize, minimumCalls, failureRateThreshold,
+                    slowCallThresholdMillis, slowCallRateThreshold, openDurationMillis, halfOpenCalls,
+                    (from, to) -> {
+                        logger.warn("AIGents circuit breaker [{}] {} -> {}", name, from, to);
+                        meterRegistry.counter("aigents.circuit.transitions",
+                                "operation", name, "from", from.name(), "to", to.name()).increment();
+                    });
+            Gauge.builder("aigents.circuit.state", breaker, b -> b.getState().ordinal())
+                    .tag("operation", name)
+                    .description("熔断器状态: 0关闭 1打开 2半开")
+                    .register(meterRegistry);
+            return breaker;
+        });
+    }
+
+    private ExternalServiceException reject(String operation, String reason, int code, String message) {
+        meterRegistry.counter("aigents.rejected", "operation", operation, "reason", reason).increment();
+        return new ExternalServiceException(DownstreamLimiter.AIGENTS, code, message);
+    }
+
+    /**
+     * [函数: shutdown]
+     * - 输入: 无
+     * - 输出: void
+     * - 角色: 应用关闭时停止隔离线程池
+     * - 逻辑: 1. 不再接收新任务 2. 等待进行中的调用结束
+     */
+    @PreDestroy
+    public void shutdown() {
+        bulkhead.shutdown();
+    }
+}
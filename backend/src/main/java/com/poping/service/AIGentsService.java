@@ -2,40 +2,62 @@ package com.poping.service;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.poping.exception.ExternalServiceException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.*;
 import org.springframework.stereotype.Service;
+import org.springframework.web.client.RequestCallback;
+import org.springframework.web.client.ResponseExtractor;
 import org.springframework.web.client.RestTemplate;
 import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.client.HttpServerErrorException;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 /**
  * AIGents外部API集成服务
  * 提供会话管理、AI查询、资源管理等核心功能
+ * 所有HTTP调用经AIGentsGuard执行（按操作熔断、隔离线程池、自适应并发上限），
+ * 幂等读请求（getSessionInfo/getMemories）另经HedgedReadExecutor对冲与重试
  */
 @Service
 public class AIGentsService {
     
     private static final Logger logger = LoggerFactory.getLogger(AIGentsService.class);
     
+    /**
+     * 默认系统提示词
+     */
+    public static final String DEFAULT_SYSTEM_PROMPT = "你是一个专业的AI智能助手，为用户提供高质量的对话服务。";
+    
     @Value("${app.external.aigents.base-url}")
     private String baseUrl;
     
-    @Value("${app.external.aigents.timeout}")
-    private int timeout;
+    @Value("${app.chat.stream.timeout:120000}")
+    private long streamTimeoutMillis;
     
     private final RestTemplate restTemplate;
     private final ObjectMapper objectMapper;
+    private final AIGentsGuard guard;
+    private final HedgedReadExecutor readExecutor;
     
-    public AIGentsService(RestTemplate restTemplate, ObjectMapper objectMapper) {
+    public AIGentsService(RestTemplate restTemplate, ObjectMapper objectMapper, AIGentsGuard guard,
+                          HedgedReadExecutor readExecutor) {
         this.restTemplate = restTemplate;
         this.objectMapper = objectMapper;
+        this.guard = guard;
+        this.readExecutor = readExecutor;
     }
     
     /**
@@ -45,40 +67,29 @@ public class AIGentsService {
      * @return 会话ID
      */
     public String createSession(String userId, String projectName) {
+        return createSession(userId, projectName, DEFAULT_SYSTEM_PROMPT);
+    }
+    
+    /**
+     * 创建AIGents会话
+     * @param userId 用户ID
+     * @param projectName 项目名称
+     * @param systemPrompt 系统提示词
+     * @return 会话ID
+     */
+    public String createSession(String userId, String projectName, String systemPrompt) {
         try {
             String url = baseUrl + "/api/sessions";
             
-            Map<String, Object> requestBody = new HashMap<>();
-            Map<String, Object> config = new HashMap<>();
-            Map<String, Boolean> features = new HashMap<>();
-            
-            // 配置功能特性
-            features.put("memories", true);
-            features.put("events", true);
-            features.put("docs", true);
-            features.put("texts", true);
-            features.put("images", true);
-            features.put("retrieval", false);
-            
-            Map<String, Object> system = new HashMap<>();
-            system.put("system_prompt", "你是一个专业的AI智能助手，为用户提供高质量的对话服务。");
-            
-            config.put("features", features);
-            config.put("system", system);
-            
-            Map<String, Object> metadata = new HashMap<>();
-            metadata.put("user_id", userId);
-            metadata.put("project_name", projectName);
-            
-            requestBody.put("config", config);
-            requestBody.put("metadata", metadata);
+            Map<String, Object> requestBody = buildSessionBody(userId, projectName, systemPrompt);
             
             HttpHeaders headers = new HttpHeaders();
             headers.setContentType(MediaType.APPLICATION_JSON);
             
             HttpEntity<Map<String, Object>> entity = new HttpEntity<>(requestBody, headers);
             
-            ResponseEntity<String> response = restTemplate.postForEntity(url, entity, String.class);
+            ResponseEntity<String> response = guard.execute(AIGentsGuard.CREATE_SESSION,
+                () -> restTemplate.postForEntity(url, entity, String.class));
             
             if (response.getStatusCode() == HttpStatus.OK) {
                 JsonNode jsonNode = objectMapper.readTree(response.getBody());
@@ -90,6 +101,9 @@ public class AIGentsService {
             logger.error("Failed to create AIGents session: {}", response.getBody());
             return null;
             
+        } catch (ExternalServiceException e) {
+            // 熔断/过载/超时直接抛出，调用方据此返回可重试的错误码
+            throw e;
         } catch (HttpClientErrorException | HttpServerErrorException e) {
             logger.error("HTTP error creating AIGents session: {}", e.getMessage());
             return null;
@@ -108,7 +122,8 @@ public class AIGentsService {
         try {
             String url = baseUrl + "/api/sessions/" + sessionId;
             
-            ResponseEntity<String> response = restTemplate.getForEntity(url, String.class);
+            ResponseEntity<String> response = readExecutor.execute(AIGentsGuard.GET_SESSION_INFO,
+                () -> restTemplate.getForEntity(url, String.class));
             
             if (response.getStatusCode() == HttpStatus.OK) {
                 JsonNode jsonNode = objectMapper.readTree(response.getBody());
@@ -128,6 +143,7 @@ public class AIGentsService {
     
     /**
      * 发送AI查询（同步方式）
+     * 调用失败时返回兜底提示语，不抛出异常
      * @param sessionId 会话ID
      * @param query 查询内容
      * @param context 上下文信息
@@ -135,37 +151,166 @@ public class AIGentsService {
      */
     public String sendQuery(String sessionId, String query, Map<String, Object> context) {
         try {
-            String url = baseUrl + "/api/sessions/" + sessionId + "/query";
-            
-            Map<String, Object> requestBody = new HashMap<>();
-            requestBody.put("query", query);
-            requestBody.put("stream", false); // 同步响应
-            
-            if (context != null && !context.isEmpty()) {
-                requestBody.put("context", context);
-            }
-            
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_JSON);
-            
-            HttpEntity<Map<String, Object>> entity = new HttpEntity<>(requestBody, headers);
-            
-            ResponseEntity<String> response = restTemplate.postForEntity(url, entity, String.class);
-            
-            if (response.getStatusCode() == HttpStatus.OK) {
+            return query(sessionId, query, context);
+        } catch (Exception e) {
+            logger.error("Error sending AIGents query", e);
+            return "抱歉，AI服务出现错误，请稍后再试。";
+        }
+    }
+    
+    /**
+     * 发送AI查询（同步方式）
+     * 与sendQuery不同，调用失败时抛出异常，便于调用方执行补偿逻辑
+     * @param sessionId 会话ID
+     * @param query 查询内容
+     * @param context 上下文信息
+     * @return AI响应
+     */
+    public String query(String sessionId, String query, Map<String, Object> context) {
+        String url = baseUrl + "/api/sessions/" + sessionId + "/query";
+        
+        Map<String, Object> requestBody = buildQueryBody(query, context, false);
+        
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        
+        HttpEntity<Map<String, Object>> entity = new HttpEntity<>(requestBody, headers);
+        
+        ResponseEntity<String> response = guard.execute(AIGentsGuard.SEND_QUERY,
+                () -> restTemplate.postForEntity(url, entity, String.class));
+        
+        if (response.getStatusCode() == HttpStatus.OK) {
+            try {
                 JsonNode jsonNode = objectMapper.readTree(response.getBody());
                 if (jsonNode.get("success").asBoolean()) {
                     return jsonNode.get("data").get("content").asText();
                 }
+            } catch (IOException e) {
+                throw new RuntimeException("AIGents响应解析失败", e);
             }
-            
-            logger.error("Failed to send AIGents query: {}", response.getBody());
-            return "抱歉，AI服务暂时不可用，请稍后再试。";
-            
-        } catch (Exception e) {
-            logger.error("Error sending AIGents query", e);
-            return "抱歉，AI服务出现错误，请稍后再试。";
         }
+        
+        logger.error("Failed to send AIGents query: {}", response.getBody());
+        throw new RuntimeException("AI服务暂时不可用");
+    }
+    
+    /**
+     * 发送AI查询（流式方式）
+     * 以SSE方式读取AIGents的token流，每收到一段增量内容即回调onDelta
+     * 在调用线程上读取，总时长超过app.chat.stream.timeout时中止并返回50401
+     * @param sessionId 会话ID
+     * @param query 查询内容
+     * @param context 上下文信息
+     * @param onDelta 增量内容回调
+     * @return 完整的AI响应
+     */
+    public String streamQuery(String sessionId, String query, Map<String, Object> context,
+                              Consumer<String> onDelta) {
+        String url = baseUrl + "/api/sessions/" + sessionId + "/query";
+        
+        Map<String, Object> requestBody = buildQueryBody(query, context, true);
+        
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        headers.setAccept(Collections.singletonList(MediaType.TEXT_EVENT_STREAM));
+        
+        RequestCallback requestCallback = restTemplate.httpEntityCallback(new HttpEntity<>(requestBody, headers));
+        long deadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(streamTimeoutMillis);
+        ResponseExtractor<String> responseExtractor = response -> {
+            StringBuilder content = new StringBuilder();
+            BufferedReader reader = new BufferedReader(
+                new InputStreamReader(response.getBody(), StandardCharsets.UTF_8));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (System.nanoTime() - deadlineNanos > 0) {
+                    throw new ExternalServiceException(DownstreamLimiter.AIGENTS, ExternalServiceException.TIMEOUT,
+                            "AI服务响应超时，请稍后再试");
+                }
+                if (!line.startsWith("data:")) {
+                    continue;
+                }
+                String data = line.substring(5).trim();
+                if (data.isEmpty()) {
+                    continue;
+                }
+                if ("[DONE]".equals(data)) {
+                    break;
+                }
+                String delta = extractDelta(objectMapper.readTree(data));
+                if (delta != null && !delta.isEmpty()) {
+                    content.append(delta);
+                    onDelta.accept(delta);
+                }
+            }
+            return content.toString();
+        };
+        
+        return guard.executeStream(AIGentsGuard.SEND_QUERY_STREAM,
+            () -> restTemplate.execute(url, HttpMethod.POST, requestCallback, responseExtractor));
+    }
+    
+    /**
+     * 构建创建会话的请求体
+     * 同步客户端与ReactiveAIGentsClient共用，保证两条链路的请求格式一致
+     */
+    static Map<String, Object> buildSessionBody(String userId, String projectName, String systemPrompt) {
+        Map<String, Object> requestBody = new HashMap<>();
+        Map<String, Object> config = new HashMap<>();
+        Map<String, Boolean> features = new HashMap<>();
+        
+        // 配置功能特性
+        features.put("memories", true);
+        features.put("events", true);
+        features.put("docs", true);
+        features.put("texts", true);
+        features.put("images", true);
+        features.put("retrieval", false);
+        
+        Map<String, Object> system = new HashMap<>();
+        system.put("system_prompt", systemPrompt);
+        
+        config.put("features", features);
+        config.put("system", system);
+        
+        Map<String, Object> metadata = new HashMap<>();
+        metadata.put("user_id", userId);
+        metadata.put("project_name", projectName);
+        
+        requestBody.put("config", config);
+        requestBody.put("metadata", metadata);
+        return requestBody;
+    }
+    
+    /**
+     * 构建查询请求体
+     */
+    static Map<String, Object> buildQueryBody(String query, Map<String, Object> context, boolean stream) {
+        Map<String, Object> requestBody = new HashMap<>();
+        requestBody.put("query", query);
+        requestBody.put("stream", stream);
+        
+        if (context != null && !context.isEmpty()) {
+            requestBody.put("context", context);
+        }
+        return requestBody;
+    }
+    
+    /**
+     * 从AIGents流式事件中提取增量内容
+     * 兼容 {"delta": "..."}、{"content": "..."} 与 {"data": {"content": "..."}} 三种事件格式
+     */
+    static String extractDelta(JsonNode event) {
+        if (event.hasNonNull("delta")) {
+            return event.get("delta").asText();
+        }
+        if (event.hasNonNull("content")) {
+            return event.get("content").asText();
+        }
+        JsonNode data = event.get("data");
+        if (data != null && data.hasNonNull("content")) {
+            return data.get("content").asText();
+        }
+        return null;
     }
     
     /**
@@ -177,7 +322,10 @@ public class AIGentsService {
         try {
             String url = baseUrl + "/api/sessions/" + sessionId;
             
-            restTemplate.delete(url);
+            guard.execute(AIGentsGuard.DELETE_SESSION, () -> {
+                restTemplate.delete(url);
+                return null;
+            });
             return true;
             
         } catch (Exception e) {
@@ -221,7 +369,8 @@ public class AIGentsService {
         try {
             String url = baseUrl + "/api/sessions/" + sessionId + "/memories?limit=" + limit;
             
-            ResponseEntity<String> response = restTemplate.getForEntity(url, String.class);
+            ResponseEntity<String> response = readExecutor.execute(AIGentsGuard.GET_MEMORIES,
+                () -> restTemplate.getForEntity(url, String.class));
             
             if (response.getStatusCode() == HttpStatus.OK) {
                 JsonNode jsonNode = objectMapper.readTree(response.getBody());
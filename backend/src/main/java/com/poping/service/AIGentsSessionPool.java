@@ -0,0 +1,255 @@
+package com.poping.service;
+
+import com.poping.exception.ExternalServiceException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * [文件概览]
+ * - 目的: 预创建的AIGents会话池，新对话的首条消息无需同步等待远程会话创建
+ * - 数据流: ChatService.createNewSession → claim(systemPrompt) → 命中则直接返回会话ID；
+ *         后台线程按系统提示词补充会话至最小空闲数，过期会话异步删除
+ * - 核心数据: 系统提示词 → 空闲会话队列，命中/未命中计数
+ * - 关系: 依赖AIGentsService创建/删除远程会话；app.chat.session-pool.enabled=false（默认）时claim始终未命中
+ *
+ * 元数据限制: AIGents只在创建会话（POST /api/sessions）时接受metadata.user_id/project_name，
+ * 更新接口（PUT /api/sessions/{id}/config）只能修改features与system，领取后无法补写真实归属。
+ * 因此预创建会话在AIGents侧的归属为user_id=pool、项目名为"Pre-warmed session"，
+ * 不再是"Chat with <智能体名>"。本地sessions表仍记录真实的用户与智能体；
+ * AIGents侧的用量统计或审计依赖这两个字段时不要开启会话池。
+ */
+@Service
+public class AIGentsSessionPool {
+
+    private static final Logger logger = LoggerFactory.getLogger(AIGentsSessionPool.class);
+
+    private static final String POOL_USER_ID = "pool";
+    private static final String POOL_PROJECT_NAME = "Pre-warmed session";
+
+    private final AIGentsService aiGentsService;
+    private final MeterRegistry meterRegistry;
+
+    private final Map<String, Bucket> buckets = new ConcurrentHashMap<>();
+    private final ExecutorService replenishExecutor;
+    private final Counter hits;
+    private final Counter misses;
+
+    @Value("${app.chat.session-pool.enabled:false}")
+    private boolean enabled;
+
+    @Value("${app.chat.session-pool.min-idle:4}")
+    private int minIdle;
+
+    @Value("${app.chat.session-pool.max-idle:16}")
+    private int maxIdle;
+
+    @Value("${app.chat.session-pool.ttl:1800000}")
+    private long ttlMillis;
+
+    public AIGentsSessionPool(AIGentsService aiGentsService, MeterRegistry meterRegistry,
+                              @Value("${app.chat.session-pool.replenish-threads:2}") int replenishThreads) {
+        this.aiGentsService = aiGentsService;
+        this.meterRegistry = meterRegistry;
+        this.replenishExecutor = Executors.newFixedThreadPool(replenishThreads, runnable -> {
+            Thread thread = new Thread(runnable, "aigents-session-pool");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.hits = Counter.builder("aigents.session.pool.requests")
+                .tag("result", "hit")
+                .description("会话池领取次数")
+                .register(meterRegistry);
+        this.misses = Counter.builder("aigents.session.pool.requests")
+                .tag("result", "miss")
+                .description("会话池领取次数")
+                .register(meterRegistry);
+    }
+
+    /**
+     * [函数: warmUp]
+     * - 输入: 无
+     * - 输出: void
+     * - 角色: 应用启动后预热默认系统提示词对应的会话池
+     * - 逻辑: 1. 注册默认提示词的池 2. 异步补充至最小空闲数
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        if (enabled) {
+            replenishAsync(bucket(AIGentsService.DEFAULT_SYSTEM_PROMPT));
+        }
+    }
+
+    /**
+     * [函数: claim]
+     * - 输入: String systemPrompt - 系统提示词（池键）
+     * - 输出: String - 预创建的AIGents会话ID，未命中时返回null
+     * - 角色: 为新对话领取一个已创建好的远程会话
+     * - 逻辑: 1. 依次弹出空闲会话并跳过已过期的 2. 记录命中/未命中 3. 触发后台补充
+     */
+    public String claim(String systemPrompt) {
+        if (!enabled) {
+            return null;
+        }
+
+        Bucket bucket = bucket(systemPrompt);
+        long now = System.currentTimeMillis();
+        PooledSession session;
+        while ((session = bucket.idle.pollFirst()) != null) {
+            bucket.size.decrementAndGet();
+            if (now - session.createdAt < ttlMillis) {
+                break;
+            }
+            discardAsync(session);
+        }
+
+        replenishAsync(bucket);
+
+        if (session == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return session.sessionId;
+    }
+
+    /**
+     * [函数: maintain]
+     * - 输入: 无
+     * - 输出: void
+     * - 角色: 定期淘汰过期会话并为所有池补充空闲会话
+     * - 逻辑: 1. 从队尾清理超过TTL的会话 2. 补充至最小空闲数
+     */
+    @Scheduled(fixedDelayString = "${app.chat.session-pool.maintain-interval:30000}")
+    public void maintain() {
+        if (!enabled) {
+            return;
+        }
+        long deadline = System.currentTimeMillis() - ttlMillis;
+        for (Bucket bucket : buckets.values()) {
+            for (PooledSession session : bucket.idle) {
+                if (session.createdAt < deadline && bucket.idle.remove(session)) {
+                    bucket.size.decrementAndGet();
+                    discardAsync(session);
+                }
+            }
+            replenishAsync(bucket);
+        }
+    }
+
+    private Bucket bucket(String systemPrompt) {
+        return buckets.computeIfAbsent(systemPrompt, key -> {
+            Bucket bucket = new Bucket(key);
+            Gauge.builder("aigents.session.pool.idle", bucket.size, AtomicInteger::get)
+                    .tag("pool", Integer.toHexString(key.hashCode()))
+                    .description("会话池空闲会话数")
+                    .register(meterRegistry);
+            return bucket;
+        });
+    }
+
+    /**
+     * [函数: replenishAsync]
+     * - 输入: Bucket bucket - 会话池
+     * - 输出: void
+     * - 角色: 在后台补充空闲会话
+     * - 逻辑: 1. 按(空闲数+创建中数)计算缺口 2. 不超过最大空闲数 3. 提交创建任务
+     */
+    private void replenishAsync(Bucket bucket) {
+        int missing = minIdle - bucket.size.get() - bucket.creating.get();
+        int room = maxIdle - bucket.size.get() - bucket.creating.get();
+        int toCreate = Math.min(missing, room);
+        for (int i = 0; i < toCreate; i++) {
+            bucket.creating.incrementAndGet();
+            try {
+                replenishExecutor.execute(() -> {
+                    try {
+                        String sessionId = aiGentsService.createSession(
+                            POOL_USER_ID, POOL_PROJECT_NAME, bucket.systemPrompt);
+                        if (sessionId != null) {
+                            bucket.idle.offerLast(new PooledSession(sessionId, System.currentTimeMillis()));
+                            bucket.size.incrementAndGet();
+                        }
+                    } catch (ExternalServiceException e) {
+                        // AIGents熔断或过载时放弃本次补充，等待下次维护
+                        logger.debug("Skip replenishing session pool: {}", e.getMessage());
+                    } finally {
+                        bucket.creating.decrementAndGet();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                bucket.creating.decrementAndGet();
+                return;
+            }
+        }
+    }
+
+    private void discardAsync(PooledSession session) {
+        try {
+            replenishExecutor.execute(() -> aiGentsService.deleteSession(session.sessionId));
+        } catch (RejectedExecutionException e) {
+            logger.debug("Skip deleting expired pooled session: {}", session.sessionId);
+        }
+    }
+
+    /**
+     * [函数: shutdown]
+     * - 输入: 无
+     * - 输出: void
+     * - 角色: 应用关闭时删除未被领取的远程会话
+     * - 逻辑: 1. 停止后台线程 2. 逐个删除空闲会话
+     */
+    @PreDestroy
+    public void shutdown() {
+        replenishExecutor.shutdownNow();
+        for (Bucket bucket : buckets.values()) {
+            PooledSession session;
+            while ((session = bucket.idle.pollFirst()) != null) {
+                aiGentsService.deleteSession(session.sessionId);
+            }
+        }
+    }
+
+    /**
+     * 单个系统提示词对应的会话池
+     */
+    private static class Bucket {
+        private final String systemPrompt;
+        private final ConcurrentLinkedDeque<PooledSession> idle = new ConcurrentLinkedDeque<>();
+        private final AtomicInteger size = new AtomicInteger();
+        private final AtomicInteger creating = new AtomicInteger();
+
+        Bucket(String systemPrompt) {
+            this.systemPrompt = systemPrompt;
+        }
+    }
+
+    /**
+     * 预创建的远程会话
+     */
+    private static class PooledSession {
+        private final String sessionId;
+        private final long createdAt;
+
+        PooledSession(String sessionId, long createdAt) {
+            this.sessionId = sessionId;
+            this.createdAt = createdAt;
+        }
+    }
+}
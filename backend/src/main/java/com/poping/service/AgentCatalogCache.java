@@ -0,0 +1,334 @@
+package com.poping.service;
+
+import com.baomidou.mybatisplus.core.metadata.IPage;
+import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
+import com.poping.dto.CounterDelta;
+import com.poping.entity.Agent;
+import com.poping.repository.AgentRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * [文件概览]
+ * - 目的: 公开智能体目录与热门榜的内存快照，首页请求不访问数据库
+ * - 数据流: 启动/定期/智能体变更提交后 → reload() 从数据库读取按热度排序的公开智能体 → 不可变快照
+ *         ChatCounterWriteBehind → onAgentUsageFlushed(增量) → 待合并的使用次数 → rerank() 定期合并并重新排序
+ *         AgentService → page()/popular() → 快照切片 + 内容摘要ETag
+ * - 核心数据: 快照（排序后的智能体副本、总数、是否完整、内容摘要、版本号）、待合并的使用次数增量
+ * - 关系: ETag由快照内容计算，内容相同的节点给出相同的ETag，负载均衡不固定节点时304依然有效；
+ *         内容变化时版本号才递增；
+ *         只缓存前max-entries个，超出部分和快照就绪前的请求由AgentService退回数据库查询
+ */
+@Component
+public class AgentCatalogCache implements AgentUsageListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(AgentCatalogCache.class);
+
+    private static final byte[] NULL_FIELD = {1, 0};
+
+    /** 与 selectPublicAgents 的 ORDER BY usage_count DESC, create_time DESC 一致 */
+    private static final Comparator<Agent> RANKING = Comparator
+            .comparing((Agent agent) -> agent.getUsageCount() == null ? 0 : agent.getUsageCount(),
+                    Comparator.reverseOrder())
+            .thenComparing(Agent::getCreatedAt, Comparator.nullsLast(Comparator.<LocalDateTime>reverseOrder()))
+            .thenComparing(Agent::getId);
+
+    private final AgentRepository agentRepository;
+    private final ChatCounterWriteBehind counterWriteBehind;
+    private final Map<Long, Long> pendingUsage = new ConcurrentHashMap<>();
+
+    private volatile Snapshot snapshot;
+    private volatile boolean reloadRequested;
+
+    @Value("${app.agent.catalog.max-entries:5000}")
+    private int maxEntries;
+
+    public AgentCatalogCache(AgentRepository agentRepository, ChatCounterWriteBehind counterWriteBehind,
+                             MeterRegistry meterRegistry) {
+        this.agentRepository = agentRepository;
+        this.counterWriteBehind = counterWriteBehind;
+        Gauge.builder("agent.catalog.version", this, cache -> cache.snapshot == null ? -1 : cache.snapshot.version)
+                .description("公开智能体目录快照版本")
+                .register(meterRegistry);
+    }
+
+    /**
+     * [函数: loadOnStartup]
+     * - 输入: 无
+     * - 输出: void
+     * - 角色: 应用启动后加载首个快照
+     * - 逻辑: 1. 调用reload，失败时由定时任务重试
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadOnStartup() {
+        reload();
+    }
+
+    /**
+     * [函数: reload]
+     * - 输入: 无
+     * - 输出: void
+     * - 角色: 从数据库全量刷新快照，获取新增、修改、下架的智能体
+     * - 逻辑: 1. 在两次增量写回之间丢弃待合并增量并读取前max-entries个公开智能体：
+     *            丢弃的增量都已写入数据库、包含在查询结果里，查询之后才写入的增量留给rerank
+     *         2. 读取总数 3. 内容有变化时生成新版本快照
+     */
+    @Scheduled(fixedDelayString = "${app.agent.catalog.reload-interval:300000}",
+            initialDelayString = "${app.agent.catalog.reload-interval:300000}")
+    public synchronized void reload() {
+        reloadRequested = false;
+        try {
+            List<Agent> ranked = counterWriteBehind.readBetweenAgentFlushes(() -> {
+                pendingUsage.clear();
+                return agentRepository.selectPublicCatalog(maxEntries);
+            });
+            long total = ranked.size() < maxEntries ? ranked.size() : agentRepository.countPublicAgents();
+            ranked.sort(RANKING);
+            publish(ranked, total, ranked.size() >= total);
+        } catch (Exception e) {
+            reloadRequested = true;
+            logger.warn("刷新公开智能体目录失败，继续使用旧快照: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * [函数: rerank]
+     * - 输入: 无
+     * - 输出: void
+     * - 角色: 定期把使用次数增量合并进快照并重新排序，热门榜不必等待全量刷新
+     * - 逻辑: 1. 有待处理的刷新请求时改为全量刷新 2. 无增量时跳过（版本号不变，客户端继续得到304）
+     *         3. 复制受影响的智能体并更新使用次数，重新排序后发布新版本
+     */
+    @Scheduled(fixedDelayString = "${app.agent.catalog.rerank-interval:10000}")
+    public synchronized void rerank() {
+        if (reloadRequested || snapshot == null) {
+            reload();
+            return;
+        }
+        if (pendingUsage.isEmpty()) {
+            return;
+        }
+        Map<Long, Long> deltas = new HashMap<>();
+        for (Long agentId : pendingUsage.keySet()) {
+            // remove原子地取走当前值，取走之后到达的增量留给下一轮
+            Long delta = pendingUsage.remove(agentId);
+            if (delta != null) {
+                deltas.put(agentId, delta);
+            }
+        }
+
+        Snapshot current = snapshot;
+        List<Agent> ranked = new ArrayList<>(current.ranked.size());
+        boolean changed = false;
+        for (Agent agent : current.ranked) {
+            Long delta = deltas.get(agent.getId());
+            if (delta == null) {
+                ranked.add(agent);
+                continue;
+            }
+            Agent updated = new Agent();
+            BeanUtils.copyProperties(agent, updated);
+            long usage = (agent.getUsageCount() == null ? 0L : agent.getUsageCount()) + delta;
+            updated.setUsageCount((int) Math.min(Integer.MAX_VALUE, usage));
+            ranked.add(updated);
+            changed = true;
+        }
+        if (changed) {
+            ranked.sort(RANKING);
+            // 不完整快照之外的智能体可能借增量进入前列，由下次全量刷新纠正
+            publish(ranked, current.total, current.complete);
+        }
+    }
+
+    /**
+     * [函数: reloadAfterCommit]
+     * - 输入: 无
+     * - 输出: void
+     * - 角色: 智能体创建、修改、下架后让下一次rerank改为全量刷新
+     * - 逻辑: 1. 处于事务中时在提交后标记 2. 不在请求线程里查询数据库
+     */
+    public void reloadAfterCommit() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    reloadRequested = true;
+                }
+            });
+        } else {
+            reloadRequested = true;
+        }
+    }
+
+    @Override
+    public void onAgentUsageFlushed(List<CounterDelta> deltas) {
+        for (CounterDelta delta : deltas) {
+            pendingUsage.merge(delta.getId(), delta.getDelta(), Long::sum);
+        }
+    }
+
+    /**
+     * [函数: page]
+     * - 输入: int page - 页码（从1开始）; int size - 每页条数
+     * - 输出: CatalogPage - 当前页与ETag；快照未就绪或页超出缓存范围时返回null
+     * - 角色: 公开智能体分页
+     * - 逻辑: 1. 从同一快照读取页内容与版本号，保证ETag与内容一致
+     */
+    public CatalogPage page(int page, int size) {
+        Snapshot current = snapshot;
+        if (current == null || page < 1 || size < 1) {
+            return null;
+        }
+        long from = (long) (page - 1) * size;
+        long to = from + size;
+        if (to > current.ranked.size() && !current.complete) {
+            return null;
+        }
+        int fromIndex = (int) Math.min(from, current.ranked.size());
+        int toIndex = (int) Math.min(to, current.ranked.size());
+        IPage<Agent> result = new Page<Agent>(page, size, current.total)
+                .setRecords(current.ranked.subList(fromIndex, toIndex));
+        return new CatalogPage(result, current.etag);
+    }
+
+    /**
+     * [函数: popular]
+     * - 输入: int limit - 条数
+     * - 输出: List<Agent> - 热门榜前limit个；快照未就绪或limit超出缓存范围时返回null
+     * - 角色: 热门智能体
+     * - 逻辑: 1. 截取快照前limit个
+     */
+    public List<Agent> popular(int limit) {
+        Snapshot current = snapshot;
+        if (current == null || (limit > current.ranked.size() && !current.complete)) {
+            return null;
+        }
+        return current.ranked.subList(0, Math.max(0, Math.min(limit, current.ranked.size())));
+    }
+
+    /**
+     * [函数: etag]
+     * - 输入: 无
+     * - 输出: String - 当前快照的ETag；未就绪时返回null
+     * - 角色: 条件请求判断
+     * - 逻辑: 1. 返回快照内容摘要对应的弱ETag
+     */
+    public String etag() {
+        Snapshot current = snapshot;
+        return current == null ? null : current.etag;
+    }
+
+    private void publish(List<Agent> ranked, long total, boolean complete) {
+        Snapshot previous = snapshot;
+        String etag = etagOf(ranked, total, complete);
+        if (previous != null && previous.etag.equals(etag)) {
+            return;
+        }
+        long version = previous == null ? 1 : previous.version + 1;
+        snapshot = new Snapshot(Collections.unmodifiableList(ranked), total, complete, version, etag);
+    }
+
+    /**
+     * [函数: etagOf]
+     * - 输入: List<Agent> ranked - 排序后的智能体; long total - 总数; boolean complete - 是否完整
+     * - 输出: String - 弱ETag
+     * - 角色: 由快照内容计算ETag，与节点和启动时间无关
+     * - 逻辑: 1. 按排名顺序对返回给客户端的字段做SHA-256 2. 取前16字节转十六进制
+     */
+    static String etagOf(List<Agent> ranked, long total, boolean complete) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        update(digest, total);
+        update(digest, complete);
+        for (Agent agent : ranked) {
+            update(digest, agent.getId());
+            update(digest, agent.getUsageCount());
+            update(digest, agent.getUpdatedAt());
+            update(digest, agent.getAgentConfigId());
+            update(digest, agent.getUserId());
+            update(digest, agent.getName());
+            update(digest, agent.getDescription());
+            update(digest, agent.getSessionConfig());
+            update(digest, agent.getDatasetId());
+            update(digest, agent.getStatus());
+            update(digest, agent.getIsPublic());
+            update(digest, agent.getCreatedAt());
+            update(digest, agent.getCreateTime());
+            update(digest, agent.getExtInfo());
+        }
+        byte[] hash = digest.digest();
+        StringBuilder hex = new StringBuilder("W/\"catalog-");
+        for (int i = 0; i < 16; i++) {
+            hex.append(String.format("%02x", hash[i]));
+        }
+        return hex.append('"').toString();
+    }
+
+    private static void update(MessageDigest digest, Object value) {
+        // 以\u0000分隔字段，null与空字符串区分开
+        digest.update(value == null ? NULL_FIELD : (value + "\u0000").getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 公开智能体分页结果及其ETag
+     */
+    public static class CatalogPage {
+        private final IPage<Agent> page;
+        private final String etag;
+
+        public CatalogPage(IPage<Agent> page, String etag) {
+            this.page = page;
+            this.etag = etag;
+        }
+
+        public IPage<Agent> getPage() {
+            return page;
+        }
+
+        public String getEtag() {
+            return etag;
+        }
+    }
+
+    private static class Snapshot {
+        private final List<Agent> ranked;
+        private final long total;
+        private final boolean complete;
+        private final long version;
+        private final String etag;
+
+        Snapshot(List<Agent> ranked, long total, boolean complete, long version, String etag) {
+            this.ranked = ranked;
+            this.total = total;
+            this.complete = complete;
+            this.version = version;
+            this.etag = etag;
+        }
+    }
+}
@@ -0,0 +1,564 @@
+package com.poping.service;
+
+import com.poping.dto.CounterDelta;
+import com.poping.entity.Agent;
+import com.poping.repository.AgentRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * [文件概览]
+ * - 目的: 智能体名称/描述的进程内倒排索引，替代 name LIKE '%keyword%' 全表扫描
+ * - 数据流: 启动 → 按主键分批读取启用中的智能体 → 构建索引 → 就绪
+ *         AgentService创建/更新/删除 → 事务提交后增量更新；ChatCounterWriteBehind → 使用次数增量
+ *         search(keyword, offset, limit) → 查询n-gram → 倒排表累加得分 → 有界堆取Top-K → 智能体ID分页
+ * - 核心数据: n-gram → 文档序号列表（名称与描述分开，名称另含单字）、文档序号 → (id, 名称, 使用次数)
+ * - 关系: 索引只保存ID与排序所需字段，结果由AgentService按主键取回；索引就绪前AgentService退回数据库查询
+ *
+ * 匹配与排序: 查询按字符二元组切分（单字查询用单字），中文无需分词；文档需命中至少fuzzy-ratio比例的查询二元组
+ *            （短查询要求全部命中），可容忍少量错别字。
+ *            相关度 = (名称命中×3 + 描述命中) / (查询二元组数×3) + 名称完全相同/前缀/包含的加分，
+ *            最终得分 = 相关度 × ln(2 + usage_count)
+ */
+@Component
+public class AgentSearchIndex implements AgentUsageListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(AgentSearchIndex.class);
+
+    private static final int NAME_WEIGHT = 3;
+    private static final int DESC_WEIGHT = 1;
+    private static final String UNIGRAM_PREFIX = "\u0001";
+
+    private final AgentRepository agentRepository;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final AtomicBoolean rebuilding = new AtomicBoolean();
+    private final List<Runnable> journal = new ArrayList<>();
+    private final ExecutorService rebuildExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "agent-search-rebuild");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final ThreadLocal<Scratch> scratch = ThreadLocal.withInitial(Scratch::new);
+    private final Timer searchTimer;
+
+    private volatile IndexState state = new IndexState();
+    private volatile boolean ready;
+
+    @Value("${app.agent.search.description-chars:200}")
+    private int descriptionChars;
+
+    @Value("${app.agent.search.fuzzy-ratio:0.6}")
+    private double fuzzyRatio;
+
+    @Value("${app.agent.search.max-window:1000}")
+    private int maxWindow;
+
+    @Value("${app.agent.search.rebuild-batch-size:2000}")
+    private int rebuildBatchSize;
+
+    @Value("${app.agent.search.tombstone-ratio:0.25}")
+    private double tombstoneRatio;
+
+    public AgentSearchIndex(AgentRepository agentRepository, MeterRegistry meterRegistry) {
+        this.agentRepository = agentRepository;
+        this.searchTimer = Timer.builder("agent.search.latency")
+                .description("索引内搜索耗时（不含按主键取回智能体）")
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
+        Gauge.builder("agent.search.documents", this, index -> index.state.liveDocuments())
+                .description("搜索索引中的智能体数")
+                .register(meterRegistry);
+    }
+
+    /**
+     * [函数: isReady]
+     * - 输入: 无
+     * - 输出: boolean - 首次构建是否完成
+     * - 角色: 未就绪时AgentService退回数据库查询
+     * - 逻辑: 1. 返回就绪标记
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * [函数: getMaxWindow]
+     * - 输入: 无
+     * - 输出: int - 可翻到的最大结果数（offset + size）
+     * - 角色: AgentService据此截断偏移量
+     * - 逻辑: 1. 返回app.agent.search.max-window
+     */
+    public int getMaxWindow() {
+        return maxWindow;
+    }
+
+    /**
+     * [函数: rebuildOnStartup]
+     * - 输入: 无
+     * - 输出: void
+     * - 角色: 应用启动后在后台从数据库构建索引
+     * - 逻辑: 1. 提交异步重建，不阻塞启动
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuildOnStartup() {
+        rebuildAsync();
+    }
+
+    /**
+     * [函数: rebuildAsync]
+     * - 输入: 无
+     * - 输出: boolean - 是否已提交（已有重建在进行时返回false）
+     * - 角色: 从数据库全量重建索引
+     * - 逻辑: 1. 同一时间只允许一次重建 2. 在后台线程执行rebuild
+     */
+    public boolean rebuildAsync() {
+        if (!rebuilding.compareAndSet(false, true)) {
+            return false;
+        }
+        rebuildExecutor.execute(this::rebuild);
+        return true;
+    }
+
+    private void rebuild() {
+        long start = System.nanoTime();
+        try {
+            IndexState next = new IndexState();
+            long afterId = 0L;
+            while (true) {
+                List<Agent> batch = agentRepository.selectActiveAfterId(afterId, rebuildBatchSize);
+                for (Agent agent : batch) {
+                    next.add(agent.getId(), agent.getName(), agent.getDescription(), usageOf(agent), descriptionChars);
+                }
+                if (batch.size() < rebuildBatchSize) {
+                    break;
+                }
+                afterId = batch.get(batch.size() - 1).getId();
+            }
+
+            lock.writeLock().lock();
+            try {
+                // 重建期间的增量变更先记入journal，切换后在新索引上重放
+                IndexState previous = state;
+                state = next;
+                for (Runnable change : journal) {
+                    change.run();
+                }
+                journal.clear();
+                ready = true;
+                logger.info("Agent search index rebuilt: {} agents in {} ms (previous {} live / {} slots)",
+                        next.liveDocuments(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start),
+                        previous.liveDocuments(), previous.docs.size());
+            } finally {
+                lock.writeLock().unlock();
+            }
+        } catch (Exception e) {
+            logger.error("Agent search index rebuild failed", e);
+            lock.writeLock().lock();
+            try {
+                journal.clear();
+            } finally {
+                lock.writeLock().unlock();
+            }
+        } finally {
+            rebuilding.set(false);
+        }
+    }
+
+    /**
+     * [函数: compactIfNeeded]
+     * - 输入: 无
+     * - 输出: void
+     * - 角色: 更新与删除只做标记，失效槽位过多时重建以回收内存
+     * - 逻辑: 1. 失效槽位比例超过tombstone-ratio时触发异步重建
+     */
+    @Scheduled(fixedDelayString = "${app.agent.search.compact-interval:600000}")
+    public void compactIfNeeded() {
+        IndexState current = state;
+        int slots = current.docs.size();
+        if (ready && slots > 0 && (slots - current.liveDocuments()) > slots * tombstoneRatio) {
+            rebuildAsync();
+        }
+    }
+
+    /**
+     * [函数: upsertAfterCommit]
+     * - 输入: Agent agent - 新建或更新后的智能体
+     * - 输出: void
+     * - 角色: 创建/更新智能体后的增量索引
+     * - 逻辑: 1. 处于事务中时等提交后再更新 2. 启用中的智能体重新索引，其他状态从索引移除
+     */
+    public void upsertAfterCommit(Agent agent) {
+        Long id = agent.getId();
+        String name = agent.getName();
+        String description = agent.getDescription();
+        long usage = usageOf(agent);
+        boolean active = "active".equals(agent.getStatus()) || agent.getStatus() == null;
+        afterCommit(() -> {
+            if (active) {
+                apply(() -> state.upsert(id, name, description, usage, descriptionChars));
+            } else {
+                apply(() -> state.remove(id));
+            }
+        });
+    }
+
+    /**
+     * [函数: removeAfterCommit]
+     * - 输入: Long agentId - 智能体ID
+     * - 输出: void
+     * - 角色: 删除（停用）智能体后从索引移除
+     * - 逻辑: 1. 事务提交后标记文档失效
+     */
+    public void removeAfterCommit(Long agentId) {
+        afterCommit(() -> apply(() -> state.remove(agentId)));
+    }
+
+    @Override
+    public void onAgentUsageFlushed(List<CounterDelta> deltas) {
+        // 使用次数是Doc上的volatile字段，读锁只用来保护ordinals查询不与写入并发
+        lock.readLock().lock();
+        try {
+            IndexState current = state;
+            for (CounterDelta delta : deltas) {
+                current.addUsage(delta.getId(), delta.getDelta());
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * [函数: search]
+     * - 输入: String keyword - 关键词; int offset - 跳过条数; int limit - 返回条数
+     * - 输出: SearchResult - 当前页的智能体ID（按得分降序）与命中总数
+     * - 角色: 智能体搜索
+     * - 逻辑: 1. 切分查询n-gram 2. 在读锁内遍历倒排表累加得分并统计命中的n-gram数
+     *         3. 过滤命中比例不足的文档 4. 以offset+limit大小的有界堆取Top-K 5. 截取当前页
+     */
+    public SearchResult search(String keyword, int offset, int limit) {
+        String query = normalize(keyword);
+        if (query.isEmpty() || limit <= 0 || offset < 0) {
+            return new SearchResult(Collections.emptyList(), 0);
+        }
+        List<String> grams = queryGrams(query);
+        int window = (int) Math.min((long) offset + limit, maxWindow);
+        if (offset >= window) {
+            return new SearchResult(Collections.emptyList(), 0);
+        }
+        int required = grams.size() <= 2 ? grams.size() : (int) Math.ceil(grams.size() * fuzzyRatio);
+
+        long start = System.nanoTime();
+        lock.readLock().lock();
+        try {
+            IndexState current = state;
+            Scratch s = scratch.get();
+            s.ensureCapacity(current.docs.size());
+            try {
+                for (int g = 0; g < grams.size(); g++) {
+                    String gram = grams.get(g);
+                    accumulate(s, current.nameIndex.get(gram), g, NAME_WEIGHT);
+                    accumulate(s, current.descIndex.get(gram), g, DESC_WEIGHT);
+                }
+
+                double maxWeight = (double) grams.size() * NAME_WEIGHT;
+                PriorityQueue<Hit> top = new PriorityQueue<>(window + 1);
+                int total = 0;
+                for (int i = 0; i < s.touchedCount; i++) {
+                    int ord = s.touched[i];
+                    Doc doc = current.docs.get(ord);
+                    if (doc == null || s.matched[ord] < required) {
+                        continue;
+                    }
+                    total++;
+                    double relevance = s.weights[ord] / maxWeight + nameBonus(doc.name, query);
+                    double score = relevance * Math.log(2 + Math.max(0L, doc.usage));
+                    if (top.size() < window) {
+                        top.add(new Hit(doc.id, score));
+                    } else if (score > top.peek().score) {
+                        top.poll();
+                        top.add(new Hit(doc.id, score));
+                    }
+                }
+
+                Hit[] ranked = top.toArray(new Hit[0]);
+                Arrays.sort(ranked, Collections.reverseOrder());
+                List<Long> ids = new ArrayList<>(Math.max(0, Math.min(limit, ranked.length - offset)));
+                for (int i = offset; i < ranked.length && ids.size() < limit; i++) {
+                    ids.add(ranked[i].id);
+                }
+                return new SearchResult(ids, total);
+            } finally {
+                s.reset();
+            }
+        } finally {
+            lock.readLock().unlock();
+            searchTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private static void accumulate(Scratch s, IntList postings, int gramIndex, int weight) {
+        if (postings == null) {
+            return;
+        }
+        int stamp = gramIndex + 1;
+        for (int i = 0; i < postings.size; i++) {
+            int ord = postings.values[i];
+            if (s.stamps[ord] == 0 && s.weights[ord] == 0) {
+                s.touched[s.touchedCount++] = ord;
+            }
+            if (s.stamps[ord] != stamp) {
+                s.stamps[ord] = stamp;
+                s.matched[ord]++;
+            }
+            s.weights[ord] += weight;
+        }
+    }
+
+    private static double nameBonus(String name, String query) {
+        if (name.equals(query)) {
+            return 1.0;
+        }
+        if (name.startsWith(query)) {
+            return 0.5;
+        }
+        return name.contains(query) ? 0.25 : 0.0;
+    }
+
+    private void apply(Runnable change) {
+        lock.writeLock().lock();
+        try {
+            change.run();
+            if (rebuilding.get()) {
+                journal.add(change);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    private static long usageOf(Agent agent) {
+        return agent.getUsageCount() == null ? 0L : agent.getUsageCount();
+    }
+
+    static String normalize(String text) {
+        if (text == null) {
+            return "";
+        }
+        return text.trim().toLowerCase(Locale.ROOT).replaceAll("\\s+", " ");
+    }
+
+    private static List<String> queryGrams(String query) {
+        if (query.length() == 1) {
+            return Collections.singletonList(UNIGRAM_PREFIX + query);
+        }
+        return new ArrayList<>(bigrams(query));
+    }
+
+    private static Set<String> bigrams(String text) {
+        Set<String> grams = new LinkedHashSet<>();
+        for (int i = 0; i + 2 <= text.length(); i++) {
+            grams.add(text.substring(i, i + 2));
+        }
+        return grams;
+    }
+
+    /**
+     * 单页搜索结果
+     */
+    public static class SearchResult {
+        private final List<Long> ids;
+        private final int total;
+
+        SearchResult(List<Long> ids, int total) {
+            this.ids = ids;
+            this.total = total;
+        }
+
+        public List<Long> getIds() {
+            return ids;
+        }
+
+        public int getTotal() {
+            return total;
+        }
+    }
+
+    /**
+     * 索引数据；读在读锁内，写在写锁内（使用次数为volatile单字段更新，无需写锁）
+     */
+    private static class IndexState {
+        private final Map<String, IntList> nameIndex = new HashMap<>();
+        private final Map<String, IntList> descIndex = new HashMap<>();
+        private final List<Doc> docs = new ArrayList<>();
+        private final Map<Long, Integer> ordinals = new HashMap<>();
+
+        void add(Long id, String name, String description, long usage, int descriptionChars) {
+            int ord = docs.size();
+            String normalizedName = normalize(name);
+            docs.add(new Doc(id, normalizedName, usage));
+            ordinals.put(id, ord);
+
+            Set<String> nameGrams = bigrams(normalizedName);
+            for (int i = 0; i < normalizedName.length(); i++) {
+                nameGrams.add(UNIGRAM_PREFIX + normalizedName.charAt(i));
+            }
+            for (String gram : nameGrams) {
+                nameIndex.computeIfAbsent(gram, key -> new IntList()).add(ord);
+            }
+
+            String normalizedDesc = normalize(description);
+            if (normalizedDesc.length() > descriptionChars) {
+                normalizedDesc = normalizedDesc.substring(0, descriptionChars);
+            }
+            for (String gram : bigrams(normalizedDesc)) {
+                descIndex.computeIfAbsent(gram, key -> new IntList()).add(ord);
+            }
+        }
+
+        void upsert(Long id, String name, String description, long usage, int descriptionChars) {
+            Integer previous = ordinals.get(id);
+            long keptUsage = usage;
+            if (previous != null) {
+                Doc old = docs.get(previous);
+                if (old != null) {
+                    keptUsage = Math.max(usage, old.usage);
+                }
+                docs.set(previous, null);
+            }
+            add(id, name, description, keptUsage, descriptionChars);
+        }
+
+        void remove(Long id) {
+            Integer ord = ordinals.remove(id);
+            if (ord != null) {
+                docs.set(ord, null);
+            }
+        }
+
+        void addUsage(Long id, long delta) {
+            Integer ord = ordinals.get(id);
+            if (ord != null) {
+                Doc doc = docs.get(ord);
+                if (doc != null) {
+                    doc.usage += delta;
+                }
+            }
+        }
+
+        int liveDocuments() {
+            return ordinals.size();
+        }
+    }
+
+    private static class Doc {
+        private final long id;
+        private final String name;
+        private volatile long usage;
+
+        Doc(long id, String name, long usage) {
+            this.id = id;
+            this.name = name;
+            this.usage = usage;
+        }
+    }
+
+    private static class Hit implements Comparable<Hit> {
+        private final long id;
+        private final double score;
+
+        Hit(long id, double score) {
+            this.id = id;
+            this.score = score;
+        }
+
+        @Override
+        public int compareTo(Hit other) {
+            return Double.compare(score, other.score);
+        }
+    }
+
+    /**
+     * 追加写的int列表，避免装箱
+     */
+    private static class IntList {
+        private int[] values = new int[4];
+        private int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+    }
+
+    /**
+     * 每个线程复用的得分累加数组，只重置本次查询触及的位置
+     */
+    private static class Scratch {
+        private double[] weights = new double[0];
+        private int[] stamps = new int[0];
+        private int[] matched = new int[0];
+        private int[] touched = new int[0];
+        private int touchedCount;
+
+        void ensureCapacity(int size) {
+            if (weights.length < size) {
+                int capacity = Math.max(size, weights.length * 2);
+                weights = new double[capacity];
+                stamps = new int[capacity];
+                matched = new int[capacity];
+                touched = new int[capacity];
+            }
+        }
+
+        void reset() {
+            for (int i = 0; i < touchedCount; i++) {
+                int ord = touched[i];
+                weights[ord] = 0;
+                stamps[ord] = 0;
+                matched[ord] = 0;
+            }
+            touchedCount = 0;
+        }
+    }
+}
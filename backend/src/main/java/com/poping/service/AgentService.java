@@ -3,8 +3,10 @@ package com.poping.service;
 import com.baomidou.mybatisplus.core.metadata.IPage;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.poping.dto.AgentCreateRequest;
+import com.poping.dto.CursorPage;
 import com.poping.entity.Agent;
 import com.poping.repository.AgentRepository;
+import com.poping.util.PageCursor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.BeanUtils;
@@ -14,7 +16,10 @@ import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
 import com.baomidou.mybatisplus.core.metadata.IPage;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * 智能体服务类
@@ -24,10 +29,17 @@ public class AgentService {
     
     private static final Logger logger = LoggerFactory.getLogger(AgentService.class);
     
+    private static final int MAX_CURSOR_PAGE_SIZE = 100;
+    
     private final AgentRepository agentRepository;
+    private final AgentSearchIndex searchIndex;
+    private final AgentCatalogCache catalogCache;
     
-    public AgentService(AgentRepository agentRepository) {
+    public AgentService(AgentRepository agentRepository, AgentSearchIndex searchIndex,
+                        AgentCatalogCache catalogCache) {
         this.agentRepository = agentRepository;
+        this.searchIndex = searchIndex;
+        this.catalogCache = catalogCache;
     }
     
     /**
@@ -42,6 +54,8 @@ public class AgentService {
         int result = agentRepository.insert(agent);
         if (result > 0) {
             logger.info("Created agent: {} by user: {}", agent.getName(), creatorId);
+            searchIndex.upsertAfterCommit(agent);
+            catalogCache.reloadAfterCommit();
             return agent;
         }
         
@@ -63,15 +77,80 @@ public class AgentService {
      * 分页获取公开智能体
      */
     public IPage<Agent> getPublicAgents(int page, int size) {
+        return getPublicCatalog(page, size).getPage();
+    }
+    
+    /**
+     * 分页获取公开智能体及其ETag
+     * 优先读取内存快照；快照未就绪或页超出缓存范围时查询数据库，此时ETag为null
+     */
+    public AgentCatalogCache.CatalogPage getPublicCatalog(int page, int size) {
+        AgentCatalogCache.CatalogPage cached = catalogCache.page(page, size);
+        if (cached != null) {
+            return cached;
+        }
         Page<Agent> pageParam = new Page<>(page, size);
-        return agentRepository.selectPublicAgents(pageParam);
+        return new AgentCatalogCache.CatalogPage(agentRepository.selectPublicAgents(pageParam), null);
     }
     
     /**
-     * 搜索智能体
+     * 游标分页获取公开智能体，按(usage_count, id)倒序，不执行COUNT
      */
-    public List<Agent> searchAgents(String keyword) {
-        return agentRepository.searchByName(keyword);
+    public CursorPage<Agent> getPublicAgentsByCursor(String cursor, int size) {
+        int limit = Math.max(1, Math.min(size, MAX_CURSOR_PAGE_SIZE));
+        String[] keys = PageCursor.decode(cursor, 2);
+        List<Agent> rows;
+        if (keys == null) {
+            rows = agentRepository.selectPublicAgentsAfter(null, null, limit + 1);
+        } else {
+            try {
+                rows = agentRepository.selectPublicAgentsAfter(Integer.valueOf(keys[0]), Long.valueOf(keys[1]), limit + 1);
+            } catch (NumberFormatException e) {
+                throw new RuntimeException("无效的分页游标");
+            }
+        }
+        return CursorPage.of(rows, limit, agent -> PageCursor.encode(
+                agent.getUsageCount() == null ? 0 : agent.getUsageCount(), agent.getId()));
+    }
+    
+    /**
+     * 公开智能体目录当前的ETag，快照未就绪时为null
+     */
+    public String getPublicCatalogETag() {
+        return catalogCache.etag();
+    }
+    
+    /**
+     * 搜索智能体（分页）
+     * 索引就绪后走内存倒排索引，只按主键取回当前页；启动构建期间退回数据库LIKE查询
+     * 每页条数与游标分页一样限制在MAX_CURSOR_PAGE_SIZE以内，偏移量按long计算并截断到可翻页窗口，页码过大时返回空页
+     */
+    public IPage<Agent> searchAgents(String keyword, int page, int size) {
+        size = Math.max(1, Math.min(size, MAX_CURSOR_PAGE_SIZE));
+        int offset = (int) Math.min((long) (Math.max(page, 1) - 1) * size, searchIndex.getMaxWindow());
+        if (!searchIndex.isReady()) {
+            List<Agent> matched = agentRepository.searchByName(keyword);
+            int end = Math.min(matched.size(), searchIndex.getMaxWindow());
+            int from = Math.min(offset, end);
+            int to = Math.min(from + size, end);
+            return new Page<Agent>(page, size, matched.size()).setRecords(matched.subList(from, to));
+        }
+        
+        AgentSearchIndex.SearchResult result = searchIndex.search(keyword, offset, size);
+        List<Agent> records = new ArrayList<>(result.getIds().size());
+        if (!result.getIds().isEmpty()) {
+            Map<Long, Agent> byId = new HashMap<>();
+            for (Agent agent : agentRepository.selectBatchIds(result.getIds())) {
+                byId.put(agent.getId(), agent);
+            }
+            for (Long id : result.getIds()) {
+                Agent agent = byId.get(id);
+                if (agent != null && "active".equals(agent.getStatus())) {
+                    records.add(agent);
+                }
+            }
+        }
+        return new Page<Agent>(page, size, result.getTotal()).setRecords(records);
     }
     
     /**
@@ -90,6 +169,10 @@ public class AgentService {
      * 获取热门智能体
      */
     public List<Agent> getPopularAgents(int limit) {
+        List<Agent> cached = catalogCache.popular(limit);
+        if (cached != null) {
+            return cached;
+        }
         return agentRepository.selectPopularAgents(limit);
     }
     
@@ -112,6 +195,8 @@ public class AgentService {
         int result = agentRepository.updateById(agent);
         if (result > 0) {
             logger.info("Updated agent: {} by user: {}", agent.getName(), userId);
+            searchIndex.upsertAfterCommit(agent);
+            catalogCache.reloadAfterCommit();
             return agent;
         }
         
@@ -137,6 +222,8 @@ public class AgentService {
         
         if (result > 0) {
             logger.info("Deleted agent: {} by user: {}", agent.getName(), userId);
+            searchIndex.removeAfterCommit(id);
+            catalogCache.reloadAfterCommit();
             return true;
         }
         
@@ -0,0 +1,24 @@
+package com.poping.service;
+
+import com.poping.dto.CounterDelta;
+
+import java.util.List;
+
+/**
+ * [文件概览]
+ * - 目的: 智能体使用次数增量的订阅接口
+ * - 数据流: ChatCounterWriteBehind批量写回成功 → onAgentUsageFlushed(增量) → 各内存结构更新热度
+ * - 核心数据: 每个智能体本周期的使用次数增量
+ * - 关系: 由搜索索引、排行榜等需要跟随usage_count变化的内存结构实现，无需再查询数据库
+ */
+public interface AgentUsageListener {
+
+    /**
+     * [函数: onAgentUsageFlushed]
+     * - 输入: List<CounterDelta> deltas - 已写回数据库的使用次数增量
+     * - 输出: void
+     * - 角色: 接收使用次数变化
+     * - 逻辑: 1. 在写回线程上调用，实现需快速返回且不抛出异常
+     */
+    void onAgentUsageFlushed(List<CounterDelta> deltas);
+}
@@ -0,0 +1,286 @@
+package com.poping.service;
+
+import com.poping.dto.CounterDelta;
+import com.poping.repository.AgentRepository;
+import com.poping.repository.SessionRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * [文件概览]
+ * - 目的: 会话/智能体热点计数的写回（write-behind）聚合器
+ * - 数据流: ChatService → record*() → 内存增量 → 定时/达到阈值 → 批量多行UPDATE
+ * - 核心数据: 会话消息数增量、会话最后活动时间、智能体使用次数增量
+ * - 关系: 替代每轮对话中的incrementMessageCount/updateLastActivity/incrementUsageCount，
+ *         避免热门智能体在agent_configs单行上的行锁竞争；智能体增量写回成功后通知AgentUsageListener
+ */
+@Service
+public class ChatCounterWriteBehind {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChatCounterWriteBehind.class);
+
+    private final SessionRepository sessionRepository;
+    private final AgentRepository agentRepository;
+    private final ObjectProvider<AgentUsageListener> usageListeners;
+
+    /**
+     * ConcurrentHashMap按桶分段加锁，merge/remove对单个键原子，保证刷新时不丢增量
+     */
+    private final Map<Long, Long> sessionMessageDeltas = new ConcurrentHashMap<>();
+    private final Map<Long, LocalDateTime> sessionActivity = new ConcurrentHashMap<>();
+    private final Map<Long, Long> agentUsageDeltas = new ConcurrentHashMap<>();
+
+    /**
+     * 智能体增量从写入数据库到通知监听器期间持有，readBetweenAgentFlushes借此排除"已落库但未通知"的中间状态
+     */
+    private final Object agentFlushLock = new Object();
+
+    private final AtomicLong pendingEvents = new AtomicLong();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private final ExecutorService flushExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "chat-counter-flush");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Counter flushedRows;
+    private final Counter flushFailures;
+
+    @Value("${app.chat.counters.flush-threshold:1000}")
+    private long flushThreshold;
+
+    @Value("${app.chat.counters.batch-size:500}")
+    private int batchSize;
+
+    public ChatCounterWriteBehind(SessionRepository sessionRepository, AgentRepository agentRepository,
+                                  ObjectProvider<AgentUsageListener> usageListeners,
+                                  MeterRegistry meterRegistry) {
+        this.sessionRepository = sessionRepository;
+        this.agentRepository = agentRepository;
+        this.usageListeners = usageListeners;
+        Gauge.builder("chat.counters.pending", this, ChatCounterWriteBehind::pendingRows)
+                .description("等待写回的计数行数")
+                .register(meterRegistry);
+        this.flushedRows = Counter.builder("chat.counters.flushed")
+                .description("已写回的计数行数")
+                .register(meterRegistry);
+        this.flushFailures = Counter.builder("chat.counters.flush.failures")
+                .description("写回失败次数")
+                .register(meterRegistry);
+    }
+
+    /**
+     * [函数: recordMessage]
+     * - 输入: Long sessionId - 会话ID
+     * - 输出: void
+     * - 角色: 记录会话新增一条消息
+     * - 逻辑: 1. 累加内存增量 2. 达到阈值时触发异步刷新
+     */
+    public void recordMessage(Long sessionId) {
+        sessionMessageDeltas.merge(sessionId, 1L, Long::sum);
+        onEvent();
+    }
+
+    /**
+     * [函数: recordActivity]
+     * - 输入: Long sessionId, LocalDateTime time - 会话ID和活动时间
+     * - 输出: void
+     * - 角色: 记录会话最后活动时间，同一周期内只保留最新值
+     * - 逻辑: 1. 取较大时间合并 2. 达到阈值时触发异步刷新
+     */
+    public void recordActivity(Long sessionId, LocalDateTime time) {
+        sessionActivity.merge(sessionId, time, (a, b) -> a.isAfter(b) ? a : b);
+        onEvent();
+    }
+
+    /**
+     * [函数: recordAgentUsage]
+     * - 输入: Long agentId - 智能体ID
+     * - 输出: void
+     * - 角色: 记录智能体被使用一次
+     * - 逻辑: 1. 累加内存增量 2. 达到阈值时触发异步刷新
+     */
+    public void recordAgentUsage(Long agentId) {
+        agentUsageDeltas.merge(agentId, 1L, Long::sum);
+        onEvent();
+    }
+
+    /**
+     * [函数: pendingRows]
+     * - 输入: 无
+     * - 输出: double - 待写回的行数
+     * - 角色: 监控指标chat.counters.pending的取值
+     * - 逻辑: 1. 统计会话与智能体增量表中的键数
+     */
+    public double pendingRows() {
+        Set<Long> sessions = new HashSet<>(sessionMessageDeltas.keySet());
+        sessions.addAll(sessionActivity.keySet());
+        return sessions.size() + agentUsageDeltas.size();
+    }
+
+    private void onEvent() {
+        if (pendingEvents.incrementAndGet() >= flushThreshold && flushScheduled.compareAndSet(false, true)) {
+            try {
+                flushExecutor.execute(() -> {
+                    try {
+                        flush();
+                    } finally {
+                        flushScheduled.set(false);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                flushScheduled.set(false);
+            }
+        }
+    }
+
+    /**
+     * [函数: flush]
+     * - 输入: 无
+     * - 输出: void
+     * - 角色: 将累计的增量批量写回数据库
+     * - 逻辑: 1. 逐键原子摘取增量 2. 按批次执行多行UPDATE 3. 失败时将增量合并回内存等待下次重试
+     */
+    @Scheduled(fixedDelayString = "${app.chat.counters.flush-interval:1000}")
+    public synchronized void flush() {
+        pendingEvents.set(0);
+        flushSessions();
+        flushAgents();
+    }
+
+    private void flushSessions() {
+        Set<Long> sessionIds = new HashSet<>(sessionMessageDeltas.keySet());
+        sessionIds.addAll(sessionActivity.keySet());
+        if (sessionIds.isEmpty()) {
+            return;
+        }
+
+        List<CounterDelta> deltas = new ArrayList<>(sessionIds.size());
+        for (Long sessionId : sessionIds) {
+            Long delta = sessionMessageDeltas.remove(sessionId);
+            LocalDateTime activity = sessionActivity.remove(sessionId);
+            if (delta != null || activity != null) {
+                deltas.add(new CounterDelta(sessionId, delta == null ? 0L : delta, activity));
+            }
+        }
+
+        for (List<CounterDelta> batch : partition(deltas)) {
+            try {
+                sessionRepository.batchApplyCounters(batch);
+                flushedRows.increment(batch.size());
+            } catch (RuntimeException e) {
+                flushFailures.increment();
+                logger.error("Failed to flush {} session counters, will retry", batch.size(), e);
+                for (CounterDelta delta : batch) {
+                    if (delta.getDelta() > 0) {
+                        sessionMessageDeltas.merge(delta.getId(), delta.getDelta(), Long::sum);
+                    }
+                    if (delta.getLastActivity() != null) {
+                        recordActivityQuietly(delta.getId(), delta.getLastActivity());
+                    }
+                }
+            }
+        }
+    }
+
+    private void flushAgents() {
+        if (agentUsageDeltas.isEmpty()) {
+            return;
+        }
+
+        List<CounterDelta> deltas = new ArrayList<>();
+        for (Long agentId : new ArrayList<>(agentUsageDeltas.keySet())) {
+            Long delta = agentUsageDeltas.remove(agentId);
+            if (delta != null) {
+                deltas.add(new CounterDelta(agentId, delta, null));
+            }
+        }
+
+        for (List<CounterDelta> batch : partition(deltas)) {
+            try {
+                synchronized (agentFlushLock) {
+                    agentRepository.batchIncrementUsageCount(batch);
+                    flushedRows.increment(batch.size());
+                    notifyUsageListeners(batch);
+                }
+            } catch (RuntimeException e) {
+                flushFailures.increment();
+                logger.error("Failed to flush {} agent usage counters, will retry", batch.size(), e);
+                for (CounterDelta delta : batch) {
+                    agentUsageDeltas.merge(delta.getId(), delta.getDelta(), Long::sum);
+                }
+            }
+        }
+    }
+
+    /**
+     * [函数: readBetweenAgentFlushes]
+     * - 输入: Supplier<T> reader - 读取usage_count的操作
+     * - 输出: T - reader的结果
+     * - 角色: 让监听器的全量重读与本节点的增量通知对齐
+     * - 逻辑: 1. 与智能体增量的"写库+通知"互斥执行reader：reader执行期间不会有批次已写入数据库而尚未通知，
+     *            此前通知过的增量都已包含在reader读到的数据里，之后通知的都不包含
+     */
+    public <T> T readBetweenAgentFlushes(Supplier<T> reader) {
+        synchronized (agentFlushLock) {
+            return reader.get();
+        }
+    }
+
+    private void notifyUsageListeners(List<CounterDelta> batch) {
+        usageListeners.orderedStream().forEach(listener -> {
+            try {
+                listener.onAgentUsageFlushed(batch);
+            } catch (RuntimeException e) {
+                logger.warn("Agent usage listener {} failed", listener.getClass().getSimpleName(), e);
+            }
+        });
+    }
+
+    private void recordActivityQuietly(Long sessionId, LocalDateTime time) {
+        sessionActivity.merge(sessionId, time, (a, b) -> a.isAfter(b) ? a : b);
+    }
+
+    private List<List<CounterDelta>> partition(List<CounterDelta> deltas) {
+        List<List<CounterDelta>> batches = new ArrayList<>();
+        for (int i = 0; i < deltas.size(); i += batchSize) {
+            batches.add(deltas.subList(i, Math.min(i + batchSize, deltas.size())));
+        }
+        return batches;
+    }
+
+    /**
+     * [函数: shutdown]
+     * - 输入: 无
+     * - 输出: void
+     * - 角色: 应用关闭时写回剩余增量
+     * - 逻辑: 1. 停止异步刷新线程 2. 同步执行最后一次刷新
+     */
+    @PreDestroy
+    public void shutdown() {
+        flushExecutor.shutdown();
+        flush();
+        logger.info("Chat counters flushed on shutdown");
+    }
+}
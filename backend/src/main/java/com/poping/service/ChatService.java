@@ -2,129 +2,392 @@ package com.poping.service;
 
 import com.baomidou.mybatisplus.core.metadata.IPage;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
+import com.poping.dto.ChatCompletionMessage;
 import com.poping.dto.ChatRequest;
+import com.poping.dto.CursorPage;
 import com.poping.entity.Agent;
 import com.poping.entity.Message;
 import com.poping.entity.Session;
+import com.poping.exception.ExternalServiceException;
 import com.poping.repository.MessageRepository;
 import com.poping.repository.SessionRepository;
+import com.poping.util.PageCursor;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.io.IOException;
 import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 /**
  * 聊天服务类
+ *
+ * 一轮对话拆分为三个阶段，数据库事务只覆盖本地读写，远程模型调用期间不占用数据库连接：
+ * 1. beginTurn: 获取/创建会话，保存用户消息（单条自动提交INSERT）
+ * 2. 调用AIGents，或请求指定provider时经ProviderRouter直连用户配置的供应商（无事务）
+ * 3. completeTurn: 保存AI响应（单条自动提交INSERT），会话与智能体计数交给ChatCounterWriteBehind批量写回
+ * 模型调用或第三阶段失败时执行failTurn补偿，将用户消息标记为失败，便于前端重试
  */
 @Service
 public class ChatService {
     
     private static final Logger logger = LoggerFactory.getLogger(ChatService.class);
     
+    private static final int MAX_CURSOR_PAGE_SIZE = 100;
+    
     private final AIGentsService aiGentsService;
+    private final AIGentsSessionPool aiGentsSessionPool;
     private final AgentService agentService;
     private final SessionRepository sessionRepository;
     private final MessageRepository messageRepository;
+    private final MessageSequenceAllocator sequenceAllocator;
+    private final ChatCounterWriteBehind chatCounters;
+    private final ConversationHistoryCache historyCache;
+    private final SessionMetadataCache sessionCache;
+    private final ProviderRouter providerRouter;
+    private final TaskExecutor chatStreamExecutor;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectMapper objectMapper;
+    private final Timer timeToFirstTokenTimer;
+    private final Timer streamDurationTimer;
+    
+    @Value("${app.provider.routing.context-messages:20}")
+    private int routedContextMessages;
     
-    public ChatService(AIGentsService aiGentsService, AgentService agentService,
-                      SessionRepository sessionRepository, MessageRepository messageRepository) {
+    public ChatService(AIGentsService aiGentsService, AIGentsSessionPool aiGentsSessionPool,
+                      AgentService agentService,
+                      SessionRepository sessionRepository, MessageRepository messageRepository,
+                      MessageSequenceAllocator sequenceAllocator, ChatCounterWriteBehind chatCounters,
+                      ConversationHistoryCache historyCache, SessionMetadataCache sessionCache,
+                      ProviderRouter providerRouter,
+                      @Qualifier("chatStreamExecutor") TaskExecutor chatStreamExecutor,
+                      PlatformTransactionManager transactionManager, ObjectMapper objectMapper,
+                      MeterRegistry meterRegistry) {
         this.aiGentsService = aiGentsService;
+        this.aiGentsSessionPool = aiGentsSessionPool;
         this.agentService = agentService;
         this.sessionRepository = sessionRepository;
         this.messageRepository = messageRepository;
+        this.sequenceAllocator = sequenceAllocator;
+        this.chatCounters = chatCounters;
+        this.historyCache = historyCache;
+        this.sessionCache = sessionCache;
+        this.providerRouter = providerRouter;
+        this.chatStreamExecutor = chatStreamExecutor;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.objectMapper = objectMapper;
+        this.timeToFirstTokenTimer = Timer.builder("chat.stream.ttft")
+                .description("流式聊天首个token延迟")
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry);
+        this.streamDurationTimer = Timer.builder("chat.stream.duration")
+                .description("流式聊天完整响应耗时")
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry);
     }
     
     /**
      * 发送聊天消息
      */
-    @Transactional
     public Map<String, Object> sendMessage(ChatRequest request, Long userId) {
+        ChatTurn turn = null;
         try {
-            // 获取智能体信息
-            Agent agent = agentService.getAgentById(request.getAgentId());
-            
-            // 获取或创建会话
-            Session session = getOrCreateSession(request.getSessionId(), userId, agent);
-            
-            // 保存用户消息
-            Message userMessage = saveMessage(session.getId(), "user", request.getMessage());
-            
-            // 调用AIGents服务
-            String aiResponse = aiGentsService.sendQuery(
-                session.getAigentsSessionId(), 
-                request.getMessage(), 
-                request.getContext()
-            );
-            
-            // 保存AI响应
-            Message aiMessage = saveMessage(session.getId(), "assistant", aiResponse);
+            // 阶段1：获取或创建会话并保存用户消息
+            turn = beginTurn(request, userId);
             
-            // 更新会话信息
-            updateSessionActivity(session.getId());
+            // 阶段2：调用AIGents服务或直连供应商，不持有数据库连接
+            String aiResponse;
+            ProviderRouter.Completion completion = null;
+            if (request.getProvider() != null) {
+                completion = providerRouter.complete(String.valueOf(userId), request.getProvider(),
+                        request.getModel(), buildRoutedContext(turn.getSession().getId()));
+                aiResponse = completion.getContent();
+            } else {
+                aiResponse = aiGentsService.query(
+                    turn.getSession().getAigentsSessionId(), 
+                    request.getMessage(), 
+                    request.getContext()
+                );
+            }
             
-            // 增加智能体使用次数
-            agentService.incrementUsageCount(agent.getId());
+            // 阶段3：保存AI响应并更新计数
+            Message aiMessage = completeTurn(turn, aiResponse);
             
             // 构建响应
             Map<String, Object> response = new HashMap<>();
-            response.put("sessionId", session.getId());
+            response.put("sessionId", turn.getSession().getId());
             response.put("response", aiResponse);
+            if (completion != null) {
+                response.put("provider", completion.getProvider());
+                response.put("model", completion.getModel());
+            }
             response.put("status", "success");
-            response.put("userMessageId", userMessage.getId());
+            response.put("userMessageId", turn.getUserMessage().getId());
             response.put("aiMessageId", aiMessage.getId());
             
             return response;
             
         } catch (Exception e) {
             logger.error("Error sending chat message", e);
+            failTurn(turn, e);
             
             Map<String, Object> errorResponse = new HashMap<>();
             errorResponse.put("status", "error");
             errorResponse.put("message", "发送消息失败: " + e.getMessage());
+            putErrorCode(errorResponse, e);
+            if (turn != null) {
+                errorResponse.put("sessionId", turn.getSession().getId());
+                errorResponse.put("userMessageId", turn.getUserMessage().getId());
+            }
             return errorResponse;
         }
     }
     
     /**
-     * 获取或创建会话
+     * 流式发送聊天消息
+     * 请求线程只负责创建SseEmitter，模型token流在chatStreamExecutor中转发给客户端，
+     * 完整回答在流结束时一次性保存为assistant消息
      */
-    private Session getOrCreateSession(Long sessionId, Long userId, Agent agent) {
-        Session session;
+    public void streamMessage(ChatRequest request, Long userId, SseEmitter emitter) {
+        try {
+            chatStreamExecutor.execute(() -> doStreamMessage(request, userId, emitter));
+        } catch (TaskRejectedException e) {
+            logger.warn("Chat stream rejected, executor saturated");
+            sendErrorEvent(emitter, "服务繁忙，请稍后再试",
+                    new ExternalServiceException("chat-stream", ExternalServiceException.OVERLOADED, e.getMessage()));
+        }
+    }
+    
+    private void doStreamMessage(ChatRequest request, Long userId, SseEmitter emitter) {
+        long startNanos = System.nanoTime();
+        StreamState state = new StreamState(emitter);
+        ChatTurn turn = null;
+        try {
+            // 阶段1：获取或创建会话并保存用户消息
+            turn = beginTurn(request, userId);
+            Session session = turn.getSession();
+            
+            Map<String, Object> started = new HashMap<>();
+            started.put("sessionId", session.getId());
+            started.put("userMessageId", turn.getUserMessage().getId());
+            state.send("session", started);
+            
+            // 阶段2：转发AIGents的token流，不持有数据库连接
+            String aiResponse = aiGentsService.streamQuery(
+                session.getAigentsSessionId(),
+                request.getMessage(),
+                request.getContext(),
+                delta -> {
+                    if (state.firstTokenNanos == 0L) {
+                        state.firstTokenNanos = System.nanoTime();
+                        timeToFirstTokenTimer.record(state.firstTokenNanos - startNanos, TimeUnit.NANOSECONDS);
+                    }
+                    Map<String, Object> chunk = new HashMap<>();
+                    chunk.put("content", delta);
+                    state.send("delta", chunk);
+                }
+            );
+            
+            // 阶段3：保存AI响应并更新计数
+            Message aiMessage = completeTurn(turn, aiResponse);
+            
+            long endNanos = System.nanoTime();
+            streamDurationTimer.record(endNanos - startNanos, TimeUnit.NANOSECONDS);
+            
+            Map<String, Object> done = new HashMap<>();
+            done.put("sessionId", session.getId());
+            done.put("aiMessageId", aiMessage.getId());
+            done.put("ttftMs", state.firstTokenNanos == 0L ? null
+                    : TimeUnit.NANOSECONDS.toMillis(state.firstTokenNanos - startNanos));
+            done.put("durationMs", TimeUnit.NANOSECONDS.toMillis(endNanos - startNanos));
+            state.send("done", done);
+            
+            if (!state.clientGone) {
+                emitter.complete();
+            }
+            
+        } catch (Exception e) {
+            logger.error("Error streaming chat message", e);
+            failTurn(turn, e);
+            if (!state.clientGone) {
+                sendErrorEvent(emitter, "发送消息失败: " + e.getMessage(), e);
+            }
+        }
+    }
+    
+    private void sendErrorEvent(SseEmitter emitter, String message, Exception cause) {
+        try {
+            Map<String, Object> error = new HashMap<>();
+            error.put("status", "error");
+            error.put("message", message);
+            putErrorCode(error, cause);
+            emitter.send(SseEmitter.event().name("error").data(error));
+            emitter.complete();
+        } catch (IOException | IllegalStateException e) {
+            emitter.completeWithError(e);
+        }
+    }
+    
+    /**
+     * 外部服务快速失败（熔断/过载/超时）时附带错误码，前端据此提示稍后重试
+     */
+    private void putErrorCode(Map<String, Object> error, Exception cause) {
+        if (cause instanceof ExternalServiceException) {
+            error.put("code", ((ExternalServiceException) cause).getCode());
+        }
+    }
+    
+    /**
+     * 单次流式对话的转发状态
+     * 客户端断开后继续消费模型输出，保证完整回答仍能落库
+     */
+    private static class StreamState {
+        private final SseEmitter emitter;
+        private long firstTokenNanos;
+        private boolean clientGone;
+        
+        StreamState(SseEmitter emitter) {
+            this.emitter = emitter;
+        }
+        
+        void send(String event, Object data) {
+            if (clientGone) {
+                return;
+            }
+            try {
+                emitter.send(SseEmitter.event().name(event).data(data));
+            } catch (IOException | IllegalStateException e) {
+                clientGone = true;
+                logger.debug("Chat stream client disconnected: {}", e.getMessage());
+            }
+        }
+    }
+    
+    /**
+     * 阶段1：开始一轮对话
+     * 获取或创建会话并保存用户消息；指定provider的新会话只写本地记录，不领取或创建AIGents会话
+     */
+    public ChatTurn beginTurn(ChatRequest request, Long userId) {
+        // 获取智能体信息
+        Agent agent = agentService.getAgentById(request.getAgentId());
         
-        if (sessionId != null) {
-            // 使用现有会话
-            session = sessionRepository.selectById(sessionId);
-            if (session == null || !session.getUserId().equals(userId)) {
-                throw new RuntimeException("会话不存在或无权限访问");
+        // 获取或创建会话；直连供应商的对话不需要AIGents会话
+        Session session;
+        if (request.getSessionId() != null) {
+            session = getOwnedSession(request.getSessionId(), userId);
+            if (request.getProvider() == null && session.getAigentsSessionId() == null) {
+                throw new RuntimeException("该会话为供应商直连会话，请继续指定provider");
             }
+        } else if (request.getProvider() != null) {
+            session = persistSession(userId, agent, null);
         } else {
-            // 创建新会话
             session = createNewSession(userId, agent);
         }
         
-        return session;
+        return openTurn(agent, session, request.getMessage());
+    }
+    
+    /**
+     * 阶段1后半段：在已确定的会话中保存用户消息
+     * 与beginTurn拆开，便于响应式链路在远程会话创建后再执行本地写入
+     */
+    public ChatTurn openTurn(Agent agent, Session session, String content) {
+        Message userMessage = saveMessage(session.getId(), "user", content);
+        chatCounters.recordMessage(session.getId());
+        
+        return new ChatTurn(agent, session, userMessage);
+    }
+    
+    /**
+     * 阶段3：完成一轮对话
+     * 保存AI响应后记录会话消息数、活动时间与智能体使用次数的增量，由写回聚合器批量落库
+     */
+    public Message completeTurn(ChatTurn turn, String aiResponse) {
+        Long sessionId = turn.getSession().getId();
+        Message aiMessage = saveMessage(sessionId, "assistant", aiResponse);
+        
+        chatCounters.recordMessage(sessionId);
+        chatCounters.recordActivity(sessionId, LocalDateTime.now());
+        chatCounters.recordAgentUsage(turn.getAgent().getId());
+        return aiMessage;
+    }
+    
+    /**
+     * 补偿：一轮对话失败
+     * 将已保存的用户消息标记为失败，补偿本身出错只记录日志，不覆盖原始异常
+     */
+    public void failTurn(ChatTurn turn, Exception cause) {
+        if (turn == null || turn.getUserMessage() == null) {
+            return;
+        }
+        try {
+            Map<String, Object> metadata = new HashMap<>();
+            metadata.put("status", "failed");
+            metadata.put("error", cause.getMessage());
+            
+            Message update = new Message();
+            update.setId(turn.getUserMessage().getId());
+            update.setMetadata(objectMapper.writeValueAsString(metadata));
+            messageRepository.updateById(update);
+            historyCache.updateMetadata(turn.getSession().getId(), update.getId(), update.getMetadata());
+        } catch (JsonProcessingException | RuntimeException e) {
+            logger.error("Failed to compensate chat turn for message: {}", turn.getUserMessage().getId(), e);
+        }
+    }
+    
+    /**
+     * 获取当前用户拥有的会话
+     * 归属校验走会话元数据缓存；返回的Session只含id、归属、状态与aigentsSessionId，完整记录使用getSessionDetail
+     */
+    public Session getOwnedSession(Long sessionId, Long userId) {
+        return sessionCache.getOwned(sessionId, userId).toSession();
     }
     
     /**
      * 创建新会话
+     * 优先从预热会话池领取远程AIGents会话（开启时，AIGents侧元数据为池的通用值），未命中时按真实用户与智能体名同步创建；
+     * 本地写入失败时删除远程会话作为补偿
      */
-    @Transactional
     public Session createNewSession(Long userId, Agent agent) {
-        // 创建AIGents会话
-        String aigentsSessionId = aiGentsService.createSession(
-            userId.toString(), 
-            "Chat with " + agent.getName()
-        );
+        // 领取或创建AIGents会话
+        String aigentsSessionId = aiGentsSessionPool.claim(AIGentsService.DEFAULT_SYSTEM_PROMPT);
+        if (aigentsSessionId == null) {
+            aigentsSessionId = aiGentsService.createSession(
+                userId.toString(), 
+                "Chat with " + agent.getName()
+            );
+        }
         
         if (aigentsSessionId == null) {
             throw new RuntimeException("创建AIGents会话失败");
         }
         
+        return persistSession(userId, agent, aigentsSessionId);
+    }
+    
+    /**
+     * 为已创建的AIGents会话写入本地会话记录，aigentsSessionId为空时为供应商直连会话
+     * 本地写入失败时删除远程会话作为补偿
+     */
+    public Session persistSession(Long userId, Agent agent, String aigentsSessionId) {
         // 创建本地会话记录
         Session session = new Session();
         session.setAigentsSessionId(aigentsSessionId);
@@ -132,42 +395,45 @@ public class ChatService {
         session.setUserId(userId);
         session.setAgentId(agent.getId());
         
-        int result = sessionRepository.insert(session);
-        if (result > 0) {
-            logger.info("Created new session for user: {} with agent: {}", userId, agent.getName());
-            return session;
+        try {
+            int result = sessionRepository.insert(session);
+            if (result > 0) {
+                logger.info("Created new session for user: {} with agent: {}", userId, agent.getName());
+                sessionCache.put(session);
+                return session;
+            }
+        } catch (RuntimeException e) {
+            deleteRemoteSession(aigentsSessionId);
+            throw e;
         }
         
+        deleteRemoteSession(aigentsSessionId);
         throw new RuntimeException("创建会话失败");
     }
     
+    private void deleteRemoteSession(String aigentsSessionId) {
+        if (aigentsSessionId != null) {
+            aiGentsService.deleteSession(aigentsSessionId);
+        }
+    }
+    
     /**
      * 保存消息
+     * 序号由MessageSequenceAllocator分配，插入前不再查询MAX(sequence_number)；落库后追加到会话历史缓存
      */
     private Message saveMessage(Long sessionId, String type, String content) {
-        Integer maxSequence = messageRepository.getMaxSequenceNumber(sessionId);
-        int nextSequence = (maxSequence == null ? 0 : maxSequence) + 1;
-        
         Message message = new Message(sessionId, type, content);
-        message.setSequenceNumber(nextSequence);
+        message.setSequenceNumber(sequenceAllocator.next(sessionId));
         
         int result = messageRepository.insert(message);
         if (result > 0) {
-            // 更新会话消息数量
-            sessionRepository.incrementMessageCount(sessionId);
+            historyCache.append(message);
             return message;
         }
         
         throw new RuntimeException("保存消息失败");
     }
     
-    /**
-     * 更新会话活动时间
-     */
-    private void updateSessionActivity(Long sessionId) {
-        sessionRepository.updateLastActivity(sessionId, LocalDateTime.now());
-    }
-    
     /**
      * 获取用户会话列表
      */
@@ -181,36 +447,135 @@ public class ChatService {
      */
     public IPage<Message> getSessionMessages(Long sessionId, Long userId, int page, int size) {
         // 验证会话权限
-        Session session = sessionRepository.selectById(sessionId);
-        if (session == null || !session.getUserId().equals(userId)) {
-            throw new RuntimeException("会话不存在或无权限访问");
+        sessionCache.getOwned(sessionId, userId);
+        
+        // 短会话的全部消息都在历史缓存中时直接切片，不查库也不COUNT
+        List<Message> cached = historyCache.all(sessionId);
+        if (cached != null) {
+            int from = (int) Math.min((long) Math.max(page - 1, 0) * size, cached.size());
+            int to = Math.min(from + size, cached.size());
+            return new Page<Message>(page, size, cached.size()).setRecords(new ArrayList<>(cached.subList(from, to)));
         }
         
         Page<Message> pageParam = new Page<>(page, size);
         return messageRepository.selectBySessionId(pageParam, sessionId);
     }
     
+    /**
+     * 游标分页获取用户会话列表，按(last_activity, id)倒序，不执行COUNT
+     */
+    public CursorPage<Session> getUserSessionsByCursor(Long userId, String cursor, int size) {
+        int limit = clampCursorPageSize(size);
+        String[] keys = PageCursor.decode(cursor, 2);
+        List<Session> rows = keys == null
+                ? sessionRepository.selectByUserIdAfter(userId, null, null, limit + 1)
+                : sessionRepository.selectByUserIdAfter(userId, parseTime(keys[0]), parseLong(keys[1]), limit + 1);
+        return CursorPage.of(rows, limit,
+                session -> PageCursor.encode(session.getLastActivity(), session.getId()));
+    }
+    
+    /**
+     * 游标分页获取会话消息，每页按序号正序返回
+     * 默认从最新消息开始，nextCursor作为before继续加载更早的消息；传after时加载该序号之后的新消息
+     */
+    public CursorPage<Message> getSessionMessagesByCursor(Long sessionId, Long userId, String before, String after,
+                                                          int size) {
+        sessionCache.getOwned(sessionId, userId);
+        
+        int limit = clampCursorPageSize(size);
+        String[] afterKeys = PageCursor.decode(after, 1);
+        if (afterKeys != null) {
+            List<Message> newer = messageRepository.selectNewerMessages(sessionId, parseInt(afterKeys[0]), limit + 1);
+            return CursorPage.of(newer, limit, message -> PageCursor.encode(message.getSequenceNumber()));
+        }
+        
+        String[] beforeKeys = PageCursor.decode(before, 1);
+        Integer beforeSequence = beforeKeys == null ? null : parseInt(beforeKeys[0]);
+        // 活跃会话的最近消息优先从历史缓存读取，缓存无法完整回答时查库
+        List<Message> older = historyCache.before(sessionId, beforeSequence, limit + 1);
+        if (older != null) {
+            Collections.reverse(older);
+        } else {
+            older = messageRepository.selectOlderMessages(sessionId, beforeSequence, limit + 1);
+        }
+        CursorPage<Message> page = CursorPage.of(older, limit, message -> PageCursor.encode(message.getSequenceNumber()));
+        // 按序号倒序分页，展示顺序翻转为正序；游标仍是本页最早一条的序号
+        List<Message> ascending = new ArrayList<>(page.getRecords());
+        Collections.reverse(ascending);
+        return new CursorPage<>(ascending, page.getNextCursor(), page.isHasMore());
+    }
+    
+    /**
+     * 获取会话最近的消息（按序号升序），用于组装模型上下文
+     * 活跃会话由历史缓存提供，不读数据库
+     */
+    public List<Message> getRecentHistory(Long sessionId, int limit) {
+        return historyCache.recent(sessionId, limit);
+    }
+    
+    /**
+     * 直连供应商时由本地历史组装上下文，最后一条是刚保存的用户消息
+     */
+    private List<ChatCompletionMessage> buildRoutedContext(Long sessionId) {
+        List<Message> history = getRecentHistory(sessionId, routedContextMessages);
+        List<ChatCompletionMessage> messages = new ArrayList<>(history.size() + 1);
+        messages.add(new ChatCompletionMessage("system", AIGentsService.DEFAULT_SYSTEM_PROMPT));
+        for (Message message : history) {
+            messages.add(new ChatCompletionMessage(message.getType(), message.getContent()));
+        }
+        return messages;
+    }
+    
+    private static int clampCursorPageSize(int size) {
+        return Math.max(1, Math.min(size, MAX_CURSOR_PAGE_SIZE));
+    }
+    
+    private static LocalDateTime parseTime(String value) {
+        try {
+            return LocalDateTime.parse(value);
+        } catch (DateTimeParseException e) {
+            throw new RuntimeException("无效的分页游标");
+        }
+    }
+    
+    private static Long parseLong(String value) {
+        try {
+            return Long.valueOf(value);
+        } catch (NumberFormatException e) {
+            throw new RuntimeException("无效的分页游标");
+        }
+    }
+    
+    private static Integer parseInt(String value) {
+        try {
+            return Integer.valueOf(value);
+        } catch (NumberFormatException e) {
+            throw new RuntimeException("无效的分页游标");
+        }
+    }
+    
     /**
      * 删除会话
+     * 本地记录在短事务中删除，远程AIGents会话在事务提交后删除
      */
-    @Transactional
     public boolean deleteSession(Long sessionId, Long userId) {
-        Session session = sessionRepository.selectById(sessionId);
-        if (session == null || !session.getUserId().equals(userId)) {
-            throw new RuntimeException("会话不存在或无权限访问");
-        }
+        SessionMetadataCache.SessionMetadata session = sessionCache.getOwned(sessionId, userId);
         
         try {
-            // 删除AIGents会话
-            aiGentsService.deleteSession(session.getAigentsSessionId());
-            
-            // 删除本地消息记录
-            messageRepository.deleteBySessionId(sessionId);
-            
-            // 删除本地会话记录
-            int result = sessionRepository.deleteById(sessionId);
+            Boolean deleted = transactionTemplate.execute(status -> {
+                // 删除本地消息记录
+                messageRepository.deleteBySessionId(sessionId);
+                
+                // 删除本地会话记录
+                return sessionRepository.deleteById(sessionId) > 0;
+            });
             
-            if (result > 0) {
+            if (Boolean.TRUE.equals(deleted)) {
+                sequenceAllocator.release(sessionId);
+                sessionCache.invalidate(sessionId);
+                
+                // 删除AIGents会话（供应商直连会话没有远程会话）
+                deleteRemoteSession(session.getAigentsSessionId());
                 logger.info("Deleted session: {} for user: {}", sessionId, userId);
                 return true;
             }
@@ -224,6 +589,9 @@ public class ChatService {
     
     /**
      * 获取会话详情
+     * 详情包含消息数、最后活动时间等变化字段，仍然读库；不回填会话元数据缓存：
+     * 读库与回填之间可能发生删除与失效，回填会把已删除的会话当作存在缓存到TTL结束，
+     * 缓存只经由getOwned的加载函数填充，与invalidate的先后顺序由缓存保证
      */
     public Session getSessionDetail(Long sessionId, Long userId) {
         Session session = sessionRepository.selectById(sessionId);
@@ -239,4 +607,31 @@ public class ChatService {
     public List<Session> getUserActiveSessions(Long userId, int limit) {
         return sessionRepository.selectActiveSessions(userId, limit);
     }
+    
+    /**
+     * 一轮对话在各阶段之间传递的状态
+     */
+    public static class ChatTurn {
+        private final Agent agent;
+        private final Session session;
+        private final Message userMessage;
+        
+        public ChatTurn(Agent agent, Session session, Message userMessage) {
+            this.agent = agent;
+            this.session = session;
+            this.userMessage = userMessage;
+        }
+        
+        public Agent getAgent() {
+            return agent;
+        }
+        
+        public Session getSession() {
+            return session;
+        }
+        
+        public Message getUserMessage() {
+            return userMessage;
+        }
+    }
 }
\ No newline at end of file
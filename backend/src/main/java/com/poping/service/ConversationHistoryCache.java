@@ -0,0 +1,252 @@
+package com.poping.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.poping.entity.Message;
+import com.poping.repository.MessageRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * [文件概览]
+ * - 目的: 活跃会话最近N条消息的进程内缓存，打开会话页和组装上下文时不读数据库
+ * - 数据流: 首次读取 → MessageRepository.selectRecentMessages(N) → 环形缓冲
+ *         ChatService.saveMessage/failTurn → append/updateMetadata → 已缓存的会话原地更新
+ *         ChatService读历史 → newest/before/page/recent → 缓冲能完整回答时直接返回，否则返回null由调用方查库
+ * - 核心数据: sessionId → 按sequence_number升序的最近N条消息、缓冲是否已包含会话的第一条消息
+ * - 关系: 总内存按消息内容长度加权，超出预算时按LRU淘汰，空闲超时过期；删除会话时invalidate；
+ *         只感知本节点写入的消息，多节点部署且会话不固定路由时应关闭（app.chat.history.enabled=false）
+ */
+@Component
+public class ConversationHistoryCache {
+
+    private static final Comparator<Message> BY_SEQUENCE = Comparator.comparing(Message::getSequenceNumber);
+
+    private final MessageRepository messageRepository;
+    private final Cache<Long, History> histories;
+    private final int capacity;
+    private final boolean enabled;
+
+    public ConversationHistoryCache(MessageRepository messageRepository, MeterRegistry meterRegistry,
+                                    @Value("${app.chat.history.enabled:true}") boolean enabled,
+                                    @Value("${app.chat.history.capacity:50}") int capacity,
+                                    @Value("${app.chat.history.max-bytes:67108864}") long maxBytes,
+                                    @Value("${app.chat.history.idle-timeout:1800000}") long idleTimeoutMillis) {
+        this.messageRepository = messageRepository;
+        this.enabled = enabled;
+        this.capacity = capacity;
+        this.histories = Caffeine.newBuilder()
+                .maximumWeight(maxBytes)
+                .weigher((Long sessionId, History history) -> history.weight())
+                .expireAfterAccess(idleTimeoutMillis, TimeUnit.MILLISECONDS)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, histories, "chat.history");
+    }
+
+    /**
+     * [函数: append]
+     * - 输入: Message message - 已落库的消息
+     * - 输出: void
+     * - 角色: 保存消息后同步更新已缓存的会话
+     * - 逻辑: 1. 会话未缓存时不处理（下次读取会从数据库加载） 2. 在compute内追加，Caffeine随之重新计算权重
+     */
+    public void append(Message message) {
+        if (!enabled) {
+            return;
+        }
+        histories.asMap().computeIfPresent(message.getSessionId(), (sessionId, history) -> {
+            history.add(message);
+            return history;
+        });
+    }
+
+    /**
+     * [函数: updateMetadata]
+     * - 输入: Long sessionId - 会话ID; Long messageId - 消息ID; String metadata - 新的元数据
+     * - 输出: void
+     * - 角色: 对话失败补偿更新消息元数据后同步缓存
+     * - 逻辑: 1. 找到缓存中的同ID消息并替换为更新后的副本
+     */
+    public void updateMetadata(Long sessionId, Long messageId, String metadata) {
+        if (!enabled) {
+            return;
+        }
+        histories.asMap().computeIfPresent(sessionId, (id, history) -> {
+            history.updateMetadata(messageId, metadata);
+            return history;
+        });
+    }
+
+    /**
+     * [函数: invalidate]
+     * - 输入: Long sessionId - 会话ID
+     * - 输出: void
+     * - 角色: 删除会话后丢弃缓存
+     * - 逻辑: 1. 移除缓存项
+     */
+    public void invalidate(Long sessionId) {
+        histories.invalidate(sessionId);
+    }
+
+    /**
+     * [函数: recent]
+     * - 输入: Long sessionId - 会话ID; int limit - 条数（不超过缓冲容量）
+     * - 输出: List<Message> - 最近limit条消息，按序号升序
+     * - 角色: 组装模型上下文
+     * - 逻辑: 1. 未缓存时从数据库加载最近N条 2. 截取最后limit条；超出容量时直接查库
+     */
+    public List<Message> recent(Long sessionId, int limit) {
+        if (!enabled || limit > capacity) {
+            List<Message> messages = messageRepository.selectRecentMessages(sessionId, limit);
+            Collections.reverse(messages);
+            return messages;
+        }
+        return load(sessionId).before(Integer.MAX_VALUE, limit, true);
+    }
+
+    /**
+     * [函数: before]
+     * - 输入: Long sessionId - 会话ID; Integer before - 序号上界（不含），null表示最新; int limit - 条数
+     * - 输出: List<Message> - 序号小于before的最后limit条，按序号升序；缓冲无法完整回答时返回null
+     * - 角色: 游标分页"加载更早消息"
+     * - 逻辑: 1. 未缓存时加载 2. 缓冲中满足条件的消息不少于limit条，或缓冲已包含第一条消息时才返回
+     */
+    public List<Message> before(Long sessionId, Integer before, int limit) {
+        if (!enabled || limit > capacity) {
+            return null;
+        }
+        return load(sessionId).before(before == null ? Integer.MAX_VALUE : before, limit, false);
+    }
+
+    /**
+     * [函数: all]
+     * - 输入: Long sessionId - 会话ID
+     * - 输出: List<Message> - 会话全部消息（按序号升序）；会话消息多于缓冲容量时返回null
+     * - 角色: 短会话的OFFSET分页直接在内存中切片
+     * - 逻辑: 1. 未缓存时加载 2. 缓冲已包含第一条消息时返回全部
+     */
+    public List<Message> all(Long sessionId) {
+        if (!enabled) {
+            return null;
+        }
+        return load(sessionId).all();
+    }
+
+    private History load(Long sessionId) {
+        return histories.get(sessionId, id -> {
+            List<Message> newestFirst = messageRepository.selectRecentMessages(id, capacity);
+            return new History(capacity, newestFirst, newestFirst.size() < capacity);
+        });
+    }
+
+    /**
+     * 单个会话的环形缓冲，所有访问在自身锁内
+     */
+    private static class History {
+        private final int capacity;
+        private final ArrayDeque<Message> messages;
+        private boolean reachesStart;
+        private int contentChars;
+
+        History(int capacity, List<Message> newestFirst, boolean reachesStart) {
+            this.capacity = capacity;
+            this.messages = new ArrayDeque<>(capacity);
+            this.reachesStart = reachesStart;
+            for (int i = newestFirst.size() - 1; i >= 0; i--) {
+                push(newestFirst.get(i));
+            }
+        }
+
+        synchronized void add(Message message) {
+            Message last = messages.peekLast();
+            if (last == null || message.getSequenceNumber() > last.getSequenceNumber()) {
+                push(message);
+                return;
+            }
+            // 加载与写入并发、或两条消息乱序写入时，按序号插入/去重
+            List<Message> sorted = new ArrayList<>(messages);
+            sorted.removeIf(existing -> existing.getSequenceNumber().equals(message.getSequenceNumber()));
+            sorted.add(message);
+            sorted.sort(BY_SEQUENCE);
+            messages.clear();
+            contentChars = 0;
+            for (Message existing : sorted) {
+                push(existing);
+            }
+        }
+
+        synchronized void updateMetadata(Long messageId, String metadata) {
+            List<Message> updated = new ArrayList<>(messages.size());
+            for (Message message : messages) {
+                if (message.getId() != null && message.getId().equals(messageId)) {
+                    Message copy = new Message();
+                    copy.setId(message.getId());
+                    copy.setSessionId(message.getSessionId());
+                    copy.setType(message.getType());
+                    copy.setContent(message.getContent());
+                    copy.setMetadata(metadata);
+                    copy.setSequenceNumber(message.getSequenceNumber());
+                    copy.setCreateTime(message.getCreateTime());
+                    message = copy;
+                }
+                updated.add(message);
+            }
+            messages.clear();
+            contentChars = 0;
+            for (Message message : updated) {
+                push(message);
+            }
+        }
+
+        synchronized List<Message> before(int before, int limit, boolean partialOk) {
+            List<Message> matched = new ArrayList<>(limit);
+            Iterator<Message> newestFirst = messages.descendingIterator();
+            while (newestFirst.hasNext() && matched.size() < limit) {
+                Message message = newestFirst.next();
+                if (message.getSequenceNumber() < before) {
+                    matched.add(message);
+                }
+            }
+            if (matched.size() < limit && !reachesStart && !partialOk) {
+                return null;
+            }
+            Collections.reverse(matched);
+            return matched;
+        }
+
+        synchronized List<Message> all() {
+            return reachesStart ? new ArrayList<>(messages) : null;
+        }
+
+        synchronized int weight() {
+            // 对象头与字段的粗略估计 + 字符串内容（UTF-16）
+            return 64 + messages.size() * 128 + contentChars * 2;
+        }
+
+        private void push(Message message) {
+            if (messages.size() == capacity) {
+                Message evicted = messages.pollFirst();
+                contentChars -= length(evicted);
+                reachesStart = false;
+            }
+            messages.addLast(message);
+            contentChars += length(message);
+        }
+
+        private static int length(Message message) {
+            int chars = message.getContent() == null ? 0 : message.getContent().length();
+            return chars + (message.getMetadata() == null ? 0 : message.getMetadata().length());
+        }
+    }
+}
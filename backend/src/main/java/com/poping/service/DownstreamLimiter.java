@@ -0,0 +1,116 @@
+package com.poping.service;
+
+import com.poping.exception.ExternalServiceException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * [文件概览]
+ * - 目的: 按下游服务划分的并发上限（信号量隔离）
+ * - 数据流: AIGentsService/ProviderServiceImpl → call(downstream, action) → 获取许可 → 外部HTTP调用 → 释放许可
+ * - 核心数据: 每个下游一个公平信号量、等待许可的超时时间
+ * - 关系: 虚拟线程模式下请求并发不再受线程池限制，由此处保证不会把过载转移到AIGents或第三方供应商；
+ *         平台线程模式下同样生效
+ */
+@Component
+public class DownstreamLimiter {
+
+    public static final String AIGENTS = "aigents";
+    public static final String PROVIDER = "provider";
+
+    private final Map<String, Limit> limits = new HashMap<>();
+
+    @Value("${app.downstream.acquire-timeout:1000}")
+    private long acquireTimeoutMillis;
+
+    public DownstreamLimiter(@Value("${app.downstream.aigents.max-concurrent:50}") int aigentsMaxConcurrent,
+                             @Value("${app.downstream.provider.max-concurrent:50}") int providerMaxConcurrent,
+                             MeterRegistry meterRegistry) {
+        register(AIGENTS, aigentsMaxConcurrent, meterRegistry);
+        register(PROVIDER, providerMaxConcurrent, meterRegistry);
+    }
+
+    private void register(String downstream, int maxConcurrent, MeterRegistry meterRegistry) {
+        Limit limit = new Limit(maxConcurrent,
+                Counter.builder("downstream.rejected")
+                        .tag("downstream", downstream)
+                        .description("因并发上限被拒绝的外部调用次数")
+                        .register(meterRegistry));
+        Gauge.builder("downstream.in.flight", limit, l -> l.maxConcurrent - l.semaphore.availablePermits())
+                .tag("downstream", downstream)
+                .description("正在进行的外部调用数")
+                .register(meterRegistry);
+        limits.put(downstream, limit);
+    }
+
+    /**
+     * [函数: call]
+     * - 输入: String downstream - 下游名称; Supplier action - 外部调用
+     * - 输出: T - 外部调用结果
+     * - 角色: 在下游并发上限内执行一次外部调用
+     * - 逻辑: 1. 限时等待许可，超时即拒绝 2. 执行调用 3. 无论成功失败都释放许可
+     */
+    public <T> T call(String downstream, Supplier<T> action) {
+        Limit limit = limits.get(downstream);
+        if (limit == null) {
+            throw new IllegalArgumentException("未知的下游服务: " + downstream);
+        }
+
+        boolean acquired;
+        try {
+            acquired = limit.semaphore.tryAcquire(acquireTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("等待外部服务调用许可被中断", e);
+        }
+        if (!acquired) {
+            limit.rejected.increment();
+            throw new ExternalServiceException(downstream, ExternalServiceException.OVERLOADED,
+                    "外部服务繁忙，请稍后再试");
+        }
+
+        try {
+            return action.get();
+        } finally {
+            limit.semaphore.release();
+        }
+    }
+
+    /**
+     * [函数: run]
+     * - 输入: String downstream - 下游名称; Runnable action - 无返回值的外部调用
+     * - 输出: void
+     * - 角色: call的无返回值版本
+     * - 逻辑: 1. 包装为Supplier后调用call
+     */
+    public void run(String downstream, Runnable action) {
+        call(downstream, () -> {
+            action.run();
+            return null;
+        });
+    }
+
+    /**
+     * 单个下游的信号量与拒绝计数
+     */
+    private static class Limit {
+        private final int maxConcurrent;
+        private final Semaphore semaphore;
+        private final Counter rejected;
+
+        Limit(int maxConcurrent, Counter rejected) {
+            this.maxConcurrent = maxConcurrent;
+            this.semaphore = new Semaphore(maxConcurrent, true);
+            this.rejected = rejected;
+        }
+    }
+}
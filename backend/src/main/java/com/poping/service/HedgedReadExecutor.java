@@ -0,0 +1,332 @@
+package com.poping.service;
+
+import com.poping.exception.ExternalServiceException;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * [文件概览]
+ * - 目的: 幂等AIGents读请求的对冲（hedging）与带抖动的指数退避重试
+ * - 数据流: AIGentsService.getSessionInfo/getMemories → execute(operation, action)
+ *         → 首个请求超过该操作p95仍未返回时发出第二个请求，取先返回者
+ *         → 可重试错误按全抖动指数退避重试；对冲与重试都从共享的重试预算中扣除
+ * - 核心数据: 每个操作的最近延迟样本与p95、按方法的对冲/重试配置、令牌式重试预算
+ * - 关系: 每次尝试都经AIGentsGuard执行，熔断打开或过载时不重试，避免放大故障；
+ *         预算按原始请求数的固定比例补充，额外负载不超过budget-ratio
+ */
+@Component
+public class HedgedReadExecutor {
+
+    private static final String PREFIX = "app.resilience.aigents.reads.";
+    private static final int LATENCY_SAMPLES = 256;
+    private static final int MIN_SAMPLES_FOR_HEDGE = 20;
+    private static final int RECOMPUTE_EVERY = 32;
+
+    private final AIGentsGuard guard;
+    private final Environment environment;
+    private final MeterRegistry meterRegistry;
+    private final RetryBudget budget;
+    private final ThreadPoolExecutor hedgeExecutor;
+    private final Map<String, ReadPolicy> policies = new ConcurrentHashMap<>();
+
+    public HedgedReadExecutor(AIGentsGuard guard, Environment environment, MeterRegistry meterRegistry,
+                              @Value("${app.resilience.aigents.reads.budget-ratio:0.05}") double budgetRatio,
+                              @Value("${app.resilience.aigents.reads.budget-max-tokens:10}") int budgetMaxTokens,
+                              @Value("${app.resilience.aigents.reads.max-concurrent:64}") int maxConcurrent) {
+        this.guard = guard;
+        this.environment = environment;
+        this.meterRegistry = meterRegistry;
+        this.budget = new RetryBudget(budgetRatio, budgetMaxTokens);
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.hedgeExecutor = new ThreadPoolExecutor(0, maxConcurrent, 60L, TimeUnit.SECONDS,
+                new SynchronousQueue<>(),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "aigents-read-" + threadIndex.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        Gauge.builder("aigents.reads.budget", budget, RetryBudget::available)
+                .description("剩余的对冲/重试预算")
+                .register(meterRegistry);
+    }
+
+    /**
+     * [函数: execute]
+     * - 输入: String operation - 操作名（对应配置键）; Supplier action - 幂等读请求
+     * - 输出: T - 请求结果
+     * - 角色: 按方法配置执行对冲与重试
+     * - 逻辑: 1. 原始请求向预算存入一定比例的令牌 2. 执行一次（可能对冲的）尝试
+     *         3. 可重试错误且预算充足时，全抖动指数退避后重试，直至max-attempts
+     */
+    public <T> T execute(String operation, Supplier<T> action) {
+        ReadPolicy policy = policy(operation);
+        budget.deposit();
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return hedgedCall(policy, action);
+            } catch (RuntimeException e) {
+                if (attempt >= policy.maxAttempts || !isRetryable(e)) {
+                    throw e;
+                }
+                if (!budget.tryWithdraw()) {
+                    meterRegistry.counter("aigents.reads.budget.exhausted", "operation", operation).increment();
+                    throw e;
+                }
+                meterRegistry.counter("aigents.reads.retries", "operation", operation).increment();
+                sleep(backoffMillis(policy, attempt));
+            }
+        }
+    }
+
+    /**
+     * [函数: hedgedCall]
+     * - 输入: ReadPolicy policy - 操作配置; Supplier action - 读请求
+     * - 输出: T - 先成功返回的结果
+     * - 角色: 执行一次可能被对冲的尝试
+     * - 逻辑: 1. 未开启对冲或样本不足时直接调用 2. 首个请求在p95内未返回且预算充足时发出对冲请求
+     *         3. 取先成功者，先返回的失败时等待另一个 4. 结束时取消仍在进行的请求
+     */
+    private <T> T hedgedCall(ReadPolicy policy, Supplier<T> action) {
+        long hedgeDelayNanos = policy.hedge ? policy.hedgeDelayNanos() : -1L;
+        if (hedgeDelayNanos < 0) {
+            return timed(policy, action);
+        }
+
+        ExecutorCompletionService<T> race = new ExecutorCompletionService<>(hedgeExecutor);
+        List<Future<T>> attempts = new ArrayList<>(2);
+        long primaryStartNanos = System.nanoTime();
+        try {
+            attempts.add(race.submit(() -> timed(policy, action)));
+        } catch (RejectedExecutionException e) {
+            return timed(policy, action);
+        }
+
+        try {
+            Future<T> done = race.poll(hedgeDelayNanos, TimeUnit.NANOSECONDS);
+            if (done == null && budget.tryWithdraw()) {
+                try {
+                    attempts.add(race.submit(() -> timed(policy, action)));
+                    meterRegistry.counter("aigents.reads.hedged", "operation", policy.operation).increment();
+                } catch (RejectedExecutionException ignored) {
+                    // 对冲线程池已满时只等待首个请求
+                }
+            }
+            if (done == null) {
+                done = race.take();
+            }
+            try {
+                T result = done.get();
+                if (attempts.size() > 1 && done == attempts.get(1)) {
+                    meterRegistry.counter("aigents.reads.hedge.wins", "operation", policy.operation).increment();
+                    // 被取消的首个请求至少已耗时这么久，计入样本避免p95因慢请求被截断而偏低
+                    policy.latencies.record(System.nanoTime() - primaryStartNanos);
+                }
+                return result;
+            } catch (ExecutionException e) {
+                if (attempts.size() < 2) {
+                    throw unwrap(e);
+                }
+                try {
+                    return race.take().get();
+                } catch (ExecutionException second) {
+                    throw unwrap(second);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("等待AI服务响应被中断", e);
+        } finally {
+            for (Future<T> attempt : attempts) {
+                attempt.cancel(true);
+            }
+        }
+    }
+
+    private <T> T timed(ReadPolicy policy, Supplier<T> action) {
+        long startNanos = System.nanoTime();
+        T result = guard.execute(policy.operation, action);
+        policy.latencies.record(System.nanoTime() - startNanos);
+        return result;
+    }
+
+    /**
+     * 熔断打开或过载说明应当减压，不重试；服务端5xx、网络异常与超时重试
+     */
+    private boolean isRetryable(RuntimeException e) {
+        if (e instanceof ExternalServiceException) {
+            return ((ExternalServiceException) e).getCode() == ExternalServiceException.TIMEOUT;
+        }
+        return e instanceof HttpServerErrorException || e instanceof ResourceAccessException;
+    }
+
+    /**
+     * 全抖动（full jitter）: random(0, min(maxBackoff, baseBackoff * 2^(attempt-1)))
+     */
+    private long backoffMillis(ReadPolicy policy, int attempt) {
+        long ceiling = Math.min(policy.maxBackoffMillis, policy.baseBackoffMillis << Math.min(attempt - 1, 20));
+        return ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+
+    private void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("重试等待被中断", e);
+        }
+    }
+
+    private RuntimeException unwrap(ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof RuntimeException) {
+            return (RuntimeException) cause;
+        }
+        if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        return new RuntimeException(cause);
+    }
+
+    private ReadPolicy policy(String operation) {
+        return policies.computeIfAbsent(operation, name -> {
+            ReadPolicy policy = new ReadPolicy(name,
+                    environment.getProperty(PREFIX + name + ".hedge", Boolean.class, false),
+                    environment.getProperty(PREFIX + name + ".max-attempts", Integer.class, 1),
+                    environment.getProperty(PREFIX + name + ".base-backoff", Long.class, 50L),
+                    environment.getProperty(PREFIX + name + ".max-backoff", Long.class, 1000L),
+                    environment.getProperty(PREFIX + name + ".min-hedge-delay", Long.class, 20L));
+            Gauge.builder("aigents.reads.p95", policy.latencies, window -> window.p95Nanos / 1_000_000.0)
+                    .tag("operation", name)
+                    .description("读请求最近样本的p95延迟（毫秒），即对冲延迟")
+                    .register(meterRegistry);
+            return policy;
+        });
+    }
+
+    /**
+     * [函数: shutdown]
+     * - 输入: 无
+     * - 输出: void
+     * - 角色: 应用关闭时停止对冲线程池
+     * - 逻辑: 1. 中断仍在进行的对冲请求
+     */
+    @PreDestroy
+    public void shutdown() {
+        hedgeExecutor.shutdownNow();
+    }
+
+    /**
+     * 单个读操作的配置与延迟统计
+     */
+    private static class ReadPolicy {
+        private final String operation;
+        private final boolean hedge;
+        private final int maxAttempts;
+        private final long baseBackoffMillis;
+        private final long maxBackoffMillis;
+        private final long minHedgeDelayNanos;
+        private final LatencyWindow latencies = new LatencyWindow();
+
+        ReadPolicy(String operation, boolean hedge, int maxAttempts, long baseBackoffMillis,
+                   long maxBackoffMillis, long minHedgeDelayMillis) {
+            this.operation = operation;
+            this.hedge = hedge;
+            this.maxAttempts = Math.max(1, maxAttempts);
+            this.baseBackoffMillis = Math.max(1L, baseBackoffMillis);
+            this.maxBackoffMillis = Math.max(this.baseBackoffMillis, maxBackoffMillis);
+            this.minHedgeDelayNanos = TimeUnit.MILLISECONDS.toNanos(minHedgeDelayMillis);
+        }
+
+        /**
+         * 样本不足时返回-1表示暂不对冲
+         */
+        long hedgeDelayNanos() {
+            if (latencies.count.get() < MIN_SAMPLES_FOR_HEDGE) {
+                return -1L;
+            }
+            return Math.max(minHedgeDelayNanos, latencies.p95Nanos);
+        }
+    }
+
+    /**
+     * 最近N个成功请求的延迟环形缓冲，每RECOMPUTE_EVERY个样本重新计算一次p95
+     */
+    private static class LatencyWindow {
+        private final long[] samples = new long[LATENCY_SAMPLES];
+        private final AtomicLong count = new AtomicLong();
+        private volatile long p95Nanos;
+
+        void record(long nanos) {
+            long n = count.getAndIncrement();
+            samples[(int) (n % LATENCY_SAMPLES)] = nanos;
+            if (n + 1 == MIN_SAMPLES_FOR_HEDGE || (n + 1) % RECOMPUTE_EVERY == 0) {
+                int size = (int) Math.min(n + 1, LATENCY_SAMPLES);
+                long[] copy = Arrays.copyOf(samples, size);
+                Arrays.sort(copy);
+                p95Nanos = copy[Math.min(size - 1, (int) Math.ceil(size * 0.95) - 1)];
+            }
+        }
+    }
+
+    /**
+     * 令牌式重试预算：每个原始请求存入ratio个令牌，每次对冲或重试取出1个，余额不超过上限
+     * 以千分之一令牌为单位保存，避免浮点并发更新
+     */
+    private static class RetryBudget {
+        private static final long UNIT = 1000L;
+
+        private final long depositMilliTokens;
+        private final long maxMilliTokens;
+        private final AtomicLong balance;
+
+        RetryBudget(double ratio, int maxTokens) {
+            this.depositMilliTokens = Math.round(ratio * UNIT);
+            this.maxMilliTokens = maxTokens * UNIT;
+            this.balance = new AtomicLong(maxMilliTokens);
+        }
+
+        void deposit() {
+            balance.updateAndGet(current -> Math.min(maxMilliTokens, current + depositMilliTokens));
+        }
+
+        boolean tryWithdraw() {
+            while (true) {
+                long current = balance.get();
+                if (current < UNIT) {
+                    return false;
+                }
+                if (balance.compareAndSet(current, current - UNIT)) {
+                    return true;
+                }
+            }
+        }
+
+        double available() {
+            return balance.get() / (double) UNIT;
+        }
+    }
+}
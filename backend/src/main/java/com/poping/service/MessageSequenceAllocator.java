@@ -0,0 +1,29 @@
+package com.poping.service;
+
+/**
+ * [文件概览]
+ * - 目的: 会话内消息序号分配器接口定义
+ * - 数据流: ChatService.saveMessage → MessageSequenceAllocator → 内存计数器 / Redis INCR
+ * - 核心数据: 每个会话单调递增的sequence_number
+ * - 关系: 替代每次插入前的MAX(sequence_number)查询，实现见service.impl包
+ */
+public interface MessageSequenceAllocator {
+    
+    /**
+     * [函数: next]
+     * - 输入: Long sessionId - 会话ID
+     * - 输出: int - 该会话的下一个消息序号
+     * - 角色: 为新消息分配严格递增且不重复的序号
+     * - 逻辑: 1. 会话计数器不存在时从数据库最大序号初始化 2. 原子自增并返回
+     */
+    int next(Long sessionId);
+    
+    /**
+     * [函数: release]
+     * - 输入: Long sessionId - 会话ID
+     * - 输出: void
+     * - 角色: 会话删除后释放其计数器
+     * - 逻辑: 1. 移除会话对应的计数器
+     */
+    void release(Long sessionId);
+}
@@ -0,0 +1,236 @@
+package com.poping.service;
+
+import com.github.benmanes.caffeine.cache.CacheLoader;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import com.poping.dto.ProviderModelDTO;
+import com.poping.dto.ProviderModelListResponse;
+import com.poping.security.ApiKeyVault;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestTemplate;
+
+import javax.annotation.PreDestroy;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * [文件概览]
+ * - 目的: 按(供应商, apiUrl, 密钥指纹)缓存供应商模型列表，模型选择器首次加载后不再等待远程调用
+ * - 数据流: ProviderServiceImpl → get(providerId, apiUrl, apiKey) → 缓存
+ *         新鲜期内直接返回；过了refresh-after仍返回旧值，同时后台刷新（stale-while-revalidate）；
+ *         超过max-stale或从未加载时同步加载；同一个键同一时间只有一次远程调用（single-flight）
+ * - 核心数据: CatalogKey → CatalogEntry(模型列表或失败信息, 获取时间)
+ * - 关系: 失败结果也会缓存negative-ttl，期间直接返回同样的错误，避免反复打到故障的供应商；
+ *         已有成功结果时后台刷新失败继续使用旧结果；键中保存的是数据库里的密文，只以指纹参与键比较，
+ *         远程调用前才经ApiKeyVault解密
+ */
+@Component
+public class ModelCatalogCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(ModelCatalogCache.class);
+
+    private final RestTemplate restTemplate;
+    private final DownstreamLimiter downstreamLimiter;
+    private final ApiKeyVault apiKeyVault;
+    private final ExecutorService refreshExecutor;
+    private final LoadingCache<CatalogKey, CatalogEntry> catalogs;
+
+    public ModelCatalogCache(RestTemplate restTemplate, DownstreamLimiter downstreamLimiter, ApiKeyVault apiKeyVault,
+                             MeterRegistry meterRegistry,
+                             @Value("${app.provider.models.refresh-after:600000}") long refreshAfterMillis,
+                             @Value("${app.provider.models.max-stale:86400000}") long maxStaleMillis,
+                             @Value("${app.provider.models.negative-ttl:30000}") long negativeTtlMillis,
+                             @Value("${app.provider.models.max-size:10000}") long maxSize,
+                             @Value("${app.provider.models.refresh-threads:4}") int refreshThreads) {
+        this.restTemplate = restTemplate;
+        this.downstreamLimiter = downstreamLimiter;
+        this.apiKeyVault = apiKeyVault;
+        this.refreshExecutor = Executors.newFixedThreadPool(refreshThreads, runnable -> {
+            Thread thread = new Thread(runnable, "provider-models-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.catalogs = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .refreshAfterWrite(refreshAfterMillis, TimeUnit.MILLISECONDS)
+                .expireAfter(new Expiry<CatalogKey, CatalogEntry>() {
+                    @Override
+                    public long expireAfterCreate(CatalogKey key, CatalogEntry entry, long currentTime) {
+                        return remaining(entry);
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(CatalogKey key, CatalogEntry entry, long currentTime,
+                                                  long currentDuration) {
+                        return remaining(entry);
+                    }
+
+                    @Override
+                    public long expireAfterRead(CatalogKey key, CatalogEntry entry, long currentTime,
+                                                long currentDuration) {
+                        return currentDuration;
+                    }
+
+                    // 成功结果从获取时算起保留max-stale（刷新失败沿用旧结果时不会续期），失败结果只保留negative-ttl
+                    private long remaining(CatalogEntry entry) {
+                        long ttl = entry.isFailure() ? negativeTtlMillis : maxStaleMillis;
+                        long left = entry.fetchedAt + ttl - System.currentTimeMillis();
+                        return TimeUnit.MILLISECONDS.toNanos(Math.max(0L, left));
+                    }
+                })
+                .executor(refreshExecutor)
+                .recordStats()
+                .build(new CacheLoader<CatalogKey, CatalogEntry>() {
+                    @Override
+                    public CatalogEntry load(CatalogKey key) {
+                        return fetch(key);
+                    }
+
+                    @Override
+                    public CatalogEntry reload(CatalogKey key, CatalogEntry previous) {
+                        CatalogEntry fresh = fetch(key);
+                        if (fresh.isFailure() && !previous.isFailure()) {
+                            logger.warn("刷新模型列表失败，继续使用旧结果: provider={}, {}", key.providerId, fresh.error);
+                            return previous;
+                        }
+                        return fresh;
+                    }
+                });
+        CaffeineCacheMetrics.monitor(meterRegistry, catalogs, "provider.models");
+    }
+
+    /**
+     * [函数: get]
+     * - 输入: String providerId - 供应商ID; String apiUrl - API基础URL; String apiKey - 数据库中的API密钥（密文）
+     * - 输出: List<ProviderModelDTO> - 模型列表（不可修改）
+     * - 角色: 模型选择器的数据来源
+     * - 逻辑: 1. 按键读取缓存，必要时同步加载或触发后台刷新 2. 缓存的是失败结果时抛出同样的错误
+     */
+    public List<ProviderModelDTO> get(String providerId, String apiUrl, String apiKey) {
+        CatalogEntry entry = catalogs.get(new CatalogKey(providerId, apiUrl, apiKey));
+        if (entry.isFailure()) {
+            throw new RuntimeException(entry.error);
+        }
+        return entry.models;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        refreshExecutor.shutdownNow();
+    }
+
+    private CatalogEntry fetch(CatalogKey key) {
+        try {
+            HttpHeaders headers = new HttpHeaders();
+            headers.set("Authorization", "Bearer " + apiKeyVault.reveal(key.apiKey));
+            headers.set("Content-Type", "application/json");
+            HttpEntity<String> entity = new HttpEntity<>(headers);
+
+            String modelsUrl = key.apiUrl + "/models";
+            ResponseEntity<ProviderModelListResponse> response = downstreamLimiter.call(DownstreamLimiter.PROVIDER,
+                    () -> restTemplate.exchange(modelsUrl, HttpMethod.GET, entity, ProviderModelListResponse.class));
+
+            ProviderModelListResponse body = response.getBody();
+            List<ProviderModelDTO> models = body == null || body.getData() == null
+                    ? Collections.<ProviderModelDTO>emptyList()
+                    : Collections.unmodifiableList(new ArrayList<>(body.getData()));
+            return CatalogEntry.success(models);
+        } catch (Exception e) {
+            return CatalogEntry.failure(e.getMessage());
+        }
+    }
+
+    private static String fingerprint(String apiKey) {
+        if (apiKey == null) {
+            return "";
+        }
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(apiKey.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder();
+            for (int i = 0; i < 16; i++) {
+                hex.append(String.format("%02x", digest[i]));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 缓存键：供应商、apiUrl与密钥密文的指纹；apiKey只供加载使用，不参与equals/hashCode
+     */
+    private static final class CatalogKey {
+        private final String providerId;
+        private final String apiUrl;
+        private final String keyFingerprint;
+        private final String apiKey;
+
+        CatalogKey(String providerId, String apiUrl, String apiKey) {
+            this.providerId = providerId;
+            this.apiUrl = apiUrl;
+            this.keyFingerprint = fingerprint(apiKey);
+            this.apiKey = apiKey;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof CatalogKey)) {
+                return false;
+            }
+            CatalogKey other = (CatalogKey) o;
+            return Objects.equals(providerId, other.providerId)
+                    && Objects.equals(apiUrl, other.apiUrl)
+                    && keyFingerprint.equals(other.keyFingerprint);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(providerId, apiUrl, keyFingerprint);
+        }
+    }
+
+    private static final class CatalogEntry {
+        private final List<ProviderModelDTO> models;
+        private final String error;
+        private final long fetchedAt;
+
+        private CatalogEntry(List<ProviderModelDTO> models, String error) {
+            this.models = models;
+            this.error = error;
+            this.fetchedAt = System.currentTimeMillis();
+        }
+
+        static CatalogEntry success(List<ProviderModelDTO> models) {
+            return new CatalogEntry(models, null);
+        }
+
+        static CatalogEntry failure(String error) {
+            return new CatalogEntry(null, error == null ? "unknown error" : error);
+        }
+
+        boolean isFailure() {
+            return models == null;
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package com.poping.service;
+
+import com.poping.exception.RequestThrottledException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * [文件概览]
+ * - 目的: 在专用的有界线程池上执行BCrypt哈希与校验
+ * - 数据流: UserService → encode/matches → password-hashing线程池(核数受限, 有界队列) → PasswordEncoder
+ *         线程池与队列已满时立即拒绝（50303），不在Tomcat线程上排队占用CPU
+ * - 核心数据: 固定大小线程池、等待结果的最长时间、哈希耗时与排队耗时指标
+ * - 关系: 登录突发时最多占用threads个核心，其余核心继续服务聊天等请求；
+ *         upgradeEncoding只比较哈希前缀，不经过线程池
+ */
+@Service
+public class PasswordHashingService {
+
+    private static final Logger logger = LoggerFactory.getLogger(PasswordHashingService.class);
+
+    private final PasswordEncoder passwordEncoder;
+    private final ThreadPoolExecutor executor;
+    private final Timer encodeTimer;
+    private final Timer matchesTimer;
+    private final Timer queueWaitTimer;
+    private final Counter rejected;
+
+    @Value("${app.auth.password.max-wait:5000}")
+    private long maxWaitMillis;
+
+    public PasswordHashingService(PasswordEncoder passwordEncoder, MeterRegistry meterRegistry,
+                                  @Value("${app.auth.password.threads:0}") int threads,
+                                  @Value("${app.auth.password.queue-capacity:64}") int queueCapacity) {
+        this.passwordEncoder = passwordEncoder;
+        int poolSize = threads > 0 ? threads : Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(poolSize, poolSize, 60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueCapacity)),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "password-hashing-" + threadIndex.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        this.executor.allowCoreThreadTimeOut(true);
+
+        new ExecutorServiceMetrics(executor, "password-hashing", Tags.empty()).bindTo(meterRegistry);
+        this.encodeTimer = hashTimer(meterRegistry, "encode");
+        this.matchesTimer = hashTimer(meterRegistry, "matches");
+        this.queueWaitTimer = Timer.builder("auth.password.queue.wait")
+                .description("密码哈希任务在队列中的等待时间")
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry);
+        this.rejected = Counter.builder("auth.password.rejected")
+                .description("因哈希线程池已满被拒绝的请求数")
+                .register(meterRegistry);
+        logger.info("Password hashing pool: threads={}, queue={}", poolSize, queueCapacity);
+    }
+
+    private static Timer hashTimer(MeterRegistry meterRegistry, String operation) {
+        return Timer.builder("auth.password.hash")
+                .tag("operation", operation)
+                .description("单次密码哈希/校验的CPU耗时")
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry);
+    }
+
+    /**
+     * [函数: encode]
+     * - 输入: CharSequence rawPassword - 明文密码
+     * - 输出: String - 按当前强度生成的哈希
+     * - 角色: 注册、修改密码、重新哈希时生成密码哈希
+     * - 逻辑: 1. 提交到哈希线程池 2. 限时等待结果
+     */
+    public String encode(CharSequence rawPassword) {
+        return submit(encodeTimer, () -> passwordEncoder.encode(rawPassword));
+    }
+
+    /**
+     * [函数: matches]
+     * - 输入: CharSequence rawPassword - 明文密码; String encodedPassword - 已存储的哈希
+     * - 输出: boolean - 是否匹配
+     * - 角色: 登录和修改密码时校验密码
+     * - 逻辑: 1. 提交到哈希线程池 2. 限时等待结果
+     */
+    public boolean matches(CharSequence rawPassword, String encodedPassword) {
+        return submit(matchesTimer, () -> passwordEncoder.matches(rawPassword, encodedPassword));
+    }
+
+    /**
+     * [函数: needsRehash]
+     * - 输入: String encodedPassword - 已存储的哈希
+     * - 输出: boolean - 哈希强度是否低于当前配置
+     * - 角色: 调整BCrypt强度后，登录成功时判断是否需要重新哈希
+     * - 逻辑: 1. 仅解析哈希前缀，不做哈希计算
+     */
+    public boolean needsRehash(String encodedPassword) {
+        return passwordEncoder.upgradeEncoding(encodedPassword);
+    }
+
+    /**
+     * [函数: encodeInBackground]
+     * - 输入: CharSequence rawPassword - 明文密码; Consumer<String> onEncoded - 新哈希的回调
+     * - 输出: boolean - 是否已提交
+     * - 角色: 登录成功后的透明重新哈希，不增加登录延迟
+     * - 逻辑: 1. 线程池已满时直接放弃，下次登录再试 2. 否则在哈希线程上计算并回调
+     */
+    public boolean encodeInBackground(CharSequence rawPassword, Consumer<String> onEncoded) {
+        try {
+            executor.execute(() -> {
+                try {
+                    onEncoded.accept(encodeTimer.record(() -> passwordEncoder.encode(rawPassword)));
+                } catch (Exception e) {
+                    logger.warn("重新哈希密码失败: {}", e.getMessage());
+                }
+            });
+            return true;
+        } catch (RejectedExecutionException e) {
+            return false;
+        }
+    }
+
+    private <T> T submit(Timer timer, Callable<T> task) {
+        long enqueuedAt = System.nanoTime();
+        Future<T> future;
+        try {
+            future = executor.submit(() -> {
+                queueWaitTimer.record(System.nanoTime() - enqueuedAt, TimeUnit.NANOSECONDS);
+                return timer.recordCallable(task);
+            });
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            throw new RequestThrottledException(RequestThrottledException.HASHING_BUSY, "服务繁忙，请稍后再试", 1);
+        }
+
+        try {
+            return future.get(maxWaitMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            rejected.increment();
+            throw new RequestThrottledException(RequestThrottledException.HASHING_BUSY, "服务繁忙，请稍后再试", 1);
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("等待密码校验结果被中断", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new RuntimeException(cause);
+        }
+    }
+
+    /**
+     * [函数: shutdown]
+     * - 输入: 无
+     * - 输出: void
+     * - 角色: 应用关闭时停止哈希线程池
+     * - 逻辑: 1. 不再接收新任务
+     */
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
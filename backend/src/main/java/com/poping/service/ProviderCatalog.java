@@ -0,0 +1,110 @@
+package com.poping.service;
+
+import com.poping.entity.Provider;
+import com.poping.repository.ProviderRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * [文件概览]
+ * - 目的: 供应商目录（providers表，数据量小、很少变化）的内存快照
+ * - 数据流: 启动/定时/refresh() → ProviderRepository.findAllActive → 不可变快照
+ *         ProviderServiceImpl → all()/find()/resolve() → 快照
+ * - 核心数据: providerId → Provider、按创建时间倒序的列表
+ * - 关系: 配置列表按providerId在内存中关联供应商名称，不再逐条查库；
+ *         快照中找不到时resolve()回查数据库，找到则立即刷新，新增供应商无需等待下一次定时刷新
+ */
+@Component
+public class ProviderCatalog {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProviderCatalog.class);
+
+    private final ProviderRepository providerRepository;
+
+    private volatile Snapshot snapshot = new Snapshot(Collections.<Provider>emptyList());
+
+    public ProviderCatalog(ProviderRepository providerRepository) {
+        this.providerRepository = providerRepository;
+    }
+
+    /**
+     * [函数: refresh]
+     * - 输入: 无
+     * - 输出: void
+     * - 角色: 启动时、定时以及供应商变更后重新加载快照
+     * - 逻辑: 1. 查询全部活跃供应商 2. 整体替换快照；失败时保留旧快照
+     */
+    @PostConstruct
+    @Scheduled(fixedDelayString = "${app.provider.catalog.refresh-interval:300000}",
+            initialDelayString = "${app.provider.catalog.refresh-interval:300000}")
+    public void refresh() {
+        try {
+            snapshot = new Snapshot(providerRepository.findAllActive());
+        } catch (Exception e) {
+            logger.warn("刷新供应商目录失败，继续使用旧快照: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * [函数: all]
+     * - 输入: 无
+     * - 输出: List<Provider> - 全部活跃供应商（按创建时间倒序，不可修改）
+     * - 角色: 供应商列表
+     * - 逻辑: 1. 返回快照列表
+     */
+    public List<Provider> all() {
+        return snapshot.ordered;
+    }
+
+    /**
+     * [函数: find]
+     * - 输入: String providerId - 供应商业务ID
+     * - 输出: Provider - 快照中的供应商，不存在时返回null
+     * - 角色: 纯内存查询，用于列表关联等允许短暂陈旧的场景
+     * - 逻辑: 1. 查快照索引
+     */
+    public Provider find(String providerId) {
+        return providerId == null ? null : snapshot.byProviderId.get(providerId);
+    }
+
+    /**
+     * [函数: resolve]
+     * - 输入: String providerId - 供应商业务ID
+     * - 输出: Provider - 供应商，不存在时返回null
+     * - 角色: 写入前的供应商校验
+     * - 逻辑: 1. 快照命中直接返回 2. 未命中时回查数据库，存在则刷新快照
+     */
+    public Provider resolve(String providerId) {
+        Provider provider = find(providerId);
+        if (provider != null || providerId == null) {
+            return provider;
+        }
+        provider = providerRepository.findByProviderId(providerId);
+        if (provider != null) {
+            refresh();
+        }
+        return provider;
+    }
+
+    private static class Snapshot {
+        private final List<Provider> ordered;
+        private final Map<String, Provider> byProviderId;
+
+        Snapshot(List<Provider> providers) {
+            Map<String, Provider> index = new LinkedHashMap<>();
+            for (Provider provider : providers) {
+                index.put(provider.getProviderId(), provider);
+            }
+            this.ordered = Collections.unmodifiableList(providers);
+            this.byProviderId = Collections.unmodifiableMap(index);
+        }
+    }
+}
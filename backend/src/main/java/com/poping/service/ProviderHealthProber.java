@@ -0,0 +1,263 @@
+package com.poping.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.poping.dto.ProviderHealthDTO;
+import com.poping.dto.ProviderModelListResponse;
+import com.poping.entity.Provider;
+import com.poping.entity.ProviderConfig;
+import com.poping.repository.ProviderConfigRepository;
+import com.poping.security.ApiKeyVault;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestTemplate;
+
+import javax.annotation.PreDestroy;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * [文件概览]
+ * - 目的: 并发探测供应商配置的连通性，替代前端逐个调用单条测试接口
+ * - 数据流: 批量测试接口/定时任务 → probe(configs) → 有界线程池并发 GET {apiUrl}/models
+ *         → 整体时限内收集结果（未完成的记为TIMEOUT）→ 写入健康表 → 返回
+ * - 核心数据: configId → 最近一次探测结果（健康表，health-ttl后过期）
+ * - 关系: 探测失败同时通知ProviderRouter，使故障端点在聊天路由中降级；
+ *         请求仍经过DownstreamLimiter的provider全局上限；定时探测默认关闭，多节点部署时每个节点各自探测
+ *
+ * 探测请求使用共享连接池上的专用RestTemplate，连接、取连接与读取超时都不超过整体时限，
+ * 超时的探测在等待方记为TIMEOUT后，工作线程也会在时限内释放，不会继续占用探测线程与provider名额。
+ */
+@Component
+public class ProviderHealthProber {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProviderHealthProber.class);
+
+    private static final int SCAN_BATCH_SIZE = 500;
+
+    private final ProviderConfigRepository providerConfigRepository;
+    private final ProviderCatalog providerCatalog;
+    private final ProviderRouter providerRouter;
+    private final RestTemplate restTemplate;
+    private final DownstreamLimiter downstreamLimiter;
+    private final ApiKeyVault apiKeyVault;
+    private final ExecutorService probeExecutor;
+    private final Cache<String, ProviderHealthDTO> healthTable;
+
+    private final long deadlineMillis;
+
+    @Value("${app.provider.probe.max-configs:2000}")
+    private int maxConfigs;
+
+    @Value("${app.provider.probe.scheduled-enabled:false}")
+    private boolean scheduledEnabled;
+
+    public ProviderHealthProber(ProviderConfigRepository providerConfigRepository, ProviderCatalog providerCatalog,
+                                ProviderRouter providerRouter, CloseableHttpClient httpClient,
+                                DownstreamLimiter downstreamLimiter, ApiKeyVault apiKeyVault,
+                                @Value("${app.provider.probe.threads:8}") int threads,
+                                @Value("${app.provider.probe.deadline:10000}") long deadlineMillis,
+                                @Value("${app.external.http.connect-timeout:3000}") int connectTimeout,
+                                @Value("${app.external.http.connection-request-timeout:2000}") int connectionRequestTimeout,
+                                @Value("${app.provider.probe.health-ttl:900000}") long healthTtlMillis) {
+        this.providerConfigRepository = providerConfigRepository;
+        this.providerCatalog = providerCatalog;
+        this.providerRouter = providerRouter;
+        this.deadlineMillis = deadlineMillis;
+        // 共享连接池，只覆盖本RestTemplate的请求超时；工厂不注册为Bean，不会随容器关闭共享客户端
+        int timeout = (int) Math.min(deadlineMillis, Integer.MAX_VALUE);
+        HttpComponentsClientHttpRequestFactory requestFactory = new HttpComponentsClientHttpRequestFactory(httpClient);
+        requestFactory.setConnectTimeout(Math.min(connectTimeout, timeout));
+        requestFactory.setConnectionRequestTimeout(Math.min(connectionRequestTimeout, timeout));
+        requestFactory.setReadTimeout(timeout);
+        this.restTemplate = new RestTemplate(requestFactory);
+        this.downstreamLimiter = downstreamLimiter;
+        this.apiKeyVault = apiKeyVault;
+        this.probeExecutor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "provider-probe");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.healthTable = Caffeine.newBuilder()
+                .maximumSize(100000)
+                .expireAfterWrite(healthTtlMillis, TimeUnit.MILLISECONDS)
+                .build();
+    }
+
+    /**
+     * [函数: probeUser]
+     * - 输入: String userId - 用户ID
+     * - 输出: List<ProviderHealthDTO> - 用户每个供应商配置的探测结果
+     * - 角色: 用户的批量连接测试
+     * - 逻辑: 1. 查询用户的活跃配置 2. 并发探测
+     */
+    public List<ProviderHealthDTO> probeUser(String userId) {
+        return probe(providerConfigRepository.findByUserId(userId));
+    }
+
+    /**
+     * [函数: probeAll]
+     * - 输入: 无
+     * - 输出: List<ProviderHealthDTO> - 全部租户活跃配置的探测结果（最多max-configs个）
+     * - 角色: 管理员批量测试与定时健康探测
+     * - 逻辑: 1. 按主键分批扫描活跃配置 2. 并发探测
+     */
+    public List<ProviderHealthDTO> probeAll() {
+        List<ProviderConfig> configs = new ArrayList<>();
+        Integer afterId = 0;
+        while (configs.size() < maxConfigs) {
+            List<ProviderConfig> batch = providerConfigRepository.findActiveAfterId(afterId,
+                    Math.min(SCAN_BATCH_SIZE, maxConfigs - configs.size()));
+            configs.addAll(batch);
+            if (batch.size() < SCAN_BATCH_SIZE) {
+                break;
+            }
+            afterId = batch.get(batch.size() - 1).getId();
+        }
+        if (configs.size() >= maxConfigs) {
+            logger.warn("活跃供应商配置超过探测上限，只探测前{}个", maxConfigs);
+        }
+        return probe(configs);
+    }
+
+    /**
+     * [函数: health]
+     * - 输入: 无
+     * - 输出: List<ProviderHealthDTO> - 健康表中的最近探测结果（按探测时间倒序）
+     * - 角色: 管理端健康概览，不触发远程调用
+     * - 逻辑: 1. 读取健康表快照并排序
+     */
+    public List<ProviderHealthDTO> health() {
+        List<ProviderHealthDTO> results = new ArrayList<>(healthTable.asMap().values());
+        results.sort(Comparator.comparing(ProviderHealthDTO::getCheckedAt).reversed());
+        return results;
+    }
+
+    /**
+     * 定时健康探测（app.provider.probe.scheduled-enabled开启时）
+     */
+    @Scheduled(fixedDelayString = "${app.provider.probe.interval:300000}",
+            initialDelayString = "${app.provider.probe.interval:300000}")
+    public void scheduledProbe() {
+        if (!scheduledEnabled) {
+            return;
+        }
+        try {
+            List<ProviderHealthDTO> results = probeAll();
+            long down = results.stream().filter(result -> !ProviderHealthDTO.UP.equals(result.getStatus())).count();
+            logger.info("供应商健康探测完成: total={}, unhealthy={}", results.size(), down);
+        } catch (Exception e) {
+            logger.warn("供应商健康探测失败: {}", e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        probeExecutor.shutdownNow();
+    }
+
+    private List<ProviderHealthDTO> probe(List<ProviderConfig> configs) {
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(deadlineMillis);
+
+        List<Future<ProviderHealthDTO>> futures = new ArrayList<>(configs.size());
+        for (ProviderConfig config : configs) {
+            try {
+                futures.add(probeExecutor.submit(() -> probeOne(config, deadline)));
+            } catch (RejectedExecutionException e) {
+                futures.add(null);
+            }
+        }
+
+        List<ProviderHealthDTO> results = new ArrayList<>(configs.size());
+        for (int i = 0; i < configs.size(); i++) {
+            ProviderConfig config = configs.get(i);
+            Future<ProviderHealthDTO> future = futures.get(i);
+            ProviderHealthDTO result;
+            if (future == null) {
+                result = result(config, ProviderHealthDTO.DOWN, 0L, "探测任务被拒绝");
+            } else {
+                try {
+                    result = future.get(Math.max(0L, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                } catch (TimeoutException e) {
+                    future.cancel(true);
+                    result = result(config, ProviderHealthDTO.TIMEOUT,
+                            TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), "探测超时");
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    future.cancel(true);
+                    result = result(config, ProviderHealthDTO.TIMEOUT,
+                            TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), "探测被中断");
+                } catch (ExecutionException e) {
+                    result = result(config, ProviderHealthDTO.DOWN, 0L, e.getCause().getMessage());
+                }
+            }
+            if (config.getConfigId() != null) {
+                healthTable.put(config.getConfigId(), result);
+            }
+            results.add(result);
+        }
+        return results;
+    }
+
+    private ProviderHealthDTO probeOne(ProviderConfig config, long deadline) {
+        long start = System.nanoTime();
+        if (start - deadline >= 0) {
+            // 排队期间已超过整体时限，等待方已记为TIMEOUT，不再发出请求
+            return result(config, ProviderHealthDTO.TIMEOUT, 0L, "探测超时");
+        }
+        try {
+            HttpHeaders headers = new HttpHeaders();
+            headers.set("Authorization", "Bearer " + apiKeyVault.reveal(config.getApiKey()));
+            headers.set("Content-Type", "application/json");
+            HttpEntity<String> entity = new HttpEntity<>(headers);
+
+            String modelsUrl = config.getApiUrl() + "/models";
+            ResponseEntity<ProviderModelListResponse> response = downstreamLimiter.call(DownstreamLimiter.PROVIDER,
+                    () -> restTemplate.exchange(modelsUrl, HttpMethod.GET, entity, ProviderModelListResponse.class));
+
+            long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            ProviderModelListResponse body = response.getBody();
+            ProviderHealthDTO result = result(config, ProviderHealthDTO.UP, elapsed, "连接成功");
+            result.setStatusCode(response.getStatusCodeValue());
+            result.setModelCount(body == null || body.getData() == null ? 0 : body.getData().size());
+            return result;
+        } catch (Exception e) {
+            long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            providerRouter.recordProbeFailure(config.getApiUrl(), elapsed);
+            return result(config, ProviderHealthDTO.DOWN, elapsed, "连接失败: " + e.getMessage());
+        }
+    }
+
+    private ProviderHealthDTO result(ProviderConfig config, String status, long latencyMillis, String message) {
+        Provider provider = providerCatalog.find(config.getProviderId());
+        ProviderHealthDTO result = new ProviderHealthDTO();
+        result.setConfigId(config.getConfigId());
+        result.setUserId(config.getUserId());
+        result.setProviderId(config.getProviderId());
+        result.setProviderName(provider != null ? provider.getName() : "Unknown");
+        result.setStatus(status);
+        result.setLatencyMs(latencyMillis);
+        result.setMessage(message);
+        result.setCheckedAt(LocalDateTime.now());
+        return result;
+    }
+}
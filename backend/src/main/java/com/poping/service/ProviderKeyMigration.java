@@ -0,0 +1,80 @@
+package com.poping.service;
+
+import com.poping.entity.ProviderConfig;
+import com.poping.repository.ProviderConfigRepository;
+import com.poping.security.ApiKeyVault;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * [文件概览]
+ * - 目的: 把数据库中遗留的明文供应商密钥迁移为密文并补齐掩码
+ * - 数据流: 应用启动 → 按主键分批读取未加密的配置 → ApiKeyVault.encrypt/mask → 条件更新
+ * - 核心数据: 无（一次性批处理）
+ * - 关系: 更新条件带上读取时的明文，与用户并发保存互不覆盖；多个节点同时启动时重复执行也安全；
+ *         迁移完成前ApiKeyVault.reveal对明文原样返回，服务不中断；
+ *         主密钥为本次启动新生成（generate-if-missing）时不迁移，待主密钥确认保留后的下一次启动再执行
+ */
+@Component
+public class ProviderKeyMigration {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProviderKeyMigration.class);
+
+    private static final int BATCH_SIZE = 200;
+
+    private final ProviderConfigRepository providerConfigRepository;
+    private final ApiKeyVault apiKeyVault;
+
+    @Value("${app.provider.key-encryption.migrate-on-startup:true}")
+    private boolean migrateOnStartup;
+
+    public ProviderKeyMigration(ProviderConfigRepository providerConfigRepository, ApiKeyVault apiKeyVault) {
+        this.providerConfigRepository = providerConfigRepository;
+        this.apiKeyVault = apiKeyVault;
+    }
+
+    /**
+     * [函数: migrate]
+     * - 输入: 无
+     * - 输出: void
+     * - 角色: 启动后加密遗留的明文密钥
+     * - 逻辑: 1. 主密钥为本次新生成时跳过 2. 按主键分批读取明文行 3. 逐行加密并条件更新 4. 失败只记录日志，下次启动继续
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void migrate() {
+        if (!migrateOnStartup) {
+            return;
+        }
+        if (apiKeyVault.isKekGenerated()) {
+            logger.warn("主密钥为本次启动新生成，跳过明文供应商密钥迁移");
+            return;
+        }
+        int migrated = 0;
+        Integer afterId = 0;
+        try {
+            while (true) {
+                List<ProviderConfig> batch = providerConfigRepository.findPlaintextKeysAfterId(afterId, BATCH_SIZE);
+                for (ProviderConfig config : batch) {
+                    String plaintext = config.getApiKey();
+                    migrated += providerConfigRepository.updateEncryptedKey(config.getId(), plaintext,
+                            apiKeyVault.encrypt(plaintext), ApiKeyVault.mask(plaintext));
+                }
+                if (batch.size() < BATCH_SIZE) {
+                    break;
+                }
+                afterId = batch.get(batch.size() - 1).getId();
+            }
+        } catch (Exception e) {
+            logger.warn("迁移明文供应商密钥失败，下次启动继续: {}", e.getMessage());
+        }
+        if (migrated > 0) {
+            logger.info("已将{}个明文供应商密钥迁移为密文", migrated);
+        }
+    }
+}
@@ -0,0 +1,348 @@
+package com.poping.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.poping.dto.ChatCompletionMessage;
+import com.poping.dto.ChatCompletionRequest;
+import com.poping.dto.ChatCompletionResponse;
+import com.poping.dto.ProviderModelDTO;
+import com.poping.entity.ProviderConfig;
+import com.poping.exception.ExternalServiceException;
+import com.poping.repository.ProviderConfigRepository;
+import com.poping.security.ApiKeyVault;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * [文件概览]
+ * - 目的: 把一轮对话直接发送到用户配置的OpenAI兼容供应商，在多个供应商之间做延迟感知的负载均衡与故障转移
+ * - 数据流: ChatService → complete(userId, provider, model, messages) → 用户的供应商配置 → 按得分排序
+ *         → 依次尝试（跳过并发已满的供应商）→ POST {apiUrl}/chat/completions → 回答内容
+ * - 核心数据: 每个供应商端点（apiUrl）的在途请求数、峰值EWMA延迟、并发信号量
+ * - 关系: 得分 = EWMA延迟 × (在途请求数 + 1)，越小越优先；失败按耗时加惩罚计入EWMA，使故障端点自然降级；
+ *         端点级信号量之外仍经过DownstreamLimiter的provider全局上限
+ *
+ * EWMA按时间衰减（decay为时间常数），样本高于当前值时直接取样本（峰值敏感），
+ * 延迟突增的端点立即让出流量，恢复后随时间逐步回到正常权重。
+ */
+@Component
+public class ProviderRouter {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProviderRouter.class);
+
+    /** 路由到用户全部供应商配置 */
+    public static final String AUTO = "auto";
+
+    private final ProviderConfigRepository providerConfigRepository;
+    private final ModelCatalogCache modelCatalogCache;
+    private final RestTemplate restTemplate;
+    private final DownstreamLimiter downstreamLimiter;
+    private final ApiKeyVault apiKeyVault;
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+    private final Cache<String, Endpoint> endpoints;
+    private final Counter failovers;
+
+    @Value("${app.provider.routing.max-attempts:3}")
+    private int maxAttempts;
+
+    @Value("${app.provider.routing.max-concurrent-per-provider:20}")
+    private int maxConcurrentPerProvider;
+
+    @Value("${app.provider.routing.initial-latency:1000}")
+    private double initialLatencyMillis;
+
+    @Value("${app.provider.routing.decay:10000}")
+    private double decayMillis;
+
+    @Value("${app.provider.routing.failure-penalty:5000}")
+    private long failurePenaltyMillis;
+
+    public ProviderRouter(ProviderConfigRepository providerConfigRepository, ModelCatalogCache modelCatalogCache,
+                          RestTemplate restTemplate, DownstreamLimiter downstreamLimiter, ApiKeyVault apiKeyVault,
+                          ObjectMapper objectMapper, MeterRegistry meterRegistry) {
+        this.providerConfigRepository = providerConfigRepository;
+        this.modelCatalogCache = modelCatalogCache;
+        this.restTemplate = restTemplate;
+        this.downstreamLimiter = downstreamLimiter;
+        this.apiKeyVault = apiKeyVault;
+        this.objectMapper = objectMapper;
+        this.meterRegistry = meterRegistry;
+        this.endpoints = Caffeine.newBuilder()
+                .maximumSize(1000)
+                .expireAfterAccess(1, TimeUnit.HOURS)
+                .build();
+        this.failovers = Counter.builder("provider.chat.failovers")
+                .description("供应商调用失败后实际转移到下一个供应商的次数")
+                .register(meterRegistry);
+    }
+
+    /**
+     * [函数: complete]
+     * - 输入: String userId - 用户ID; String provider - 供应商ID或"auto"; String model - 模型（可为空）;
+     *         List<ChatCompletionMessage> messages - 上下文消息
+     * - 输出: Completion - 回答内容及实际使用的供应商与模型
+     * - 角色: 直连供应商的一轮对话
+     * - 逻辑: 1. 取用户的供应商配置并按provider过滤 2. 按得分排序
+     *         3. 依次尝试最多max-attempts个，端点并发已满的跳过，失败则转移到下一个
+     *         4. 只有端点本身的失败计入EWMA惩罚；模型解析失败与本地DownstreamLimiter拒绝不影响端点得分
+     *         5. 全部并发已满返回50302，全部失败抛出最后一个错误
+     */
+    public Completion complete(String userId, String provider, String model, List<ChatCompletionMessage> messages) {
+        List<ProviderConfig> candidates = candidates(userId, provider);
+        if (candidates.isEmpty()) {
+            throw new RuntimeException("未配置可用的模型供应商: " + provider);
+        }
+
+        int attempts = 0;
+        boolean anyAttempted = false;
+        RuntimeException lastError = null;
+        for (ProviderConfig config : rank(candidates)) {
+            if (attempts >= maxAttempts) {
+                break;
+            }
+            Endpoint endpoint = endpoint(config.getApiUrl());
+            if (!endpoint.permits.tryAcquire()) {
+                continue;
+            }
+            if (lastError != null) {
+                // 上一个候选失败后确实转移到了本候选
+                failovers.increment();
+            }
+            attempts++;
+            anyAttempted = true;
+            endpoint.outstanding.incrementAndGet();
+            long start = System.nanoTime();
+            try {
+                String resolvedModel;
+                try {
+                    resolvedModel = resolveModel(config, model);
+                } catch (RuntimeException e) {
+                    // 配置或模型列表问题，请求未发到端点，不计入端点延迟
+                    logger.warn("供应商模型解析失败，尝试下一个: provider={}, {}", config.getProviderId(), e.getMessage());
+                    lastError = e;
+                    continue;
+                }
+                ChatCompletionResponse response = downstreamLimiter.call(DownstreamLimiter.PROVIDER,
+                        () -> post(config, new ChatCompletionRequest(resolvedModel, messages)));
+                String content = response == null ? null : response.firstContent();
+                if (content == null) {
+                    throw new RuntimeException("供应商返回了空回答");
+                }
+                long elapsed = System.nanoTime() - start;
+                endpoint.record(TimeUnit.NANOSECONDS.toMillis(elapsed), decayMillis);
+                timer(config.getProviderId(), "success").record(elapsed, TimeUnit.NANOSECONDS);
+                String usedModel = response.getModel() != null ? response.getModel() : resolvedModel;
+                return new Completion(config.getProviderId(), usedModel, content);
+            } catch (ExternalServiceException e) {
+                // 本地DownstreamLimiter拒绝，请求未发出；全局上限对所有供应商相同，不再转移，也不惩罚端点
+                lastError = e;
+                break;
+            } catch (RuntimeException e) {
+                long elapsed = System.nanoTime() - start;
+                boolean requestError = isRequestError(e);
+                long penalty = requestError ? 0L : failurePenaltyMillis;
+                endpoint.record(TimeUnit.NANOSECONDS.toMillis(elapsed) + penalty, decayMillis);
+                timer(config.getProviderId(), "failure").record(elapsed, TimeUnit.NANOSECONDS);
+                logger.warn("供应商调用失败: provider={}, {}", config.getProviderId(), e.getMessage());
+                lastError = e;
+                if (requestError) {
+                    // 请求本身有问题（如上下文过长），换供应商也不会成功
+                    break;
+                }
+            } finally {
+                endpoint.outstanding.decrementAndGet();
+                endpoint.permits.release();
+            }
+        }
+
+        if (!anyAttempted) {
+            throw new ExternalServiceException(DownstreamLimiter.PROVIDER, ExternalServiceException.OVERLOADED,
+                    "模型供应商繁忙，请稍后再试");
+        }
+        if (lastError instanceof ExternalServiceException) {
+            throw lastError;
+        }
+        throw new RuntimeException("模型供应商调用失败: " + lastError.getMessage(), lastError);
+    }
+
+    /**
+     * [函数: recordProbeFailure]
+     * - 输入: String apiUrl - 端点URL; long elapsedMillis - 探测耗时
+     * - 输出: void
+     * - 角色: 健康探测失败时让已在路由中的端点提前降级
+     * - 逻辑: 1. 只更新已有的端点状态（未参与过路由的端点不创建） 2. 按失败调用计入EWMA
+     */
+    public void recordProbeFailure(String apiUrl, long elapsedMillis) {
+        Endpoint endpoint = apiUrl == null ? null : endpoints.getIfPresent(apiUrl);
+        if (endpoint != null) {
+            endpoint.record(elapsedMillis + failurePenaltyMillis, decayMillis);
+        }
+    }
+
+    private List<ProviderConfig> candidates(String userId, String provider) {
+        List<ProviderConfig> configs = providerConfigRepository.findByUserId(userId);
+        if (provider == null || provider.isEmpty() || AUTO.equalsIgnoreCase(provider)) {
+            return configs;
+        }
+        List<ProviderConfig> matched = new ArrayList<>();
+        for (ProviderConfig config : configs) {
+            if (provider.equals(config.getProviderId())) {
+                matched.add(config);
+            }
+        }
+        return matched;
+    }
+
+    /**
+     * 按得分升序排序；先打乱再做稳定排序，得分相同的候选随机分摊流量
+     */
+    private List<ProviderConfig> rank(List<ProviderConfig> candidates) {
+        List<ProviderConfig> ranked = new ArrayList<>(candidates);
+        Collections.shuffle(ranked);
+        List<Double> scores = new ArrayList<>(ranked.size());
+        for (ProviderConfig config : ranked) {
+            scores.add(endpoint(config.getApiUrl()).score());
+        }
+        List<Integer> order = new ArrayList<>(ranked.size());
+        for (int i = 0; i < ranked.size(); i++) {
+            order.add(i);
+        }
+        order.sort(Comparator.comparing(scores::get));
+        List<ProviderConfig> result = new ArrayList<>(ranked.size());
+        for (Integer index : order) {
+            result.add(ranked.get(index));
+        }
+        return result;
+    }
+
+    private Endpoint endpoint(String apiUrl) {
+        return endpoints.get(apiUrl, url -> new Endpoint(maxConcurrentPerProvider, initialLatencyMillis));
+    }
+
+    /**
+     * 请求的模型 → 配置extConfig中的model → 模型列表缓存中的第一个
+     */
+    private String resolveModel(ProviderConfig config, String requested) {
+        if (requested != null && !requested.isEmpty()) {
+            return requested;
+        }
+        if (config.getExtConfig() != null && !config.getExtConfig().isEmpty()) {
+            try {
+                JsonNode ext = objectMapper.readTree(config.getExtConfig());
+                if (ext.hasNonNull("model")) {
+                    return ext.get("model").asText();
+                }
+            } catch (Exception e) {
+                logger.debug("解析供应商扩展配置失败: configId={}", config.getConfigId());
+            }
+        }
+        List<ProviderModelDTO> models = modelCatalogCache.get(config.getProviderId(), config.getApiUrl(),
+                config.getApiKey());
+        if (models.isEmpty()) {
+            throw new RuntimeException("供应商没有可用模型");
+        }
+        return models.get(0).getId();
+    }
+
+    private ChatCompletionResponse post(ProviderConfig config, ChatCompletionRequest request) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set("Authorization", "Bearer " + apiKeyVault.reveal(config.getApiKey()));
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        return restTemplate.postForObject(config.getApiUrl() + "/chat/completions",
+                new HttpEntity<>(request, headers), ChatCompletionResponse.class);
+    }
+
+    private static boolean isRequestError(RuntimeException e) {
+        if (!(e instanceof HttpClientErrorException)) {
+            return false;
+        }
+        int status = ((HttpClientErrorException) e).getRawStatusCode();
+        return status == 400 || status == 413 || status == 422;
+    }
+
+    private Timer timer(String providerId, String outcome) {
+        return Timer.builder("provider.chat.latency")
+                .tag("provider", providerId == null ? "unknown" : providerId)
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    /**
+     * 一次直连调用的结果
+     */
+    public static class Completion {
+        private final String provider;
+        private final String model;
+        private final String content;
+
+        Completion(String provider, String model, String content) {
+            this.provider = provider;
+            this.model = model;
+            this.content = content;
+        }
+
+        public String getProvider() {
+            return provider;
+        }
+
+        public String getModel() {
+            return model;
+        }
+
+        public String getContent() {
+            return content;
+        }
+    }
+
+    /**
+     * 单个供应商端点的负载状态
+     */
+    private static class Endpoint {
+        private final Semaphore permits;
+        private final AtomicInteger outstanding = new AtomicInteger();
+        private double ewmaMillis;
+        private long updatedAt;
+
+        Endpoint(int maxConcurrent, double initialLatencyMillis) {
+            this.permits = new Semaphore(maxConcurrent);
+            this.ewmaMillis = initialLatencyMillis;
+            this.updatedAt = System.currentTimeMillis();
+        }
+
+        synchronized void record(long sampleMillis, double decayMillis) {
+            long now = System.currentTimeMillis();
+            if (sampleMillis > ewmaMillis) {
+                ewmaMillis = sampleMillis;
+            } else {
+                double weight = Math.exp(-(now - updatedAt) / decayMillis);
+                ewmaMillis = ewmaMillis * weight + sampleMillis * (1 - weight);
+            }
+            updatedAt = now;
+        }
+
+        synchronized double score() {
+            return ewmaMillis * (outstanding.get() + 1);
+        }
+    }
+}
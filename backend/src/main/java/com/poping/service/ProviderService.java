@@ -2,6 +2,8 @@ package com.poping.service;
 
 import com.poping.dto.ProviderConfigDTO;
 import com.poping.dto.ProviderConfigResponseDTO;
+import com.poping.dto.ProviderHealthDTO;
+import com.poping.dto.ProviderModelDTO;
 import com.poping.entity.Provider;
 import java.util.List;
 import java.util.Map;
@@ -60,12 +62,39 @@ public interface ProviderService {
      */
     Map<String, Object> testProviderConnection(String userId, String providerId);
     
+    /**
+     * [函数: testAllProviderConnections]
+     * - 输入: String userId - 用户ID
+     * - 输出: List<ProviderHealthDTO> - 每个配置的探测结果
+     * - 角色: 批量测试用户的全部供应商配置
+     * - 逻辑: 1. 获取用户配置 2. 在整体时限内并发探测 3. 返回结果
+     */
+    List<ProviderHealthDTO> testAllProviderConnections(String userId);
+    
+    /**
+     * [函数: testAllTenantsProviderConnections]
+     * - 输入: 无
+     * - 输出: List<ProviderHealthDTO> - 全部租户配置的探测结果
+     * - 角色: 管理员批量测试
+     * - 逻辑: 1. 分批扫描活跃配置 2. 在整体时限内并发探测 3. 返回结果
+     */
+    List<ProviderHealthDTO> testAllTenantsProviderConnections();
+    
+    /**
+     * [函数: getProviderHealth]
+     * - 输入: 无
+     * - 输出: List<ProviderHealthDTO> - 健康表中的最近探测结果
+     * - 角色: 管理端健康概览
+     * - 逻辑: 1. 读取健康表
+     */
+    List<ProviderHealthDTO> getProviderHealth();
+    
     /**
      * [函数: getProviderModels]
      * - 输入: String userId, String providerId - 用户ID和供应商ID
-     * - 输出: List<Map<String, Object>> - 供应商模型列表
+     * - 输出: List<ProviderModelDTO> - 供应商模型列表
      * - 角色: 获取供应商的可用模型列表
-     * - 逻辑: 1. 获取配置 2. 调用供应商API 3. 解析模型列表 4. 返回结果
+     * - 逻辑: 1. 获取配置 2. 从模型列表缓存读取（必要时调用供应商API） 3. 返回结果
      */
-    List<Map<String, Object>> getProviderModels(String userId, String providerId);
+    List<ProviderModelDTO> getProviderModels(String userId, String providerId);
 }
\ No newline at end of file
@@ -0,0 +1,191 @@
+package com.poping.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * [文件概览]
+ * - 目的: 基于WebClient的非阻塞AIGents客户端
+ * - 数据流: ReactiveChatService → Mono/Flux → aigentsWebClient → AIGents HTTP API
+ * - 核心数据: 会话创建、同步查询与流式查询的响应式版本
+ * - 关系: 请求体与事件解析复用AIGentsService的静态方法，两条链路对外行为一致；
+ *         每次订阅经AIGentsGuard.enter()取得与同步链路相同的熔断与并发准入（普通调用占AIMD名额，
+ *         流式调用占流式名额），信号结束或取消订阅时结算；DownstreamLimiter为阻塞信号量，不用于本链路，
+ *         普通调用的并发由AIMD上限（不超过downstream.aigents.max-concurrent）约束；
+ *         仅在app.chat.reactive.enabled=true时启用
+ */
+@Service
+@ConditionalOnProperty(name = "app.chat.reactive.enabled", havingValue = "true")
+public class ReactiveAIGentsClient {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReactiveAIGentsClient.class);
+
+    private static final ParameterizedTypeReference<ServerSentEvent<String>> SSE_TYPE =
+            new ParameterizedTypeReference<ServerSentEvent<String>>() {};
+
+    private final WebClient webClient;
+    private final ObjectMapper objectMapper;
+    private final AIGentsGuard guard;
+
+    public ReactiveAIGentsClient(@Qualifier("aigentsWebClient") WebClient webClient, ObjectMapper objectMapper,
+                                 AIGentsGuard guard) {
+        this.webClient = webClient;
+        this.objectMapper = objectMapper;
+        this.guard = guard;
+    }
+
+    /**
+     * [函数: createSession]
+     * - 输入: String userId, String projectName, String systemPrompt - 会话元数据与系统提示词
+     * - 输出: Mono<String> - AIGents会话ID
+     * - 角色: 非阻塞创建远程会话
+     * - 逻辑: 1. 复用同步客户端的请求体 2. 解析success/data.session_id 3. 失败时以错误信号结束
+     */
+    public Mono<String> createSession(String userId, String projectName, String systemPrompt) {
+        return guarded(AIGentsGuard.CREATE_SESSION, () -> webClient.post()
+                .uri("/api/sessions")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(AIGentsService.buildSessionBody(userId, projectName, systemPrompt))
+                .retrieve()
+                .bodyToMono(String.class)
+                .map(body -> {
+                    JsonNode data = readSuccessData(body);
+                    if (data == null || !data.hasNonNull("session_id")) {
+                        logger.error("Failed to create AIGents session: {}", body);
+                        throw new RuntimeException("创建AIGents会话失败");
+                    }
+                    return data.get("session_id").asText();
+                }));
+    }
+
+    /**
+     * [函数: query]
+     * - 输入: String sessionId, String query, Map context - 会话ID、查询内容与上下文
+     * - 输出: Mono<String> - 完整的AI响应
+     * - 角色: 非阻塞同步查询，等待期间不占用任何线程
+     * - 逻辑: 1. 发送stream=false的查询 2. 解析data.content 3. 失败时以错误信号结束，由调用方补偿
+     */
+    public Mono<String> query(String sessionId, String query, Map<String, Object> context) {
+        return guarded(AIGentsGuard.SEND_QUERY, () -> webClient.post()
+                .uri("/api/sessions/{sessionId}/query", sessionId)
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(AIGentsService.buildQueryBody(query, context, false))
+                .retrieve()
+                .bodyToMono(String.class)
+                .map(body -> {
+                    JsonNode data = readSuccessData(body);
+                    if (data == null || !data.hasNonNull("content")) {
+                        logger.error("Failed to send AIGents query: {}", body);
+                        throw new RuntimeException("AI服务暂时不可用");
+                    }
+                    return data.get("content").asText();
+                }));
+    }
+
+    /**
+     * [函数: streamQuery]
+     * - 输入: String sessionId, String query, Map context - 会话ID、查询内容与上下文
+     * - 输出: Flux<String> - 增量内容流
+     * - 角色: 非阻塞流式查询，下游取消订阅时连接随之释放
+     * - 逻辑: 1. 发送stream=true的查询 2. 逐个SSE事件提取增量 3. 遇到[DONE]结束
+     */
+    public Flux<String> streamQuery(String sessionId, String query, Map<String, Object> context) {
+        return guardedStream(AIGentsGuard.SEND_QUERY_STREAM, () -> webClient.post()
+                .uri("/api/sessions/{sessionId}/query", sessionId)
+                .contentType(MediaType.APPLICATION_JSON)
+                .accept(MediaType.TEXT_EVENT_STREAM)
+                .bodyValue(AIGentsService.buildQueryBody(query, context, true))
+                .retrieve()
+                .bodyToFlux(SSE_TYPE)
+                .map(event -> event.data() == null ? "" : event.data().trim())
+                .takeWhile(data -> !"[DONE]".equals(data))
+                .filter(data -> !data.isEmpty())
+                .<String>handle((data, sink) -> {
+                    String delta;
+                    try {
+                        delta = AIGentsService.extractDelta(objectMapper.readTree(data));
+                    } catch (IOException e) {
+                        sink.error(new RuntimeException("AIGents响应解析失败", e));
+                        return;
+                    }
+                    if (delta != null && !delta.isEmpty()) {
+                        sink.next(delta);
+                    }
+                }));
+    }
+
+    /**
+     * [函数: guarded]
+     * - 输入: String operation - 操作名; Supplier call - 构造实际请求的Mono
+     * - 输出: Mono<T> - 受保护的请求
+     * - 角色: 为普通调用取得熔断与AIMD准入，并在结果信号或取消订阅时结算
+     * - 逻辑: 1. 订阅时才申请准入，拒绝时以50301/50302错误信号结束 2. 成功与4xx计为成功，其余错误计为失败
+     *         3. 取消订阅时归还名额，不计入熔断统计
+     */
+    private <T> Mono<T> guarded(String operation, Supplier<Mono<T>> call) {
+        return Mono.defer(() -> {
+            AIGentsGuard.Ticket ticket = guard.enter(operation, false);
+            long startNanos = System.nanoTime();
+            return call.get()
+                    .doOnSuccess(result -> ticket.onSuccess(System.nanoTime() - startNanos))
+                    .doOnError(e -> settleError(ticket, e, System.nanoTime() - startNanos))
+                    .doOnCancel(ticket::onCancel);
+        });
+    }
+
+    /**
+     * [函数: guardedStream]
+     * - 输入: String operation - 操作名; Supplier call - 构造实际请求的Flux
+     * - 输出: Flux<T> - 受保护的流式请求
+     * - 角色: 为流式调用取得熔断与流式名额，流结束、出错或取消订阅时结算
+     * - 逻辑: 与guarded相同，但流的总时长取决于回答长度，成功时不计入慢调用
+     */
+    private <T> Flux<T> guardedStream(String operation, Supplier<Flux<T>> call) {
+        return Flux.defer(() -> {
+            AIGentsGuard.Ticket ticket = guard.enter(operation, true);
+            long startNanos = System.nanoTime();
+            return call.get()
+                    .doOnComplete(() -> ticket.onSuccess(0L))
+                    .doOnError(e -> settleError(ticket, e, System.nanoTime() - startNanos))
+                    .doOnCancel(ticket::onCancel);
+        });
+    }
+
+    private void settleError(AIGentsGuard.Ticket ticket, Throwable error, long durationNanos) {
+        if (error instanceof WebClientResponseException
+                && ((WebClientResponseException) error).getStatusCode().is4xxClientError()) {
+            // 4xx说明服务可用，只是请求本身有误
+            ticket.onSuccess(durationNanos);
+        } else {
+            ticket.onError(durationNanos);
+        }
+    }
+
+    private JsonNode readSuccessData(String body) {
+        try {
+            JsonNode jsonNode = objectMapper.readTree(body);
+            if (jsonNode.path("success").asBoolean()) {
+                return jsonNode.get("data");
+            }
+            return null;
+        } catch (IOException e) {
+            throw new RuntimeException("AIGents响应解析失败", e);
+        }
+    }
+}
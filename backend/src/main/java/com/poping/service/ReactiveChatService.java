@@ -0,0 +1,267 @@
+package com.poping.service;
+
+import com.poping.dto.ChatRequest;
+import com.poping.entity.Agent;
+import com.poping.entity.Session;
+import com.poping.exception.ExternalServiceException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * [文件概览]
+ * - 目的: 非阻塞的聊天链路，与ChatService的Servlet链路等价，可通过配置开启做A/B对比
+ * - 数据流: ReactiveChatController → 会话查找/创建 → ReactiveAIGentsClient → 保存响应
+ *         JDBC读写在chatJdbcScheduler上执行，模型调用等待期间不占用任何线程
+ * - 核心数据: ChatService.ChatTurn三阶段（开始/完成/失败补偿）
+ * - 关系: 复用ChatService的本地读写与补偿逻辑，远程调用改用ReactiveAIGentsClient；
+ *         仅在app.chat.reactive.enabled=true时启用
+ */
+@Service
+@ConditionalOnProperty(name = "app.chat.reactive.enabled", havingValue = "true")
+public class ReactiveChatService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReactiveChatService.class);
+
+    private final ChatService chatService;
+    private final AgentService agentService;
+    private final AIGentsSessionPool aiGentsSessionPool;
+    private final ReactiveAIGentsClient aiGentsClient;
+    private final Scheduler jdbcScheduler;
+    private final Timer timeToFirstTokenTimer;
+    private final Timer streamDurationTimer;
+
+    public ReactiveChatService(ChatService chatService, AgentService agentService,
+                               AIGentsSessionPool aiGentsSessionPool, ReactiveAIGentsClient aiGentsClient,
+                               @Qualifier("chatJdbcScheduler") Scheduler jdbcScheduler,
+                               MeterRegistry meterRegistry) {
+        this.chatService = chatService;
+        this.agentService = agentService;
+        this.aiGentsSessionPool = aiGentsSessionPool;
+        this.aiGentsClient = aiGentsClient;
+        this.jdbcScheduler = jdbcScheduler;
+        // 与Servlet链路共用同名指标，便于直接对比
+        this.timeToFirstTokenTimer = Timer.builder("chat.stream.ttft")
+                .description("流式聊天首个token延迟")
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry);
+        this.streamDurationTimer = Timer.builder("chat.stream.duration")
+                .description("流式聊天完整响应耗时")
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry);
+    }
+
+    /**
+     * [函数: sendMessage]
+     * - 输入: ChatRequest request, Long userId - 聊天请求与用户ID
+     * - 输出: Mono<Map> - 与ChatService.sendMessage相同结构的响应
+     * - 角色: 非阻塞发送聊天消息
+     * - 逻辑: 1. 开始一轮对话 2. WebClient调用AIGents 3. 保存AI响应 4. 失败时补偿并返回错误结构
+     */
+    public Mono<Map<String, Object>> sendMessage(ChatRequest request, Long userId) {
+        return beginTurn(request, userId)
+                .flatMap(turn -> aiGentsClient.query(
+                                turn.getSession().getAigentsSessionId(),
+                                request.getMessage(),
+                                request.getContext())
+                        .flatMap(aiResponse -> onJdbc(() -> chatService.completeTurn(turn, aiResponse))
+                                .map(aiMessage -> {
+                                    Map<String, Object> response = new HashMap<>();
+                                    response.put("sessionId", turn.getSession().getId());
+                                    response.put("response", aiResponse);
+                                    response.put("status", "success");
+                                    response.put("userMessageId", turn.getUserMessage().getId());
+                                    response.put("aiMessageId", aiMessage.getId());
+                                    return response;
+                                }))
+                        .onErrorResume(e -> {
+                            logger.error("Error sending chat message", e);
+                            return failTurn(turn, e).thenReturn(errorResponse(e, turn));
+                        }))
+                .onErrorResume(e -> {
+                    logger.error("Error sending chat message", e);
+                    return Mono.just(errorResponse(e, null));
+                });
+    }
+
+    /**
+     * [函数: streamMessage]
+     * - 输入: ChatRequest request, Long userId - 聊天请求与用户ID
+     * - 输出: Flux<ServerSentEvent> - 事件序列 session → delta* → done，失败时为error
+     * - 角色: 非阻塞流式发送聊天消息
+     * - 逻辑: 1. 开始一轮对话并发送session事件 2. 转发模型增量 3. 流结束后保存完整回答并发送done
+     *         4. 客户端中途断开时取消上游调用，已收到的内容作为回答保存
+     */
+    public Flux<ServerSentEvent<Map<String, Object>>> streamMessage(ChatRequest request, Long userId) {
+        return Flux.defer(() -> {
+            long startNanos = System.nanoTime();
+            return beginTurn(request, userId).flatMapMany(turn -> {
+                Session session = turn.getSession();
+                StringBuilder content = new StringBuilder();
+                long[] firstTokenNanos = new long[1];
+                AtomicBoolean finished = new AtomicBoolean();
+
+                Map<String, Object> started = new HashMap<>();
+                started.put("sessionId", session.getId());
+                started.put("userMessageId", turn.getUserMessage().getId());
+
+                Flux<ServerSentEvent<Map<String, Object>>> deltas = aiGentsClient.streamQuery(
+                                session.getAigentsSessionId(), request.getMessage(), request.getContext())
+                        .map(delta -> {
+                            if (firstTokenNanos[0] == 0L) {
+                                firstTokenNanos[0] = System.nanoTime();
+                                timeToFirstTokenTimer.record(firstTokenNanos[0] - startNanos, TimeUnit.NANOSECONDS);
+                            }
+                            content.append(delta);
+                            Map<String, Object> chunk = new HashMap<>();
+                            chunk.put("content", delta);
+                            return event("delta", chunk);
+                        });
+
+                Mono<ServerSentEvent<Map<String, Object>>> done = Mono.defer(() -> {
+                    finished.set(true);
+                    return onJdbc(() -> chatService.completeTurn(turn, content.toString()));
+                }).map(aiMessage -> {
+                    long endNanos = System.nanoTime();
+                    streamDurationTimer.record(endNanos - startNanos, TimeUnit.NANOSECONDS);
+
+                    Map<String, Object> result = new HashMap<>();
+                    result.put("sessionId", session.getId());
+                    result.put("aiMessageId", aiMessage.getId());
+                    result.put("ttftMs", firstTokenNanos[0] == 0L ? null
+                            : TimeUnit.NANOSECONDS.toMillis(firstTokenNanos[0] - startNanos));
+                    result.put("durationMs", TimeUnit.NANOSECONDS.toMillis(endNanos - startNanos));
+                    return event("done", result);
+                });
+
+                return Flux.concat(Mono.just(event("session", started)), deltas, done)
+                        .onErrorResume(e -> {
+                            finished.set(true);
+                            logger.error("Error streaming chat message", e);
+                            return failTurn(turn, e).thenReturn(errorEvent(e));
+                        })
+                        .doOnCancel(() -> {
+                            if (finished.compareAndSet(false, true)) {
+                                logger.debug("Chat stream client disconnected, session: {}", session.getId());
+                                persistPartial(turn, content.toString());
+                            }
+                        });
+            }).onErrorResume(e -> {
+                logger.error("Error streaming chat message", e);
+                return Mono.just(errorEvent(e));
+            });
+        });
+    }
+
+    /**
+     * [函数: beginTurn]
+     * - 输入: ChatRequest request, Long userId - 聊天请求与用户ID
+     * - 输出: Mono<ChatTurn> - 已保存用户消息的对话轮次
+     * - 角色: 响应式版本的ChatService.beginTurn
+     * - 逻辑: 1. 已有会话时在JDBC调度器上完成校验与写入 2. 新会话优先领取预热会话，未命中时非阻塞创建远程会话
+     *         3. 远程会话就绪后写入本地会话与用户消息
+     */
+    private Mono<ChatService.ChatTurn> beginTurn(ChatRequest request, Long userId) {
+        if (request.getSessionId() != null) {
+            return onJdbc(() -> {
+                Agent agent = agentService.getAgentById(request.getAgentId());
+                Session session = chatService.getOwnedSession(request.getSessionId(), userId);
+                if (session.getAigentsSessionId() == null) {
+                    throw new RuntimeException("该会话为供应商直连会话，请继续指定provider");
+                }
+                return chatService.openTurn(agent, session, request.getMessage());
+            });
+        }
+
+        return onJdbc(() -> agentService.getAgentById(request.getAgentId()))
+                .flatMap(agent -> claimRemoteSession(userId, agent)
+                        .flatMap(aigentsSessionId -> onJdbc(() -> {
+                            Session session = chatService.persistSession(userId, agent, aigentsSessionId);
+                            return chatService.openTurn(agent, session, request.getMessage());
+                        })));
+    }
+
+    private Mono<String> claimRemoteSession(Long userId, Agent agent) {
+        return Mono.defer(() -> {
+            String pooled = aiGentsSessionPool.claim(AIGentsService.DEFAULT_SYSTEM_PROMPT);
+            if (pooled != null) {
+                return Mono.just(pooled);
+            }
+            return aiGentsClient.createSession(
+                    userId.toString(), "Chat with " + agent.getName(), AIGentsService.DEFAULT_SYSTEM_PROMPT);
+        });
+    }
+
+    private Mono<Void> failTurn(ChatService.ChatTurn turn, Throwable cause) {
+        Exception exception = cause instanceof Exception ? (Exception) cause : new RuntimeException(cause);
+        return onJdbc(() -> {
+            chatService.failTurn(turn, exception);
+            return Boolean.TRUE;
+        }).then();
+    }
+
+    private void persistPartial(ChatService.ChatTurn turn, String partial) {
+        Mono<?> persist = partial.isEmpty()
+                ? failTurn(turn, new RuntimeException("客户端已断开"))
+                : onJdbc(() -> chatService.completeTurn(turn, partial));
+        persist.subscribe(null, e -> logger.error("Failed to persist interrupted chat turn", e));
+    }
+
+    /**
+     * [函数: onJdbc]
+     * - 输入: Callable task - 阻塞的数据库操作
+     * - 输出: Mono - 操作结果
+     * - 角色: 将阻塞调用隔离到chatJdbcScheduler
+     * - 逻辑: 1. 延迟到订阅时执行 2. 在JDBC调度器上运行
+     */
+    private <T> Mono<T> onJdbc(Callable<T> task) {
+        return Mono.fromCallable(task).subscribeOn(jdbcScheduler);
+    }
+
+    private Map<String, Object> errorResponse(Throwable e, ChatService.ChatTurn turn) {
+        Map<String, Object> errorResponse = new HashMap<>();
+        errorResponse.put("status", "error");
+        errorResponse.put("message", "发送消息失败: " + e.getMessage());
+        putErrorCode(errorResponse, e);
+        if (turn != null) {
+            errorResponse.put("sessionId", turn.getSession().getId());
+            errorResponse.put("userMessageId", turn.getUserMessage().getId());
+        }
+        return errorResponse;
+    }
+
+    private ServerSentEvent<Map<String, Object>> errorEvent(Throwable e) {
+        Map<String, Object> error = new HashMap<>();
+        error.put("status", "error");
+        error.put("message", "发送消息失败: " + e.getMessage());
+        putErrorCode(error, e);
+        return event("error", error);
+    }
+
+    /**
+     * 外部服务快速失败（熔断/过载/超时）时附带错误码，与servlet路径一致
+     */
+    private void putErrorCode(Map<String, Object> error, Throwable cause) {
+        if (cause instanceof ExternalServiceException) {
+            error.put("code", ((ExternalServiceException) cause).getCode());
+        }
+    }
+
+    private static ServerSentEvent<Map<String, Object>> event(String name, Map<String, Object> data) {
+        return ServerSentEvent.<Map<String, Object>>builder(data).event(name).build();
+    }
+}
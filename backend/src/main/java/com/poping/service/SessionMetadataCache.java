@@ -0,0 +1,179 @@
+package com.poping.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.poping.entity.Session;
+import com.poping.repository.SessionRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * [文件概览]
+ * - 目的: 会话归属/状态/AIGents会话ID的进程内缓存，聊天请求的权限校验不再逐次查库
+ * - 数据流: 创建会话 → put；权限校验 → getOwned → 命中直接比对userId，未命中selectById后回填
+ *         删除会话 → invalidate → 本地删除，多节点模式下经频道 chat:session-invalidations 通知其他节点
+ * - 核心数据: sessionId → SessionMetadata(userId, agentId, status, aigentsSessionId)
+ * - 关系: 归属与AIGents会话ID创建后不变，只需处理删除；不存在的会话不缓存；
+ *         TTL兜底单节点模式下其他节点删除会话后的陈旧条目；同时清理ConversationHistoryCache
+ */
+@Component
+public class SessionMetadataCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(SessionMetadataCache.class);
+
+    static final String INVALIDATION_CHANNEL = "chat:session-invalidations";
+
+    private final SessionRepository sessionRepository;
+    private final ConversationHistoryCache historyCache;
+    private final StringRedisTemplate redisTemplate;
+    private final boolean broadcast;
+    private final Cache<Long, SessionMetadata> sessions;
+
+    public SessionMetadataCache(SessionRepository sessionRepository, ConversationHistoryCache historyCache,
+                                StringRedisTemplate redisTemplate,
+                                ObjectProvider<RedisMessageListenerContainer> listenerContainer,
+                                MeterRegistry meterRegistry,
+                                @Value("${app.chat.session-cache.max-size:100000}") long maxSize,
+                                @Value("${app.chat.session-cache.ttl:600000}") long ttlMillis) {
+        this.sessionRepository = sessionRepository;
+        this.historyCache = historyCache;
+        this.redisTemplate = redisTemplate;
+        this.sessions = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttlMillis, TimeUnit.MILLISECONDS)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, sessions, "chat.session");
+
+        RedisMessageListenerContainer container = listenerContainer.getIfAvailable();
+        this.broadcast = container != null;
+        if (container != null) {
+            container.addMessageListener(
+                    (message, pattern) -> evictLocal(Long.valueOf(new String(message.getBody(), StandardCharsets.UTF_8))),
+                    new ChannelTopic(INVALIDATION_CHANNEL));
+        }
+    }
+
+    /**
+     * [函数: put]
+     * - 输入: Session session - 已落库的会话
+     * - 输出: void
+     * - 角色: 创建会话后预热，新会话的第一条消息即可命中
+     * - 逻辑: 1. 提取元数据写入缓存
+     */
+    public void put(Session session) {
+        sessions.put(session.getId(), SessionMetadata.of(session));
+    }
+
+    /**
+     * [函数: getOwned]
+     * - 输入: Long sessionId - 会话ID; Long userId - 当前用户ID
+     * - 输出: SessionMetadata - 会话元数据
+     * - 角色: 聊天相关请求的归属校验
+     * - 逻辑: 1. 缓存未命中时读库回填（会话不存在不缓存） 2. 会话不存在或不属于当前用户时抛出异常
+     */
+    public SessionMetadata getOwned(Long sessionId, Long userId) {
+        SessionMetadata metadata = sessions.get(sessionId, id -> {
+            Session session = sessionRepository.selectById(id);
+            return session == null ? null : SessionMetadata.of(session);
+        });
+        if (metadata == null || !metadata.getUserId().equals(userId)) {
+            throw new RuntimeException("会话不存在或无权限访问");
+        }
+        return metadata;
+    }
+
+    /**
+     * [函数: invalidate]
+     * - 输入: Long sessionId - 会话ID
+     * - 输出: void
+     * - 角色: 删除会话后清理本节点及其他节点的缓存
+     * - 逻辑: 1. 删除本地元数据与历史缓存 2. 多节点模式下广播
+     */
+    public void invalidate(Long sessionId) {
+        evictLocal(sessionId);
+        if (!broadcast) {
+            return;
+        }
+        try {
+            redisTemplate.convertAndSend(INVALIDATION_CHANNEL, sessionId.toString());
+        } catch (Exception e) {
+            logger.warn("广播会话失效失败，其他节点等待TTL过期: sessionId={}, {}", sessionId, e.getMessage());
+        }
+    }
+
+    private void evictLocal(Long sessionId) {
+        sessions.invalidate(sessionId);
+        historyCache.invalidate(sessionId);
+    }
+
+    /**
+     * 会话中创建后不变的字段
+     */
+    public static class SessionMetadata {
+        private final Long id;
+        private final Long userId;
+        private final Long agentId;
+        private final String status;
+        private final String aigentsSessionId;
+
+        SessionMetadata(Long id, Long userId, Long agentId, String status, String aigentsSessionId) {
+            this.id = id;
+            this.userId = userId;
+            this.agentId = agentId;
+            this.status = status;
+            this.aigentsSessionId = aigentsSessionId;
+        }
+
+        static SessionMetadata of(Session session) {
+            return new SessionMetadata(session.getId(), session.getUserId(), session.getAgentId(),
+                    session.getStatus(), session.getAigentsSessionId());
+        }
+
+        /**
+         * 转为只含元数据字段的Session，供只使用id与aigentsSessionId的聊天流程
+         */
+        public Session toSession() {
+            Session session = new Session();
+            session.setId(id);
+            session.setUserId(userId);
+            session.setAgentId(agentId);
+            session.setStatus(status);
+            session.setAigentsSessionId(aigentsSessionId);
+            session.setMessageCount(null);
+            session.setLastActivity(null);
+            return session;
+        }
+
+        public Long getId() {
+            return id;
+        }
+
+        public Long getUserId() {
+            return userId;
+        }
+
+        public Long getAgentId() {
+            return agentId;
+        }
+
+        public String getStatus() {
+            return status;
+        }
+
+        public String getAigentsSessionId() {
+            return aigentsSessionId;
+        }
+    }
+}
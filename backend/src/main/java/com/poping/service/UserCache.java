@@ -0,0 +1,256 @@
+package com.poping.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.poping.entity.User;
+import com.poping.repository.UserRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * [文件概览]
+ * - 目的: 按userId和邮箱查询用户的两级缓存
+ * - 数据流: UserService → getById/getByEmail → L1(Caffeine, 短TTL) → L2(Redis JSON) → UserRepository
+ *         资料或密码变更 → invalidate → 事务提交后删除L1与L2，并通过Redis通知其他节点删除L1（启用时）
+ * - 核心数据: L1 userId → User、L1 邮箱 → userId；L2 user:id:{userId} → JSON、user:email:{email} → userId
+ * - 关系: 缓存中的User不含密码哈希（@JsonIgnore），需要校验密码的流程直接读库；
+ *         调用方拿到的是副本，修改不会影响缓存；Redis不可用时退化为直接读库
+ */
+@Component
+public class UserCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(UserCache.class);
+
+    private static final String ID_KEY_PREFIX = "user:id:";
+    private static final String EMAIL_KEY_PREFIX = "user:email:";
+    static final String INVALIDATION_CHANNEL = "user:invalidations";
+
+    private final UserRepository userRepository;
+    private final StringRedisTemplate redisTemplate;
+    private final ObjectMapper objectMapper;
+    private final Cache<String, User> byId;
+    private final Cache<String, String> emailToId;
+
+    private final Counter l1Hits;
+    private final Counter l2Hits;
+    private final Counter misses;
+    private final Counter l2Errors;
+
+    @Value("${app.cache.user.l2-ttl:600000}")
+    private long l2TtlMillis;
+
+    @Value("${app.cache.user.l2-enabled:true}")
+    private boolean l2Enabled;
+
+    public UserCache(UserRepository userRepository, StringRedisTemplate redisTemplate, ObjectMapper objectMapper,
+                     ObjectProvider<RedisMessageListenerContainer> listenerContainer, MeterRegistry meterRegistry,
+                     @Value("${app.cache.user.l1-ttl:30000}") long l1TtlMillis,
+                     @Value("${app.cache.user.l1-max-size:10000}") long l1MaxSize) {
+        this.userRepository = userRepository;
+        this.redisTemplate = redisTemplate;
+        this.objectMapper = objectMapper;
+        this.byId = Caffeine.newBuilder()
+                .maximumSize(l1MaxSize)
+                .expireAfterWrite(l1TtlMillis, TimeUnit.MILLISECONDS)
+                .recordStats()
+                .build();
+        this.emailToId = Caffeine.newBuilder()
+                .maximumSize(l1MaxSize)
+                .expireAfterWrite(l1TtlMillis, TimeUnit.MILLISECONDS)
+                .build();
+
+        CaffeineCacheMetrics.monitor(meterRegistry, byId, "user.l1");
+        this.l1Hits = lookupCounter(meterRegistry, "l1_hit");
+        this.l2Hits = lookupCounter(meterRegistry, "l2_hit");
+        this.misses = lookupCounter(meterRegistry, "miss");
+        this.l2Errors = Counter.builder("user.cache.l2.errors")
+                .description("Redis读写失败、退化为直接读库的次数")
+                .register(meterRegistry);
+
+        // 多节点模式下，其他节点的变更通过频道通知本节点删除L1
+        listenerContainer.ifAvailable(container -> container.addMessageListener(
+                (message, pattern) -> evictLocal(new String(message.getBody(), StandardCharsets.UTF_8)),
+                new ChannelTopic(INVALIDATION_CHANNEL)));
+    }
+
+    private static Counter lookupCounter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("user.cache.lookups")
+                .tag("result", result)
+                .description("用户查询按命中层级统计")
+                .register(meterRegistry);
+    }
+
+    /**
+     * [函数: getById]
+     * - 输入: String userId - 用户业务ID
+     * - 输出: User - 用户副本（不含密码哈希），不存在时返回null
+     * - 角色: 令牌校验、刷新与资料读取的用户查询
+     * - 逻辑: 1. L1命中直接返回 2. L2命中回填L1 3. 都未命中时读库并回填两级缓存
+     */
+    public User getById(String userId) {
+        if (userId == null) {
+            return null;
+        }
+        User cached = byId.getIfPresent(userId);
+        if (cached != null) {
+            l1Hits.increment();
+            return copyOf(cached);
+        }
+        User user = readL2(userId);
+        if (user != null) {
+            l2Hits.increment();
+            byId.put(userId, user);
+            return copyOf(user);
+        }
+        misses.increment();
+        return populate(userRepository.findByUserId(userId));
+    }
+
+    /**
+     * [函数: getByEmail]
+     * - 输入: String email - 用户邮箱
+     * - 输出: User - 用户副本（不含密码哈希），不存在时返回null
+     * - 角色: 按邮箱的用户查询
+     * - 逻辑: 1. 邮箱 → userId 先查L1索引再查L2索引 2. 找到userId后走getById 3. 都未命中时读库并回填
+     */
+    public User getByEmail(String email) {
+        if (email == null) {
+            return null;
+        }
+        String key = normalize(email);
+        String userId = emailToId.getIfPresent(key);
+        if (userId == null && l2Enabled) {
+            try {
+                userId = redisTemplate.opsForValue().get(EMAIL_KEY_PREFIX + key);
+            } catch (Exception e) {
+                l2Errors.increment();
+            }
+        }
+        if (userId != null) {
+            User user = getById(userId);
+            if (user != null && key.equals(normalize(user.getEmail()))) {
+                emailToId.put(key, userId);
+                return user;
+            }
+        }
+        misses.increment();
+        return populate(userRepository.findByEmail(email));
+    }
+
+    /**
+     * [函数: invalidate]
+     * - 输入: User user - 发生变更的用户
+     * - 输出: void
+     * - 角色: 资料或密码变更后的缓存失效
+     * - 逻辑: 1. 处于事务中时等提交后再删除，避免并发读取把旧值重新写回 2. 删除本节点L1与L2 3. 通知其他节点
+     */
+    public void invalidate(User user) {
+        String userId = user.getUserId();
+        String email = user.getEmail();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    evict(userId, email);
+                }
+            });
+        } else {
+            evict(userId, email);
+        }
+    }
+
+    private void evict(String userId, String email) {
+        evictLocal(userId);
+        if (email != null) {
+            emailToId.invalidate(normalize(email));
+        }
+        if (!l2Enabled) {
+            return;
+        }
+        try {
+            if (email != null) {
+                redisTemplate.delete(Arrays.asList(ID_KEY_PREFIX + userId, EMAIL_KEY_PREFIX + normalize(email)));
+            } else {
+                redisTemplate.delete(ID_KEY_PREFIX + userId);
+            }
+            redisTemplate.convertAndSend(INVALIDATION_CHANNEL, userId);
+        } catch (Exception e) {
+            l2Errors.increment();
+            logger.warn("删除用户缓存失败，等待TTL过期: userId={}, {}", userId, e.getMessage());
+        }
+    }
+
+    private void evictLocal(String userId) {
+        byId.invalidate(userId);
+    }
+
+    private User populate(User user) {
+        if (user == null) {
+            return null;
+        }
+        User cached = copyOf(user);
+        cached.setPasswordHash(null);
+        byId.put(cached.getUserId(), cached);
+        emailToId.put(normalize(cached.getEmail()), cached.getUserId());
+        if (l2Enabled) {
+            try {
+                redisTemplate.opsForValue().set(ID_KEY_PREFIX + cached.getUserId(),
+                        objectMapper.writeValueAsString(cached), l2TtlMillis, TimeUnit.MILLISECONDS);
+                redisTemplate.opsForValue().set(EMAIL_KEY_PREFIX + normalize(cached.getEmail()),
+                        cached.getUserId(), l2TtlMillis, TimeUnit.MILLISECONDS);
+            } catch (Exception e) {
+                l2Errors.increment();
+            }
+        }
+        return copyOf(cached);
+    }
+
+    private User readL2(String userId) {
+        if (!l2Enabled) {
+            return null;
+        }
+        try {
+            String json = redisTemplate.opsForValue().get(ID_KEY_PREFIX + userId);
+            return json == null ? null : objectMapper.readValue(json, User.class);
+        } catch (Exception e) {
+            l2Errors.increment();
+            return null;
+        }
+    }
+
+    private static String normalize(String email) {
+        return email == null ? "" : email.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static User copyOf(User source) {
+        User copy = new User();
+        copy.setId(source.getId());
+        copy.setUserId(source.getUserId());
+        copy.setEmail(source.getEmail());
+        copy.setPasswordHash(source.getPasswordHash());
+        copy.setUsername(source.getUsername());
+        copy.setAvatarUrl(source.getAvatarUrl());
+        copy.setStatus(source.getStatus());
+        copy.setCreatedAt(source.getCreatedAt());
+        copy.setUpdatedAt(source.getUpdatedAt());
+        copy.setExtInfo(source.getExtInfo());
+        return copy;
+    }
+}
@@ -1,17 +1,25 @@
 package com.poping.service;
 
+import com.poping.dto.TokenPair;
 import com.poping.entity.User;
 import com.poping.entity.UserRole;
 import com.poping.repository.UserRepository;
 import com.poping.repository.UserRoleRepository;
+import com.poping.security.AuthorityCache;
+import com.poping.security.LoginAttemptThrottle;
+import com.poping.security.RefreshTokenStore;
+import com.poping.security.RevokedTokenRegistry;
 import com.poping.util.JwtUtil;
+import io.jsonwebtoken.Claims;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.util.List;
 import java.util.UUID;
+import java.util.stream.Collectors;
 
 /**
  * [文件概览]
@@ -31,19 +39,41 @@ public class UserService {
     private UserRoleRepository userRoleRepository;
     
     @Autowired
-    private PasswordEncoder passwordEncoder;
+    private PasswordHashingService passwordHashingService;
+    
+    @Autowired
+    private LoginAttemptThrottle loginAttemptThrottle;
+    
+    @Autowired
+    private UserCache userCache;
+    
+    @Autowired
+    private RefreshTokenStore refreshTokenStore;
+    
+    @Autowired
+    private RevokedTokenRegistry revokedTokenRegistry;
     
     @Autowired
     private JwtUtil jwtUtil;
     
+    @Autowired
+    private AuthorityCache authorityCache;
+    
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+    
     /**
      * [函数: registerUser]
-     * - 输入: String email, String password, String username - 邮箱、密码、用户名
+     * - 输入: String email, String password, String username, String clientIp - 邮箱、密码、用户名、客户端IP
      * - 输出: User - 注册成功的用户对象
      * - 角色: 用户注册业务逻辑
-     * - 逻辑: 1. 检查邮箱是否存在 2. 创建用户 3. 分配默认角色 4. 保存到数据库
+     * - 逻辑: 1. 按IP限流 2. 检查邮箱是否存在 3. 在哈希线程池上加密密码 4. 在短事务中创建用户并分配默认角色
+     *         哈希期间不开启事务，不占用数据库连接；并发注册同一邮箱由唯一索引兜底
      */
-    public User registerUser(String email, String password, String username) {
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public User registerUser(String email, String password, String username, String clientIp) {
+        loginAttemptThrottle.checkIp(clientIp);
+        
         // 检查邮箱是否已存在
         if (userRepository.existsByEmail(email)) {
             throw new RuntimeException("邮箱已被注册");
@@ -53,32 +83,37 @@ public class UserService {
         User user = new User();
         user.setUserId(UUID.randomUUID().toString());
         user.setEmail(email);
-        user.setPasswordHash(passwordEncoder.encode(password));
+        user.setPasswordHash(passwordHashingService.encode(password));
         user.setUsername(username);
         user.setStatus("active");
         
-        // 保存用户
-        int result = userRepository.insert(user);
-        if (result > 0) {
-            // 分配默认角色（注册用户）
+        // 保存用户并分配默认角色（注册用户）
+        return transactionTemplate.execute(status -> {
+            if (userRepository.insert(user) <= 0) {
+                throw new RuntimeException("用户注册失败");
+            }
             assignDefaultRole(user.getUserId());
             return user;
-        } else {
-            throw new RuntimeException("用户注册失败");
-        }
+        });
     }
     
     /**
      * [函数: authenticateUser]
-     * - 输入: String email, String password - 邮箱和密码
-     * - 输出: String - JWT访问令牌
+     * - 输入: String email, String password, String clientIp - 邮箱、密码、客户端IP
+     * - 输出: TokenPair - 新令牌族的访问令牌与刷新令牌
      * - 角色: 用户登录认证
-     * - 逻辑: 1. 查找用户 2. 验证密码 3. 生成JWT令牌 4. 返回令牌
+     * - 逻辑: 1. 按IP与账户限流 2. 查找用户 3. 在哈希线程池上验证密码 4. 强度低于当前配置时后台重新哈希 5. 签发令牌
+     *         不开启事务，等待密码校验期间不占用数据库连接
      */
-    public String authenticateUser(String email, String password) {
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public TokenPair authenticateUser(String email, String password, String clientIp) {
+        loginAttemptThrottle.checkIp(clientIp);
+        loginAttemptThrottle.checkAccount(email);
+        
         // 查找用户
         User user = userRepository.findByEmail(email);
         if (user == null) {
+            loginAttemptThrottle.onFailure(email);
             throw new RuntimeException("用户不存在");
         }
         
@@ -88,12 +123,50 @@ public class UserService {
         }
         
         // 验证密码
-        if (!passwordEncoder.matches(password, user.getPasswordHash())) {
+        if (!passwordHashingService.matches(password, user.getPasswordHash())) {
+            loginAttemptThrottle.onFailure(email);
             throw new RuntimeException("密码错误");
         }
+        loginAttemptThrottle.onSuccess(email);
+        rehashIfNeeded(user, password);
+        
+        return issueTokens(user);
+    }
+    
+    /**
+     * [函数: issueTokens]
+     * - 输入: User user - 已认证的用户
+     * - 输出: TokenPair - 访问令牌与刷新令牌
+     * - 角色: 登录或注册后开启一个新的令牌族
+     * - 逻辑: 1. 生成族ID与两个jti 2. 在Redis登记令牌族 3. 签发携带角色与族ID的令牌（角色在签发时写入，请求时无需再查角色表）
+     */
+    public TokenPair issueTokens(User user) {
+        String familyId = UUID.randomUUID().toString();
+        String refreshJti = UUID.randomUUID().toString();
+        String accessJti = UUID.randomUUID().toString();
+        long accessExpiresAt = System.currentTimeMillis() + jwtUtil.getAccessTokenTtl();
+        refreshTokenStore.start(user.getUserId(), familyId, refreshJti, accessJti, accessExpiresAt);
         
-        // 生成JWT令牌
-        return jwtUtil.generateToken(user.getUserId(), user.getEmail());
+        String accessToken = jwtUtil.generateAccessToken(user.getUserId(), user.getEmail(),
+                getRoleNames(user.getUserId()), familyId, accessJti);
+        String refreshToken = jwtUtil.generateRefreshToken(user.getUserId(), familyId, refreshJti);
+        return new TokenPair(accessToken, refreshToken);
+    }
+    
+    /**
+     * [函数: rehashIfNeeded]
+     * - 输入: User user - 已通过密码校验的用户; String password - 明文密码
+     * - 输出: void
+     * - 角色: 调整BCrypt强度后，在用户下次登录时透明升级哈希
+     * - 逻辑: 1. 哈希强度不低于当前配置时跳过 2. 后台计算新哈希 3. 仅当哈希未被并发修改时写回
+     */
+    private void rehashIfNeeded(User user, String password) {
+        String oldHash = user.getPasswordHash();
+        if (!passwordHashingService.needsRehash(oldHash)) {
+            return;
+        }
+        passwordHashingService.encodeInBackground(password,
+                newHash -> userRepository.updatePasswordHashIfUnchanged(user.getUserId(), oldHash, newHash));
     }
     
     /**
@@ -101,10 +174,10 @@ public class UserService {
      * - 输入: String userId - 用户业务ID
      * - 输出: User - 用户对象
      * - 角色: 根据ID获取用户信息
-     * - 逻辑: 1. 根据userId查询 2. 返回用户信息
+     * - 逻辑: 1. 经两级缓存查询（不含密码哈希） 2. 返回用户信息
      */
     public User getUserById(String userId) {
-        User user = userRepository.findByUserId(userId);
+        User user = userCache.getById(userId);
         if (user == null) {
             throw new RuntimeException("用户不存在");
         }
@@ -116,10 +189,10 @@ public class UserService {
      * - 输入: String email - 用户邮箱
      * - 输出: User - 用户对象
      * - 角色: 根据邮箱获取用户信息
-     * - 逻辑: 1. 根据email查询 2. 返回用户信息
+     * - 逻辑: 1. 经两级缓存查询（不含密码哈希） 2. 返回用户信息
      */
     public User getUserByEmail(String email) {
-        return userRepository.findByEmail(email);
+        return userCache.getByEmail(email);
     }
     
     /**
@@ -127,10 +200,10 @@ public class UserService {
      * - 输入: String userId, String username, String avatarUrl - 用户ID、用户名、头像
      * - 输出: User - 更新后的用户对象
      * - 角色: 更新用户资料
-     * - 逻辑: 1. 查找用户 2. 更新信息 3. 保存到数据库
+     * - 逻辑: 1. 从数据库读取最新记录 2. 更新信息 3. 保存到数据库 4. 提交后失效用户缓存
      */
     public User updateUserProfile(String userId, String username, String avatarUrl) {
-        User user = getUserById(userId);
+        User user = loadUserForUpdate(userId);
         
         if (username != null) {
             user.setUsername(username);
@@ -139,7 +212,11 @@ public class UserService {
             user.setAvatarUrl(avatarUrl);
         }
         
-        return userRepository.updateById(user) > 0 ? user : null;
+        if (userRepository.updateById(user) <= 0) {
+            return null;
+        }
+        userCache.invalidate(user);
+        return user;
     }
     
     /**
@@ -147,19 +224,45 @@ public class UserService {
      * - 输入: String userId, String oldPassword, String newPassword - 用户ID、旧密码、新密码
      * - 输出: boolean - 是否修改成功
      * - 角色: 修改用户密码
-     * - 逻辑: 1. 验证旧密码 2. 加密新密码 3. 更新到数据库
+     * - 逻辑: 1. 按账户限流 2. 从数据库读取含密码哈希的记录并验证旧密码 3. 加密新密码
+     *         4. 仅当哈希未被并发修改时写回（单条UPDATE） 5. 失效用户缓存 6. 吊销该用户的全部令牌族
+     *         校验与哈希期间不开启事务，不占用数据库连接
      */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
     public boolean changePassword(String userId, String oldPassword, String newPassword) {
-        User user = getUserById(userId);
+        loginAttemptThrottle.checkAccount(userId);
+        User user = loadUserForUpdate(userId);
         
         // 验证旧密码
-        if (!passwordEncoder.matches(oldPassword, user.getPasswordHash())) {
+        if (!passwordHashingService.matches(oldPassword, user.getPasswordHash())) {
+            loginAttemptThrottle.onFailure(userId);
             throw new RuntimeException("原密码错误");
         }
         
         // 更新密码
-        user.setPasswordHash(passwordEncoder.encode(newPassword));
-        return userRepository.updateById(user) > 0;
+        String newHash = passwordHashingService.encode(newPassword);
+        if (userRepository.updatePasswordHashIfUnchanged(userId, user.getPasswordHash(), newHash) <= 0) {
+            return false;
+        }
+        userCache.invalidate(user);
+        // 密码修改后所有设备需重新登录
+        refreshTokenStore.revokeAllForUser(userId);
+        return true;
+    }
+    
+    /**
+     * [函数: loadUserForUpdate]
+     * - 输入: String userId - 用户业务ID
+     * - 输出: User - 含密码哈希的最新用户记录
+     * - 角色: 写操作前绕过缓存读取完整记录
+     * - 逻辑: 1. 直接查询数据库 2. 不存在时抛出异常
+     */
+    private User loadUserForUpdate(String userId) {
+        User user = userRepository.findByUserId(userId);
+        if (user == null) {
+            throw new RuntimeException("用户不存在");
+        }
+        return user;
     }
     
     /**
@@ -173,22 +276,125 @@ public class UserService {
         return userRoleRepository.findUserRolesByUserId(userId);
     }
     
+    /**
+     * [函数: getRoleNames]
+     * - 输入: String userId - 用户业务ID
+     * - 输出: List<String> - 角色名列表
+     * - 角色: 签发令牌时获取写入roles声明的角色名
+     * - 逻辑: 1. 查询用户角色 2. 提取角色名
+     */
+    public List<String> getRoleNames(String userId) {
+        return getUserRoles(userId).stream()
+                .map(UserRole::getRoleName)
+                .collect(Collectors.toList());
+    }
+    
+    /**
+     * [函数: assignRole]
+     * - 输入: String userId, String roleName - 用户业务ID、角色名称
+     * - 输出: List<String> - 分配后的全部角色名
+     * - 角色: 为用户分配角色，并让已签发的令牌立即按新角色鉴权（由AdminUserController调用）
+     * - 逻辑: 1. 查找角色 2. 写入关联表 3. 有变化时通知AuthorityCache（事务提交后生效）
+     */
+    public List<String> assignRole(String userId, String roleName) {
+        UserRole role = requireRole(roleName);
+        getUserById(userId);
+        if (userRoleRepository.assignRoleToUser(userId, role.getRoleId()) == 0) {
+            return getRoleNames(userId);
+        }
+        List<String> roleNames = getRoleNames(userId);
+        authorityCache.onRoleChange(userId, roleNames);
+        return roleNames;
+    }
+    
+    /**
+     * [函数: revokeRole]
+     * - 输入: String userId, String roleName - 用户业务ID、角色名称
+     * - 输出: List<String> - 撤销后的全部角色名
+     * - 角色: 撤销用户角色，并让已签发的令牌立即失去该角色（由AdminUserController调用）
+     * - 逻辑: 1. 查找角色 2. 删除关联 3. 有变化时通知AuthorityCache（事务提交后生效）
+     */
+    public List<String> revokeRole(String userId, String roleName) {
+        UserRole role = requireRole(roleName);
+        if (userRoleRepository.revokeRoleFromUser(userId, role.getRoleId()) == 0) {
+            return getRoleNames(userId);
+        }
+        List<String> roleNames = getRoleNames(userId);
+        authorityCache.onRoleChange(userId, roleNames);
+        return roleNames;
+    }
+    
+    private UserRole requireRole(String roleName) {
+        UserRole role = userRoleRepository.findByRoleName(roleName);
+        if (role == null) {
+            throw new RuntimeException("角色不存在: " + roleName);
+        }
+        return role;
+    }
+    
     /**
      * [函数: refreshToken]
      * - 输入: String refreshToken - 刷新令牌
-     * - 输出: String - 新的访问令牌
+     * - 输出: TokenPair - 新的访问令牌与轮换后的刷新令牌
      * - 角色: 刷新访问令牌
-     * - 逻辑: 1. 验证刷新令牌 2. 提取用户信息 3. 生成新的访问令牌
+     * - 逻辑: 1. 验签并检查类型与族ID 2. 在Redis中原子轮换令牌族（旧刷新令牌随即失效）
+     *         3. 已轮换掉的令牌再次出现视为重放，吊销整个族 4. 签发新令牌
      */
-    public String refreshToken(String refreshToken) {
-        if (!jwtUtil.validateToken(refreshToken) || !jwtUtil.isRefreshToken(refreshToken)) {
+    public TokenPair refreshToken(String refreshToken) {
+        Claims claims = jwtUtil.parseVerifiedClaims(refreshToken);
+        if (claims == null || jwtUtil.isExpired(claims) || !"refresh".equals(claims.get("type", String.class))) {
             throw new RuntimeException("无效的刷新令牌");
         }
+        String familyId = claims.get(JwtUtil.FAMILY_CLAIM, String.class);
+        if (familyId == null || claims.getId() == null) {
+            throw new RuntimeException("刷新令牌已失效，请重新登录");
+        }
+        
+        User user = getUserById(claims.get("userId", String.class));
+        if (!"active".equals(user.getStatus())) {
+            throw new RuntimeException("用户账户已被禁用");
+        }
         
-        String userId = jwtUtil.getUserIdFromToken(refreshToken);
-        User user = getUserById(userId);
+        String refreshJti = UUID.randomUUID().toString();
+        String accessJti = UUID.randomUUID().toString();
+        long accessExpiresAt = System.currentTimeMillis() + jwtUtil.getAccessTokenTtl();
+        RefreshTokenStore.Rotation rotation =
+                refreshTokenStore.rotate(user.getUserId(), familyId, claims.getId(), refreshJti, accessJti, accessExpiresAt);
+        if (rotation == RefreshTokenStore.Rotation.REUSED) {
+            throw new RuntimeException("刷新令牌已被使用，请重新登录");
+        }
+        if (rotation != RefreshTokenStore.Rotation.ROTATED) {
+            throw new RuntimeException("刷新令牌已失效，请重新登录");
+        }
         
-        return jwtUtil.generateToken(user.getUserId(), user.getEmail());
+        String accessToken = jwtUtil.generateAccessToken(user.getUserId(), user.getEmail(),
+                getRoleNames(user.getUserId()), familyId, accessJti);
+        return new TokenPair(accessToken, jwtUtil.generateRefreshToken(user.getUserId(), familyId, refreshJti));
+    }
+    
+    /**
+     * [函数: logout]
+     * - 输入: String accessToken - 当前访问令牌（可为空）; String refreshToken - 刷新令牌（可为空）
+     * - 输出: void
+     * - 角色: 服务端登出
+     * - 逻辑: 1. 吊销访问令牌的jti 2. 吊销访问令牌或刷新令牌所属的令牌族，之后的刷新全部失败
+     */
+    public void logout(String accessToken, String refreshToken) {
+        Claims access = jwtUtil.parseVerifiedClaims(accessToken);
+        if (access != null && access.getExpiration() != null) {
+            revokedTokenRegistry.revoke(access.getId(), access.getExpiration().getTime());
+            String familyId = access.get(JwtUtil.FAMILY_CLAIM, String.class);
+            if (familyId != null) {
+                refreshTokenStore.revokeFamily(familyId);
+            }
+        }
+        Claims refresh = jwtUtil.parseVerifiedClaims(refreshToken);
+        if (refresh != null && "refresh".equals(refresh.get("type", String.class))) {
+            String familyId = refresh.get(JwtUtil.FAMILY_CLAIM, String.class);
+            if (familyId != null) {
+                refreshTokenStore.revokeFamily(familyId);
+            }
+        }
     }
     
     /**
@@ -201,9 +407,7 @@ public class UserService {
     private void assignDefaultRole(String userId) {
         UserRole registeredRole = userRoleRepository.findByRoleName("registered");
         if (registeredRole != null) {
-            // 这里需要插入到user_user_roles关联表
-            // 由于MyBatis-Plus没有直接的关联表操作，需要手动执行SQL
-            // 暂时跳过，在实际项目中需要创建关联表的Repository
+            userRoleRepository.assignRoleToUser(userId, registeredRole.getRoleId());
         }
     }
     
@@ -212,14 +416,14 @@ public class UserService {
      * - 输入: String token - JWT令牌
      * - 输出: User - 令牌对应的用户
      * - 角色: 验证令牌并返回用户信息
-     * - 逻辑: 1. 验证令牌有效性 2. 提取用户ID 3. 查询用户信息
+     * - 逻辑: 1. 验证令牌有效性且未被吊销 2. 提取用户ID 3. 查询用户信息
      */
     public User validateToken(String token) {
-        if (!jwtUtil.validateToken(token)) {
+        Claims claims = jwtUtil.parseVerifiedClaims(token);
+        if (claims == null || jwtUtil.isExpired(claims) || revokedTokenRegistry.isRevoked(claims.getId())) {
             throw new RuntimeException("无效的访问令牌");
         }
         
-        String userId = jwtUtil.getUserIdFromToken(token);
-        return getUserById(userId);
+        return getUserById(claims.get("userId", String.class));
     }
 }
\ No newline at end of file
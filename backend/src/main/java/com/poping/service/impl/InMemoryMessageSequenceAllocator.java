@@ -0,0 +1,170 @@
+package com.poping.service.impl;
+
+import com.poping.repository.MessageRepository;
+import com.poping.service.MessageSequenceAllocator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * [文件概览]
+ * - 目的: 单节点部署下的内存消息序号分配器
+ * - 数据流: ChatService → next(sessionId) → 会话计数器自增；首次访问时查询一次数据库最大序号
+ * - 核心数据: sessionId → 计数器，按会话哈希分段加锁的初始化锁
+ * - 关系: app.chat.sequence.mode=memory（默认）时启用；多节点部署请使用RedisMessageSequenceAllocator
+ *
+ * 空闲计数器先经CAS标记为已退役再从映射中移除：已取到计数器的线程自增时发现退役会重新获取，
+ * 不会在计数器被移除后继续发号，与重新从数据库初始化的新计数器发出重复序号。
+ */
+@Component
+@ConditionalOnProperty(name = "app.chat.sequence.mode", havingValue = "memory", matchIfMissing = true)
+public class InMemoryMessageSequenceAllocator implements MessageSequenceAllocator {
+
+    private static final Logger logger = LoggerFactory.getLogger(InMemoryMessageSequenceAllocator.class);
+
+    private static final int STRIPES = 64;
+
+    private final MessageRepository messageRepository;
+
+    private final Map<Long, SessionCounter> counters = new ConcurrentHashMap<>();
+
+    private final Object[] seedLocks = new Object[STRIPES];
+
+    @Value("${app.chat.sequence.idle-timeout:1800000}")
+    private long idleTimeoutMillis;
+
+    public InMemoryMessageSequenceAllocator(MessageRepository messageRepository) {
+        this.messageRepository = messageRepository;
+        for (int i = 0; i < STRIPES; i++) {
+            seedLocks[i] = new Object();
+        }
+    }
+
+    /**
+     * [函数: next]
+     * - 输入: Long sessionId - 会话ID
+     * - 输出: int - 下一个消息序号
+     * - 角色: 无锁分配序号，仅在计数器首次初始化时按分段加锁
+     * - 逻辑: 1. 命中计数器直接自增 2. 未命中时在分段锁内查询数据库最大序号并初始化
+     *         3. 计数器已退役时从映射中移除并重试
+     */
+    @Override
+    public int next(Long sessionId) {
+        while (true) {
+            SessionCounter counter = counters.get(sessionId);
+            if (counter == null) {
+                counter = seed(sessionId);
+            }
+            int sequence = counter.increment();
+            if (sequence != SessionCounter.RETIRED) {
+                return sequence;
+            }
+            counters.remove(sessionId, counter);
+        }
+    }
+
+    @Override
+    public void release(Long sessionId) {
+        SessionCounter counter = counters.get(sessionId);
+        if (counter != null) {
+            counter.retire();
+            counters.remove(sessionId, counter);
+        }
+    }
+
+    /**
+     * [函数: seed]
+     * - 输入: Long sessionId - 会话ID
+     * - 输出: SessionCounter - 已初始化的会话计数器
+     * - 角色: 从数据库最大序号懒加载计数器
+     * - 逻辑: 1. 获取会话所在分段锁 2. 二次检查 3. 查询MAX(sequence_number)并放入缓存
+     */
+    private SessionCounter seed(Long sessionId) {
+        synchronized (seedLocks[(sessionId.hashCode() & 0x7fffffff) % STRIPES]) {
+            SessionCounter counter = counters.get(sessionId);
+            if (counter == null) {
+                Integer maxSequence = messageRepository.getMaxSequenceNumber(sessionId);
+                counter = new SessionCounter(maxSequence == null ? 0 : maxSequence);
+                counters.put(sessionId, counter);
+            }
+            return counter;
+        }
+    }
+
+    /**
+     * [函数: evictIdleCounters]
+     * - 输入: 无
+     * - 输出: void
+     * - 角色: 定期清理长时间未活动会话的计数器，控制内存占用
+     * - 逻辑: 1. 遍历计数器 2. 超过空闲时间的计数器CAS退役成功后才移除（下次使用时重新从数据库初始化）
+     */
+    @Scheduled(fixedDelayString = "${app.chat.sequence.sweep-interval:300000}")
+    public void evictIdleCounters() {
+        long deadline = System.currentTimeMillis() - idleTimeoutMillis;
+        int evicted = 0;
+        for (Map.Entry<Long, SessionCounter> entry : counters.entrySet()) {
+            SessionCounter counter = entry.getValue();
+            if (counter.lastUsed < deadline && counter.retire()) {
+                counters.remove(entry.getKey(), counter);
+                evicted++;
+            }
+        }
+        if (evicted > 0) {
+            logger.debug("Evicted {} idle message sequence counters", evicted);
+        }
+    }
+
+    /**
+     * 单个会话的序号计数器
+     */
+    static class SessionCounter {
+        /** 已退役标记，序号从1开始不会与之冲突 */
+        static final int RETIRED = Integer.MIN_VALUE;
+
+        private final AtomicInteger value;
+        private volatile long lastUsed;
+
+        SessionCounter(int initial) {
+            this.value = new AtomicInteger(initial);
+            this.lastUsed = System.currentTimeMillis();
+        }
+
+        /**
+         * 自增并返回新序号；计数器已退役时返回RETIRED
+         */
+        int increment() {
+            lastUsed = System.currentTimeMillis();
+            while (true) {
+                int current = value.get();
+                if (current == RETIRED) {
+                    return RETIRED;
+                }
+                if (value.compareAndSet(current, current + 1)) {
+                    return current + 1;
+                }
+            }
+        }
+
+        /**
+         * 标记为退役；已退役时返回false。与increment竞争时二者只有一个成功
+         */
+        boolean retire() {
+            while (true) {
+                int current = value.get();
+                if (current == RETIRED) {
+                    return false;
+                }
+                if (value.compareAndSet(current, RETIRED)) {
+                    return true;
+                }
+            }
+        }
+    }
+}
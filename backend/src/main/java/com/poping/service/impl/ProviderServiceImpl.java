@@ -2,13 +2,20 @@ package com.poping.service.impl;
 
 import com.poping.dto.ProviderConfigDTO;
 import com.poping.dto.ProviderConfigResponseDTO;
+import com.poping.dto.ProviderHealthDTO;
+import com.poping.dto.ProviderModelDTO;
 import com.poping.entity.Provider;
 import com.poping.entity.ProviderConfig;
-import com.poping.repository.ProviderRepository;
 import com.poping.repository.ProviderConfigRepository;
+import com.poping.security.ApiKeyVault;
+import com.poping.service.DownstreamLimiter;
+import com.poping.service.ModelCatalogCache;
+import com.poping.service.ProviderCatalog;
+import com.poping.service.ProviderHealthProber;
 import com.poping.service.ProviderService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.client.RestTemplate;
 import org.springframework.http.HttpEntity;
@@ -32,7 +39,7 @@ import java.util.stream.Collectors;
 public class ProviderServiceImpl implements ProviderService {
     
     @Autowired
-    private ProviderRepository providerRepository;
+    private ProviderCatalog providerCatalog;
     
     @Autowired
     private ProviderConfigRepository providerConfigRepository;
@@ -40,23 +47,36 @@ public class ProviderServiceImpl implements ProviderService {
     @Autowired
     private RestTemplate restTemplate;
     
+    @Autowired
+    private DownstreamLimiter downstreamLimiter;
+    
+    @Autowired
+    private ModelCatalogCache modelCatalogCache;
+    
+    @Autowired
+    private ProviderHealthProber providerHealthProber;
+    
+    @Autowired
+    private ApiKeyVault apiKeyVault;
+    
     @Override
     public List<Provider> getAllProviders() {
-        return providerRepository.findAllActive();
+        return providerCatalog.all();
     }
     
     @Override
     public List<ProviderConfigResponseDTO> getUserProviderConfigs(String userId) {
+        // 一次查询配置，供应商名称从内存目录关联
         List<ProviderConfig> configs = providerConfigRepository.findByUserId(userId);
         
         return configs.stream().map(config -> {
-            Provider provider = providerRepository.findByProviderId(config.getProviderId());
+            Provider provider = providerCatalog.find(config.getProviderId());
             ProviderConfigResponseDTO dto = new ProviderConfigResponseDTO();
             dto.setConfigId(config.getConfigId());
             dto.setProviderId(config.getProviderId());
             dto.setProviderName(provider != null ? provider.getName() : "Unknown");
             dto.setApiUrl(config.getApiUrl());
-            dto.setApiKeyMask(maskApiKey(config.getApiKey()));
+            dto.setApiKeyMask(maskApiKey(config));
             dto.setStatus(config.getStatus());
             dto.setCreatedAt(config.getCreatedAt());
             dto.setUpdatedAt(config.getUpdatedAt());
@@ -68,7 +88,7 @@ public class ProviderServiceImpl implements ProviderService {
     @Override
     public ProviderConfigResponseDTO saveProviderConfig(String userId, ProviderConfigDTO configDTO) {
         // 验证供应商存在
-        Provider provider = providerRepository.findByProviderId(configDTO.getProviderId());
+        Provider provider = providerCatalog.resolve(configDTO.getProviderId());
         if (provider == null) {
             throw new RuntimeException("供应商不存在: " + configDTO.getProviderId());
         }
@@ -81,7 +101,8 @@ public class ProviderServiceImpl implements ProviderService {
             // 更新现有配置
             config = existingConfig;
             config.setApiUrl(configDTO.getApiUrl());
-            config.setApiKey(configDTO.getApiKey());
+            config.setApiKey(apiKeyVault.encrypt(configDTO.getApiKey()));
+            config.setApiKeyMask(ApiKeyVault.mask(configDTO.getApiKey()));
             config.setExtConfig(configDTO.getExtConfig());
             config.setUpdatedAt(LocalDateTime.now());
         } else {
@@ -91,7 +112,8 @@ public class ProviderServiceImpl implements ProviderService {
             config.setUserId(userId);
             config.setProviderId(configDTO.getProviderId());
             config.setApiUrl(configDTO.getApiUrl());
-            config.setApiKey(configDTO.getApiKey());
+            config.setApiKey(apiKeyVault.encrypt(configDTO.getApiKey()));
+            config.setApiKeyMask(ApiKeyVault.mask(configDTO.getApiKey()));
             config.setExtConfig(configDTO.getExtConfig());
             config.setStatus("active");
             config.setCreatedAt(LocalDateTime.now());
@@ -111,7 +133,7 @@ public class ProviderServiceImpl implements ProviderService {
         responseDTO.setProviderId(config.getProviderId());
         responseDTO.setProviderName(provider.getName());
         responseDTO.setApiUrl(config.getApiUrl());
-        responseDTO.setApiKeyMask(maskApiKey(config.getApiKey()));
+        responseDTO.setApiKeyMask(config.getApiKeyMask());
         responseDTO.setStatus(config.getStatus());
         responseDTO.setCreatedAt(config.getCreatedAt());
         responseDTO.setUpdatedAt(config.getUpdatedAt());
@@ -139,15 +161,15 @@ public class ProviderServiceImpl implements ProviderService {
         try {
             // 构建测试请求
             HttpHeaders headers = new HttpHeaders();
-            headers.set("Authorization", "Bearer " + config.getApiKey());
+            headers.set("Authorization", "Bearer " + apiKeyVault.reveal(config.getApiKey()));
             headers.set("Content-Type", "application/json");
             
             HttpEntity<String> entity = new HttpEntity<>("{}", headers);
             
             // 发送测试请求（通常是获取模型列表的轻量级请求）
             String testUrl = config.getApiUrl() + "/models";
-            ResponseEntity<String> response = restTemplate.exchange(
-                testUrl, HttpMethod.GET, entity, String.class
+            ResponseEntity<String> response = downstreamLimiter.call(DownstreamLimiter.PROVIDER,
+                () -> restTemplate.exchange(testUrl, HttpMethod.GET, entity, String.class)
             );
             
             Map<String, Object> result = new HashMap<>();
@@ -164,43 +186,40 @@ public class ProviderServiceImpl implements ProviderService {
         }
     }
     
+    /**
+     * 批量探测期间不占用数据库连接
+     */
+    @Override
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public List<ProviderHealthDTO> testAllProviderConnections(String userId) {
+        return providerHealthProber.probeUser(userId);
+    }
+    
     @Override
-    public List<Map<String, Object>> getProviderModels(String userId, String providerId) {
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public List<ProviderHealthDTO> testAllTenantsProviderConnections() {
+        return providerHealthProber.probeAll();
+    }
+    
+    @Override
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public List<ProviderHealthDTO> getProviderHealth() {
+        return providerHealthProber.health();
+    }
+    
+    /**
+     * 首次加载需要远程调用，不在类级事务中执行，避免调用期间占用数据库连接
+     */
+    @Override
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public List<ProviderModelDTO> getProviderModels(String userId, String providerId) {
         ProviderConfig config = providerConfigRepository.findByUserIdAndProviderId(userId, providerId);
         if (config == null) {
             throw new RuntimeException("供应商配置不存在");
         }
         
         try {
-            // 构建请求
-            HttpHeaders headers = new HttpHeaders();
-            headers.set("Authorization", "Bearer " + config.getApiKey());
-            headers.set("Content-Type", "application/json");
-            
-            HttpEntity<String> entity = new HttpEntity<>("{}", headers);
-            
-            // 获取模型列表
-            String modelsUrl = config.getApiUrl() + "/models";
-            ResponseEntity<Map> response = restTemplate.exchange(
-                modelsUrl, HttpMethod.GET, entity, Map.class
-            );
-            
-            // 解析响应
-            Map<String, Object> responseBody = response.getBody();
-            if (responseBody != null && responseBody.containsKey("data")) {
-                List<Map<String, Object>> models = (List<Map<String, Object>>) responseBody.get("data");
-                return models.stream().map(model -> {
-                    Map<String, Object> modelInfo = new HashMap<>();
-                    modelInfo.put("id", model.get("id"));
-                    modelInfo.put("name", model.get("id"));
-                    modelInfo.put("description", model.get("description"));
-                    modelInfo.put("created", model.get("created"));
-                    return modelInfo;
-                }).collect(Collectors.toList());
-            }
-            
-            return new ArrayList<>();
-            
+            return modelCatalogCache.get(config.getProviderId(), config.getApiUrl(), config.getApiKey());
         } catch (Exception e) {
             throw new RuntimeException("获取模型列表失败: " + e.getMessage());
         }
@@ -208,27 +227,15 @@ public class ProviderServiceImpl implements ProviderService {
     
     /**
      * [函数: maskApiKey]
-     * - 输入: String apiKey - 原始API密钥
+     * - 输入: ProviderConfig config - 供应商配置
      * - 输出: String - 掩码后的API密钥
      * - 角色: 保护敏感信息显示
-     * - 逻辑: 1. 保留前4位和后4位 2. 中间用*替代
+     * - 逻辑: 1. 使用保存时计算的掩码 2. 迁移前的旧数据没有掩码时解密后现算
      */
-    private String maskApiKey(String apiKey) {
-        if (apiKey == null || apiKey.length() <= 8) {
-            return "****";
-        }
-        
-        String prefix = apiKey.substring(0, 4);
-        String suffix = apiKey.substring(apiKey.length() - 4);
-        int maskLength = apiKey.length() - 8;
-        // Java 8兼容：使用StringBuilder替代String.repeat
-        StringBuilder maskBuilder = new StringBuilder();
-        int repeatCount = Math.min(maskLength, 20);
-        for (int i = 0; i < repeatCount; i++) {
-            maskBuilder.append("*");
+    private String maskApiKey(ProviderConfig config) {
+        if (config.getApiKeyMask() != null) {
+            return config.getApiKeyMask();
         }
-        String mask = maskBuilder.toString();
-        
-        return prefix + mask + suffix;
+        return ApiKeyVault.mask(apiKeyVault.reveal(config.getApiKey()));
     }
-}
\ No newline at end of file
+}
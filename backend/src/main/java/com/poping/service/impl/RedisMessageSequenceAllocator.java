@@ -0,0 +1,94 @@
+package com.poping.service.impl;
+
+import com.poping.repository.MessageRepository;
+import com.poping.service.MessageSequenceAllocator;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * [文件概览]
+ * - 目的: 多节点部署下基于Redis INCR的消息序号分配器
+ * - 数据流: ChatService → next(sessionId) → Redis INCR chat:msg-seq:{sessionId}
+ * - 核心数据: 每个会话一个Redis计数键，缺失时用数据库最大序号初始化
+ * - 关系: app.chat.sequence.mode=redis 时启用
+ *
+ * 每次自增都在同一个脚本里续期，活跃会话的计数键不会过期后被重新初始化：重新初始化读到的
+ * MAX(sequence_number)不包含已分配但尚未写入的序号，会与它们重复。初始化与首次自增也在同一个
+ * 脚本里完成，键不会在两步之间过期，INCR也不会创建没有过期时间、从1开始的键。
+ */
+@Component
+@ConditionalOnProperty(name = "app.chat.sequence.mode", havingValue = "redis")
+public class RedisMessageSequenceAllocator implements MessageSequenceAllocator {
+
+    private static final String KEY_PREFIX = "chat:msg-seq:";
+
+    /**
+     * 键存在时自增、续期并返回，不存在时返回-1，保证热路径只需一次往返
+     * ARGV: 过期时间（毫秒）
+     */
+    private static final RedisScript<Long> INCR_IF_EXISTS = new DefaultRedisScript<>(
+            "if redis.call('EXISTS', KEYS[1]) == 0 then return -1 end " +
+            "local value = redis.call('INCR', KEYS[1]) " +
+            "redis.call('PEXPIRE', KEYS[1], ARGV[1]) " +
+            "return value",
+            Long.class);
+
+    /**
+     * 键不存在时用数据库最大序号初始化，然后自增并续期；并发初始化时只有第一个写入生效
+     * ARGV: 数据库最大序号、过期时间（毫秒）
+     */
+    private static final RedisScript<Long> SEED_AND_INCR = new DefaultRedisScript<>(
+            "if redis.call('EXISTS', KEYS[1]) == 0 then redis.call('SET', KEYS[1], ARGV[1]) end " +
+            "local value = redis.call('INCR', KEYS[1]) " +
+            "redis.call('PEXPIRE', KEYS[1], ARGV[2]) " +
+            "return value",
+            Long.class);
+
+    private final StringRedisTemplate redisTemplate;
+    private final MessageRepository messageRepository;
+
+    @Value("${app.chat.sequence.redis-ttl:604800000}")
+    private long keyTtlMillis;
+
+    public RedisMessageSequenceAllocator(StringRedisTemplate redisTemplate, MessageRepository messageRepository) {
+        this.redisTemplate = redisTemplate;
+        this.messageRepository = messageRepository;
+    }
+
+    /**
+     * [函数: next]
+     * - 输入: Long sessionId - 会话ID
+     * - 输出: int - 下一个消息序号
+     * - 角色: 跨节点原子分配序号
+     * - 逻辑: 1. 键存在时INCR并续期 2. 键不存在时查询数据库最大序号，在一个脚本里初始化（并发初始化只有一个生效）、
+     *         INCR并续期
+     */
+    @Override
+    public int next(Long sessionId) {
+        List<String> keys = Collections.singletonList(KEY_PREFIX + sessionId);
+        String ttl = String.valueOf(keyTtlMillis);
+        Long value = redisTemplate.execute(INCR_IF_EXISTS, keys, ttl);
+        if (value != null && value > 0) {
+            return value.intValue();
+        }
+        
+        Integer maxSequence = messageRepository.getMaxSequenceNumber(sessionId);
+        value = redisTemplate.execute(SEED_AND_INCR, keys, String.valueOf(maxSequence == null ? 0 : maxSequence), ttl);
+        if (value == null) {
+            throw new RuntimeException("分配消息序号失败");
+        }
+        return value.intValue();
+    }
+
+    @Override
+    public void release(Long sessionId) {
+        redisTemplate.delete(KEY_PREFIX + sessionId);
+    }
+}
@@ -0,0 +1,104 @@
+package com.poping.util;
+
+/**
+ * [文件概览]
+ * - 目的: 基于观测延迟的AIMD自适应并发上限
+ * - 数据流: tryAcquire() → 调用 → onSuccess(耗时)/onDropped()/onIgnored() → 调整上限
+ * - 核心数据: 当前并发上限（浮点）、进行中的调用数
+ * - 关系: 由AIGentsGuard在所有AIGents操作间共享，代表AIGents当前可承受的并发
+ *
+ * 调整规则: 延迟低于阈值且并发已用到上限一半以上时加性增加（每轮约+1），
+ *           超时、失败或延迟超过阈值时乘性减少（limit * backoffRatio），始终保持在[min, max]之间
+ */
+public class AdaptiveConcurrencyLimiter {
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double backoffRatio;
+    private final long latencyThresholdNanos;
+
+    private double limit;
+    private int inFlight;
+
+    /**
+     * @param initialLimit 初始并发上限
+     * @param minLimit 最小并发上限
+     * @param maxLimit 最大并发上限
+     * @param backoffRatio 乘性减少系数，取值(0, 1)
+     * @param latencyThresholdMillis 延迟阈值（毫秒），超过时视为过载信号
+     */
+    public AdaptiveConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit,
+                                      double backoffRatio, long latencyThresholdMillis) {
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.backoffRatio = backoffRatio;
+        this.latencyThresholdNanos = latencyThresholdMillis * 1_000_000L;
+        this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+    }
+
+    /**
+     * [函数: tryAcquire]
+     * - 输入: 无
+     * - 输出: boolean - 是否在当前并发上限内
+     * - 角色: 调用前的快速准入判断，不等待
+     * - 逻辑: 1. 进行中的调用数小于上限时占用一个名额
+     */
+    public synchronized boolean tryAcquire() {
+        if (inFlight >= (int) limit) {
+            return false;
+        }
+        inFlight++;
+        return true;
+    }
+
+    /**
+     * [函数: onSuccess]
+     * - 输入: long durationNanos - 调用耗时
+     * - 输出: void
+     * - 角色: 成功调用后释放名额并根据延迟调整上限
+     * - 逻辑: 1. 延迟超过阈值时乘性减少 2. 否则在利用率足够高时加性增加
+     */
+    public synchronized void onSuccess(long durationNanos) {
+        int current = inFlight--;
+        if (durationNanos > latencyThresholdNanos) {
+            decrease();
+        } else if (current * 2 >= limit) {
+            limit = Math.min(maxLimit, limit + 1.0 / limit);
+        }
+    }
+
+    /**
+     * [函数: onDropped]
+     * - 输入: 无
+     * - 输出: void
+     * - 角色: 调用失败或超时后释放名额并乘性减少上限
+     * - 逻辑: 1. 释放名额 2. 乘性减少
+     */
+    public synchronized void onDropped() {
+        inFlight--;
+        decrease();
+    }
+
+    /**
+     * [函数: onIgnored]
+     * - 输入: 无
+     * - 输出: void
+     * - 角色: 释放名额但不调整上限（如4xx请求错误、或调用未真正发出）
+     * - 逻辑: 1. 释放名额
+     */
+    public synchronized void onIgnored() {
+        inFlight--;
+    }
+
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    private void decrease() {
+        limit = Math.max(minLimit, limit * backoffRatio);
+    }
+}
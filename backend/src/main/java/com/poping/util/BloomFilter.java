@@ -0,0 +1,93 @@
+package com.poping.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * [文件概览]
+ * - 目的: 线程安全的字符串布隆过滤器
+ * - 数据流: put(key) → k个位置置1；mightContain(key) → k个位置都为1时返回true
+ * - 核心数据: 位数组（AtomicLongArray）、哈希函数个数
+ * - 关系: 由RevokedTokenRegistry用于吊销令牌的内存判断；返回false时一定不存在，返回true时需要二次确认
+ *
+ * 位数与哈希个数按期望元素数n和误判率p计算: m = -n·ln(p) / (ln2)², k = m/n·ln2；
+ * k个位置由两个64位哈希组合生成（h1 + i·h2）
+ */
+public class BloomFilter {
+
+    private final AtomicLongArray bits;
+    private final long bitCount;
+    private final int hashCount;
+
+    /**
+     * @param expectedInsertions 期望元素数
+     * @param falsePositiveRate 期望误判率，取值(0, 1)
+     */
+    public BloomFilter(long expectedInsertions, double falsePositiveRate) {
+        long n = Math.max(1, expectedInsertions);
+        long m = (long) Math.ceil(-n * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        int words = (int) Math.max(1, (m + 63) / 64);
+        this.bits = new AtomicLongArray(words);
+        this.bitCount = (long) words * 64;
+        this.hashCount = Math.max(1, (int) Math.round((double) bitCount / n * Math.log(2)));
+    }
+
+    /**
+     * [函数: put]
+     * - 输入: String key - 元素
+     * - 输出: void
+     * - 角色: 加入元素
+     * - 逻辑: 1. 计算两个基础哈希 2. 依次置位k个位置（CAS，无锁）
+     */
+    public void put(String key) {
+        long h1 = fnv1a(key);
+        long h2 = mix(h1);
+        for (int i = 0; i < hashCount; i++) {
+            long index = Math.floorMod(h1 + i * h2, bitCount);
+            int word = (int) (index >>> 6);
+            long mask = 1L << (index & 63);
+            long current;
+            do {
+                current = bits.get(word);
+                if ((current & mask) != 0) {
+                    break;
+                }
+            } while (!bits.compareAndSet(word, current, current | mask));
+        }
+    }
+
+    /**
+     * [函数: mightContain]
+     * - 输入: String key - 元素
+     * - 输出: boolean - 可能存在（true）或一定不存在（false）
+     * - 角色: 常数时间的成员判断
+     * - 逻辑: 1. 任一位置为0即返回false
+     */
+    public boolean mightContain(String key) {
+        long h1 = fnv1a(key);
+        long h2 = mix(h1);
+        for (int i = 0; i < hashCount; i++) {
+            long index = Math.floorMod(h1 + i * h2, bitCount);
+            if ((bits.get((int) (index >>> 6)) & (1L << (index & 63))) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long fnv1a(String key) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    private static long mix(long h) {
+        // SplitMix64终结函数，得到与h1相互独立的第二个哈希（保证为奇数，避免步长退化）
+        h = (h ^ (h >>> 30)) * 0xbf58476d1ce4e5b9L;
+        h = (h ^ (h >>> 27)) * 0x94d049bb133111ebL;
+        return (h ^ (h >>> 31)) | 1L;
+    }
+}
@@ -0,0 +1,196 @@
+package com.poping.util;
+
+import java.util.function.BiConsumer;
+
+/**
+ * [文件概览]
+ * - 目的: 基于计数滑动窗口的熔断器
+ * - 数据流: tryAcquirePermission() → 调用 → onSuccess/onError(耗时) → 窗口统计 → 状态迁移
+ * - 核心数据: 最近N次调用的结果环形缓冲（失败/慢调用）、当前状态与打开时间
+ * - 关系: 由AIGentsGuard为每个外部操作各创建一个实例；状态迁移通过回调上报指标
+ *
+ * 状态机: CLOSED --失败率或慢调用率超阈值--> OPEN --等待openDuration--> HALF_OPEN
+ *         HALF_OPEN --试探调用全部成功--> CLOSED，任一失败 --> OPEN
+ */
+public class CircuitBreaker {
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private static final byte OUTCOME_SUCCESS = 0;
+    private static final byte OUTCOME_FAILURE = 1;
+    private static final byte OUTCOME_SLOW = 2;
+    private static final byte OUTCOME_SLOW_FAILURE = 3;
+
+    private final String name;
+    private final byte[] window;
+    private final int minimumCalls;
+    private final float failureRateThreshold;
+    private final long slowCallThresholdNanos;
+    private final float slowCallRateThreshold;
+    private final long openDurationNanos;
+    private final int halfOpenCalls;
+    private final BiConsumer<State, State> onTransition;
+
+    private State state = State.CLOSED;
+    private int windowIndex;
+    private int windowCount;
+    private int failures;
+    private int slowCalls;
+    private long openedAt;
+    private int halfOpenPermits;
+    private int halfOpenSuccesses;
+
+    /**
+     * @param name 熔断器名称
+     * @param windowSize 滑动窗口大小（调用次数）
+     * @param minimumCalls 窗口内至少多少次调用后才计算比例
+     * @param failureRateThreshold 失败率阈值（百分比）
+     * @param slowCallThresholdMillis 慢调用阈值（毫秒）
+     * @param slowCallRateThreshold 慢调用率阈值（百分比）
+     * @param openDurationMillis 打开状态持续时间（毫秒）
+     * @param halfOpenCalls 半开状态允许的试探调用数
+     * @param onTransition 状态迁移回调（from, to）
+     */
+    public CircuitBreaker(String name, int windowSize, int minimumCalls, float failureRateThreshold,
+                          long slowCallThresholdMillis, float slowCallRateThreshold, long openDurationMillis,
+                          int halfOpenCalls, BiConsumer<State, State> onTransition) {
+        this.name = name;
+        this.window = new byte[windowSize];
+        this.minimumCalls = Math.min(minimumCalls, windowSize);
+        this.failureRateThreshold = failureRateThreshold;
+        this.slowCallThresholdNanos = slowCallThresholdMillis * 1_000_000L;
+        this.slowCallRateThreshold = slowCallRateThreshold;
+        this.openDurationNanos = openDurationMillis * 1_000_000L;
+        this.halfOpenCalls = halfOpenCalls;
+        this.onTransition = onTransition;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * [函数: tryAcquirePermission]
+     * - 输入: 无
+     * - 输出: boolean - 是否允许本次调用
+     * - 角色: 调用前的熔断判断
+     * - 逻辑: 1. CLOSED直接放行 2. OPEN到期后转为HALF_OPEN 3. HALF_OPEN只放行有限次数的试探调用
+     */
+    public synchronized boolean tryAcquirePermission() {
+        if (state == State.CLOSED) {
+            return true;
+        }
+        if (state == State.OPEN) {
+            if (System.nanoTime() - openedAt < openDurationNanos) {
+                return false;
+            }
+            transitionTo(State.HALF_OPEN);
+        }
+        if (halfOpenPermits < halfOpenCalls) {
+            halfOpenPermits++;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * [函数: onSuccess]
+     * - 输入: long durationNanos - 调用耗时
+     * - 输出: void
+     * - 角色: 记录一次成功调用（超过慢调用阈值时按慢调用计）
+     * - 逻辑: 1. 半开状态下累计成功次数，全部成功后关闭 2. 关闭状态下写入窗口并检查阈值
+     */
+    public synchronized void onSuccess(long durationNanos) {
+        record(durationNanos >= slowCallThresholdNanos ? OUTCOME_SLOW : OUTCOME_SUCCESS);
+    }
+
+    /**
+     * [函数: onError]
+     * - 输入: long durationNanos - 调用耗时
+     * - 输出: void
+     * - 角色: 记录一次失败调用
+     * - 逻辑: 1. 半开状态下立即重新打开 2. 关闭状态下写入窗口并检查阈值
+     */
+    public synchronized void onError(long durationNanos) {
+        record(durationNanos >= slowCallThresholdNanos ? OUTCOME_SLOW_FAILURE : OUTCOME_FAILURE);
+    }
+
+    /**
+     * [函数: releasePermission]
+     * - 输入: 无
+     * - 输出: void
+     * - 角色: 已获取许可但调用未发出（被其他保护层拒绝）时归还半开试探名额
+     * - 逻辑: 1. 仅在半开状态下归还
+     */
+    public synchronized void releasePermission() {
+        if (state == State.HALF_OPEN && halfOpenPermits > 0) {
+            halfOpenPermits--;
+        }
+    }
+
+    private void record(byte outcome) {
+        boolean failed = outcome == OUTCOME_FAILURE || outcome == OUTCOME_SLOW_FAILURE;
+        if (state == State.HALF_OPEN) {
+            if (failed || outcome == OUTCOME_SLOW) {
+                transitionTo(State.OPEN);
+            } else if (++halfOpenSuccesses >= halfOpenCalls) {
+                transitionTo(State.CLOSED);
+            }
+            return;
+        }
+        if (state == State.OPEN) {
+            return;
+        }
+
+        if (windowCount == window.length) {
+            byte evicted = window[windowIndex];
+            if (evicted == OUTCOME_FAILURE || evicted == OUTCOME_SLOW_FAILURE) {
+                failures--;
+            }
+            if (evicted == OUTCOME_SLOW || evicted == OUTCOME_SLOW_FAILURE) {
+                slowCalls--;
+            }
+        } else {
+            windowCount++;
+        }
+        window[windowIndex] = outcome;
+        windowIndex = (windowIndex + 1) % window.length;
+        if (failed) {
+            failures++;
+        }
+        if (outcome == OUTCOME_SLOW || outcome == OUTCOME_SLOW_FAILURE) {
+            slowCalls++;
+        }
+
+        if (windowCount >= minimumCalls) {
+            float failureRate = failures * 100f / windowCount;
+            float slowCallRate = slowCalls * 100f / windowCount;
+            if (failureRate >= failureRateThreshold || slowCallRate >= slowCallRateThreshold) {
+                transitionTo(State.OPEN);
+            }
+        }
+    }
+
+    private void transitionTo(State next) {
+        State previous = state;
+        state = next;
+        halfOpenPermits = 0;
+        halfOpenSuccesses = 0;
+        if (next == State.OPEN) {
+            openedAt = System.nanoTime();
+        }
+        if (next == State.CLOSED) {
+            windowIndex = 0;
+            windowCount = 0;
+            failures = 0;
+            slowCalls = 0;
+        }
+        onTransition.accept(previous, next);
+    }
+}
@@ -1,25 +1,57 @@
 package com.poping.util;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
 import io.jsonwebtoken.*;
 import io.jsonwebtoken.security.Keys;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PostConstruct;
 import javax.crypto.SecretKey;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 
 /**
  * [文件概览]
  * - 目的: JWT令牌工具类，处理令牌生成、验证、解析
  * - 数据流: 用户认证 → 生成JWT → 请求验证 → 解析JWT
- * - 核心数据: JWT令牌、用户信息、过期时间
- * - 关系: 被Security组件和Controller使用
+ *         请求验证: 令牌SHA-256 → 已验证声明缓存 → 未命中时单次HS512验签并写入缓存
+ * - 核心数据: JWT令牌、用户信息、过期时间、已验证声明缓存（按令牌exp过期）
+ * - 关系: 被Security组件和Controller使用；签名密钥与解析器在启动时构建一次
  */
 @Component
 public class JwtUtil {
     
+    /**
+     * 角色声明，值为逗号分隔的角色名，如 "registered,paid"
+     */
+    public static final String ROLES_CLAIM = "roles";
+    
+    /**
+     * 令牌族声明，同一次登录签发与轮换出的访问令牌和刷新令牌共享同一个族ID
+     */
+    public static final String FAMILY_CLAIM = "fid";
+    
+    private static final ThreadLocal<MessageDigest> SHA256 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+    
     @Value("${jwt.secret}")
     private String secret;
     
@@ -29,11 +61,55 @@ public class JwtUtil {
     @Value("${jwt.refresh-expiration}")
     private Long refreshExpiration;
     
+    @Value("${jwt.cache.max-size:100000}")
+    private long cacheMaxSize;
+    
+    private final MeterRegistry meterRegistry;
+    
+    private SecretKey signingKey;
+    private JwtParser jwtParser;
+    private Cache<String, Claims> verifiedClaims;
+    
+    public JwtUtil(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+    
     /**
-     * 获取签名密钥
+     * [函数: init]
+     * - 输入: 无
+     * - 输出: void
+     * - 角色: 启动时构建签名密钥、线程安全的解析器与已验证声明缓存
+     * - 逻辑: 1. 由secret生成HMAC密钥 2. 构建复用的JwtParser 3. 创建按exp过期的有界缓存并注册指标
      */
-    private SecretKey getSigningKey() {
-        return Keys.hmacShaKeyFor(secret.getBytes());
+    @PostConstruct
+    public void init() {
+        this.signingKey = Keys.hmacShaKeyFor(secret.getBytes());
+        this.jwtParser = Jwts.parserBuilder()
+                .setSigningKey(signingKey)
+                .build();
+        this.verifiedClaims = Caffeine.newBuilder()
+                .maximumSize(cacheMaxSize)
+                .expireAfter(new Expiry<String, Claims>() {
+                    @Override
+                    public long expireAfterCreate(String key, Claims claims, long currentTime) {
+                        Date exp = claims.getExpiration();
+                        long ttlMillis = exp != null ? exp.getTime() - System.currentTimeMillis() : expiration;
+                        return TimeUnit.MILLISECONDS.toNanos(Math.max(0L, ttlMillis));
+                    }
+                    
+                    @Override
+                    public long expireAfterUpdate(String key, Claims claims, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                    
+                    @Override
+                    public long expireAfterRead(String key, Claims claims, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, verifiedClaims, "jwt.claims");
     }
     
     /**
@@ -49,41 +125,89 @@ public class JwtUtil {
         claims.put("email", email);
         claims.put("type", "access");
         
-        return createToken(claims, userId, expiration);
+        return createToken(claims, userId, expiration, UUID.randomUUID().toString());
+    }
+    
+    /**
+     * [函数: generateToken]
+     * - 输入: String userId, String email, Collection<String> roles - 用户ID、邮箱和角色名
+     * - 输出: String - JWT令牌
+     * - 角色: 生成携带角色声明的访问令牌，请求时无需查询角色表
+     * - 逻辑: 1. 构建Claims 2. 角色名以逗号拼接为紧凑的roles声明 3. 签名生成令牌
+     */
+    public String generateToken(String userId, String email, Collection<String> roles) {
+        return generateAccessToken(userId, email, roles, null, UUID.randomUUID().toString());
+    }
+    
+    /**
+     * [函数: generateAccessToken]
+     * - 输入: String userId, String email, Collection<String> roles - 用户ID、邮箱和角色名;
+     *         String familyId - 令牌族ID; String tokenId - 令牌ID(jti)
+     * - 输出: String - JWT令牌
+     * - 角色: 生成可被吊销的访问令牌
+     * - 逻辑: 1. 构建Claims 2. 写入roles与fid声明 3. 以tokenId作为jti签名生成令牌
+     */
+    public String generateAccessToken(String userId, String email, Collection<String> roles,
+                                      String familyId, String tokenId) {
+        Map<String, Object> claims = new HashMap<>();
+        claims.put("userId", userId);
+        claims.put("email", email);
+        claims.put("type", "access");
+        if (roles != null && !roles.isEmpty()) {
+            claims.put(ROLES_CLAIM, String.join(",", roles));
+        }
+        if (familyId != null) {
+            claims.put(FAMILY_CLAIM, familyId);
+        }
+        
+        return createToken(claims, userId, expiration, tokenId);
     }
     
     /**
      * [函数: generateRefreshToken]
-     * - 输入: String userId - 用户ID
+     * - 输入: String userId - 用户ID; String familyId - 令牌族ID; String tokenId - 令牌ID(jti)
      * - 输出: String - 刷新令牌
-     * - 角色: 生成刷新令牌
+     * - 角色: 生成刷新令牌，族ID与jti用于服务端轮换和重放检测
      * - 逻辑: 1. 构建Claims 2. 设置长过期时间 3. 签名生成令牌
      */
-    public String generateRefreshToken(String userId) {
+    public String generateRefreshToken(String userId, String familyId, String tokenId) {
         Map<String, Object> claims = new HashMap<>();
         claims.put("userId", userId);
         claims.put("type", "refresh");
+        claims.put(FAMILY_CLAIM, familyId);
         
-        return createToken(claims, userId, refreshExpiration);
+        return createToken(claims, userId, refreshExpiration, tokenId);
+    }
+    
+    /**
+     * [函数: getAccessTokenTtl]
+     * - 输入: 无
+     * - 输出: long - 访问令牌有效期（毫秒）
+     * - 角色: 供令牌族记录访问令牌的过期时间
+     * - 逻辑: 1. 返回配置值
+     */
+    public long getAccessTokenTtl() {
+        return expiration;
     }
     
     /**
      * [函数: createToken]
-     * - 输入: Map<String, Object> claims, String subject, Long expiration - 声明、主题、过期时间
+     * - 输入: Map<String, Object> claims, String subject, Long expiration, String tokenId - 声明、主题、过期时间、令牌ID
      * - 输出: String - JWT令牌
      * - 角色: 创建JWT令牌的核心方法
-     * - 逻辑: 1. 设置Claims 2. 设置主题和时间 3. 签名生成
+     * - 逻辑: 1. 设置Claims 2. 设置主题、jti和时间 3. 签名生成
      */
-    private String createToken(Map<String, Object> claims, String subject, Long expiration) {
+    private String createToken(Map<String, Object> claims, String subject, Long expiration, String tokenId) {
         Date now = new Date();
         Date expiryDate = new Date(now.getTime() + expiration);
         
         return Jwts.builder()
                 .setClaims(claims)
                 .setSubject(subject)
+                .setId(tokenId)
                 .setIssuedAt(now)
                 .setExpiration(expiryDate)
-                .signWith(getSigningKey(), SignatureAlgorithm.HS512)
+                .signWith(signingKey, SignatureAlgorithm.HS512)
                 .compact();
     }
     
@@ -131,15 +255,44 @@ public class JwtUtil {
      * - 逻辑: 1. 使用密钥解析 2. 验证签名 3. 返回Claims
      */
     private Claims getClaimsFromToken(String token) {
+        return parseVerifiedClaims(token);
+    }
+    
+    /**
+     * [函数: parseVerifiedClaims]
+     * - 输入: String token - JWT令牌
+     * - 输出: Claims - 已验签且未过期的声明，无效令牌返回null
+     * - 角色: 每个令牌在有效期内只做一次HS512验签
+     * - 逻辑: 1. 以令牌SHA-256为键查缓存 2. 未命中时用单例解析器验签 3. 仅缓存有效令牌，条目在exp时过期
+     */
+    public Claims parseVerifiedClaims(String token) {
+        if (token == null || token.isEmpty()) {
+            return null;
+        }
+        String key = hashToken(token);
+        Claims claims = verifiedClaims.getIfPresent(key);
+        if (claims != null) {
+            return claims;
+        }
         try {
-            return Jwts.parserBuilder()
-                    .setSigningKey(getSigningKey())
-                    .build()
-                    .parseClaimsJws(token)
-                    .getBody();
+            claims = jwtParser.parseClaimsJws(token).getBody();
         } catch (JwtException | IllegalArgumentException e) {
             return null;
         }
+        verifiedClaims.put(key, claims);
+        return claims;
+    }
+    
+    /**
+     * [函数: hashToken]
+     * - 输入: String token - JWT令牌
+     * - 输出: String - 令牌的SHA-256摘要（Base64）
+     * - 角色: 缓存键，避免在内存中长期保留完整令牌
+     * - 逻辑: 1. 复用线程本地的MessageDigest计算摘要
+     */
+    private String hashToken(String token) {
+        byte[] digest = SHA256.get().digest(token.getBytes(StandardCharsets.UTF_8));
+        return Base64.getEncoder().encodeToString(digest);
     }
     
     /**
@@ -178,12 +331,24 @@ public class JwtUtil {
     public Boolean validateToken(String token) {
         try {
             Claims claims = getClaimsFromToken(token);
-            return claims != null && !isTokenExpired(token);
+            return claims != null && !isExpired(claims);
         } catch (Exception e) {
             return false;
         }
     }
     
+    /**
+     * [函数: isExpired]
+     * - 输入: Claims claims - 已验证的声明
+     * - 输出: boolean - 是否已过期
+     * - 角色: 基于已解析声明判断过期，避免再次查找令牌
+     * - 逻辑: 1. 比较exp与当前时间
+     */
+    public boolean isExpired(Claims claims) {
+        Date expiration = claims.getExpiration();
+        return expiration != null && expiration.before(new Date());
+    }
+    
     /**
      * [函数: isRefreshToken]
      * - 输入: String token - JWT令牌
@@ -0,0 +1,61 @@
+package com.poping.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * [文件概览]
+ * - 目的: 游标分页的游标编解码
+ * - 数据流: 本页最后一条记录的排序键 → encode → URL安全的Base64字符串 → 下一次请求 → decode → 排序键
+ * - 核心数据: 以'|'连接的排序键各列（如 last_activity|id）
+ * - 关系: 被ChatService、AgentService用于生成/解析CursorPage的游标；游标格式可随排序键调整，前端不应解析
+ */
+public final class PageCursor {
+
+    private static final String SEPARATOR = "|";
+
+    private PageCursor() {
+    }
+
+    /**
+     * [函数: encode]
+     * - 输入: Object... keys - 排序键各列的值
+     * - 输出: String - 游标
+     * - 角色: 生成下一页游标
+     * - 逻辑: 1. 各列toString后以'|'连接 2. URL安全Base64编码（无填充）
+     */
+    public static String encode(Object... keys) {
+        StringBuilder joined = new StringBuilder();
+        for (int i = 0; i < keys.length; i++) {
+            if (i > 0) {
+                joined.append(SEPARATOR);
+            }
+            joined.append(keys[i]);
+        }
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(joined.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * [函数: decode]
+     * - 输入: String cursor - 游标; int parts - 排序键列数
+     * - 输出: String[] - 排序键各列；cursor为空时返回null（第一页）
+     * - 角色: 解析前端回传的游标
+     * - 逻辑: 1. Base64解码 2. 按'|'拆分并校验列数，非法游标抛出异常
+     */
+    public static String[] decode(String cursor, int parts) {
+        if (cursor == null || cursor.isEmpty()) {
+            return null;
+        }
+        try {
+            String joined = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            String[] keys = joined.split("\\" + SEPARATOR, -1);
+            if (keys.length == parts) {
+                return keys;
+            }
+        } catch (IllegalArgumentException ignored) {
+            // 落到下面统一报错
+        }
+        throw new RuntimeException("无效的分页游标");
+    }
+}
@@ -0,0 +1,76 @@
+package com.poping.util;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * [文件概览]
+ * - 目的: 虚拟线程的反射适配工具
+ * - 数据流: VirtualThreadConfig → VirtualThreads.newExecutor() → JDK 21+ 的 Thread.ofVirtual()
+ * - 核心数据: 运行时JDK是否提供虚拟线程API
+ * - 关系: 项目以Java 8语法编译，无法直接引用JDK 21的API，因此通过反射在运行时探测并创建
+ */
+public final class VirtualThreads {
+
+    private static final Method OF_VIRTUAL;
+    private static final Method BUILDER_NAME;
+    private static final Method BUILDER_FACTORY;
+    private static final Method NEW_THREAD_PER_TASK_EXECUTOR;
+
+    static {
+        Method ofVirtual = null;
+        Method builderName = null;
+        Method builderFactory = null;
+        Method newThreadPerTaskExecutor = null;
+        try {
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            ofVirtual = Thread.class.getMethod("ofVirtual");
+            builderName = builderClass.getMethod("name", String.class, long.class);
+            builderFactory = builderClass.getMethod("factory");
+            newThreadPerTaskExecutor = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+        } catch (ClassNotFoundException | NoSuchMethodException e) {
+            ofVirtual = null;
+        }
+        OF_VIRTUAL = ofVirtual;
+        BUILDER_NAME = builderName;
+        BUILDER_FACTORY = builderFactory;
+        NEW_THREAD_PER_TASK_EXECUTOR = newThreadPerTaskExecutor;
+    }
+
+    private VirtualThreads() {
+    }
+
+    /**
+     * [函数: isSupported]
+     * - 输入: 无
+     * - 输出: boolean - 当前JDK是否提供正式版虚拟线程API
+     * - 角色: 判断能否启用虚拟线程模式
+     * - 逻辑: 1. 检查类加载时反射探测的结果
+     */
+    public static boolean isSupported() {
+        return OF_VIRTUAL != null;
+    }
+
+    /**
+     * [函数: newExecutor]
+     * - 输入: String namePrefix - 线程名前缀
+     * - 输出: ExecutorService - 每个任务一个虚拟线程的执行器
+     * - 角色: 为Tomcat与流式聊天提供虚拟线程执行器
+     * - 逻辑: 1. Thread.ofVirtual().name(prefix, 0).factory() 2. Executors.newThreadPerTaskExecutor(factory)
+     */
+    public static ExecutorService newExecutor(String namePrefix) {
+        if (!isSupported()) {
+            throw new IllegalStateException("当前JDK不支持虚拟线程: " + System.getProperty("java.version"));
+        }
+        try {
+            Object builder = OF_VIRTUAL.invoke(null);
+            builder = BUILDER_NAME.invoke(builder, namePrefix, 0L);
+            ThreadFactory factory = (ThreadFactory) BUILDER_FACTORY.invoke(builder);
+            return (ExecutorService) NEW_THREAD_PER_TASK_EXECUTOR.invoke(null, factory);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("创建虚拟线程执行器失败", e);
+        }
+    }
+}
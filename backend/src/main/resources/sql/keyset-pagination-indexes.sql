@@ -0,0 +1,12 @@
+-- 游标（keyset）分页所需的复合索引
+-- 数据库: MySQL 8.0（表名与Repository中的SQL一致）
+-- 每个索引与对应查询的 WHERE 等值列 + ORDER BY 列完全一致，翻到任意深度都只做一次索引定位加顺序扫描
+
+-- 会话列表: WHERE user_id = ? AND (last_activity, id) < (?, ?) ORDER BY last_activity DESC, id DESC
+CREATE INDEX `idx_sessions_user_activity_id` ON `sessions` (`user_id`, `last_activity` DESC, `id` DESC);
+
+-- 消息历史: WHERE session_id = ? AND sequence_number < ? ORDER BY sequence_number DESC
+CREATE INDEX `idx_messages_session_sequence` ON `messages` (`session_id`, `sequence_number`);
+
+-- 公开智能体: WHERE is_public = 1 AND status = 'active' AND (usage_count, id) < (?, ?) ORDER BY usage_count DESC, id DESC
+CREATE INDEX `idx_agent_configs_public_usage_id` ON `agent_configs` (`is_public`, `status`, `usage_count` DESC, `id` DESC);
@@ -0,0 +1,9 @@
+-- 供应商API密钥加密存储所需的表结构变更
+-- 数据库: MySQL 8.0（表名与Repository中的SQL一致）
+-- api_key 改为保存 enc:v1: 格式的密文（包装后的数据密钥 + AES-GCM密文，Base64URL编码），长度需放宽
+-- api_key_mask 保存时计算的掩码，列表接口不再逐条解密计算
+-- 已有的明文密钥由 ProviderKeyMigration 在应用启动后分批加密并补齐掩码
+
+ALTER TABLE `provider_configs`
+  MODIFY COLUMN `api_key` VARCHAR(1024) DEFAULT NULL COMMENT 'API密钥密文（enc:v1:）',
+  ADD COLUMN `api_key_mask` VARCHAR(64) DEFAULT NULL COMMENT 'API密钥掩码' AFTER `api_key`;
@@ -0,0 +1,161 @@
+package com.poping.security;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.SecureRandom;
+import java.util.Base64;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * ApiKeyVault：信封加密往返、密文篡改检测、缓存淘汰时清零、主密钥文件缺失的处理
+ */
+class ApiKeyVaultTest {
+
+    private static final String API_KEY = "sk-test-0123456789abcdef";
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void encryptThenRevealRoundTrips() throws Exception {
+        ApiKeyVault vault = vault(writeKek(), false);
+
+        String stored = vault.encrypt(API_KEY);
+
+        assertTrue(vault.isEncrypted(stored));
+        assertFalse(stored.contains(API_KEY));
+        assertEquals(API_KEY, vault.reveal(stored));
+        // 命中解密缓存
+        assertEquals(API_KEY, vault.reveal(stored));
+        assertFalse(vault.isKekGenerated());
+    }
+
+    @Test
+    void sameKeyEncryptsToDifferentCiphertexts() throws Exception {
+        ApiKeyVault vault = vault(writeKek(), false);
+
+        assertNotEquals(vault.encrypt(API_KEY), vault.encrypt(API_KEY));
+    }
+
+    @Test
+    void legacyPlaintextIsReturnedUnchanged() throws Exception {
+        ApiKeyVault vault = vault(writeKek(), false);
+
+        assertFalse(vault.isEncrypted(API_KEY));
+        assertEquals(API_KEY, vault.reveal(API_KEY));
+        assertNull(vault.encrypt(null));
+    }
+
+    @Test
+    void tamperedCiphertextIsRejected() throws Exception {
+        ApiKeyVault vault = vault(writeKek(), false);
+        String stored = vault.encrypt(API_KEY);
+
+        // 改动密文中间的字符（末尾字符可能只含Base64填充位）
+        int position = stored.lastIndexOf(':') + 8;
+        char flipped = stored.charAt(position) == 'A' ? 'B' : 'A';
+        String tampered = stored.substring(0, position) + flipped + stored.substring(position + 1);
+
+        assertThrows(IllegalStateException.class, () -> vault.reveal(tampered));
+    }
+
+    @Test
+    void ciphertextFromAnotherKekIsRejected() throws Exception {
+        String stored = vault(writeKek(), false).encrypt(API_KEY);
+        ApiKeyVault other = vault(writeKek(), false);
+
+        assertThrows(IllegalStateException.class, () -> other.reveal(stored));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void evictedSecretIsWiped() throws Exception {
+        ApiKeyVault vault = vault(writeKek(), false);
+        String stored = vault.encrypt(API_KEY);
+        assertEquals(API_KEY, vault.reveal(stored));
+
+        Cache<String, Object> revealed = (Cache<String, Object>) ReflectionTestUtils.getField(vault, "revealed");
+        Object secret = revealed.getIfPresent(stored);
+        assertNotNull(secret);
+        Method read = secret.getClass().getDeclaredMethod("reveal");
+        read.setAccessible(true);
+        assertEquals(API_KEY, read.invoke(secret));
+
+        revealed.invalidate(stored);
+        revealed.cleanUp();
+
+        // 淘汰回调在Caffeine的执行器上异步运行
+        long deadline = System.nanoTime() + 5_000_000_000L;
+        while (read.invoke(secret) != null && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertNull(read.invoke(secret));
+        // 淘汰后仍可重新解密
+        assertEquals(API_KEY, vault.reveal(stored));
+    }
+
+    @Test
+    void missingKekFailsFast() {
+        Path missing = tempDir.resolve("missing.key");
+
+        assertThrows(IllegalStateException.class, () -> vault(missing, false));
+        assertFalse(Files.exists(missing));
+    }
+
+    @Test
+    void missingKekIsGeneratedOnlyWhenOptedIn() throws Exception {
+        Path kek = tempDir.resolve("dev").resolve("provider-kek.key");
+
+        ApiKeyVault generated = vault(kek, true);
+
+        assertTrue(Files.exists(kek));
+        assertTrue(generated.isKekGenerated());
+        String stored = generated.encrypt(API_KEY);
+
+        ApiKeyVault reloaded = vault(kek, true);
+        assertFalse(reloaded.isKekGenerated());
+        assertEquals(API_KEY, reloaded.reveal(stored));
+    }
+
+    @Test
+    void kekWithWrongLengthIsRejected() throws Exception {
+        Path kek = tempDir.resolve("short.key");
+        Files.write(kek, Base64.getEncoder().encode(new byte[16]));
+
+        assertThrows(IllegalStateException.class, () -> vault(kek, false));
+    }
+
+    @Test
+    void maskKeepsPrefixAndSuffix() {
+        assertEquals("sk-t****************cdef", ApiKeyVault.mask(API_KEY));
+        assertEquals("****", ApiKeyVault.mask("short"));
+        assertEquals("****", ApiKeyVault.mask(null));
+    }
+
+    private Path writeKek() throws Exception {
+        byte[] key = new byte[32];
+        new SecureRandom().nextBytes(key);
+        Path kek = Files.createTempFile(tempDir, "kek", ".key");
+        Files.write(kek, Base64.getEncoder().encodeToString(key).getBytes(StandardCharsets.US_ASCII));
+        return kek;
+    }
+
+    private static ApiKeyVault vault(Path kek, boolean generateIfMissing) {
+        return new ApiKeyVault(kek.toString(), generateIfMissing, 100, 60_000L, new SimpleMeterRegistry());
+    }
+}
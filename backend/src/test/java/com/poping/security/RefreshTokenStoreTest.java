@@ -0,0 +1,151 @@
+package com.poping.security;
+
+import com.poping.support.EmbeddedRedis;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+
+/**
+ * RefreshTokenStore：在真实Redis上验证轮换、重放检测、吊销全部未过期访问令牌与滑动续期
+ */
+class RefreshTokenStoreTest {
+
+    private static final long REFRESH_TTL = TimeUnit.DAYS.toMillis(7);
+    private static final String USER = "u-1";
+
+    private static EmbeddedRedis redis;
+
+    private StringRedisTemplate template;
+    private RevokedTokenRegistry revokedTokenRegistry;
+    private RefreshTokenStore store;
+    private long accessExpiresAt;
+
+    @BeforeAll
+    static void startRedis() throws Exception {
+        redis = EmbeddedRedis.start();
+    }
+
+    @AfterAll
+    static void stopRedis() throws Exception {
+        redis.close();
+    }
+
+    @BeforeEach
+    void setUp() {
+        redis.flushAll();
+        template = redis.template();
+        revokedTokenRegistry = mock(RevokedTokenRegistry.class);
+        store = new RefreshTokenStore(template, revokedTokenRegistry, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(store, "refreshTtlMillis", REFRESH_TTL);
+        accessExpiresAt = System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(15);
+    }
+
+    @Test
+    void onlyTheCurrentRefreshTokenRotates() {
+        store.start(USER, "f1", "r1", "a1", accessExpiresAt);
+
+        assertEquals(RefreshTokenStore.Rotation.ROTATED, store.rotate(USER, "f1", "r1", "r2", "a2", accessExpiresAt));
+        assertEquals(RefreshTokenStore.Rotation.ROTATED, store.rotate(USER, "f1", "r2", "r3", "a3", accessExpiresAt));
+        assertEquals(RefreshTokenStore.Rotation.UNKNOWN, store.rotate(USER, "f2", "r1", "r4", "a4", accessExpiresAt));
+        verifyNoInteractions(revokedTokenRegistry);
+    }
+
+    @Test
+    void reusedTokenRevokesTheFamilyAndEveryAccessTokenIssuedInIt() {
+        store.start(USER, "f1", "r1", "a1", accessExpiresAt);
+        store.rotate(USER, "f1", "r1", "r2", "a2", accessExpiresAt + 1);
+        store.rotate(USER, "f1", "r2", "r3", "a3", accessExpiresAt + 2);
+
+        assertEquals(RefreshTokenStore.Rotation.REUSED, store.rotate(USER, "f1", "r1", "r9", "a9", accessExpiresAt));
+
+        verify(revokedTokenRegistry).revoke("a1", accessExpiresAt);
+        verify(revokedTokenRegistry).revoke("a2", accessExpiresAt + 1);
+        verify(revokedTokenRegistry).revoke("a3", accessExpiresAt + 2);
+        verify(revokedTokenRegistry, never()).revoke(eq("a9"), anyLong());
+        // 持有最新令牌的一方也无法再刷新
+        assertEquals(RefreshTokenStore.Rotation.REVOKED, store.rotate(USER, "f1", "r3", "r4", "a4", accessExpiresAt));
+    }
+
+    @Test
+    void expiredAccessTokensArePrunedOnRotateAndNotRevoked() {
+        long expired = System.currentTimeMillis() - 1000;
+        store.start(USER, "f1", "r1", "a1", expired);
+        store.rotate(USER, "f1", "r1", "r2", "a2", accessExpiresAt);
+
+        assertEquals(1L, template.opsForZSet().zCard("auth:rt:access:f1"));
+
+        store.revokeFamily("f1");
+
+        verify(revokedTokenRegistry).revoke("a2", accessExpiresAt);
+        verify(revokedTokenRegistry, never()).revoke(eq("a1"), anyLong());
+        assertEquals(RefreshTokenStore.Rotation.REVOKED, store.rotate(USER, "f1", "r2", "r3", "a3", accessExpiresAt));
+    }
+
+    @Test
+    void rotationRenewsTheUserFamilySet() {
+        store.start(USER, "f1", "r1", "a1", accessExpiresAt);
+        // 模拟登录很久之后：用户的族集合即将过期
+        template.expire("auth:rt:user:" + USER, 1, TimeUnit.SECONDS);
+        template.expire("auth:rt:family:f1", 1, TimeUnit.SECONDS);
+
+        store.rotate(USER, "f1", "r1", "r2", "a2", accessExpiresAt);
+
+        assertTrue(template.getExpire("auth:rt:user:" + USER, TimeUnit.MILLISECONDS) > REFRESH_TTL - 60_000);
+        assertTrue(template.getExpire("auth:rt:family:f1", TimeUnit.MILLISECONDS) > REFRESH_TTL - 60_000);
+        assertTrue(template.getExpire("auth:rt:access:f1", TimeUnit.MILLISECONDS) > REFRESH_TTL - 60_000);
+    }
+
+    @Test
+    void revokeAllForUserRevokesEveryFamily() {
+        store.start(USER, "f1", "r1", "a1", accessExpiresAt);
+        store.start(USER, "f2", "s1", "b1", accessExpiresAt);
+        store.rotate(USER, "f2", "s1", "s2", "b2", accessExpiresAt);
+
+        store.revokeAllForUser(USER);
+
+        verify(revokedTokenRegistry).revoke("a1", accessExpiresAt);
+        verify(revokedTokenRegistry).revoke("b1", accessExpiresAt);
+        verify(revokedTokenRegistry).revoke("b2", accessExpiresAt);
+        assertFalse(template.hasKey("auth:rt:user:" + USER));
+        assertEquals(RefreshTokenStore.Rotation.REVOKED, store.rotate(USER, "f1", "r1", "r2", "a2", accessExpiresAt));
+        assertEquals(RefreshTokenStore.Rotation.REVOKED, store.rotate(USER, "f2", "s2", "s3", "b3", accessExpiresAt));
+    }
+
+    @Test
+    void familiesCreatedBeforeTheAccessTokenSetStillRevokeTheirLatestAccessToken() {
+        template.opsForHash().put("auth:rt:family:legacy", "uid", USER);
+        template.opsForHash().put("auth:rt:family:legacy", "cur", "r1");
+        template.opsForHash().put("auth:rt:family:legacy", "rev", "0");
+        template.opsForHash().put("auth:rt:family:legacy", "ajti", "a1");
+        template.opsForHash().put("auth:rt:family:legacy", "aexp", String.valueOf(accessExpiresAt));
+
+        store.revokeFamily("legacy");
+
+        verify(revokedTokenRegistry).revoke("a1", accessExpiresAt);
+    }
+
+    @Test
+    void revokingAMissingFamilyDoesNothing() {
+        store.revokeFamily("missing");
+
+        verify(revokedTokenRegistry, never()).revoke(anyString(), anyLong());
+        assertFalse(template.hasKey("auth:rt:family:missing"));
+    }
+}
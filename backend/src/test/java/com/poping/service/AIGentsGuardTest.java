@@ -0,0 +1,167 @@
+package com.poping.service;
+
+import com.poping.exception.ExternalServiceException;
+import com.poping.util.AdaptiveConcurrencyLimiter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * AIGentsGuard：超时调用在任务真正结束时才归还并发名额；流式调用不占用AIMD名额；响应式准入凭证只结算一次
+ */
+class AIGentsGuardTest {
+
+    private AIGentsGuard guard;
+    private AdaptiveConcurrencyLimiter limiter;
+
+    @BeforeEach
+    void setUp() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        DownstreamLimiter downstreamLimiter = new DownstreamLimiter(50, 50, registry);
+        // 隔离线程池4，AIMD初始4（1~8，失败时减半），流式名额2
+        guard = new AIGentsGuard(downstreamLimiter, registry, 4, 0, 4, 1, 8, 0.5, 20000L, 2);
+        ReflectionTestUtils.setField(guard, "callTimeoutMillis", 100L);
+        ReflectionTestUtils.setField(guard, "windowSize", 20);
+        ReflectionTestUtils.setField(guard, "minimumCalls", 10);
+        ReflectionTestUtils.setField(guard, "failureRateThreshold", 50f);
+        ReflectionTestUtils.setField(guard, "slowCallThresholdMillis", 20000L);
+        ReflectionTestUtils.setField(guard, "slowCallRateThreshold", 80f);
+        ReflectionTestUtils.setField(guard, "openDurationMillis", 15000L);
+        ReflectionTestUtils.setField(guard, "halfOpenCalls", 3);
+        limiter = (AdaptiveConcurrencyLimiter) ReflectionTestUtils.getField(guard, "limiter");
+    }
+
+    @AfterEach
+    void tearDown() {
+        guard.shutdown();
+    }
+
+    @Test
+    void timedOutCallKeepsItsSlotUntilTheTaskFinishes() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch finished = new CountDownLatch(1);
+
+        ExternalServiceException timeout = assertThrows(ExternalServiceException.class,
+                () -> guard.execute(AIGentsGuard.SEND_QUERY, () -> {
+                    // 模拟无法被中断的socket读取
+                    awaitUninterruptibly(release);
+                    finished.countDown();
+                    return "late";
+                }));
+        assertEquals(ExternalServiceException.TIMEOUT, timeout.getCode());
+
+        // 调用方已放弃，但任务仍在执行，名额不能提前归还
+        assertEquals(1, limiter.getInFlight());
+        assertEquals(4, limiter.getLimit());
+
+        release.countDown();
+        assertTrue(finished.await(5, TimeUnit.SECONDS));
+        awaitInFlight(0);
+        // 超时的调用结束后按失败收缩上限
+        assertEquals(2, limiter.getLimit());
+    }
+
+    @Test
+    void successfulCallReleasesItsSlot() {
+        assertEquals("ok", guard.execute(AIGentsGuard.GET_SESSION_INFO, () -> "ok"));
+
+        assertEquals(0, limiter.getInFlight());
+        assertEquals(4, limiter.getLimit());
+    }
+
+    @Test
+    void streamsRunOnTheCallingThreadOutsideTheAdaptiveLimit() {
+        Thread caller = Thread.currentThread();
+
+        String result = guard.executeStream(AIGentsGuard.SEND_QUERY_STREAM, () -> {
+            assertSame(caller, Thread.currentThread());
+            assertEquals(0, limiter.getInFlight());
+            return "streamed";
+        });
+
+        assertEquals("streamed", result);
+        assertEquals(4, limiter.getLimit());
+    }
+
+    @Test
+    void streamPermitsAreBoundedSeparately() throws Exception {
+        CountDownLatch started = new CountDownLatch(2);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<?> first = executor.submit(() -> holdStream(started, release));
+            Future<?> second = executor.submit(() -> holdStream(started, release));
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+
+            ExternalServiceException rejected = assertThrows(ExternalServiceException.class,
+                    () -> guard.executeStream(AIGentsGuard.SEND_QUERY_STREAM, () -> "third"));
+            assertEquals(ExternalServiceException.OVERLOADED, rejected.getCode());
+            // 流式名额已满时普通调用不受影响
+            assertEquals("ok", guard.execute(AIGentsGuard.SEND_QUERY, () -> "ok"));
+
+            release.countDown();
+            first.get(5, TimeUnit.SECONDS);
+            second.get(5, TimeUnit.SECONDS);
+            assertEquals("again", guard.executeStream(AIGentsGuard.SEND_QUERY_STREAM, () -> "again"));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void ticketSettlesOnlyOnce() {
+        AIGentsGuard.Ticket ticket = guard.enter(AIGentsGuard.SEND_QUERY, false);
+        assertEquals(1, limiter.getInFlight());
+
+        ticket.onError(0L);
+        ticket.onCancel();
+        ticket.onSuccess(0L);
+
+        assertEquals(0, limiter.getInFlight());
+        assertEquals(2, limiter.getLimit());
+    }
+
+    private String holdStream(CountDownLatch started, CountDownLatch release) {
+        return guard.executeStream(AIGentsGuard.SEND_QUERY_STREAM, () -> {
+            started.countDown();
+            awaitUninterruptibly(release);
+            return "held";
+        });
+    }
+
+    private void awaitInFlight(int expected) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (limiter.getInFlight() != expected && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(expected, limiter.getInFlight());
+    }
+
+    private static void awaitUninterruptibly(CountDownLatch latch) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                latch.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
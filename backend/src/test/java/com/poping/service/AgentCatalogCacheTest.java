@@ -0,0 +1,161 @@
+package com.poping.service;
+
+import com.poping.dto.CounterDelta;
+import com.poping.entity.Agent;
+import com.poping.repository.AgentRepository;
+import com.poping.repository.SessionRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * AgentCatalogCache：全量刷新与增量写回并发时不重复计数；ETag由内容决定，跨节点一致
+ */
+class AgentCatalogCacheTest {
+
+    private static final LocalDateTime CREATED = LocalDateTime.of(2024, 5, 1, 10, 0);
+
+    private AgentRepository agentRepository;
+    private ChatCounterWriteBehind writeBehind;
+    private AtomicInteger storedUsage;
+    private final List<AgentCatalogCache> catalogs = new ArrayList<>();
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        agentRepository = mock(AgentRepository.class);
+        storedUsage = new AtomicInteger(10);
+        // 模拟数据库中的usage_count
+        when(agentRepository.batchIncrementUsageCount(anyList())).thenAnswer(invocation -> {
+            List<CounterDelta> deltas = invocation.getArgument(0);
+            deltas.forEach(delta -> storedUsage.addAndGet(delta.getDelta().intValue()));
+            return deltas.size();
+        });
+        ObjectProvider<AgentUsageListener> listeners = mock(ObjectProvider.class);
+        writeBehind = new ChatCounterWriteBehind(mock(SessionRepository.class), agentRepository, listeners,
+                new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(writeBehind, "batchSize", 500);
+        ReflectionTestUtils.setField(writeBehind, "flushThreshold", Long.MAX_VALUE);
+        when(listeners.orderedStream()).thenAnswer(invocation -> Stream.of(catalogs.toArray(new AgentUsageListener[0])));
+    }
+
+    @Test
+    void flushDuringReloadIsCountedExactlyOnce() throws Exception {
+        AgentCatalogCache cache = cache();
+        CountDownLatch querying = new CountDownLatch(1);
+        when(agentRepository.selectPublicCatalog(anyInt())).thenAnswer(invocation -> {
+            querying.countDown();
+            // 查询执行期间写回线程尝试落库并通知
+            Thread.sleep(200);
+            return new ArrayList<>(Arrays.asList(agent(1L, "翻译助手", storedUsage.get()),
+                    agent(2L, "写作教练", 5)));
+        });
+
+        Thread flusher = new Thread(() -> {
+            try {
+                assertTrue(querying.await(5, TimeUnit.SECONDS));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            writeBehind.recordAgentUsage(1L);
+            writeBehind.flush();
+        });
+        flusher.start();
+        cache.reload();
+        flusher.join(5000);
+        cache.rerank();
+
+        assertEquals(11, storedUsage.get());
+        assertEquals(Integer.valueOf(11), cache.popular(1).get(0).getUsageCount());
+    }
+
+    @Test
+    void nodesWithTheSameContentAgreeOnTheEtag() {
+        when(agentRepository.selectPublicCatalog(anyInt())).thenAnswer(invocation ->
+                new ArrayList<>(Arrays.asList(agent(1L, "翻译助手", 10), agent(2L, "写作教练", 5))));
+        AgentCatalogCache first = cache();
+        AgentCatalogCache second = cache();
+
+        first.reload();
+        second.reload();
+
+        assertEquals(first.etag(), second.etag());
+        assertTrue(first.etag().startsWith("W/\"catalog-"));
+    }
+
+    @Test
+    void reloadWithUnchangedContentKeepsTheEtagAndVersion() {
+        when(agentRepository.selectPublicCatalog(anyInt())).thenAnswer(invocation ->
+                new ArrayList<>(Arrays.asList(agent(1L, "翻译助手", 10), agent(2L, "写作教练", 5))));
+        AgentCatalogCache cache = cache();
+        cache.reload();
+        String etag = cache.etag();
+        Object version = version(cache);
+
+        cache.reload();
+
+        assertEquals(etag, cache.etag());
+        assertEquals(version, version(cache));
+    }
+
+    @Test
+    void usageOrContentChangesProduceANewEtag() {
+        when(agentRepository.selectPublicCatalog(anyInt())).thenAnswer(invocation ->
+                new ArrayList<>(Arrays.asList(agent(1L, "翻译助手", 10), agent(2L, "写作教练", 5))));
+        AgentCatalogCache cache = cache();
+        cache.reload();
+        String initial = cache.etag();
+
+        cache.onAgentUsageFlushed(Arrays.asList(new CounterDelta(2L, 1L, null)));
+        cache.rerank();
+        String afterUsage = cache.etag();
+        assertNotEquals(initial, afterUsage);
+
+        when(agentRepository.selectPublicCatalog(anyInt())).thenAnswer(invocation ->
+                new ArrayList<>(Arrays.asList(agent(1L, "多语言翻译", 10), agent(2L, "写作教练", 6))));
+        cache.reload();
+        assertNotEquals(afterUsage, cache.etag());
+    }
+
+    private AgentCatalogCache cache() {
+        AgentCatalogCache cache = new AgentCatalogCache(agentRepository, writeBehind, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(cache, "maxEntries", 100);
+        catalogs.add(cache);
+        return cache;
+    }
+
+    private static Object version(AgentCatalogCache cache) {
+        return ReflectionTestUtils.getField(ReflectionTestUtils.getField(cache, "snapshot"), "version");
+    }
+
+    private static Agent agent(Long id, String name, int usage) {
+        Agent agent = new Agent();
+        agent.setId(id);
+        agent.setName(name);
+        agent.setUsageCount(usage);
+        agent.setStatus("active");
+        agent.setIsPublic(true);
+        agent.setCreatedAt(CREATED);
+        return agent;
+    }
+}
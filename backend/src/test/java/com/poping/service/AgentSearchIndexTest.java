@@ -0,0 +1,174 @@
+package com.poping.service;
+
+import com.poping.dto.CounterDelta;
+import com.poping.entity.Agent;
+import com.poping.repository.AgentRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * AgentSearchIndex：相关度与使用次数排序、容错匹配、分页，以及重建期间增量变更的重放
+ */
+class AgentSearchIndexTest {
+
+    private AgentRepository agentRepository;
+    private AgentSearchIndex index;
+
+    @BeforeEach
+    void setUp() {
+        agentRepository = mock(AgentRepository.class);
+        index = new AgentSearchIndex(agentRepository, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(index, "descriptionChars", 200);
+        ReflectionTestUtils.setField(index, "fuzzyRatio", 0.6);
+        ReflectionTestUtils.setField(index, "maxWindow", 1000);
+        ReflectionTestUtils.setField(index, "rebuildBatchSize", 2000);
+        ReflectionTestUtils.setField(index, "tombstoneRatio", 0.25);
+    }
+
+    @Test
+    void exactNameRanksAboveContainedNameAndDescription() throws Exception {
+        build(agent(1L, "高级翻译助手", "多语言互译", 10),
+                agent(2L, "翻译助手", "中英互译", 10),
+                agent(3L, "写作教练", "也可以充当翻译助手", 10),
+                agent(4L, "数据分析师", "报表与可视化", 10));
+
+        AgentSearchIndex.SearchResult result = index.search("翻译助手", 0, 10);
+
+        assertEquals(Arrays.asList(2L, 1L, 3L), result.getIds());
+        assertEquals(3, result.getTotal());
+    }
+
+    @Test
+    void usageCountBreaksRelevanceTies() throws Exception {
+        build(agent(1L, "代码审查", null, 3),
+                agent(2L, "代码审查", null, 500),
+                agent(3L, "代码审查", null, 40));
+
+        assertEquals(Arrays.asList(2L, 3L, 1L), index.search("代码审查", 0, 10).getIds());
+    }
+
+    @Test
+    void toleratesASingleTypoInLongerQueries() throws Exception {
+        build(agent(1L, "智能客服助手", null, 0), agent(2L, "数据分析师", null, 0));
+
+        assertEquals(Collections.singletonList(1L), index.search("智能客服助乎", 0, 10).getIds());
+        assertTrue(index.search("分忻", 0, 10).getIds().isEmpty());
+    }
+
+    @Test
+    void singleCharacterQueryMatchesNames() throws Exception {
+        build(agent(1L, "翻译", null, 0), agent(2L, "写作", "翻译润色", 0));
+
+        assertEquals(Collections.singletonList(1L), index.search("译", 0, 10).getIds());
+    }
+
+    @Test
+    void pagesThroughRankedResults() throws Exception {
+        build(agent(1L, "助手一号", null, 1),
+                agent(2L, "助手二号", null, 2),
+                agent(3L, "助手三号", null, 3),
+                agent(4L, "助手四号", null, 4),
+                agent(5L, "助手五号", null, 5));
+
+        AgentSearchIndex.SearchResult first = index.search("助手", 0, 2);
+        AgentSearchIndex.SearchResult second = index.search("助手", 2, 2);
+        AgentSearchIndex.SearchResult last = index.search("助手", 4, 2);
+
+        assertEquals(Arrays.asList(5L, 4L), first.getIds());
+        assertEquals(Arrays.asList(3L, 2L), second.getIds());
+        assertEquals(Collections.singletonList(1L), last.getIds());
+        assertEquals(5, first.getTotal());
+    }
+
+    @Test
+    void offsetsBeyondTheWindowReturnAnEmptyPage() throws Exception {
+        build(agent(1L, "助手一号", null, 1), agent(2L, "助手二号", null, 2));
+
+        assertTrue(index.search("助手", Integer.MAX_VALUE - 5, 10).getIds().isEmpty());
+        assertTrue(index.search("助手", -10, 10).getIds().isEmpty());
+        assertTrue(index.search("助手", 1000, 10).getIds().isEmpty());
+    }
+
+    @Test
+    void usageFlushesAndUpdatesReorderResults() throws Exception {
+        build(agent(1L, "周报生成", null, 10), agent(2L, "周报生成", null, 20));
+        assertEquals(Arrays.asList(2L, 1L), index.search("周报", 0, 10).getIds());
+
+        index.onAgentUsageFlushed(Collections.singletonList(new CounterDelta(1L, 100L, LocalDateTime.now())));
+        assertEquals(Arrays.asList(1L, 2L), index.search("周报", 0, 10).getIds());
+
+        index.upsertAfterCommit(agent(2L, "会议纪要", null, 20));
+        assertEquals(Collections.singletonList(1L), index.search("周报", 0, 10).getIds());
+        assertEquals(Collections.singletonList(2L), index.search("纪要", 0, 10).getIds());
+
+        index.removeAfterCommit(1L);
+        assertTrue(index.search("周报", 0, 10).getIds().isEmpty());
+    }
+
+    @Test
+    void changesDuringRebuildAreReplayedOntoTheNewIndex() throws Exception {
+        // 数据库快照仍是旧数据：包含稍后被删除的2号，不含重建期间新建的3号
+        List<Agent> snapshot = Arrays.asList(agent(1L, "旅行规划", null, 0), agent(2L, "旅行翻译", null, 0));
+        CountDownLatch scanning = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(agentRepository.selectActiveAfterId(anyLong(), anyInt())).thenAnswer(invocation -> {
+            scanning.countDown();
+            assertTrue(release.await(5, TimeUnit.SECONDS));
+            return snapshot;
+        });
+
+        assertTrue(index.rebuildAsync());
+        assertTrue(scanning.await(5, TimeUnit.SECONDS));
+        assertFalse(index.rebuildAsync());
+
+        index.upsertAfterCommit(agent(3L, "旅行攻略", null, 0));
+        index.removeAfterCommit(2L);
+        release.countDown();
+        awaitReady();
+
+        List<Long> ids = index.search("旅行", 0, 10).getIds();
+        assertEquals(2, ids.size());
+        assertTrue(ids.containsAll(Arrays.asList(1L, 3L)));
+    }
+
+    private void build(Agent... agents) throws Exception {
+        when(agentRepository.selectActiveAfterId(anyLong(), anyInt())).thenReturn(Arrays.asList(agents));
+        assertTrue(index.rebuildAsync());
+        awaitReady();
+    }
+
+    private void awaitReady() throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!index.isReady() && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertTrue(index.isReady());
+    }
+
+    private static Agent agent(Long id, String name, String description, int usage) {
+        Agent agent = new Agent();
+        agent.setId(id);
+        agent.setName(name);
+        agent.setDescription(description);
+        agent.setUsageCount(usage);
+        agent.setStatus("active");
+        return agent;
+    }
+}
@@ -0,0 +1,77 @@
+package com.poping.service;
+
+import com.baomidou.mybatisplus.core.metadata.IPage;
+import com.poping.entity.Agent;
+import com.poping.repository.AgentRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * AgentService.searchAgents：每页条数上限与偏移量不溢出
+ */
+class AgentServiceTest {
+
+    private AgentRepository agentRepository;
+    private AgentSearchIndex searchIndex;
+    private AgentService agentService;
+
+    @BeforeEach
+    void setUp() {
+        agentRepository = mock(AgentRepository.class);
+        searchIndex = mock(AgentSearchIndex.class);
+        when(searchIndex.getMaxWindow()).thenReturn(1000);
+        agentService = new AgentService(agentRepository, searchIndex, mock(AgentCatalogCache.class));
+    }
+
+    @Test
+    void pageSizeIsClampedAndOffsetDoesNotOverflow() {
+        when(searchIndex.isReady()).thenReturn(true);
+        when(searchIndex.search("翻译", 1000, 100))
+                .thenReturn(new AgentSearchIndex.SearchResult(Collections.<Long>emptyList(), 3));
+
+        IPage<Agent> page = agentService.searchAgents("翻译", Integer.MAX_VALUE, Integer.MAX_VALUE);
+
+        verify(searchIndex).search("翻译", 1000, 100);
+        assertTrue(page.getRecords().isEmpty());
+        assertEquals(100, page.getSize());
+    }
+
+    @Test
+    void nonPositiveSizeFallsBackToOne() {
+        when(searchIndex.isReady()).thenReturn(true);
+        when(searchIndex.search("翻译", 2, 1))
+                .thenReturn(new AgentSearchIndex.SearchResult(Collections.<Long>emptyList(), 0));
+
+        agentService.searchAgents("翻译", 3, 0);
+
+        verify(searchIndex).search("翻译", 2, 1);
+    }
+
+    @Test
+    void databaseFallbackStaysWithinTheWindow() {
+        when(searchIndex.isReady()).thenReturn(false);
+        List<Agent> matched = new ArrayList<>();
+        for (long id = 1; id <= 1200; id++) {
+            Agent agent = new Agent();
+            agent.setId(id);
+            matched.add(agent);
+        }
+        when(agentRepository.searchByName("翻译")).thenReturn(matched);
+
+        assertTrue(agentService.searchAgents("翻译", Integer.MAX_VALUE, 50).getRecords().isEmpty());
+        IPage<Agent> last = agentService.searchAgents("翻译", 20, 50);
+        assertEquals(50, last.getRecords().size());
+        assertEquals(Long.valueOf(951), last.getRecords().get(0).getId());
+        assertTrue(agentService.searchAgents("翻译", 21, 50).getRecords().isEmpty());
+    }
+}
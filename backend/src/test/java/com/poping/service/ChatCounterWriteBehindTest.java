@@ -0,0 +1,197 @@
+package com.poping.service;
+
+import com.poping.dto.CounterDelta;
+import com.poping.repository.AgentRepository;
+import com.poping.repository.SessionRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * ChatCounterWriteBehind：增量聚合成批写回、写库失败时合并回内存重试、仅在写库成功后通知监听器
+ */
+class ChatCounterWriteBehindTest {
+
+    private static final LocalDateTime T0 = LocalDateTime.of(2024, 5, 1, 10, 0);
+
+    private SessionRepository sessionRepository;
+    private AgentRepository agentRepository;
+    private SimpleMeterRegistry meterRegistry;
+    private ChatCounterWriteBehind writeBehind;
+
+    /** 每次批量写库收到的参数 */
+    private final List<List<CounterDelta>> sessionBatches = new ArrayList<>();
+    private final List<List<CounterDelta>> agentBatches = new ArrayList<>();
+    /** 监听器收到的通知 */
+    private final List<List<CounterDelta>> notified = new ArrayList<>();
+    private final AtomicBoolean failSessions = new AtomicBoolean();
+    private final AtomicBoolean failAgents = new AtomicBoolean();
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        sessionRepository = mock(SessionRepository.class);
+        agentRepository = mock(AgentRepository.class);
+        meterRegistry = new SimpleMeterRegistry();
+        when(sessionRepository.batchApplyCounters(anyList())).thenAnswer(invocation -> {
+            if (failSessions.get()) {
+                throw new IllegalStateException("deadlock");
+            }
+            List<CounterDelta> batch = invocation.getArgument(0);
+            sessionBatches.add(new ArrayList<>(batch));
+            return batch.size();
+        });
+        when(agentRepository.batchIncrementUsageCount(anyList())).thenAnswer(invocation -> {
+            if (failAgents.get()) {
+                throw new IllegalStateException("deadlock");
+            }
+            List<CounterDelta> batch = invocation.getArgument(0);
+            agentBatches.add(new ArrayList<>(batch));
+            return batch.size();
+        });
+
+        ObjectProvider<AgentUsageListener> listeners = mock(ObjectProvider.class);
+        AgentUsageListener recording = deltas -> notified.add(new ArrayList<>(deltas));
+        AgentUsageListener failing = deltas -> {
+            throw new IllegalStateException("listener failure");
+        };
+        when(listeners.orderedStream()).thenAnswer(invocation -> Stream.of(failing, recording));
+
+        writeBehind = new ChatCounterWriteBehind(sessionRepository, agentRepository, listeners, meterRegistry);
+        ReflectionTestUtils.setField(writeBehind, "batchSize", 500);
+        ReflectionTestUtils.setField(writeBehind, "flushThreshold", Long.MAX_VALUE);
+    }
+
+    @Test
+    void deltasAreAggregatedIntoOneBatchedUpdate() {
+        writeBehind.recordMessage(1L);
+        writeBehind.recordMessage(1L);
+        writeBehind.recordActivity(1L, T0.plusMinutes(5));
+        writeBehind.recordActivity(1L, T0);
+        writeBehind.recordActivity(2L, T0);
+        writeBehind.recordAgentUsage(7L);
+        writeBehind.recordAgentUsage(7L);
+        writeBehind.recordAgentUsage(8L);
+        assertEquals(4.0, writeBehind.pendingRows());
+
+        writeBehind.flush();
+
+        assertEquals(1, sessionBatches.size());
+        Map<Long, CounterDelta> sessions = byId(sessionBatches.get(0));
+        assertEquals(Long.valueOf(2), sessions.get(1L).getDelta());
+        // 同一周期内只保留最新的活动时间
+        assertEquals(T0.plusMinutes(5), sessions.get(1L).getLastActivity());
+        assertEquals(Long.valueOf(0), sessions.get(2L).getDelta());
+        assertEquals(T0, sessions.get(2L).getLastActivity());
+
+        assertEquals(1, agentBatches.size());
+        Map<Long, CounterDelta> agents = byId(agentBatches.get(0));
+        assertEquals(Long.valueOf(2), agents.get(7L).getDelta());
+        assertEquals(Long.valueOf(1), agents.get(8L).getDelta());
+        assertEquals(0.0, writeBehind.pendingRows());
+        assertEquals(4.0, meterRegistry.counter("chat.counters.flushed").count());
+
+        // 已写回的增量不会重复写
+        writeBehind.flush();
+        assertEquals(1, sessionBatches.size());
+        assertEquals(1, agentBatches.size());
+    }
+
+    @Test
+    void batchesAreSplitByBatchSize() {
+        ReflectionTestUtils.setField(writeBehind, "batchSize", 2);
+        for (long agentId = 1; agentId <= 5; agentId++) {
+            writeBehind.recordAgentUsage(agentId);
+        }
+
+        writeBehind.flush();
+
+        assertEquals(3, agentBatches.size());
+        assertEquals(5, agentBatches.stream().mapToInt(List::size).sum());
+        assertEquals(3, notified.size());
+    }
+
+    @Test
+    void failedSessionWriteIsMergedBackAndRetried() {
+        writeBehind.recordMessage(1L);
+        writeBehind.recordActivity(1L, T0);
+        failSessions.set(true);
+
+        writeBehind.flush();
+
+        assertTrue(sessionBatches.isEmpty());
+        assertEquals(1.0, writeBehind.pendingRows());
+        assertEquals(1.0, meterRegistry.counter("chat.counters.flush.failures").count());
+
+        // 失败后到达的新增量与合并回来的增量一起写回
+        writeBehind.recordMessage(1L);
+        writeBehind.recordActivity(1L, T0.plusMinutes(1));
+        failSessions.set(false);
+        writeBehind.flush();
+
+        assertEquals(1, sessionBatches.size());
+        CounterDelta retried = sessionBatches.get(0).get(0);
+        assertEquals(Long.valueOf(2), retried.getDelta());
+        assertEquals(T0.plusMinutes(1), retried.getLastActivity());
+        assertEquals(0.0, writeBehind.pendingRows());
+    }
+
+    @Test
+    void failedAgentWriteIsMergedBackAndListenersAreNotNotified() {
+        writeBehind.recordAgentUsage(7L);
+        failAgents.set(true);
+
+        writeBehind.flush();
+
+        assertTrue(agentBatches.isEmpty());
+        assertTrue(notified.isEmpty());
+        assertEquals(1.0, writeBehind.pendingRows());
+
+        writeBehind.recordAgentUsage(7L);
+        failAgents.set(false);
+        writeBehind.flush();
+
+        assertEquals(1, agentBatches.size());
+        assertEquals(Long.valueOf(2), agentBatches.get(0).get(0).getDelta());
+        // 监听器只在写库成功后收到一次通知，且前一个监听器抛异常不影响后续监听器
+        assertEquals(1, notified.size());
+        assertEquals(Long.valueOf(7), notified.get(0).get(0).getId());
+        assertEquals(Long.valueOf(2), notified.get(0).get(0).getDelta());
+        assertNull(notified.get(0).get(0).getLastActivity());
+    }
+
+    @Test
+    void sessionFailureDoesNotBlockAgentFlush() {
+        writeBehind.recordMessage(1L);
+        writeBehind.recordAgentUsage(7L);
+        failSessions.set(true);
+
+        writeBehind.flush();
+
+        assertEquals(1, agentBatches.size());
+        assertEquals(1, notified.size());
+        assertEquals(1.0, writeBehind.pendingRows());
+    }
+
+    private static Map<Long, CounterDelta> byId(List<CounterDelta> batch) {
+        return batch.stream().collect(Collectors.toMap(CounterDelta::getId, Function.identity()));
+    }
+}
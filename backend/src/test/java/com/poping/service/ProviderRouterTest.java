@@ -0,0 +1,289 @@
+package com.poping.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.poping.dto.ChatCompletionMessage;
+import com.poping.dto.ChatCompletionResponse;
+import com.poping.entity.ProviderConfig;
+import com.poping.exception.ExternalServiceException;
+import com.poping.repository.ProviderConfigRepository;
+import com.poping.security.ApiKeyVault;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * ProviderRouter：按得分排序、失败转移与EWMA惩罚、跳过并发已满的端点、本地限流拒绝与请求错误不转移
+ */
+class ProviderRouterTest {
+
+    private static final String USER = "u-1";
+    private static final String URL_A = "http://provider-a";
+    private static final String URL_B = "http://provider-b";
+
+    private ProviderConfigRepository providerConfigRepository;
+    private ModelCatalogCache modelCatalogCache;
+    private RestTemplate restTemplate;
+    private DownstreamLimiter downstreamLimiter;
+    private SimpleMeterRegistry meterRegistry;
+    private ProviderRouter router;
+
+    /** apiUrl → 模拟的供应商响应 */
+    private final Map<String, Supplier<ChatCompletionResponse>> upstream = new ConcurrentHashMap<>();
+    private final List<String> calls = new CopyOnWriteArrayList<>();
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        providerConfigRepository = mock(ProviderConfigRepository.class);
+        modelCatalogCache = mock(ModelCatalogCache.class);
+        restTemplate = mock(RestTemplate.class);
+        downstreamLimiter = mock(DownstreamLimiter.class);
+        ApiKeyVault apiKeyVault = mock(ApiKeyVault.class);
+        meterRegistry = new SimpleMeterRegistry();
+
+        when(apiKeyVault.reveal(anyString())).thenAnswer(invocation -> invocation.getArgument(0));
+        when(downstreamLimiter.call(eq(DownstreamLimiter.PROVIDER), any()))
+                .thenAnswer(invocation -> ((Supplier<Object>) invocation.getArgument(1)).get());
+        when(restTemplate.postForObject(anyString(), any(), eq(ChatCompletionResponse.class)))
+                .thenAnswer(invocation -> {
+                    String url = invocation.getArgument(0);
+                    String apiUrl = url.substring(0, url.length() - "/chat/completions".length());
+                    calls.add(apiUrl);
+                    return upstream.get(apiUrl).get();
+                });
+        when(providerConfigRepository.findByUserId(USER))
+                .thenReturn(Arrays.asList(config("a", URL_A), config("b", URL_B)));
+
+        router = new ProviderRouter(providerConfigRepository, modelCatalogCache, restTemplate, downstreamLimiter,
+                apiKeyVault, new ObjectMapper(), meterRegistry);
+        ReflectionTestUtils.setField(router, "maxAttempts", 3);
+        ReflectionTestUtils.setField(router, "maxConcurrentPerProvider", 20);
+        ReflectionTestUtils.setField(router, "initialLatencyMillis", 1000d);
+        // 衰减时间常数取1毫秒，每个新样本几乎完全替代旧值，排序结果确定
+        ReflectionTestUtils.setField(router, "decayMillis", 1d);
+        ReflectionTestUtils.setField(router, "failurePenaltyMillis", 5000L);
+    }
+
+    @Test
+    void failedEndpointIsPenalizedAndTrafficFailsOverToTheNextCandidate() throws Exception {
+        upstream.put(URL_A, () -> answer("from a"));
+        upstream.put(URL_B, () -> {
+            throw new HttpServerErrorException(HttpStatus.SERVICE_UNAVAILABLE);
+        });
+        // 预热：a快速成功，b失败被惩罚，之后a排在前面
+        assertEquals("a", router.complete(USER, "a", null, messages()).getProvider());
+        assertThrows(RuntimeException.class, () -> router.complete(USER, "b", null, messages()));
+        Thread.sleep(5);
+
+        upstream.put(URL_A, () -> {
+            throw new HttpServerErrorException(HttpStatus.BAD_GATEWAY);
+        });
+        upstream.put(URL_B, () -> answer("from b"));
+        calls.clear();
+
+        ProviderRouter.Completion completion = router.complete(USER, ProviderRouter.AUTO, null, messages());
+
+        assertEquals("b", completion.getProvider());
+        assertEquals("from b", completion.getContent());
+        assertEquals(Arrays.asList(URL_A, URL_B), calls);
+        assertEquals(1.0, failovers());
+
+        // a刚被惩罚，下一轮b排在前面
+        calls.clear();
+        router.complete(USER, ProviderRouter.AUTO, null, messages());
+        assertEquals(Collections.singletonList(URL_B), calls);
+    }
+
+    @Test
+    void fasterEndpointIsPreferred() throws Exception {
+        upstream.put(URL_A, () -> answer("from a"));
+        upstream.put(URL_B, () -> {
+            sleep(30);
+            return answer("from b");
+        });
+        // 每个端点预热两次：首个样本与端点创建几乎同时，权重仍落在初始值上
+        for (int i = 0; i < 2; i++) {
+            router.complete(USER, "a", null, messages());
+            router.complete(USER, "b", null, messages());
+            Thread.sleep(5);
+        }
+        calls.clear();
+
+        for (int i = 0; i < 5; i++) {
+            assertEquals("a", router.complete(USER, ProviderRouter.AUTO, null, messages()).getProvider());
+        }
+        assertFalse(calls.contains(URL_B));
+        assertEquals(0.0, failovers());
+    }
+
+    @Test
+    void requestErrorsDoNotFailOver() {
+        upstream.put(URL_A, () -> {
+            throw new HttpClientErrorException(HttpStatus.BAD_REQUEST);
+        });
+        upstream.put(URL_B, () -> {
+            throw new HttpClientErrorException(HttpStatus.BAD_REQUEST);
+        });
+
+        RuntimeException error = assertThrows(RuntimeException.class,
+                () -> router.complete(USER, ProviderRouter.AUTO, null, messages()));
+
+        assertTrue(error.getCause() instanceof HttpClientErrorException);
+        assertEquals(1, calls.size());
+        assertEquals(0.0, failovers());
+    }
+
+    @Test
+    void saturatedEndpointIsSkipped() throws Exception {
+        ReflectionTestUtils.setField(router, "maxConcurrentPerProvider", 1);
+        CountDownLatch inFlight = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        upstream.put(URL_A, () -> {
+            inFlight.countDown();
+            await(release);
+            return answer("from a");
+        });
+        upstream.put(URL_B, () -> answer("from b"));
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<ProviderRouter.Completion> holder =
+                    executor.submit(() -> router.complete(USER, "a", null, messages()));
+            assertTrue(inFlight.await(5, TimeUnit.SECONDS));
+
+            for (int i = 0; i < 3; i++) {
+                assertEquals("b", router.complete(USER, ProviderRouter.AUTO, null, messages()).getProvider());
+            }
+            assertEquals(1, calls.stream().filter(URL_A::equals).count());
+
+            release.countDown();
+            assertEquals("a", holder.get(5, TimeUnit.SECONDS).getProvider());
+        } finally {
+            release.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void allEndpointsSaturatedReturnsOverloaded() {
+        ReflectionTestUtils.setField(router, "maxConcurrentPerProvider", 0);
+
+        ExternalServiceException error = assertThrows(ExternalServiceException.class,
+                () -> router.complete(USER, ProviderRouter.AUTO, null, messages()));
+
+        assertEquals(ExternalServiceException.OVERLOADED, error.getCode());
+        assertTrue(calls.isEmpty());
+    }
+
+    @Test
+    void downstreamLimiterRejectionStopsWithoutFailover() {
+        ExternalServiceException rejected = new ExternalServiceException(DownstreamLimiter.PROVIDER,
+                ExternalServiceException.OVERLOADED, "外部服务繁忙，请稍后再试");
+        when(downstreamLimiter.call(eq(DownstreamLimiter.PROVIDER), any())).thenThrow(rejected);
+
+        ExternalServiceException error = assertThrows(ExternalServiceException.class,
+                () -> router.complete(USER, ProviderRouter.AUTO, null, messages()));
+
+        assertSame(rejected, error);
+        verify(downstreamLimiter, times(1)).call(eq(DownstreamLimiter.PROVIDER), any());
+        assertEquals(0.0, failovers());
+    }
+
+    @Test
+    void modelResolutionFailureMovesOnWithoutCallingTheEndpoint() {
+        ProviderConfig withoutModels = config("a", URL_A);
+        withoutModels.setExtConfig(null);
+        ProviderConfig withModel = config("b", URL_B);
+        withModel.setExtConfig("{\"model\":\"b-large\"}");
+        when(providerConfigRepository.findByUserId(USER)).thenReturn(Arrays.asList(withoutModels, withModel));
+        when(modelCatalogCache.get("a", URL_A, "key-a")).thenReturn(new ArrayList<>());
+        upstream.put(URL_B, () -> answer("from b"));
+
+        ProviderRouter.Completion completion = router.complete(USER, ProviderRouter.AUTO, null, messages());
+
+        assertEquals("b", completion.getProvider());
+        assertEquals("b-large", completion.getModel());
+        assertEquals(Collections.singletonList(URL_B), calls);
+    }
+
+    @Test
+    void unknownProviderIsRejected() {
+        assertThrows(RuntimeException.class, () -> router.complete(USER, "missing", null, messages()));
+        assertTrue(calls.isEmpty());
+    }
+
+    private double failovers() {
+        return meterRegistry.counter("provider.chat.failovers").count();
+    }
+
+    private static ProviderConfig config(String providerId, String apiUrl) {
+        ProviderConfig config = new ProviderConfig();
+        config.setConfigId("cfg-" + providerId);
+        config.setUserId(USER);
+        config.setProviderId(providerId);
+        config.setApiUrl(apiUrl);
+        config.setApiKey("key-" + providerId);
+        config.setExtConfig("{\"model\":\"" + providerId + "-model\"}");
+        return config;
+    }
+
+    private static List<ChatCompletionMessage> messages() {
+        return Collections.singletonList(new ChatCompletionMessage("user", "你好"));
+    }
+
+    private static ChatCompletionResponse answer(String content) {
+        ChatCompletionResponse.Choice choice = new ChatCompletionResponse.Choice();
+        choice.setMessage(new ChatCompletionMessage("assistant", content));
+        ChatCompletionResponse response = new ChatCompletionResponse();
+        response.setChoices(Collections.singletonList(choice));
+        return response;
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.poping.service;
+
+import com.poping.entity.User;
+import com.poping.entity.UserRole;
+import com.poping.repository.UserRoleRepository;
+import com.poping.security.AuthorityCache;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * UserService角色变更：实际变化时通知AuthorityCache，幂等的重复操作不广播
+ */
+class UserServiceRoleTest {
+
+    private static final String USER = "u-1";
+
+    private UserRoleRepository userRoleRepository;
+    private AuthorityCache authorityCache;
+    private UserService userService;
+
+    @BeforeEach
+    void setUp() {
+        userRoleRepository = mock(UserRoleRepository.class);
+        authorityCache = mock(AuthorityCache.class);
+        UserCache userCache = mock(UserCache.class);
+        when(userCache.getById(USER)).thenReturn(new User());
+        userService = new UserService();
+        ReflectionTestUtils.setField(userService, "userRoleRepository", userRoleRepository);
+        ReflectionTestUtils.setField(userService, "authorityCache", authorityCache);
+        ReflectionTestUtils.setField(userService, "userCache", userCache);
+        when(userRoleRepository.findByRoleName("paid")).thenReturn(new UserRole("r-paid", "paid", null));
+    }
+
+    @Test
+    void assigningANewRolePublishesTheFullRoleSet() {
+        when(userRoleRepository.assignRoleToUser(USER, "r-paid")).thenReturn(1);
+        when(userRoleRepository.findUserRolesByUserId(USER)).thenReturn(roles("registered", "paid"));
+
+        List<String> roleNames = userService.assignRole(USER, "paid");
+
+        assertEquals(Arrays.asList("registered", "paid"), roleNames);
+        verify(authorityCache).onRoleChange(USER, Arrays.asList("registered", "paid"));
+    }
+
+    @Test
+    void assigningAnExistingRoleDoesNotPublish() {
+        when(userRoleRepository.assignRoleToUser(USER, "r-paid")).thenReturn(0);
+        when(userRoleRepository.findUserRolesByUserId(USER)).thenReturn(roles("registered", "paid"));
+
+        userService.assignRole(USER, "paid");
+
+        verify(authorityCache, never()).onRoleChange(anyString(), any());
+    }
+
+    @Test
+    void revokingARolePublishesTheRemainingRoles() {
+        when(userRoleRepository.revokeRoleFromUser(USER, "r-paid")).thenReturn(1);
+        when(userRoleRepository.findUserRolesByUserId(USER)).thenReturn(roles("registered"));
+
+        userService.revokeRole(USER, "paid");
+
+        verify(authorityCache).onRoleChange(USER, Collections.singletonList("registered"));
+    }
+
+    @Test
+    void unknownRoleIsRejected() {
+        assertThrows(RuntimeException.class, () -> userService.assignRole(USER, "owner"));
+        verify(authorityCache, never()).onRoleChange(anyString(), any());
+    }
+
+    private static List<UserRole> roles(String... names) {
+        UserRole[] roles = new UserRole[names.length];
+        for (int i = 0; i < names.length; i++) {
+            roles[i] = new UserRole("r-" + names[i], names[i], null);
+        }
+        return Arrays.asList(roles);
+    }
+}
@@ -0,0 +1,106 @@
+package com.poping.service.impl;
+
+import com.poping.repository.MessageRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * InMemoryMessageSequenceAllocator：懒加载初始化、并发分配不重复、空闲回收与退役计数器
+ */
+class InMemoryMessageSequenceAllocatorTest {
+
+    private MessageRepository messageRepository;
+    private InMemoryMessageSequenceAllocator allocator;
+
+    @BeforeEach
+    void setUp() {
+        messageRepository = mock(MessageRepository.class);
+        allocator = new InMemoryMessageSequenceAllocator(messageRepository);
+        ReflectionTestUtils.setField(allocator, "idleTimeoutMillis", TimeUnit.MINUTES.toMillis(30));
+    }
+
+    @Test
+    void seedsFromTheDatabaseOnceThenIncrements() {
+        when(messageRepository.getMaxSequenceNumber(1L)).thenReturn(5);
+        when(messageRepository.getMaxSequenceNumber(2L)).thenReturn(0);
+
+        assertEquals(6, allocator.next(1L));
+        assertEquals(7, allocator.next(1L));
+        assertEquals(1, allocator.next(2L));
+
+        verify(messageRepository, times(1)).getMaxSequenceNumber(1L);
+    }
+
+    @Test
+    void concurrentAllocationsNeverRepeat() throws Exception {
+        when(messageRepository.getMaxSequenceNumber(1L)).thenReturn(0);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Integer>> futures = new ArrayList<>();
+            for (int i = 0; i < 2000; i++) {
+                futures.add(executor.submit((Callable<Integer>) () -> allocator.next(1L)));
+            }
+            Set<Integer> sequences = new HashSet<>();
+            for (Future<Integer> future : futures) {
+                assertTrue(sequences.add(future.get(10, TimeUnit.SECONDS)));
+            }
+            assertEquals(2000, sequences.size());
+            verify(messageRepository, times(1)).getMaxSequenceNumber(1L);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void idleCountersAreReseededFromTheDatabase() {
+        when(messageRepository.getMaxSequenceNumber(1L)).thenReturn(0, 2);
+        assertEquals(1, allocator.next(1L));
+        assertEquals(2, allocator.next(1L));
+
+        ReflectionTestUtils.setField(allocator, "idleTimeoutMillis", -1L);
+        allocator.evictIdleCounters();
+
+        assertEquals(3, allocator.next(1L));
+        verify(messageRepository, times(2)).getMaxSequenceNumber(1L);
+    }
+
+    @Test
+    void retiredCounterNeverIssuesAnotherSequence() {
+        InMemoryMessageSequenceAllocator.SessionCounter counter = new InMemoryMessageSequenceAllocator.SessionCounter(4);
+
+        assertEquals(5, counter.increment());
+        assertTrue(counter.retire());
+        assertFalse(counter.retire());
+        assertEquals(InMemoryMessageSequenceAllocator.SessionCounter.RETIRED, counter.increment());
+    }
+
+    @Test
+    void releasedSessionStartsOverFromTheDatabase() {
+        when(messageRepository.getMaxSequenceNumber(1L)).thenReturn(0, 0);
+        assertEquals(1, allocator.next(1L));
+
+        allocator.release(1L);
+
+        assertEquals(1, allocator.next(1L));
+        verify(messageRepository, times(2)).getMaxSequenceNumber(1L);
+    }
+}
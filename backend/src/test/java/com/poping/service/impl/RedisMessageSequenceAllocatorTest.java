@@ -0,0 +1,121 @@
+package com.poping.service.impl;
+
+import com.poping.repository.MessageRepository;
+import com.poping.support.EmbeddedRedis;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * RedisMessageSequenceAllocator：在真实Redis上验证初始化、每次分配续期、并发分配不重复与释放
+ */
+class RedisMessageSequenceAllocatorTest {
+
+    private static final long TTL = TimeUnit.DAYS.toMillis(7);
+    private static final String KEY = "chat:msg-seq:7";
+
+    private static EmbeddedRedis redis;
+
+    private StringRedisTemplate template;
+    private MessageRepository messageRepository;
+    private RedisMessageSequenceAllocator allocator;
+
+    @BeforeAll
+    static void startRedis() throws Exception {
+        redis = EmbeddedRedis.start();
+    }
+
+    @AfterAll
+    static void stopRedis() throws Exception {
+        redis.close();
+    }
+
+    @BeforeEach
+    void setUp() {
+        redis.flushAll();
+        template = redis.template();
+        messageRepository = mock(MessageRepository.class);
+        allocator = new RedisMessageSequenceAllocator(template, messageRepository);
+        ReflectionTestUtils.setField(allocator, "keyTtlMillis", TTL);
+    }
+
+    @Test
+    void seedsFromTheDatabaseOnceThenIncrements() {
+        when(messageRepository.getMaxSequenceNumber(7L)).thenReturn(41);
+
+        assertEquals(42, allocator.next(7L));
+        assertEquals(43, allocator.next(7L));
+        assertEquals(44, allocator.next(7L));
+
+        verify(messageRepository, times(1)).getMaxSequenceNumber(7L);
+    }
+
+    @Test
+    void everyAllocationRenewsTheKeyExpiry() {
+        when(messageRepository.getMaxSequenceNumber(7L)).thenReturn(0);
+        assertEquals(1, allocator.next(7L));
+        assertTrue(template.getExpire(KEY, TimeUnit.MILLISECONDS) > TTL - 60_000);
+
+        template.expire(KEY, 1, TimeUnit.SECONDS);
+        assertEquals(2, allocator.next(7L));
+
+        assertTrue(template.getExpire(KEY, TimeUnit.MILLISECONDS) > TTL - 60_000);
+    }
+
+    @Test
+    void concurrentAllocationsAcrossNodesNeverRepeat() throws Exception {
+        when(messageRepository.getMaxSequenceNumber(7L)).thenReturn(10);
+        // 两个节点共享同一Redis
+        RedisMessageSequenceAllocator other = new RedisMessageSequenceAllocator(template, messageRepository);
+        ReflectionTestUtils.setField(other, "keyTtlMillis", TTL);
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Integer>> futures = new ArrayList<>();
+            for (int i = 0; i < 400; i++) {
+                RedisMessageSequenceAllocator node = i % 2 == 0 ? allocator : other;
+                futures.add(executor.submit((Callable<Integer>) () -> node.next(7L)));
+            }
+            Set<Integer> sequences = new HashSet<>();
+            for (Future<Integer> future : futures) {
+                assertTrue(sequences.add(future.get(10, TimeUnit.SECONDS)));
+            }
+            assertEquals(400, sequences.size());
+            assertTrue(sequences.contains(11));
+            assertTrue(sequences.contains(410));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void releaseDropsTheCounter() {
+        when(messageRepository.getMaxSequenceNumber(7L)).thenReturn(3);
+        assertEquals(4, allocator.next(7L));
+
+        allocator.release(7L);
+
+        assertFalse(template.hasKey(KEY));
+    }
+}
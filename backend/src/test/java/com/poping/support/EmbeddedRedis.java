@@ -0,0 +1,57 @@
+package com.poping.support;
+
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import redis.embedded.RedisServer;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+
+/**
+ * 测试用内嵌Redis：在随机端口启动真实的redis-server，用于验证Lua脚本与键过期行为
+ */
+public final class EmbeddedRedis implements AutoCloseable {
+
+    private final RedisServer server;
+    private final LettuceConnectionFactory connectionFactory;
+    private final StringRedisTemplate template;
+
+    private EmbeddedRedis(int port) throws IOException {
+        this.server = RedisServer.newRedisServer()
+                .bind("127.0.0.1")
+                .port(port)
+                .setting("save \"\"")
+                .setting("appendonly no")
+                .build();
+        this.server.start();
+        this.connectionFactory = new LettuceConnectionFactory(new RedisStandaloneConfiguration("127.0.0.1", port));
+        this.connectionFactory.afterPropertiesSet();
+        this.template = new StringRedisTemplate(connectionFactory);
+    }
+
+    public static EmbeddedRedis start() throws IOException {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        return new EmbeddedRedis(port);
+    }
+
+    public StringRedisTemplate template() {
+        return template;
+    }
+
+    public void flushAll() {
+        template.execute(connection -> {
+            connection.flushAll();
+            return null;
+        }, true);
+    }
+
+    @Override
+    public void close() throws IOException {
+        connectionFactory.destroy();
+        server.stop();
+    }
+}
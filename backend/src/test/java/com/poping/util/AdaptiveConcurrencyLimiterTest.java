@@ -0,0 +1,104 @@
+package com.poping.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * AdaptiveConcurrencyLimiter：准入上限、加性增加、乘性减少与上下界
+ */
+class AdaptiveConcurrencyLimiterTest {
+
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final long SLOW = TimeUnit.SECONDS.toNanos(2);
+
+    @Test
+    void admitsUpToTheCurrentLimit() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(2, 1, 10, 0.5, 1000L);
+
+        assertTrue(limiter.tryAcquire());
+        assertTrue(limiter.tryAcquire());
+        assertFalse(limiter.tryAcquire());
+        assertEquals(2, limiter.getInFlight());
+
+        limiter.onIgnored();
+        assertEquals(1, limiter.getInFlight());
+        assertTrue(limiter.tryAcquire());
+    }
+
+    @Test
+    void initialLimitIsClampedToBounds() {
+        assertEquals(10, new AdaptiveConcurrencyLimiter(100, 1, 10, 0.5, 1000L).getLimit());
+        assertEquals(4, new AdaptiveConcurrencyLimiter(1, 4, 10, 0.5, 1000L).getLimit());
+    }
+
+    @Test
+    void droppedCallsBackOffMultiplicativelyDownToTheMinimum() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(16, 3, 32, 0.5, 1000L);
+
+        limiter.tryAcquire();
+        limiter.onDropped();
+        assertEquals(8, limiter.getLimit());
+
+        limiter.tryAcquire();
+        limiter.onDropped();
+        limiter.tryAcquire();
+        limiter.onDropped();
+        assertEquals(3, limiter.getLimit());
+        assertEquals(0, limiter.getInFlight());
+    }
+
+    @Test
+    void slowSuccessIsTreatedAsOverload() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(10, 1, 20, 0.5, 1000L);
+
+        limiter.tryAcquire();
+        limiter.onSuccess(SLOW);
+
+        assertEquals(5, limiter.getLimit());
+    }
+
+    @Test
+    void fastSuccessAtHighUtilizationGrowsTheLimitUpToTheMaximum() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(2, 1, 4, 0.5, 1000L);
+
+        for (int round = 0; round < 50; round++) {
+            int admitted = 0;
+            while (limiter.tryAcquire()) {
+                admitted++;
+            }
+            for (int i = 0; i < admitted; i++) {
+                limiter.onSuccess(FAST);
+            }
+        }
+
+        assertEquals(4, limiter.getLimit());
+    }
+
+    @Test
+    void fastSuccessAtLowUtilizationDoesNotGrowTheLimit() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(10, 1, 20, 0.5, 1000L);
+
+        for (int i = 0; i < 100; i++) {
+            limiter.tryAcquire();
+            limiter.onSuccess(FAST);
+        }
+
+        assertEquals(10, limiter.getLimit());
+    }
+
+    @Test
+    void ignoredCallsReleaseWithoutAdjusting() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(6, 1, 20, 0.5, 1000L);
+
+        limiter.tryAcquire();
+        limiter.onIgnored();
+
+        assertEquals(6, limiter.getLimit());
+        assertEquals(0, limiter.getInFlight());
+    }
+}
@@ -0,0 +1,99 @@
+package com.poping.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * BloomFilter：不漏判、误判率接近配置值、并发写入安全
+ */
+class BloomFilterTest {
+
+    @Test
+    void emptyFilterContainsNothing() {
+        BloomFilter filter = new BloomFilter(1000, 0.01);
+
+        assertFalse(filter.mightContain("jti-1"));
+        assertFalse(filter.mightContain(""));
+    }
+
+    @Test
+    void insertedKeysAreAlwaysFound() {
+        BloomFilter filter = new BloomFilter(10_000, 0.01);
+        List<String> keys = randomKeys(10_000);
+        keys.forEach(filter::put);
+
+        for (String key : keys) {
+            assertTrue(filter.mightContain(key), key);
+        }
+    }
+
+    @Test
+    void falsePositiveRateStaysNearTarget() {
+        double target = 0.01;
+        BloomFilter filter = new BloomFilter(10_000, target);
+        randomKeys(10_000).forEach(filter::put);
+
+        int probes = 100_000;
+        int falsePositives = 0;
+        for (String key : randomKeys(probes)) {
+            if (filter.mightContain(key)) {
+                falsePositives++;
+            }
+        }
+        double rate = (double) falsePositives / probes;
+        assertTrue(rate < target * 2, "false positive rate " + rate);
+    }
+
+    @Test
+    void concurrentPutsLoseNoBits() throws Exception {
+        BloomFilter filter = new BloomFilter(40_000, 0.01);
+        int threads = 8;
+        List<List<String>> perThread = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            perThread.add(randomKeys(5_000));
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<?>> futures = new ArrayList<>();
+            for (List<String> keys : perThread) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    keys.forEach(filter::put);
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        for (List<String> keys : perThread) {
+            for (String key : keys) {
+                assertTrue(filter.mightContain(key), key);
+            }
+        }
+    }
+
+    private static List<String> randomKeys(int count) {
+        List<String> keys = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            keys.add(UUID.randomUUID().toString());
+        }
+        return keys;
+    }
+}
@@ -0,0 +1,143 @@
+package com.poping.util;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * CircuitBreaker：失败率与慢调用率触发打开、最小调用数、半开试探与名额归还
+ */
+class CircuitBreakerTest {
+
+    private static final long OPEN_MILLIS = 50L;
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(5);
+    private static final long SLOW = TimeUnit.MILLISECONDS.toNanos(200);
+
+    private final List<CircuitBreaker.State> transitions = new ArrayList<>();
+    private CircuitBreaker breaker;
+
+    @BeforeEach
+    void setUp() {
+        // 窗口10次，至少4次后判断；失败率50%或慢调用率75%打开；半开放行2次试探
+        breaker = new CircuitBreaker("test", 10, 4, 50f, 100L, 75f, OPEN_MILLIS, 2,
+                (from, to) -> transitions.add(to));
+    }
+
+    @Test
+    void staysClosedBelowMinimumCalls() {
+        for (int i = 0; i < 3; i++) {
+            assertTrue(breaker.tryAcquirePermission());
+            breaker.onError(FAST);
+        }
+
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    void opensWhenFailureRateReachesThreshold() {
+        record(true, true, false, false);
+
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.tryAcquirePermission());
+        assertEquals(Arrays.asList(CircuitBreaker.State.OPEN), transitions);
+    }
+
+    @Test
+    void staysClosedWhileFailureRateIsBelowThreshold() {
+        record(true, true, true, false, true, true, true, false, true, true);
+
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    void failuresAreCountedOverTheSlidingWindowOnly() {
+        record(true, true, true, true, true, true, true, false, false, false);
+        // 最早的7次成功与之后的3次失败都滑出窗口
+        record(true, true, true, true, true, true, true, true, true, true);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+
+        // 累计失败率只有8/25，但最近10次中已有5次失败
+        record(false, false, false, false);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        record(false);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    @Test
+    void opensWhenSlowCallRateReachesThreshold() {
+        breaker.onSuccess(SLOW);
+        breaker.onSuccess(SLOW);
+        breaker.onSuccess(FAST);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+
+        breaker.onSuccess(SLOW);
+
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    @Test
+    void halfOpenAdmitsLimitedProbesAndClosesAfterThemSucceed() throws Exception {
+        record(false, false, false, false);
+        Thread.sleep(OPEN_MILLIS + 20);
+
+        assertTrue(breaker.tryAcquirePermission());
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertTrue(breaker.tryAcquirePermission());
+        assertFalse(breaker.tryAcquirePermission());
+
+        breaker.onSuccess(FAST);
+        breaker.onSuccess(FAST);
+
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertEquals(Arrays.asList(CircuitBreaker.State.OPEN, CircuitBreaker.State.HALF_OPEN,
+                CircuitBreaker.State.CLOSED), transitions);
+        // 关闭后窗口清空，需要重新积累最小调用数
+        record(false, false, false);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    void halfOpenReopensOnFailureOrSlowProbe() throws Exception {
+        record(false, false, false, false);
+        Thread.sleep(OPEN_MILLIS + 20);
+        assertTrue(breaker.tryAcquirePermission());
+        breaker.onError(FAST);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+
+        Thread.sleep(OPEN_MILLIS + 20);
+        assertTrue(breaker.tryAcquirePermission());
+        breaker.onSuccess(SLOW);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    @Test
+    void releasedHalfOpenPermitCanBeReused() throws Exception {
+        record(false, false, false, false);
+        Thread.sleep(OPEN_MILLIS + 20);
+        assertTrue(breaker.tryAcquirePermission());
+        assertTrue(breaker.tryAcquirePermission());
+        assertFalse(breaker.tryAcquirePermission());
+
+        breaker.releasePermission();
+
+        assertTrue(breaker.tryAcquirePermission());
+    }
+
+    private void record(boolean... successes) {
+        for (boolean success : successes) {
+            if (success) {
+                breaker.onSuccess(FAST);
+            } else {
+                breaker.onError(FAST);
+            }
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.poping.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Base64;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * PageCursor：编解码往返、第一页、非法游标
+ */
+class PageCursorTest {
+
+    @Test
+    void encodeThenDecodeRoundTrips() {
+        String cursor = PageCursor.encode("2024-05-01T10:15:30", 42L);
+
+        assertArrayEquals(new String[]{"2024-05-01T10:15:30", "42"}, PageCursor.decode(cursor, 2));
+    }
+
+    @Test
+    void cursorIsUrlSafe() {
+        String cursor = PageCursor.encode("名称?&=/+", 9_007_199_254_740_993L);
+
+        assertFalse(cursor.contains("+"));
+        assertFalse(cursor.contains("/"));
+        assertFalse(cursor.contains("="));
+        assertArrayEquals(new String[]{"名称?&=/+", "9007199254740993"}, PageCursor.decode(cursor, 2));
+    }
+
+    @Test
+    void emptyValuesArePreserved() {
+        String cursor = PageCursor.encode("", 7L);
+
+        assertArrayEquals(new String[]{"", "7"}, PageCursor.decode(cursor, 2));
+    }
+
+    @Test
+    void missingCursorMeansFirstPage() {
+        assertNull(PageCursor.decode(null, 2));
+        assertNull(PageCursor.decode("", 2));
+    }
+
+    @Test
+    void wrongNumberOfKeysIsRejected() {
+        String cursor = PageCursor.encode(1L, 2L, 3L);
+
+        assertThrows(RuntimeException.class, () -> PageCursor.decode(cursor, 2));
+    }
+
+    @Test
+    void malformedCursorIsRejected() {
+        assertThrows(RuntimeException.class, () -> PageCursor.decode("not base64!", 2));
+        String plain = Base64.getUrlEncoder().encodeToString("no-separator".getBytes());
+        assertThrows(RuntimeException.class, () -> PageCursor.decode(plain, 2));
+    }
+}